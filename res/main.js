@@ -40,7 +40,13 @@ function showStackTrace() {
  * line wrapped into a jQuery object.
  */
 function ltbProcessLines(func) {
-    var regexp = new RegExp($("#regexp").val());
+    var regexp;
+    try {
+        regexp = new RegExp($("#regexp").val());
+    } catch (e) {
+        alert("Invalid regular expression: " + e.message);
+        return;
+    }
     $(".log").children().each(function (i) {
         if ($(this).text().match(regexp)) {
             func($(this));
@@ -48,6 +54,188 @@ function ltbProcessLines(func) {
     });
 }
 
+/**
+ * Paged log views. The lines of the log are stored in a data file (which sets
+ * chkbugreport_logs[id]), and only one page of the (filtered) lines is rendered
+ * at a time.
+ */
+var LPV_PAGE_SIZE = 500;
+var LPV_LEVELS = "VDIWEF";
+
+function lpvGet(id) {
+    var div = $("#lpv-" + id);
+    var view = div.data("lpv");
+    if (!view) {
+        view = { id: id, div: div, log: chkbugreport_logs[id], sel: null, page: 0 };
+        div.data("lpv", view);
+    }
+    return view;
+}
+
+function lpvEscape(s) {
+    return s.replace(/&/g, "&amp;").replace(/>/g, "&gt;").replace(/</g, "&lt;");
+}
+
+function lpvLine(log, idx) {
+    return log.text.substring(log.offs[idx], log.offs[idx + 1] - 1);
+}
+
+/**
+ * Renders a line, linking the pid to the process (like in the html logs).
+ */
+function lpvLineHtml(log, idx) {
+    var line = lpvLine(log, idx);
+    var s = log.pidS[idx], e = log.pidE[idx];
+    if (s < e) {
+        var pid = parseInt(line.substring(s, e), 10);
+        var href = log.procs[pid];
+        if (href) {
+            return lpvEscape(line.substring(0, s)) + "<a href=\"" + href + "\">" + pid + "</a>" + lpvEscape(line.substring(e));
+        }
+    }
+    return lpvEscape(line);
+}
+
+function lpvRender(view) {
+    var log = view.log;
+    var n = view.sel ? view.sel.length : log.count;
+    var pages = Math.max(1, Math.ceil(n / LPV_PAGE_SIZE));
+    view.page = Math.max(0, Math.min(pages - 1, view.page));
+    var from = view.page * LPV_PAGE_SIZE;
+    var to = Math.min(n, from + LPV_PAGE_SIZE);
+    var html = [];
+    for (var i = from; i < to; i++) {
+        var idx = view.sel ? view.sel[i] : i;
+        var deco = log.deco[idx];
+        if (deco) {
+            html.push(deco);
+        }
+        html.push("<div class=\"" + log.css[log.level.charAt(idx)] + "\">" + lpvLineHtml(log, idx) + "</div>");
+    }
+    view.div.children(".lpv-lines").html(html.join(""));
+    var info = "Page " + (view.page + 1) + "/" + pages + ", lines " + (n == 0 ? 0 : from + 1) + "-" + to + " of " + n;
+    if (view.sel) {
+        info += " (filtered from " + log.count + ")";
+    }
+    view.div.find(".lpv-info").text(info);
+}
+
+function lpvPage(id, delta) {
+    var view = lpvGet(id);
+    view.page += delta;
+    lpvRender(view);
+}
+
+/**
+ * Returns the lines which are in both of the (sorted) lists.
+ */
+function lpvIntersect(a, b) {
+    var ret = [];
+    var i = 0, j = 0;
+    while (i < a.length && j < b.length) {
+        if (a[i] < b[j]) {
+            i++;
+        } else if (a[i] > b[j]) {
+            j++;
+        } else {
+            ret.push(a[i]);
+            i++;
+            j++;
+        }
+    }
+    return ret;
+}
+
+/**
+ * Collects the lines matching all the filters, using the pid/tag lists from the
+ * data file, and checking the level and the regular expression on the remaining lines.
+ */
+function lpvFilter(id) {
+    var view = lpvGet(id);
+    var log = view.log;
+    var sel = null;
+    var pid = $.trim(view.div.find(".lpv-pid").val());
+    if (pid != "") {
+        sel = log.pids[pid] || [];
+    }
+    var tag = $.trim(view.div.find(".lpv-tag").val());
+    if (tag != "") {
+        var list = log.tags[tag] || [];
+        sel = sel ? lpvIntersect(sel, list) : list;
+    }
+    var level = LPV_LEVELS.indexOf(view.div.find(".lpv-level").val());
+    if (level >= 0) {
+        var src = sel;
+        var n = src ? src.length : log.count;
+        sel = [];
+        for (var i = 0; i < n; i++) {
+            var idx = src ? src[i] : i;
+            if (LPV_LEVELS.indexOf(log.level.charAt(idx)) >= level) {
+                sel.push(idx);
+            }
+        }
+    }
+    var regexp = view.div.find(".lpv-regexp").val();
+    if (regexp != "") {
+        try {
+            regexp = new RegExp(regexp);
+        } catch (e) {
+            // Keep the current page, just report the error
+            view.div.find(".lpv-info").text("Invalid regular expression: " + e.message);
+            return;
+        }
+        var src = sel;
+        var n = src ? src.length : log.count;
+        sel = [];
+        for (var i = 0; i < n; i++) {
+            var idx = src ? src[i] : i;
+            if (lpvLine(log, idx).match(regexp)) {
+                sel.push(idx);
+            }
+        }
+    }
+    view.sel = sel;
+    view.page = 0;
+    lpvRender(view);
+}
+
+function lpvReset(id) {
+    var view = lpvGet(id);
+    view.div.find("input").val("");
+    view.div.find(".lpv-level").val("All");
+    view.sel = null;
+    view.page = 0;
+    lpvRender(view);
+}
+
+/**
+ * Shows the page requested in the url: either a filter (e.g. #pid=123) or
+ * the page containing an anchored line.
+ */
+function lpvShowHash() {
+    var hash = window.location.hash.substring(1);
+    $(".log-paged").each(function () {
+        var view = lpvGet($(this).attr("id").substring(4));
+        var m = hash.match(/^pid=(.*)$/);
+        if (m) {
+            lpvReset(view.id);
+            view.div.find(".lpv-pid").val(m[1]);
+            lpvFilter(view.id);
+        } else if (view.log.anchors[hash] != undefined) {
+            lpvReset(view.id);
+            view.page = Math.floor(view.log.anchors[hash] / LPV_PAGE_SIZE);
+            lpvRender(view);
+            var a = $("a[name='" + hash + "']");
+            if (a.length > 0) {
+                a[0].scrollIntoView();
+            }
+        } else if (!view.rendered) {
+            lpvRender(view);
+        }
+        view.rendered = true;
+    });
+}
+
 function main() {
 	// Check if there is a newer version
 	if (isdefined("chkbugreport_latest_ver")) {
@@ -82,6 +270,8 @@ function main() {
 	$(".tablednd").tableDnD();
 	$(".tv_tr").click(onTraceViewTreeLineClicked);
 	$(".stacktrace-name-name").toggle(hideStackTrace, showStackTrace);
+	lpvShowHash();
+	$(window).bind("hashchange", lpvShowHash);
 }
 
 $(document).ready(main);
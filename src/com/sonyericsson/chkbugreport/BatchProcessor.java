@@ -0,0 +1,218 @@
+/*
+ * Copyright (C) 2012 Sony Mobile Communications AB
+ *
+ * This file is part of ChkBugReport.
+ *
+ * ChkBugReport is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * ChkBugReport is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ChkBugReport.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.sonyericsson.chkbugreport;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Vector;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import com.sonyericsson.chkbugreport.Module.OutputListener;
+
+/**
+ * Processes several reports in the same JVM, on a pool of worker threads.
+ *
+ * <p>Each report is loaded into its own module instance, and a failure while processing
+ * one report doesn't affect the others. When all the reports are done, a summary index
+ * is written which links to the generated reports and lists the time spent on them.</p>
+ */
+public class BatchProcessor {
+
+    private Main mMain;
+    private int mMode;
+    private int mThreads;
+    private Vector<Job> mJobs = new Vector<Job>();
+
+    /** Holds the state of a single report */
+    /* package */ static class Job {
+        String fileName;
+        boolean ok;
+        String error;
+        String indexFile;
+        /** The generated archive, when saving the reports as archives (see --zip) */
+        String archiveFile;
+        long loadTime;
+        long generateTime;
+        /** The settings of this report */
+        Context context;
+
+        Job(String fileName, Context context) {
+            this.fileName = fileName;
+            this.context = context;
+        }
+    }
+
+    public BatchProcessor(Main main, int mode, int threads) {
+        mMain = main;
+        mMode = mode;
+        mThreads = Math.max(1, threads);
+    }
+
+    /**
+     * Adds a report to be processed. If the file name refers to a directory,
+     * all the files in the directory are added instead (but not the subdirectories).
+     */
+    public void add(String fileName) {
+        File f = new File(fileName);
+        if (f.isDirectory()) {
+            File files[] = f.listFiles();
+            if (files == null) {
+                return;
+            }
+            Arrays.sort(files);
+            for (File child : files) {
+                if (child.isFile()) {
+                    addJob(child.getPath());
+                }
+            }
+        } else {
+            addJob(fileName);
+        }
+    }
+
+    private void addJob(String fileName) {
+        // The reports must not share the time window markers, see Context(Context)
+        mJobs.add(new Job(fileName, new Context(mMain.getContext())));
+    }
+
+    public int getCount() {
+        return mJobs.size();
+    }
+
+    /**
+     * Processes all the reports, and writes the summary index to the given file.
+     * @return true if all the reports were processed successfully
+     */
+    public boolean run(String indexFileName) {
+        long start = System.currentTimeMillis();
+        ExecutorService executor = Executors.newFixedThreadPool(mThreads);
+        for (final Job job : mJobs) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    process(job);
+                }
+            });
+        }
+        executor.shutdown();
+        boolean interrupted = false;
+        while (true) {
+            try {
+                if (executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                    break;
+                }
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        long total = System.currentTimeMillis() - start;
+
+        boolean ret = true;
+        for (Job job : mJobs) {
+            ret &= job.ok;
+        }
+        try {
+            writeIndex(indexFileName, total);
+            mMain.onPrint(1, OutputListener.TYPE_OUT, "Batch summary written to: " + indexFileName);
+        } catch (IOException e) {
+            mMain.onPrint(1, OutputListener.TYPE_ERR, "Error writing batch summary '" + indexFileName + "': " + e);
+            ret = false;
+        }
+        return ret;
+    }
+
+    /**
+     * Processes a single report on the current thread.
+     * The result is stored in the job itself.
+     */
+    /* package */ void process(final Job job) {
+        try {
+            Module report = mMain.createReportInstance(job.context, job.fileName, mMode);
+            // Prefix the messages, since the output of the reports is mixed
+            report.setOutputListener(new OutputListener() {
+                @Override
+                public void onPrint(int level, int type, String msg) {
+                    mMain.onPrint(level, type, "[" + job.fileName + "] " + msg);
+                }
+            });
+
+            long start = System.currentTimeMillis();
+            int ret = mMain.loadReportFrom(report, job.fileName, mMode);
+            job.loadTime = System.currentTimeMillis() - start;
+            if (ret != Main.RET_TRUE) {
+                job.error = "Failed to load report";
+                return;
+            }
+
+            start = System.currentTimeMillis();
+            report.generate();
+            job.generateTime = System.currentTimeMillis() - start;
+            job.indexFile = report.getIndexHtmlFileName();
+            job.archiveFile = report.getArchiveFileName();
+            job.ok = true;
+        } catch (Throwable e) {
+            // Make sure one broken report doesn't stop the rest
+            job.error = e.toString();
+            e.printStackTrace();
+        }
+        mMain.onPrint(1, job.ok ? OutputListener.TYPE_OUT : OutputListener.TYPE_ERR,
+                (job.ok ? "DONE: " : "FAILED: ") + job.fileName);
+    }
+
+    private void writeIndex(String fileName, long total) throws IOException {
+        PrintStream ps = new PrintStream(new FileOutputStream(fileName));
+        int failed = 0;
+        for (Job job : mJobs) {
+            if (!job.ok) {
+                failed++;
+            }
+        }
+        Util.writeHTMLHeaderLite(ps, "ChkBugReport batch summary");
+        ps.println("<body>");
+        ps.println("<h1>ChkBugReport batch summary</h1>");
+        ps.println("<p>Processed " + mJobs.size() + " report(s) (" + failed + " failed) on "
+                + mThreads + " thread(s) in " + total + "ms.</p>");
+        ps.println("<table border=\"1\">");
+        ps.println("<tr><th>Report</th><th>Status</th><th>Load (ms)</th><th>Generate (ms)</th></tr>");
+        for (Job job : mJobs) {
+            ps.print("<tr><td>");
+            String link = (job.indexFile != null) ? job.indexFile : job.archiveFile;
+            if (link != null) {
+                ps.print("<a href=\"" + new File(link).toURI() + "\">" + Util.escape(job.fileName) + "</a>");
+            } else {
+                ps.print(Util.escape(job.fileName));
+            }
+            ps.print("</td><td>");
+            ps.print(job.ok ? "OK" : "FAILED: " + Util.escape(String.valueOf(job.error)));
+            ps.println("</td><td>" + job.loadTime + "</td><td>" + job.generateTime + "</td></tr>");
+        }
+        ps.println("</table>");
+        Util.writeHTMLFooter(ps);
+        ps.close();
+    }
+
+}
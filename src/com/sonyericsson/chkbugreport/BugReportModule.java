@@ -39,6 +39,7 @@ import com.sonyericsson.chkbugreport.plugins.WakelocksPlugin;
 import com.sonyericsson.chkbugreport.plugins.WindowManagerPlugin;
 import com.sonyericsson.chkbugreport.plugins.battery.BatteryInfoPlugin;
 import com.sonyericsson.chkbugreport.plugins.ftrace.FTracePlugin;
+import com.sonyericsson.chkbugreport.plugins.logs.LogDBPlugin;
 import com.sonyericsson.chkbugreport.plugins.logs.MainLogPlugin;
 import com.sonyericsson.chkbugreport.plugins.logs.SystemLogPlugin;
 import com.sonyericsson.chkbugreport.plugins.logs.event.EventLogPlugin;
@@ -46,7 +47,7 @@ import com.sonyericsson.chkbugreport.plugins.logs.kernel.KernelLogPlugin;
 import com.sonyericsson.chkbugreport.plugins.stacktrace.StackTracePlugin;
 import com.sonyericsson.chkbugreport.ps.PSRecord;
 import com.sonyericsson.chkbugreport.ps.PSRecords;
-import com.sonyericsson.chkbugreport.ps.PSScanner;
+import com.sonyericsson.chkbugreport.ps.PSScannerPlugin;
 
 import java.io.FileInputStream;
 import java.io.IOException;
@@ -98,6 +99,7 @@ public class BugReportModule extends Module {
     }
 
     protected void loadPlugins() {
+        addPlugin(new PSScannerPlugin());
         addPlugin(new MemPlugin());
         addPlugin(new StackTracePlugin());
         addPlugin(new SystemLogPlugin());
@@ -118,6 +120,7 @@ public class BugReportModule extends Module {
         addPlugin(new MiscPlugin());
         addPlugin(new WakelocksPlugin());
         addPlugin(new UsageHistoryPlugin());
+        addPlugin(new LogDBPlugin());
     }
 
     public Calendar getTimestamp() {
@@ -132,13 +135,14 @@ public class BugReportModule extends Module {
     protected void load(InputStream is, boolean partial, String secName) throws IOException {
         printOut(1, "Loading input...");
         LineReader br = new LineReader(is);
-        String buff;
+        MappedInputStream map = br.getMappedInput();
+        String buff, line;
         Section curSection = null;
         mTimestamp = null;
         int lineNr = 0;
         int skipCount = 5;
         boolean formatOk = partial;
-        while (null != (buff = br.readLine())) {
+        while (null != (buff = line = br.readLine())) {
             if (!formatOk) {
                 // Sill need file format validation
                 // Check if this is a dropbox file
@@ -169,6 +173,8 @@ public class BugReportModule extends Module {
                 if (3 == lineNr && !buff.startsWith("==============")) break;
                 if (4 == lineNr) {
                     formatOk = true;
+                    // The plugins can be started while the rest is read
+                    startPlugins();
                 }
 
                 // Extract timestamp of crash
@@ -193,9 +199,7 @@ public class BugReportModule extends Module {
                         }
                     }
                     if (newSection) {
-                        Section section = new Section(this, sectionName);
-                        addSection(section);
-                        curSection = section;
+                        curSection = beginSection(curSection, sectionName);
                         continue;
                     }
                 }
@@ -221,9 +225,7 @@ public class BugReportModule extends Module {
                     }
                 }
                 if (sectionName != null) {
-                    Section section = new Section(this, sectionName);
-                    addSection(section);
-                    curSection = section;
+                    curSection = beginSection(curSection, sectionName);
                 }
                 continue;
             }
@@ -232,15 +234,24 @@ public class BugReportModule extends Module {
             if (curSection == null && partial) {
                 // We better not spam the header section, so let's create a fake section
                 curSection = new Section(this, secName);
-                addSection(curSection);
+                addLoadingSection(curSection);
             }
             if (curSection != null) {
-                curSection.addLine(buff);
+                if (map != null && buff == line && br.getLineOffset() >= 0) {
+                    // Keep only a reference to the line in the mapped input
+                    curSection.addLine(map, br.getLineOffset(), br.getLineLength());
+                } else {
+                    curSection.addLine(buff);
+                }
             } else {
                 addHeaderLine(buff);
             }
         }
 
+        if (curSection != null) {
+            onSectionLoaded(curSection);
+        }
+
         br.close();
 
         if (!formatOk) {
@@ -248,6 +259,16 @@ public class BugReportModule extends Module {
         }
     }
 
+    private Section beginSection(Section prevSection, String sectionName) {
+        if (prevSection != null) {
+            // Nothing will be added to the previous section anymore
+            onSectionLoaded(prevSection);
+        }
+        Section section = new Section(this, sectionName);
+        addLoadingSection(section);
+        return section;
+    }
+
     /**
      * Load a partial bugreport, for example the output of dumpsys
      * @param fileName The file name of the partial bugreport
@@ -302,10 +323,7 @@ public class BugReportModule extends Module {
 
     @Override
     protected void collectData() throws IOException {
-        // Collect the process names from the PS output
-        mPSRecords = new PSScanner(this).run();
-
-        // Run all the plugins
+        // Run all the plugins (the process names are collected by PSScannerPlugin)
         runPlugins();
 
         // Collect detected bugs
@@ -335,7 +353,7 @@ public class BugReportModule extends Module {
      *   so if no other important info is added, the process record won't be saved.
      * @return The process record or null if not found (and not created)
      */
-    public ProcessRecord getProcessRecord(int pid, boolean createIfNeeded, boolean export) {
+    public synchronized ProcessRecord getProcessRecord(int pid, boolean createIfNeeded, boolean export) {
         if (pid <= 0) {
             return null;
         }
@@ -392,6 +410,10 @@ public class BugReportModule extends Module {
         }
     }
 
+    public void setPSRecords(PSRecords records) {
+        mPSRecords = records;
+    }
+
     public PSRecord getPSRecord(int pid) {
         return mPSRecords == null? null : mPSRecords.getPSRecord(pid);
     }
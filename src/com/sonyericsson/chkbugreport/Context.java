@@ -8,6 +8,48 @@ public class Context {
     // Time window markers
     private TimeWindowMarker mTimeWindowStart = new TimeWindowMarker();
     private TimeWindowMarker mTimeWindowEnd = new TimeWindowMarker();
+    // Memory map the input instead of loading it in the heap
+    private boolean mMapInput = false;
+    // The number of threads used to load the plugins
+    private int mThreadCount = 1;
+    // Save the logs in data files and show them page by page
+    private boolean mPagedLogs = false;
+    // Save the charts as svg instead of png
+    private boolean mSvgCharts = false;
+    // Keep only the statistics of the traceview files, not every method call
+    private boolean mTraceSummary = false;
+    // Export the logs into the report database (optionally with a full-text index)
+    private boolean mLogDB = false;
+    private boolean mLogDBFullText = false;
+    // Store the builtin resources in this directory, shared by all the reports
+    private String mSharedResDir = null;
+    // Save the report as a single zip archive instead of a directory
+    private boolean mZipOutput = false;
+    // Count the stack signatures of the crashes, ANRs and deadlocks in this index file
+    private String mFingerprintFile = null;
+
+    public Context() {
+        // NOP
+    }
+
+    /**
+     * Creates a copy of the settings for a new report. The time window markers are copied
+     * as well, since they remember the date of the report they are used for.
+     */
+    public Context(Context other) {
+        mTimeWindowStart = new TimeWindowMarker(other.mTimeWindowStart);
+        mTimeWindowEnd = new TimeWindowMarker(other.mTimeWindowEnd);
+        mMapInput = other.mMapInput;
+        mThreadCount = other.mThreadCount;
+        mPagedLogs = other.mPagedLogs;
+        mSvgCharts = other.mSvgCharts;
+        mTraceSummary = other.mTraceSummary;
+        mLogDB = other.mLogDB;
+        mLogDBFullText = other.mLogDBFullText;
+        mSharedResDir = other.mSharedResDir;
+        mZipOutput = other.mZipOutput;
+        mFingerprintFile = other.mFingerprintFile;
+    }
 
     public void parseTimeWindow(String timeWindow) {
         try {
@@ -31,4 +73,84 @@ public class Context {
         return mTimeWindowEnd;
     }
 
+    public boolean isMapInput() {
+        return mMapInput;
+    }
+
+    public void setMapInput(boolean mapInput) {
+        mMapInput = mapInput;
+    }
+
+    public int getThreadCount() {
+        return mThreadCount;
+    }
+
+    public void setThreadCount(int threadCount) {
+        mThreadCount = Math.max(1, threadCount);
+    }
+
+    public boolean isPagedLogs() {
+        return mPagedLogs;
+    }
+
+    public void setPagedLogs(boolean pagedLogs) {
+        mPagedLogs = pagedLogs;
+    }
+
+    public boolean isSvgCharts() {
+        return mSvgCharts;
+    }
+
+    public void setSvgCharts(boolean svgCharts) {
+        mSvgCharts = svgCharts;
+    }
+
+    public boolean isTraceSummary() {
+        return mTraceSummary;
+    }
+
+    public void setTraceSummary(boolean traceSummary) {
+        mTraceSummary = traceSummary;
+    }
+
+    public boolean isLogDB() {
+        return mLogDB;
+    }
+
+    public void setLogDB(boolean logDB) {
+        mLogDB = logDB;
+    }
+
+    public boolean isLogDBFullText() {
+        return mLogDBFullText;
+    }
+
+    public void setLogDBFullText(boolean fullText) {
+        mLogDBFullText = fullText;
+    }
+
+    public String getSharedResDir() {
+        return mSharedResDir;
+    }
+
+    public void setSharedResDir(String sharedResDir) {
+        mSharedResDir = sharedResDir;
+    }
+
+    public boolean isZipOutput() {
+        return mZipOutput;
+    }
+
+    public void setZipOutput(boolean zipOutput) {
+        mZipOutput = zipOutput;
+    }
+
+    public String getFingerprintFile() {
+        return mFingerprintFile;
+    }
+
+    public void setFingerprintFile(String fingerprintFile) {
+        mFingerprintFile = fingerprintFile;
+    }
+
 }
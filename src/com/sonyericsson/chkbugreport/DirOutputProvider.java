@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2012 Sony Mobile Communications AB
+ *
+ * This file is part of ChkBugReport.
+ *
+ * ChkBugReport is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * ChkBugReport is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ChkBugReport.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.sonyericsson.chkbugreport;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Saves the report as a directory tree.
+ */
+public class DirOutputProvider extends OutputProvider {
+
+    private String mDir;
+
+    /**
+     * @param dir The root directory of the report, must end with "/"
+     */
+    public DirOutputProvider(String dir) {
+        mDir = dir;
+        new File(dir).mkdirs();
+    }
+
+    @Override
+    public OutputStream create(String name) throws IOException {
+        return new FileOutputStream(getLocalFile(name));
+    }
+
+    @Override
+    public void delete(String name) {
+        new File(mDir + normalize(name)).delete();
+    }
+
+    @Override
+    public File getLocalFile(String name) throws IOException {
+        name = normalize(name);
+        addName(name);
+        File f = new File(mDir + name);
+        File parent = f.getParentFile();
+        if (!parent.isDirectory()) {
+            parent.mkdirs();
+        }
+        return f;
+    }
+
+    @Override
+    public void close() throws IOException {
+        // NOP
+    }
+
+}
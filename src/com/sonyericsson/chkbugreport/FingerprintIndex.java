@@ -0,0 +1,400 @@
+/*
+ * Copyright (C) 2012 Sony Mobile Communications AB
+ *
+ * This file is part of ChkBugReport.
+ *
+ * ChkBugReport is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * ChkBugReport is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ChkBugReport.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.sonyericsson.chkbugreport;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Vector;
+
+/**
+ * A persistent index of stack signatures, shared by all the reports processed with the same
+ * index file (see the --fingerprints option).
+ *
+ * <p>A signature is a normalized description of a crash, ANR or deadlock, built from the top
+ * frames of the crashing or blocking thread. The hash of the signature identifies a bucket, and
+ * each report containing the signature adds an occurrence to the bucket, so recurring problems
+ * can be recognised without comparing the reports.</p>
+ *
+ * <p>The index is stored in two append-only files: the index file itself contains fixed size
+ * records (the hash of the signature and the number of the report), and the ".reports" file
+ * contains one line for each report (the digest of the input file, the name of the input file
+ * and the location of the generated report). The buckets are kept in memory in an open
+ * addressing hash table, so looking up a bucket takes constant time. The files are locked
+ * while being updated, and the records appended meanwhile by other processes are read before
+ * each update.</p>
+ */
+public class FingerprintIndex {
+
+    /** The number of frames used from the top of the stack */
+    public static final int TOP_FRAMES = 5;
+
+    private static final byte MAGIC[] = { 'C', 'B', 'R', 'F', 'P', 'I', 'D', '1' };
+    private static final int RECORD_SIZE = 12;
+    private static final int READ_BUFFER_SIZE = RECORD_SIZE * 0x1000;
+
+    private static HashMap<String, FingerprintIndex> sIndexes = new HashMap<String, FingerprintIndex>();
+
+    private File mFile;
+    private File mReportsFile;
+    /* The number of bytes already read from the files */
+    private long mReadPos;
+    private long mReportsReadPos;
+    private Vector<String> mReportNames = new Vector<String>();
+    private Vector<String> mReportLinks = new Vector<String>();
+    /* The first report registered with each content digest */
+    private HashMap<String, Integer> mReportIds = new HashMap<String, Integer>();
+    /* The buckets: hash (0 marks an empty slot), number of occurrences and first report */
+    private long mKeys[] = new long[1024];
+    private int mCounts[] = new int[1024];
+    private int mFirst[] = new int[1024];
+    private int mSize;
+
+    /**
+     * A report registered in the index.
+     */
+    public static class Report {
+
+        private int mId;
+        private boolean mNew;
+
+        Report(int id, boolean isNew) {
+            mId = id;
+            mNew = isNew;
+        }
+
+        /**
+         * Returns false if an input file with the same content was already processed before,
+         * in which case its signatures are not counted again.
+         */
+        public boolean isNew() {
+            return mNew;
+        }
+
+    }
+
+    /**
+     * The result of looking up or adding a signature.
+     */
+    public static class Bucket {
+
+        private long mHash;
+        private int mCount;
+        private int mFirst;
+        private String mFirstName;
+        private String mFirstLink;
+
+        Bucket(long hash, int count, int first, String firstName, String firstLink) {
+            mHash = hash;
+            mCount = count;
+            mFirst = first;
+            mFirstName = firstName;
+            mFirstLink = firstLink;
+        }
+
+        /**
+         * Returns the id of the bucket (the hash of the signature in hexadecimal).
+         */
+        public String getId() {
+            return String.format("%016x", mHash);
+        }
+
+        /**
+         * Returns the number of occurrences, in all the reports.
+         */
+        public int getCount() {
+            return mCount;
+        }
+
+        public boolean isFirstReport(Report report) {
+            return mFirst == report.mId;
+        }
+
+        /**
+         * Returns the name of the input file of the first report containing this signature.
+         */
+        public String getFirstReportName() {
+            return mFirstName;
+        }
+
+        /**
+         * Returns the location (URL) of the first report containing this signature.
+         */
+        public String getFirstReportLink() {
+            return mFirstLink;
+        }
+
+    }
+
+    /**
+     * Returns the index stored in the given file. The index is opened only once, and shared
+     * by all the reports processed in the same process.
+     */
+    public static synchronized FingerprintIndex open(String fileName) throws IOException {
+        String key = new File(fileName).getCanonicalPath();
+        FingerprintIndex ret = sIndexes.get(key);
+        if (ret == null) {
+            ret = new FingerprintIndex(new File(key));
+            sIndexes.put(key, ret);
+        }
+        return ret;
+    }
+
+    private FingerprintIndex(File file) {
+        mFile = file;
+        mReportsFile = new File(file.getPath() + ".reports");
+    }
+
+    /**
+     * Builds the normalized signature of a stack.
+     * @param kind The kind of the problem (for example "java-crash"), different kinds never
+     *   share a bucket
+     * @param head Extra information identifying the problem (for example the exception class),
+     *   or null
+     * @param methods The methods of the stack, starting from the top (only the first TOP_FRAMES
+     *   are used)
+     */
+    public static String createSignature(String kind, String head, Vector<String> methods) {
+        StringBuffer sb = new StringBuffer(kind);
+        sb.append('\n');
+        if (head != null) {
+            sb.append(head);
+        }
+        int cnt = Math.min(TOP_FRAMES, methods.size());
+        for (int i = 0; i < cnt; i++) {
+            sb.append('\n').append(methods.get(i));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Registers a report in the index. If a report with the same content was already
+     * registered, the existing entry is returned.
+     * @param key The digest of the content of the input file, or null if not known (in which
+     *   case the report is always registered as a new one)
+     * @param name The name of the input file (should be the canonical path)
+     * @param link The location (URL) of the generated report
+     */
+    /* package */ synchronized Report addReport(String key, String name, String link) throws IOException {
+        key = (key == null) ? "" : key.replace('\t', ' ').replace('\n', ' ');
+        name = name.replace('\t', ' ').replace('\n', ' ');
+        link = link.replace('\t', ' ').replace('\n', ' ');
+        RandomAccessFile f = new RandomAccessFile(mFile, "rw");
+        try {
+            FileLock lock = f.getChannel().lock();
+            try {
+                refresh(f);
+                Integer id = mReportIds.get(key);
+                if (id != null) {
+                    return new Report(id, false);
+                }
+                byte line[] = (key + "\t" + name + "\t" + link + "\n").getBytes("UTF-8");
+                FileOutputStream fos = new FileOutputStream(mReportsFile, true);
+                try {
+                    fos.write(line);
+                } finally {
+                    fos.close();
+                }
+                mReportsReadPos += line.length;
+                return new Report(addReportEntry(key, name, link), true);
+            } finally {
+                lock.release();
+            }
+        } finally {
+            f.close();
+        }
+    }
+
+    /**
+     * Adds an occurrence of the signature from the given report, and returns its bucket.
+     * If the report was already processed before, the occurrence is added only if the signature
+     * is not known yet.
+     *
+     * <p>The counts and the first reports depend on the order of the calls, so the plugins
+     * must not call this directly, but use Module.addSignature(), which records the
+     * signatures of a report in the order of the plugins and of their tasks, even if
+     * they run in parallel.</p>
+     */
+    /* package */ synchronized Bucket add(Report report, String signature) throws IOException {
+        long hash = hash(signature);
+        RandomAccessFile f = new RandomAccessFile(mFile, "rw");
+        try {
+            FileLock lock = f.getChannel().lock();
+            try {
+                refresh(f);
+                int slot = findSlot(hash);
+                if (report.mNew || mKeys[slot] == 0) {
+                    ByteBuffer buf = ByteBuffer.allocate(RECORD_SIZE);
+                    buf.putLong(hash);
+                    buf.putInt(report.mId);
+                    buf.flip();
+                    FileChannel ch = f.getChannel();
+                    while (buf.hasRemaining()) {
+                        ch.write(buf, mReadPos + buf.position());
+                    }
+                    mReadPos += RECORD_SIZE;
+                    slot = addRecord(hash, report.mId);
+                }
+                int first = mFirst[slot];
+                return new Bucket(hash, mCounts[slot], first, mReportNames.get(first), mReportLinks.get(first));
+            } finally {
+                lock.release();
+            }
+        } finally {
+            f.close();
+        }
+    }
+
+    /**
+     * Reads the data appended to the files since the last call.
+     * Must be called while holding the lock on the index file.
+     */
+    private void refresh(RandomAccessFile f) throws IOException {
+        // Read the new reports first, since the new records might refer to them
+        long len = mReportsFile.length();
+        if (len > mReportsReadPos) {
+            RandomAccessFile rf = new RandomAccessFile(mReportsFile, "r");
+            try {
+                byte data[] = new byte[(int) (len - mReportsReadPos)];
+                rf.seek(mReportsReadPos);
+                rf.readFully(data);
+                int start = 0;
+                for (int i = 0; i < data.length; i++) {
+                    if (data[i] == '\n') {
+                        String line = new String(data, start, i - start, "UTF-8");
+                        String fields[] = line.split("\t", 3);
+                        addReportEntry(fields[0],
+                                fields.length > 1 ? fields[1] : "",
+                                fields.length > 2 ? fields[2] : "");
+                        start = i + 1;
+                    }
+                }
+                mReportsReadPos += start;
+            } finally {
+                rf.close();
+            }
+        }
+
+        FileChannel ch = f.getChannel();
+        len = f.length();
+        if (mReadPos == 0) {
+            if (len == 0) {
+                ch.write(ByteBuffer.wrap(MAGIC), 0);
+                mReadPos = MAGIC.length;
+                return;
+            }
+            byte magic[] = new byte[MAGIC.length];
+            f.seek(0);
+            f.readFully(magic);
+            if (!Arrays.equals(magic, MAGIC)) {
+                throw new IOException("Not a fingerprint index: " + mFile);
+            }
+            mReadPos = MAGIC.length;
+        }
+        len = MAGIC.length + (len - MAGIC.length) / RECORD_SIZE * RECORD_SIZE;
+        ByteBuffer buf = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        while (mReadPos < len) {
+            buf.clear();
+            buf.limit((int) Math.min(READ_BUFFER_SIZE, len - mReadPos));
+            while (buf.hasRemaining()) {
+                if (ch.read(buf, mReadPos + buf.position()) < 0) {
+                    throw new IOException("Unexpected end of file: " + mFile);
+                }
+            }
+            buf.flip();
+            while (buf.remaining() >= RECORD_SIZE) {
+                long hash = buf.getLong();
+                int reportId = buf.getInt();
+                if (reportId < 0 || reportId >= mReportNames.size()) {
+                    throw new IOException("Corrupt fingerprint index: " + mFile);
+                }
+                addRecord(hash, reportId);
+            }
+            mReadPos += buf.limit();
+        }
+    }
+
+    private int addReportEntry(String key, String name, String link) {
+        int id = mReportNames.size();
+        mReportNames.add(name);
+        mReportLinks.add(link);
+        if (key.length() > 0 && !mReportIds.containsKey(key)) {
+            mReportIds.put(key, id);
+        }
+        return id;
+    }
+
+    private int addRecord(long hash, int reportId) {
+        int slot = findSlot(hash);
+        if (mKeys[slot] == 0) {
+            if ((mSize + 1) * 2 > mKeys.length) {
+                grow();
+                slot = findSlot(hash);
+            }
+            mKeys[slot] = hash;
+            mFirst[slot] = reportId;
+            mSize++;
+        }
+        mCounts[slot]++;
+        return slot;
+    }
+
+    private int findSlot(long hash) {
+        int mask = mKeys.length - 1;
+        int slot = (int) (hash ^ (hash >>> 32)) & mask;
+        while (mKeys[slot] != 0 && mKeys[slot] != hash) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void grow() {
+        long keys[] = mKeys;
+        int counts[] = mCounts;
+        int first[] = mFirst;
+        mKeys = new long[keys.length * 2];
+        mCounts = new int[keys.length * 2];
+        mFirst = new int[keys.length * 2];
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != 0) {
+                int slot = findSlot(keys[i]);
+                mKeys[slot] = keys[i];
+                mCounts[slot] = counts[i];
+                mFirst[slot] = first[i];
+            }
+        }
+    }
+
+    private static long hash(String signature) {
+        try {
+            long ret = Util.toLong(Util.createDigest("SHA-1").digest(signature.getBytes("UTF-8")));
+            // 0 is used to mark the empty slots
+            return ret == 0 ? 1 : ret;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+}
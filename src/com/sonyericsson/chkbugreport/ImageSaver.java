@@ -0,0 +1,244 @@
+/*
+ * Copyright (C) 2012 Sony Mobile Communications AB
+ *
+ * This file is part of ChkBugReport.
+ *
+ * ChkBugReport is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * ChkBugReport is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ChkBugReport.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.sonyericsson.chkbugreport;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferInt;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.security.MessageDigest;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Vector;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Saves the generated images (charts, graphs, etc) as png files.
+ *
+ * <p>The png encoding is quite slow, so when running with several threads the images are
+ * encoded on the worker threads of the module, while the plugins continue working.</p>
+ *
+ * <p>Some small images are generated several times with the same content (e.g. the charts
+ * of the activities and the thumbnails of the layers), so the small images with the same size
+ * and the same pixels are encoded only once. Only the last few encoded images are kept, the
+ * large images are never hashed nor kept. If an image is still being encoded when the same
+ * image is saved again, the new file is written by the encoding task when it's done, so no
+ * task waits for another one.</p>
+ *
+ * <p>Once an image is passed to save(), it must not be modified anymore.</p>
+ */
+public class ImageSaver {
+
+    /** Images with more pixels than this are not reused */
+    private static final int MAX_REUSE_PIXELS = 0x30000;
+    /** The number of encoded images kept for reuse */
+    private static final int MAX_REUSE_COUNT = 16;
+
+    private Module mMod;
+    private boolean mParallel;
+    /** The recently encoded small images, the least recently used is dropped first */
+    @SuppressWarnings("serial")
+    private LinkedHashMap<String, Encoding> mEncoded =
+            new LinkedHashMap<String, Encoding>(MAX_REUSE_COUNT, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Encoding> eldest) {
+            return size() > MAX_REUSE_COUNT;
+        }
+    };
+    private Vector<Future<?>> mPending = new Vector<Future<?>>();
+    private int mSaved;
+    private int mReused;
+
+    /**
+     * The png data of an image, and the files to write it to once it's encoded.
+     */
+    private static class Encoding {
+        /** The encoded image, set when the encoding is finished */
+        byte mData[];
+        /** The files waiting for the encoding, null once it's finished */
+        Vector<String> mFileNames = new Vector<String>();
+    }
+
+    public ImageSaver(Module mod, boolean parallel) {
+        mMod = mod;
+        mParallel = parallel;
+    }
+
+    /**
+     * Saves the image as a png file. If running on several threads, the file is written
+     * later, but before the report generation is finished.
+     * @param img The image to save
+     * @param fileName The name of the png file (relative to the html files)
+     */
+    public void save(final BufferedImage img, final String fileName) {
+        final String key = getKey(img);
+        final Encoding enc;
+        final byte data[];
+        synchronized (this) {
+            mSaved++;
+            Encoding prev = (key == null) ? null : mEncoded.get(key);
+            if (prev != null) {
+                mReused++;
+                if (prev.mFileNames != null) {
+                    // Still being encoded, the file is written when it's finished
+                    prev.mFileNames.add(fileName);
+                    return;
+                }
+                enc = prev;
+                data = prev.mData;
+            } else {
+                enc = new Encoding();
+                enc.mFileNames.add(fileName);
+                if (key != null) {
+                    mEncoded.put(key, enc);
+                }
+                data = null;
+            }
+        }
+
+        Runnable job;
+        if (data != null) {
+            // Already encoded, only the file needs to be written
+            job = new Runnable() {
+                @Override
+                public void run() {
+                    write(fileName, data);
+                }
+            };
+        } else {
+            job = new Runnable() {
+                @Override
+                public void run() {
+                    encode(img, key, enc);
+                }
+            };
+        }
+
+        if (!mParallel) {
+            job.run();
+        } else {
+            synchronized (this) {
+                mPending.add(mMod.getExecutor().submit(job));
+            }
+        }
+    }
+
+    /**
+     * Encodes the image, and writes it to all the files which are waiting for it.
+     */
+    private void encode(BufferedImage img, String key, Encoding enc) {
+        byte data[] = null;
+        String error = null;
+        try {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            ImageIO.write(img, "png", bos);
+            data = bos.toByteArray();
+        } catch (IOException e) {
+            error = e.toString();
+        } catch (RuntimeException e) {
+            error = e.toString();
+        }
+        Vector<String> fileNames;
+        synchronized (this) {
+            enc.mData = data;
+            fileNames = enc.mFileNames;
+            enc.mFileNames = null;
+            if (data == null && key != null && mEncoded.get(key) == enc) {
+                // Don't reuse the failed one, the next image will be encoded again
+                mEncoded.remove(key);
+            }
+        }
+        for (String fileName : fileNames) {
+            if (data == null) {
+                mMod.printErr(3, "Error saving image " + fileName + ": " + error);
+            } else {
+                write(fileName, data);
+            }
+        }
+    }
+
+    private void write(String fileName, byte data[]) {
+        try {
+            mMod.writeFile(fileName, data);
+        } catch (IOException e) {
+            mMod.printErr(3, "Error saving image " + fileName + ": " + e);
+        }
+    }
+
+    /**
+     * Waits until all the images are saved.
+     */
+    public void finish() {
+        Vector<Future<?>> pending;
+        synchronized (this) {
+            pending = new Vector<Future<?>>(mPending);
+            mPending.clear();
+        }
+        for (Future<?> f : pending) {
+            try {
+                f.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException e) {
+                mMod.printErr(3, "Error saving image: " + e.getCause());
+            }
+        }
+        synchronized (this) {
+            mEncoded.clear();
+            if (mSaved > 0) {
+                mMod.printOut(2, "Saved " + mSaved + " images (" + mReused + " of them reused)");
+            }
+        }
+    }
+
+    /**
+     * Creates a key which identifies the content of the image, or returns null
+     * if the image should not be reused.
+     */
+    private String getKey(BufferedImage img) {
+        if ((long) img.getWidth() * img.getHeight() > MAX_REUSE_PIXELS) {
+            return null;
+        }
+        DataBuffer db = img.getRaster().getDataBuffer();
+        if (!(db instanceof DataBufferInt) || db.getNumBanks() != 1) {
+            return null;
+        }
+        int pixels[] = ((DataBufferInt) db).getData();
+        MessageDigest md = Util.createDigest("MD5");
+        ByteBuffer buff = ByteBuffer.allocate(0x10000);
+        IntBuffer ints = buff.asIntBuffer();
+        int step = ints.capacity();
+        for (int i = 0; i < pixels.length; i += step) {
+            int len = Math.min(step, pixels.length - i);
+            ints.clear();
+            ints.put(pixels, i, len);
+            md.update(buff.array(), 0, len * 4);
+        }
+        return img.getWidth() + "x" + img.getHeight() + "/" + img.getType() + "/"
+                + Util.toHex(md.digest());
+    }
+
+}
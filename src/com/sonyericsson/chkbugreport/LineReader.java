@@ -18,35 +18,128 @@
  */
 package com.sonyericsson.chkbugreport;
 
-import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.Charset;
 
+/**
+ * Splits an input stream into lines.
+ *
+ * <p>The data is read in large chunks and scanned for line endings directly in the
+ * byte buffer, so no per-byte method calls are made. Lines are decoded as UTF-8.
+ * Windows line endings ("0x0d 0x0a") are handled, as well as the "0x0d 0x0d 0x0a"
+ * sequence found in some bugreports.</p>
+ *
+ * <p>When reading from a MappedInputStream, the position of each line in the file is
+ * also tracked, so the line can be stored as a reference instead of a String
+ * (see getLineOffset()).</p>
+ */
 public class LineReader {
 
+    private static final int BUFF_SIZE = 0x10000;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
     private static final int STATE_IDLE = 0;
     private static final int STATE_0D0D = 1;
     private static final int STATE_0A   = 2;
     private static final int STATE_EOF  = 3;
 
     private InputStream mIs;
+    private MappedInputStream mMapped;
     private int mState = STATE_IDLE;
 
+    /** The chunk read from the input stream */
+    private byte mBuff[] = new byte[BUFF_SIZE];
+    private int mPos;
+    private int mLen;
+    /** The offset of the chunk in the input stream */
+    private long mBase;
+
+    /** Collects the line when it spans over several chunks (or contains a single 0x0d) */
+    private byte mLine[] = new byte[256];
+    private int mLineLen;
+
+    /** The offset of the last line in the input stream, or -1 if it's not stored as-is */
+    private long mLineOffs;
+    private int mLineBytes;
+
     public LineReader(InputStream is) {
-        mIs = new BufferedInputStream(is);
+        mIs = is;
+        if (is instanceof MappedInputStream) {
+            mMapped = (MappedInputStream) is;
+            mBase = mMapped.position();
+        }
+    }
+
+    /**
+     * Returns the mapped input stream this reader reads from, or null if the input is not mapped.
+     */
+    public MappedInputStream getMappedInput() {
+        return mMapped;
+    }
+
+    /**
+     * Returns the offset of the line returned by the last readLine() call in the input stream.
+     * If the line is not a continuous range in the input (for example it contained an ugly
+     * line ending in the middle), -1 is returned.
+     */
+    public long getLineOffset() {
+        return mLineOffs;
+    }
+
+    /**
+     * Returns the length of the last line in bytes (as it's stored in the input stream).
+     * @see #getLineOffset()
+     */
+    public int getLineLength() {
+        return mLineBytes;
     }
 
     public String readLine() {
-        StringBuffer sb = new StringBuffer();
         boolean firstWarning = false;
+        mLineLen = 0;
+        mLineOffs = -1;
         try {
             while (true) {
-                int b = mIs.read();
-                if (b < 0) {
-                    if (sb.length() == 0) return null;
+                if (mPos >= mLen && !fill()) {
+                    if (mLineLen == 0) return null;
                     mState = STATE_EOF;
                     break; // EOF
                 }
+
+                // Scan for the end of line
+                final byte buff[] = mBuff;
+                final int start = mPos;
+                final int end = mLen;
+                int i = start;
+                int b = 0;
+                while (i < end) {
+                    b = buff[i];
+                    if (b == 0xa || b == 0xd) break;
+                    i++;
+                }
+                if (i == end) {
+                    // No line ending in this chunk, save what we have so far and read the next one
+                    append(buff, start, i - start);
+                    mPos = end;
+                    continue;
+                }
+                mPos = i + 1;
+
+                if (b == 0xa && mLineLen == 0 && !firstWarning) {
+                    if (i == start && mState == STATE_0D0D) {
+                        // Workaround for "0x0d 0x0d 0x0a" line endings
+                        continue;
+                    }
+                    // Fast path: the whole line is in the chunk, decode it directly
+                    mState = STATE_0A;
+                    mLineOffs = mBase + start;
+                    mLineBytes = i - start;
+                    return new String(buff, start, i - start, UTF8);
+                }
+
+                append(buff, start, i - start);
                 if (b == 0xd) {
                     if (firstWarning) {
                         mState = STATE_0D0D;
@@ -55,22 +148,51 @@ public class LineReader {
                     firstWarning = true;
                     continue; // Skip ugly windows line ending
                 }
-                if (b == 0xa) {
-                    if (sb.length() == 0 && mState == STATE_0D0D) {
-                        // Workaround for "0x0d 0x0d 0x0a" line endings
-                        continue;
-                    }
-                    mState = STATE_0A;
-                    break; // EOL
+                if (mLineLen == 0 && mState == STATE_0D0D) {
+                    // Workaround for "0x0d 0x0d 0x0a" line endings
+                    continue;
                 }
-                sb.append((char)b);
+                mState = STATE_0A;
+                break; // EOL
             }
         } catch (IOException e) {
             // Ignore exception
             e.printStackTrace();
             return null;
         }
-        return sb.toString();
+        mLineBytes = mLineLen;
+        return new String(mLine, 0, mLineLen, UTF8);
+    }
+
+    private boolean fill() throws IOException {
+        mBase += mLen;
+        mPos = mLen = 0;
+        int read;
+        do {
+            read = mIs.read(mBuff, 0, mBuff.length);
+        } while (read == 0);
+        if (read < 0) {
+            return false;
+        }
+        mLen = read;
+        return true;
+    }
+
+    private void append(byte buff[], int offs, int len) {
+        if (len == 0) return;
+        long pos = mBase + offs;
+        if (mLineLen == 0) {
+            mLineOffs = pos;
+        } else if (mLineOffs >= 0 && mLineOffs + mLineLen != pos) {
+            mLineOffs = -1;
+        }
+        if (mLineLen + len > mLine.length) {
+            byte tmp[] = new byte[Math.max(mLine.length * 2, mLineLen + len)];
+            System.arraycopy(mLine, 0, tmp, 0, mLineLen);
+            mLine = tmp;
+        }
+        System.arraycopy(buff, offs, mLine, mLineLen, len);
+        mLineLen += len;
     }
 
     public void close() {
@@ -21,10 +21,16 @@ package com.sonyericsson.chkbugreport;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.util.HashMap;
 import java.util.Vector;
 
 /**
  * A named collection of text lines.
+ *
+ * <p>Lines can be stored either as Strings, or as references into a memory mapped
+ * input file (see MappedInputStream). In the latter case only the offset and length
+ * of each line is kept in the heap, and the String is created when the line is requested.
+ * Inserting or removing lines converts the collection back to Strings.</p>
  */
 public class Lines {
 
@@ -32,6 +38,14 @@ public class Lines {
 
     private Vector<String> mLines = new Vector<String>();
 
+    /** The mapped input the lines refer to, or null if the lines are stored as Strings */
+    private MappedInputStream mMap;
+    private int mCount;
+    private long mOffs[];
+    /** The length of each mapped line, or -1 if the line is stored in mExtra */
+    private int mLens[];
+    private HashMap<Integer, String> mExtra;
+
     public Lines(String name) {
         mName = name;
     }
@@ -46,26 +60,99 @@ public class Lines {
 
     public void clear() {
         mLines.clear();
+        mMap = null;
+        mCount = 0;
+        mOffs = null;
+        mLens = null;
+        mExtra = null;
     }
 
     public void addLine(String line) {
-        mLines.add(line);
+        if (mMap == null) {
+            mLines.add(line);
+        } else {
+            if (mExtra == null) {
+                mExtra = new HashMap<Integer, String>();
+            }
+            mExtra.put(mCount, line);
+            addRef(-1, -1);
+        }
+    }
+
+    /**
+     * Adds a line which is stored in a memory mapped input.
+     * @param map The mapped input
+     * @param offs The offset of the line in the input
+     * @param len The length of the line in bytes
+     */
+    public void addLine(MappedInputStream map, long offs, int len) {
+        if (mMap == null && mLines.isEmpty()) {
+            mMap = map;
+        }
+        if (mMap != map) {
+            // Lines from different sources are not mixed, simply store a copy
+            addLine(map.getString(offs, len));
+        } else {
+            addRef(offs, len);
+        }
+    }
+
+    private void addRef(long offs, int len) {
+        if (mOffs == null) {
+            mOffs = new long[64];
+            mLens = new int[64];
+        } else if (mCount == mOffs.length) {
+            long offsTmp[] = new long[mCount * 2];
+            int lensTmp[] = new int[mCount * 2];
+            System.arraycopy(mOffs, 0, offsTmp, 0, mCount);
+            System.arraycopy(mLens, 0, lensTmp, 0, mCount);
+            mOffs = offsTmp;
+            mLens = lensTmp;
+        }
+        mOffs[mCount] = offs;
+        mLens[mCount] = len;
+        mCount++;
+    }
+
+    /**
+     * Converts the mapped lines to Strings, so lines can be inserted and removed.
+     */
+    private void unmap() {
+        if (mMap == null) return;
+        Vector<String> lines = new Vector<String>(mCount);
+        for (int i = 0; i < mCount; i++) {
+            lines.add(getLine(i));
+        }
+        clear();
+        mLines = lines;
     }
 
     public void addLine(String line, int idx) {
+        unmap();
         mLines.add(idx, line);
     }
 
     public void removeLine(int idx) {
+        unmap();
         mLines.remove(idx);
     }
 
     public int getLineCount() {
-        return mLines.size();
+        return mMap == null ? mLines.size() : mCount;
     }
 
     public String getLine(int idx) {
-        return mLines.get(idx);
+        if (mMap == null) {
+            return mLines.get(idx);
+        }
+        if (idx < 0 || idx >= mCount) {
+            throw new ArrayIndexOutOfBoundsException(idx);
+        }
+        int len = mLens[idx];
+        if (len < 0) {
+            return mExtra.get(idx);
+        }
+        return mMap.getString(mOffs[idx], len);
     }
 
     public void addLines(Lines lines) {
@@ -90,8 +177,9 @@ public class Lines {
     }
 
     public void writeTo(PrintStream ps) {
-        for (String line : mLines) {
-            ps.println(line);
+        int cnt = getLineCount();
+        for (int i = 0; i < cnt; i++) {
+            ps.println(getLine(i));
         }
     }
 
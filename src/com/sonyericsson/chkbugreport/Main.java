@@ -21,6 +21,7 @@ package com.sonyericsson.chkbugreport;
 import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Enumeration;
@@ -61,6 +62,9 @@ public class Main implements OutputListener {
     public static final int MAX_FTRACE_SIZE = 5*MB;
     public static final int MAX_LOG_SIZE = 1*MB;
 
+    private static final int DEFAULT_SERVER_PORT = 8088;
+    private static final int SERVER_QUEUE_SIZE = 16;
+
     private static final int READ_FAILED = 0;
     private static final int READ_PARTS  = 1;
     private static final int READ_ALL    = 2;
@@ -73,6 +77,10 @@ public class Main implements OutputListener {
     private BoolSetting mShowGui = new BoolSetting(false, mSettings, "showGui", "Launch the GUI automatically when no file name was specified.");
     private BoolSetting mOpenBrowser = new BoolSetting(false, mSettings, "openBrowser", "Launch the browser when output is generated.");
     private Vector<Extension> mExtensions = new Vector<Extension>();
+    private int mBatchThreads = 0;
+    private String mBatchIndex = "batch_index.html";
+    private int mServerPort = 0;
+    private String mServerDir = "chkbugreport_server";
 
     private Context mContext = new Context();
 
@@ -118,6 +126,7 @@ public class Main implements OutputListener {
         System.out.println("ChkBugReport " + Module.VERSION + " (rev " + Module.VERSION_CODE + ") (C) 2012 Sony Ericsson Mobile Communications AB");
 
         String fileName = null;
+        Vector<String> fileNames = new Vector<String>();
 
         mSettings.load();
 
@@ -175,6 +184,78 @@ public class Main implements OutputListener {
                     mLimit = true;
                 } else if ("-time-window".equals(key)) {
                     mContext.parseTimeWindow(param);
+                } else if ("-threads".equals(key)) {
+                    if (param == null) {
+                        mContext.setThreadCount(Runtime.getRuntime().availableProcessors());
+                    } else {
+                        try {
+                            mContext.setThreadCount(Integer.parseInt(param));
+                        } catch (NumberFormatException e) {
+                            onPrint(1, TYPE_ERR, "Invalid number of threads '" + param + "'!");
+                            usage();
+                            System.exit(1);
+                        }
+                    }
+                } else if ("-batch".equals(key)) {
+                    if (param == null) {
+                        mBatchThreads = Runtime.getRuntime().availableProcessors();
+                    } else {
+                        try {
+                            mBatchThreads = Math.max(1, Integer.parseInt(param));
+                        } catch (NumberFormatException e) {
+                            onPrint(1, TYPE_ERR, "Invalid number of threads '" + param + "'!");
+                            usage();
+                            System.exit(1);
+                        }
+                    }
+                } else if ("-batch-index".equals(key)) {
+                    mBatchIndex = param;
+                } else if ("-server".equals(key)) {
+                    mServerPort = DEFAULT_SERVER_PORT;
+                    if (param != null) {
+                        try {
+                            mServerPort = Integer.parseInt(param);
+                        } catch (NumberFormatException e) {
+                            onPrint(1, TYPE_ERR, "Invalid port number '" + param + "'!");
+                            usage();
+                            System.exit(1);
+                        }
+                    }
+                } else if ("-server-dir".equals(key)) {
+                    mServerDir = param;
+                } else if ("-mmap".equals(key)) {
+                    mContext.setMapInput(true);
+                } else if ("-paged-logs".equals(key)) {
+                    mContext.setPagedLogs(true);
+                } else if ("-svg".equals(key)) {
+                    mContext.setSvgCharts(true);
+                } else if ("-trace-summary".equals(key)) {
+                    mContext.setTraceSummary(true);
+                } else if ("-log-db".equals(key)) {
+                    mContext.setLogDB(true);
+                    if ("fts".equals(param)) {
+                        mContext.setLogDBFullText(true);
+                    } else if (param != null) {
+                        onPrint(1, TYPE_ERR, "Invalid --log-db parameter '" + param + "'!");
+                        usage();
+                        System.exit(1);
+                    }
+                } else if ("-shared-res".equals(key)) {
+                    if (param == null) {
+                        onPrint(1, TYPE_ERR, "Missing directory for --shared-res!");
+                        usage();
+                        System.exit(1);
+                    }
+                    mContext.setSharedResDir(param);
+                } else if ("-zip".equals(key)) {
+                    mContext.setZipOutput(true);
+                } else if ("-fingerprints".equals(key)) {
+                    if (param == null) {
+                        onPrint(1, TYPE_ERR, "Missing file name for --fingerprints!");
+                        usage();
+                        System.exit(1);
+                    }
+                    mContext.setFingerprintFile(param);
                 } else if ("-browser".equals(key)) {
                     mOpenBrowser.set(true);
                 } else if ("-gui".equals(key)) {
@@ -185,15 +266,27 @@ public class Main implements OutputListener {
                     System.exit(1);
                 }
             } else {
-                if (fileName != null) {
-                    onPrint(1, TYPE_ERR, "Multiple files not supported (yet) !");
-                    usage();
-                    System.exit(1);
-                }
+                fileNames.add(arg);
                 fileName = arg;
             }
         }
 
+        if (mServerPort > 0) {
+            runServer();
+            return;
+        }
+
+        if (mBatchThreads > 0) {
+            runBatch(fileNames);
+            return;
+        }
+
+        if (fileNames.size() > 1) {
+            onPrint(1, TYPE_ERR, "Multiple files are supported only in batch mode (see --batch) !");
+            usage();
+            System.exit(1);
+        }
+
         if (fileName == null) {
             if (mShowGui.get()) {
                 showGui();
@@ -208,6 +301,47 @@ public class Main implements OutputListener {
         }
     }
 
+    private void runServer() {
+        if (mMode != MODE_BUGREPORT || mServerDir == null) {
+            onPrint(1, TYPE_ERR, "Server mode can be used only with full bugreports!");
+            usage();
+            System.exit(1);
+        }
+        int threads = mBatchThreads > 0 ? mBatchThreads : Runtime.getRuntime().availableProcessors();
+        ReportServer server = new ReportServer(this, mServerPort, new File(mServerDir), threads, SERVER_QUEUE_SIZE);
+        try {
+            server.start();
+        } catch (IOException e) {
+            onPrint(1, TYPE_ERR, "Cannot start server: " + e);
+            System.exit(1);
+        }
+    }
+
+    private void runBatch(Vector<String> fileNames) {
+        if (mMode == MODE_MANUAL) {
+            onPrint(1, TYPE_ERR, "Batch mode cannot be used with individual sections!");
+            usage();
+            System.exit(1);
+        }
+        if (mBatchIndex == null) {
+            onPrint(1, TYPE_ERR, "Missing file name for the batch summary!");
+            usage();
+            System.exit(1);
+        }
+        BatchProcessor batch = new BatchProcessor(this, mMode, mBatchThreads);
+        for (String fileName : fileNames) {
+            batch.add(fileName);
+        }
+        if (batch.getCount() == 0) {
+            onPrint(1, TYPE_ERR, "No files to process!");
+            usage();
+            System.exit(1);
+        }
+        if (!batch.run(mBatchIndex)) {
+            System.exit(1);
+        }
+    }
+
     public boolean loadFile(String fileName) {
         try {
             if (mMode == MODE_MANUAL) {
@@ -284,20 +418,30 @@ public class Main implements OutputListener {
         }
 
         // Try to open it as zip
+        ZipFile zip = null;
         try {
-            ZipFile zip = new ZipFile(fileName);
+            zip = new ZipFile(fileName);
             Enumeration<? extends ZipEntry> entries = zip.entries();
             while (entries.hasMoreElements()) {
                 ZipEntry entry = entries.nextElement();
                 if (!entry.isDirectory()) {
                     if (!mSilent) System.out.println("Trying to parse zip entry: " + entry.getName() + " ...");
-                    if (loadFrom(report, fileName, zip.getInputStream(entry))) {
+                    if (loadFrom(report, fileName, zip.getInputStream(entry), null)) {
                         return RET_TRUE;
                     }
                 }
             }
         } catch (IOException e) {
             // Failed, so let's just work with the raw file
+        } finally {
+            // The loaded report doesn't read from the zip file anymore
+            if (zip != null) {
+                try {
+                    zip.close();
+                } catch (IOException e) {
+                    // Ignore exception
+                }
+            }
         }
 
         // Open file
@@ -308,20 +452,21 @@ public class Main implements OutputListener {
             return RET_FALSE;
         }
 
-        if (!loadFrom(report, fileName, is)) {
+        if (!loadFrom(report, fileName, is, f)) {
             return RET_FALSE;
         }
 
         return RET_TRUE;
     }
 
-    private boolean loadFrom(Module report, String fileName, InputStream is) {
+    private boolean loadFrom(Module report, String fileName, InputStream is, File rawFile) {
         is = new BufferedInputStream(is, 0x1000);
 
         // Try to open it as gzip
         try {
             is.mark(0x100);
             is = new GZIPInputStream(is);
+            rawFile = null;
         } catch (IOException e) {
             // Failed, so let's just work with the raw file
             try {
@@ -333,6 +478,9 @@ public class Main implements OutputListener {
 
         // Load the file and generate the report
         try {
+            if (mContext.isMapInput()) {
+                is = openMappedInput(is, rawFile);
+            }
             report.load(is);
             return true;
         } catch (IOException e) {
@@ -341,6 +489,65 @@ public class Main implements OutputListener {
         }
     }
 
+    /**
+     * Memory maps the input, so the loaded sections don't need to be kept in the heap.
+     * @param is The (already decompressed) input stream
+     * @param rawFile The input file if the stream is not compressed, otherwise null
+     * @return The stream to load the report from
+     */
+    private InputStream openMappedInput(InputStream is, File rawFile) throws IOException {
+        File f = rawFile;
+        if (f == null) {
+            // Compressed input, so it needs to be extracted to a temporary file first
+            f = File.createTempFile("chkbugreport", ".txt");
+            boolean done = false;
+            try {
+                FileOutputStream fos = new FileOutputStream(f);
+                try {
+                    byte buff[] = new byte[0x10000];
+                    int read;
+                    while (0 < (read = is.read(buff))) {
+                        fos.write(buff, 0, read);
+                    }
+                } finally {
+                    fos.close();
+                }
+                done = true;
+            } finally {
+                is.close();
+                if (!done) {
+                    f.delete();
+                }
+            }
+        }
+        MappedInputStream ret;
+        try {
+            ret = new MappedInputStream(f);
+        } catch (IOException e) {
+            onPrint(1, TYPE_ERR, "Cannot map input file, loading it in the memory instead: " + e);
+            if (rawFile == null) {
+                is = new FileInputStream(f);
+                deleteTempFile(f);
+            }
+            return is;
+        }
+        if (rawFile == null) {
+            deleteTempFile(f);
+        } else {
+            // The mapping stays valid, the original stream is not needed anymore
+            is.close();
+        }
+        return ret;
+    }
+
+    private void deleteTempFile(File f) {
+        // The opened streams and mappings stay valid after the file is removed (on POSIX
+        // systems at least), on other systems it can be removed only when exiting
+        if (!f.delete()) {
+            f.deleteOnExit();
+        }
+    }
+
     private void addSection(String name, String fileName, int limit) {
         if (!mLimit) {
             limit = Integer.MAX_VALUE;
@@ -478,11 +685,19 @@ public class Main implements OutputListener {
     }
 
     protected Module createReportInstance(String fileName, int mode) {
+        return createReportInstance(mContext, fileName, mode);
+    }
+
+    /**
+     * Creates a report using the given settings. When processing several reports, each of
+     * them must have its own copy of the settings (see Context(Context)).
+     */
+    protected Module createReportInstance(Context context, String fileName, int mode) {
         Module ret = null;
         if (mode == MODE_TRACEVIEW) {
-            ret = new TraceModule(mContext, fileName);
+            ret = new TraceModule(context, fileName);
         } else {
-            ret = new BugReportModule(mContext, fileName);
+            ret = new BugReportModule(context, fileName);
         }
         ret.setOutputListener(this);
         return ret;
@@ -520,6 +735,37 @@ public class Main implements OutputListener {
         System.err.println("                would be even bigger). This option (and --no-limit as well)");
         System.err.println("                must precede the other options in order to have effect.");
         System.err.println("  --no-limit  - Don't limit the input file size");
+        System.err.println("  --threads[:n] - Load the plugins in parallel on n threads (by default");
+        System.err.println("                as many as the number of processors)");
+        System.err.println("  --batch[:n] - Process all the given files (and the files in the given");
+        System.err.println("                directories) in one go, n reports in parallel (by default");
+        System.err.println("                as many as the number of processors)");
+        System.err.println("  --batch-index:file - Write the batch summary to file (default: batch_index.html)");
+        System.err.println("  --server[:port] - Keep running and process the bugreports posted to");
+        System.err.println("                http://localhost:port/report (default port: 8088). The number");
+        System.err.println("                of reports processed in parallel can be set with --batch:n");
+        System.err.println("  --server-dir:dir - Save the posted reports and the output in dir");
+        System.err.println("                (default: chkbugreport_server)");
+        System.err.println("  --mmap      - Memory map the input file instead of loading it in the memory");
+        System.err.println("                (compressed input is extracted to a temporary file first)");
+        System.err.println("  --paged-logs - Save the logs in data files and show them page by page,");
+        System.err.println("                filtered by pid/tag/level in the browser, instead of");
+        System.err.println("                generating the whole log and the per-process logs as html");
+        System.err.println("  --svg       - Save the charts (and the ftrace graphs) as svg instead of png");
+        System.err.println("  --trace-summary - When processing a traceview file, keep only the method");
+        System.err.println("                statistics and the calls longer than 10ms instead of every");
+        System.err.println("                method call (for traces which don't fit in the memory otherwise)");
+        System.err.println("  --log-db[:fts] - Export all the log lines into the report database");
+        System.err.println("                (raw/report.db, table log_lines), with fts also create a");
+        System.err.println("                full-text index on the messages (table log_lines_fts)");
+        System.err.println("  --shared-res:dir - Store the builtin resources (scripts, style sheets, icons)");
+        System.err.println("                only once in the given directory, shared by all the reports,");
+        System.err.println("                instead of copying them into each report");
+        System.err.println("  --zip       - Save the report as a single zip archive (name_out.zip)");
+        System.err.println("                instead of a directory");
+        System.err.println("  --fingerprints:file - Count the stack signatures of the crashes, ANRs and");
+        System.err.println("                deadlocks in the given index file (created if needed), and");
+        System.err.println("                link each bug to the first report with the same signature");
     }
 
     @Override
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2011 Sony Ericsson Mobile Communications AB
+ *
+ * This file is part of ChkBugReport.
+ *
+ * ChkBugReport is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * ChkBugReport is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ChkBugReport.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.sonyericsson.chkbugreport;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * An input stream reading from a memory mapped file.
+ *
+ * <p>Besides reading it sequentially, any part of the file can be accessed later by
+ * its offset, so the lines read from it don't need to be kept in the heap.
+ * See LineReader and Lines.</p>
+ */
+public class MappedInputStream extends InputStream {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private File mFile;
+    private ByteBuffer mBuff;
+
+    /**
+     * Maps the whole file in memory.
+     * @param f The file to map (it must be smaller than 2GB)
+     */
+    public MappedInputStream(File f) throws IOException {
+        mFile = f;
+        FileInputStream fis = new FileInputStream(f);
+        try {
+            FileChannel ch = fis.getChannel();
+            long size = ch.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("File is too big to be mapped: " + f);
+            }
+            mBuff = ch.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        } finally {
+            // The mapping stays valid even after the channel is closed
+            fis.close();
+        }
+    }
+
+    public File getFile() {
+        return mFile;
+    }
+
+    /**
+     * Returns the offset of the next byte which will be read.
+     */
+    public long position() {
+        return mBuff.position();
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!mBuff.hasRemaining()) {
+            return -1;
+        }
+        return mBuff.get() & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int avail = mBuff.remaining();
+        if (avail == 0) {
+            return len == 0 ? 0 : -1;
+        }
+        len = Math.min(len, avail);
+        mBuff.get(b, off, len);
+        return len;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        int cnt = (int) Math.max(0, Math.min(n, mBuff.remaining()));
+        mBuff.position(mBuff.position() + cnt);
+        return cnt;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return mBuff.remaining();
+    }
+
+    /**
+     * Returns the not yet read part of the file as a buffer, without copying it.
+     * The read position of the stream is moved to the end of the file.
+     */
+    public ByteBuffer readRemaining() {
+        ByteBuffer ret = mBuff.slice();
+        mBuff.position(mBuff.limit());
+        return ret;
+    }
+
+    /**
+     * Decodes a range of the file as UTF-8 text.
+     * This does not affect the current read position, and can be called from any thread.
+     * @param offs The offset of the first byte
+     * @param len The number of bytes to decode
+     * @return The decoded text
+     */
+    public String getString(long offs, int len) {
+        byte tmp[] = new byte[len];
+        ByteBuffer buff = mBuff.duplicate();
+        buff.position((int) offs);
+        buff.get(tmp, 0, len);
+        return new String(tmp, 0, len, UTF8);
+    }
+
+}
@@ -19,31 +19,44 @@
  */
 package com.sonyericsson.chkbugreport;
 
+import com.sonyericsson.chkbugreport.doc.Bold;
 import com.sonyericsson.chkbugreport.doc.Bug;
 import com.sonyericsson.chkbugreport.doc.Chapter;
 import com.sonyericsson.chkbugreport.doc.Doc;
+import com.sonyericsson.chkbugreport.doc.DocNode;
 import com.sonyericsson.chkbugreport.doc.Link;
 import com.sonyericsson.chkbugreport.doc.List;
+import com.sonyericsson.chkbugreport.doc.Para;
 import com.sonyericsson.chkbugreport.doc.ReportHeader;
 import com.sonyericsson.chkbugreport.doc.SimpleText;
 import com.sonyericsson.chkbugreport.plugins.extxml.ExtXMLPlugin;
 import com.sonyericsson.chkbugreport.util.XMLNode;
 
+import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.PrintStream;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.SQLException;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.jar.JarInputStream;
 import java.util.jar.Manifest;
 
@@ -52,6 +65,11 @@ public abstract class Module implements ChapterParent {
     public static final String VERSION = "0.4";
     public static final String VERSION_CODE = "174";
 
+    /** The size of the buffer used when copying the resources */
+    /* package */ static final int COPY_BUFFER_SIZE = 0x10000;
+    /** How long the idle worker threads are kept (in seconds) */
+    private static final long WORKER_KEEP_ALIVE = 5;
+
     /** Contains some global configuration which could affect the module/plugins behavior */
     private Context mContext;
 
@@ -72,8 +90,20 @@ public abstract class Module implements ChapterParent {
     private int mNextChapterId = 1;
     private int mNextSectionId = 1;
     private OutputListener mOutListener;
-    private HashSet<Plugin> mCrashedPlugins;
+    private Set<Plugin> mCrashedPlugins;
     private HashMap<String, Object> mInfos = new HashMap<String, Object>();
+    /** Collects the changes made by the plugin loading on the current worker thread */
+    private ThreadLocal<PendingChanges> mPendingChanges = new ThreadLocal<PendingChanges>();
+    /** Saves the generated images */
+    private ImageSaver mImageSaver;
+    /** Loads the plugins in parallel, while the input is still being read */
+    private PluginScheduler mScheduler;
+    /** The worker threads, see getExecutor() */
+    private ExecutorService mExecutor;
+    /** The path to the builtin resources, relative to the html files */
+    private String mRelResDir = "";
+    /** This report in the fingerprint index, registered when the first signature is added */
+    private FingerprintIndex.Report mFingerprintReport;
 
     public interface OutputListener {
         /** Constant used for log messages targeted to the standard output */
@@ -199,11 +229,46 @@ public abstract class Module implements ChapterParent {
         return mDoc.getIndexHtmlFileName();
     }
 
-    public int allocChapterId() {
+    /**
+     * Returns the name of the archive containing the report, or null if the report is
+     * saved as a directory (see the --zip option).
+     */
+    public String getArchiveFileName() {
+        return mDoc.getArchiveFileName();
+    }
+
+    /**
+     * Creates a new file in the report. The file is finished when the stream is closed.
+     * @param fn The name of the file, relative to the html files (like the links)
+     * @return The stream to write the content of the file to
+     * @see OutputProvider
+     */
+    public OutputStream createFile(String fn) throws IOException {
+        return mDoc.getOutput().create("data/" + fn);
+    }
+
+    /**
+     * Creates a new file in the report with the given content.
+     * @param fn The name of the file, relative to the html files
+     * @param data The content of the file
+     */
+    public void writeFile(String fn, byte data[]) throws IOException {
+        mDoc.getOutput().write("data/" + fn, data);
+    }
+
+    /**
+     * Removes a file created earlier with createFile() (if possible).
+     * @param fn The name of the file, relative to the html files
+     */
+    public void deleteFile(String fn) {
+        mDoc.getOutput().delete("data/" + fn);
+    }
+
+    public synchronized int allocChapterId() {
         return mNextChapterId++;
     }
 
-    public int allocSectionId() {
+    public synchronized int allocSectionId() {
         return mNextSectionId++;
     }
 
@@ -248,16 +313,52 @@ public abstract class Module implements ChapterParent {
     }
 
     public void addHeaderLine(String line) {
-        mHeader.addLine(line);
+        PendingChanges pending = mPendingChanges.get();
+        if (pending != null) {
+            pending.mHeaderLines.add(line);
+            return;
+        }
+        synchronized (this) {
+            mHeader.addLine(line);
+        }
     }
 
-    public String getHeaderLine(int i) {
+    public synchronized String getHeaderLine(int i) {
         return mHeader.getLine(i);
     }
 
+    /**
+     * Adds a new top level chapter to the report.
+     * Note: when called from a plugin loading on a worker thread, the chapter is added
+     * only after all plugins finished loading (in the order of the plugin priorities).
+     */
     @Override
     public void addChapter(Chapter ch) {
-        mDoc.addChapter(ch);
+        PendingChanges pending = mPendingChanges.get();
+        if (pending != null) {
+            pending.mChapters.add(ch);
+            return;
+        }
+        synchronized (this) {
+            mDoc.addChapter(ch);
+        }
+    }
+
+    /**
+     * Adds a node to a chapter which is shared by the plugins (for example a process record).
+     * Note: when called from a plugin loading on a worker thread, the node is added
+     * only after all plugins finished loading (in the order of the plugin priorities).
+     */
+    public void addToChapter(Chapter ch, DocNode node) {
+        PendingChanges pending = mPendingChanges.get();
+        if (pending != null) {
+            pending.mNodeParents.add(ch);
+            pending.mNodes.add(node);
+            return;
+        }
+        synchronized (this) {
+            ch.add(node);
+        }
     }
 
     @Override
@@ -298,37 +399,94 @@ public abstract class Module implements ChapterParent {
         return mDoc;
     }
 
-    public void addSection(Section section) {
+    /**
+     * Adds a section which is completely read.
+     */
+    public synchronized void addSection(Section section) {
+        PendingChanges pending = mPendingChanges.get();
+        if (pending != null) {
+            pending.mSections.add(section);
+            return;
+        }
         mSections.add(section);
+        publishSection(section);
+    }
+
+    /**
+     * Adds a section which is still being read. It is not returned by findSection() until
+     * onSectionLoaded() is called.
+     */
+    protected synchronized void addLoadingSection(Section section) {
+        mSections.add(section);
+    }
+
+    private synchronized void publishSection(Section section) {
         mSectionMap.put(section.getShortName(), section);
     }
 
-    public Section findSection(String name) {
+    /**
+     * Returns the section with the given name. If there are several sections with the
+     * same name, the last one is returned.
+     */
+    public synchronized Section findSection(String name) {
         return mSectionMap.get(name);
     }
 
-    public void addMetaInfo(String name, Object obj) {
+    public synchronized void addMetaInfo(String name, Object obj) {
         mMetaInfos.put(name, obj);
     }
 
-    public Object getMetaInfo(String name) {
+    public synchronized Object getMetaInfo(String name) {
         return mMetaInfos.get(name);
     }
 
     public final void generate() throws IOException {
-        mDoc.begin();
+        try {
+            mDoc.begin();
 
-        // This will do build some extra chapters and save some non-html files
-        collectData();
+            // This will do build some extra chapters and save some non-html files
+            collectData();
 
-        // Save the generated report
-        mDoc.end();
+            // Save the generated report
+            mDoc.end();
 
-        finish();
+            finish();
+        } finally {
+            // Wait for the images which are still being saved
+            getImageSaver().finish();
+
+            // Finish the database and the output files (in case of archives this writes
+            // the rest of the files). This is done even if generating the report failed,
+            // so the files are not left open.
+            closeSQLConnection();
+            try {
+                mDoc.close();
+            } finally {
+                shutdownExecutor();
+            }
+        }
 
         printOut(1, "DONE!");
     }
 
+    /**
+     * Saves the image as a png file. The file might be written later (but before the report
+     * generation is finished), so the image must not be modified after calling this method.
+     * @param img The image to save
+     * @param fileName The name of the png file (relative to the html files)
+     * @see ImageSaver
+     */
+    public void saveImage(BufferedImage img, String fileName) {
+        getImageSaver().save(img, fileName);
+    }
+
+    private synchronized ImageSaver getImageSaver() {
+        if (mImageSaver == null) {
+            mImageSaver = new ImageSaver(this, mContext.getThreadCount() > 1);
+        }
+        return mImageSaver;
+    }
+
     protected void collectData() throws IOException {
         // NOP
     }
@@ -348,27 +506,50 @@ public abstract class Module implements ChapterParent {
         }
     }
 
-    protected void runPlugins() {
-        mCrashedPlugins = new HashSet<Plugin>();
+    /**
+     * Starts loading the plugins while the input is still being read, if the plugins are
+     * loaded in parallel. The sections must be reported with onSectionLoaded() as soon as
+     * they are completely read. The rest of the plugins are loaded by runPlugins().
+     */
+    protected void startPlugins() {
+        int threads = mContext.getThreadCount();
+        if (threads > 1 && mScheduler == null) {
+            preparePlugins();
+            printOut(1, "Plugins are loading data...");
+            mScheduler = new PluginScheduler(this, mPlugins, false);
+            mScheduler.start();
+        }
+    }
 
-        // First, sort the plugins based on prio
-        Collections.sort(mPlugins, new Comparator<Plugin>() {
-            @Override
-            public int compare(Plugin o1, Plugin o2) {
-                return o1.getPrio() - o2.getPrio();
-            }
-        });
-        // Then plugin should process the input data first
-        printOut(1, "Plugins are loading data...");
-        for (Plugin p : mPlugins) {
-            printOut(2, "Running (load) plugin: " + p.getClass().getName() + "...");
-            try {
-                p.reset();
-                p.load(this);
-            } catch (Exception e) {
-                e.printStackTrace();
-                addHeaderLine("Plugin crashed while loading data: " + p.getClass().getName());
-                mCrashedPlugins.add(p);
+    /**
+     * Must be called when a section is completely read, so the plugins waiting for it can be started.
+     */
+    protected void onSectionLoaded(Section section) {
+        publishSection(section);
+        if (mScheduler != null) {
+            mScheduler.onSectionLoaded(section);
+        }
+    }
+
+    protected void runPlugins() {
+        if (mScheduler != null) {
+            // Some plugins are already loading, the rest can start now
+            mScheduler.onInputLoaded();
+            mScheduler.finish();
+            mScheduler = null;
+        } else {
+            preparePlugins();
+            // Then plugin should process the input data first
+            printOut(1, "Plugins are loading data...");
+            int threads = mContext.getThreadCount();
+            if (threads > 1) {
+                PluginScheduler scheduler = new PluginScheduler(this, mPlugins, true);
+                scheduler.start();
+                scheduler.finish();
+            } else {
+                for (Plugin p : mPlugins) {
+                    loadPlugin(p);
+                }
             }
         }
         // Finally, each plugin should save the generated data
@@ -386,7 +567,206 @@ public abstract class Module implements ChapterParent {
         }
     }
 
+    private void preparePlugins() {
+        mCrashedPlugins = Collections.synchronizedSet(new HashSet<Plugin>());
+
+        // First, sort the plugins based on prio
+        Collections.sort(mPlugins, new Comparator<Plugin>() {
+            @Override
+            public int compare(Plugin o1, Plugin o2) {
+                return o1.getPrio() - o2.getPrio();
+            }
+        });
+    }
+
+    private void loadPlugin(Plugin p) {
+        printOut(2, "Running (load) plugin: " + p.getClass().getName() + "...");
+        try {
+            p.reset();
+            p.load(this);
+        } catch (Exception e) {
+            e.printStackTrace();
+            addHeaderLine("Plugin crashed while loading data: " + p.getClass().getName());
+            mCrashedPlugins.add(p);
+        }
+    }
+
+    /**
+     * Loads the plugin on the current (worker) thread.
+     * The sections, chapters, bugs and header lines added by the plugin are collected in
+     * the given object instead, and must be applied later with applyChanges().
+     */
+    void loadPlugin(Plugin p, PendingChanges changes) {
+        // The plugin might be loaded again, see PluginScheduler.finish()
+        mCrashedPlugins.remove(p);
+        mPendingChanges.set(changes);
+        try {
+            loadPlugin(p);
+        } finally {
+            mPendingChanges.remove();
+        }
+    }
+
+    /**
+     * Applies the changes collected while loading a plugin on a worker thread.
+     */
+    void applyChanges(PendingChanges changes) {
+        for (Section section : changes.mSections) {
+            addSection(section);
+        }
+        for (String line : changes.mHeaderLines) {
+            addHeaderLine(line);
+        }
+        for (Chapter ch : changes.mChapters) {
+            addChapter(ch);
+        }
+        for (Bug bug : changes.mBugs) {
+            addBug(bug);
+        }
+        int cnt = changes.mNodes.size();
+        for (int i = 0; i < cnt; i++) {
+            addToChapter(changes.mNodeParents.get(i), changes.mNodes.get(i));
+        }
+        for (PendingSignature sig : changes.mSignatures) {
+            PendingChanges pending = mPendingChanges.get();
+            if (pending != null) {
+                // Applying the changes of a task while loading a plugin on a worker thread
+                pending.mSignatures.add(sig);
+            } else {
+                recordSignature(sig.mPara, sig.mKind, sig.mSignature);
+            }
+        }
+    }
+
+    /**
+     * Runs independent tasks of a plugin, in parallel if more threads may be used.
+     * The chapters, bugs and header lines added by the tasks are applied after all of them
+     * finished, in the order of the tasks, so the result is the same as when running them
+     * one after the other. Any other shared data must be updated in a thread safe way.
+     *
+     * <p>The tasks run on the worker threads of the module (see getExecutor()), and on the
+     * calling thread as well. The calling thread waits only for the tasks already started
+     * by other threads, so this can be safely called from a task running on the worker
+     * threads too.</p>
+     */
+    public void runTasks(final Vector<Runnable> tasks) {
+        int threads = Math.min(mContext.getThreadCount(), tasks.size());
+        if (threads <= 1) {
+            for (Runnable task : tasks) {
+                task.run();
+            }
+            return;
+        }
+        final int cnt = tasks.size();
+        final PendingChanges changes[] = new PendingChanges[cnt];
+        for (int i = 0; i < cnt; i++) {
+            changes[i] = new PendingChanges();
+        }
+        final AtomicInteger next = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(cnt);
+        final Vector<Throwable> errors = new Vector<Throwable>();
+        Runnable worker = new Runnable() {
+            @Override
+            public void run() {
+                // The calling thread might be collecting the changes of a plugin already
+                PendingChanges prev = mPendingChanges.get();
+                try {
+                    int idx;
+                    while ((idx = next.getAndIncrement()) < cnt) {
+                        mPendingChanges.set(changes[idx]);
+                        try {
+                            tasks.get(idx).run();
+                        } catch (Throwable t) {
+                            errors.add(t);
+                        } finally {
+                            done.countDown();
+                        }
+                    }
+                } finally {
+                    if (prev == null) {
+                        mPendingChanges.remove();
+                    } else {
+                        mPendingChanges.set(prev);
+                    }
+                }
+            }
+        };
+        ExecutorService executor = getExecutor();
+        for (int i = 1; i < threads; i++) {
+            executor.execute(worker);
+        }
+        worker.run();
+        boolean interrupted = false;
+        while (true) {
+            try {
+                done.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (!errors.isEmpty()) {
+            Throwable t = errors.get(0);
+            if (t instanceof RuntimeException) {
+                throw (RuntimeException) t;
+            }
+            if (t instanceof Error) {
+                throw (Error) t;
+            }
+            throw new RuntimeException(t);
+        }
+        for (PendingChanges pending : changes) {
+            applyChanges(pending);
+        }
+    }
+
+    /**
+     * Returns the worker threads of the module, shared by everything running in parallel
+     * (loading the plugins, runTasks(), saving the images), so at most as many threads are
+     * used as specified with --threads. Tasks submitted here directly must not wait for
+     * other tasks, use runTasks() for that.
+     */
+    public synchronized ExecutorService getExecutor() {
+        if (mExecutor == null) {
+            int threads = Math.max(1, mContext.getThreadCount());
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads,
+                    WORKER_KEEP_ALIVE, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                    new ThreadFactory() {
+                        @Override
+                        public Thread newThread(Runnable r) {
+                            // Don't keep the application alive if the report fails
+                            Thread t = new Thread(r, "Worker");
+                            t.setDaemon(true);
+                            return t;
+                        }
+                    });
+            // The idle threads exit, even if the module is not finished properly
+            executor.allowCoreThreadTimeOut(true);
+            mExecutor = executor;
+        }
+        return mExecutor;
+    }
+
+    /**
+     * Stops the worker threads once the report is finished.
+     */
+    private synchronized void shutdownExecutor() {
+        if (mExecutor != null) {
+            mExecutor.shutdownNow();
+            mExecutor = null;
+        }
+    }
+
     protected void copyRes(String resources[]) throws IOException {
+        String sharedDir = mContext.getSharedResDir();
+        if (sharedDir != null) {
+            File dir = SharedResources.install(this, sharedDir, resources);
+            mRelResDir = SharedResources.getRelativeUrl(new File(mDoc.getBaseDir()), dir);
+            return;
+        }
         for (String res : resources) {
             copyRes(res, "data" + res);
         }
@@ -399,10 +779,8 @@ public abstract class Module implements ChapterParent {
             return;
         }
 
-        File f = new File(mDoc.getOutDir() + fno);
-        f.getParentFile().mkdirs();
-        FileOutputStream fo = new FileOutputStream(f);
-        byte buff[] = new byte[1024];
+        OutputStream fo = mDoc.getOutput().create(fno);
+        byte buff[] = new byte[COPY_BUFFER_SIZE];
         while (true) {
             int read = is.read(buff);
             if (read <= 0) break;
@@ -412,6 +790,14 @@ public abstract class Module implements ChapterParent {
         is.close();
     }
 
+    /**
+     * Returns the path to the builtin resources (see Util.COMMON_RES) relative to the html
+     * files. This is empty, unless the resources are stored in a shared directory.
+     */
+    public String getRelResDir() {
+        return mRelResDir;
+    }
+
     protected void saveSections() throws IOException {
         Chapter ch = new Chapter(this, "Raw data");
         List list = new List();
@@ -420,7 +806,7 @@ public abstract class Module implements ChapterParent {
         for (Section s : mSections) {
             String fn = mDoc.getRelRawDir() + s.getFileName();
             list.add(new Link(mDoc.getRelRawDir() + s.getFileName(), s.getName()));
-            FileOutputStream fos = new FileOutputStream(getBaseDir() + fn);
+            OutputStream fos = createFile(fn);
             PrintStream ps = new PrintStream(fos);
             int cnt = s.getLineCount();
             for (int i = 0; i < cnt; i++) {
@@ -434,9 +820,82 @@ public abstract class Module implements ChapterParent {
     }
 
     public void addBug(Bug bug) {
+        PendingChanges pending = mPendingChanges.get();
+        if (pending != null) {
+            pending.mBugs.add(bug);
+            return;
+        }
         mBugs.add(bug);
     }
 
+    /**
+     * Adds the stack signature of a problem to the fingerprint index (see the --fingerprints
+     * option), and describes its bucket in the given node (usually the bug reporting it).
+     * Does nothing if no fingerprint index is used.
+     *
+     * <p>When called from a plugin loading on a worker thread or from a task of runTasks(),
+     * the signature is recorded later, together with the other changes of the plugin or task,
+     * so the counts and the first reports don't depend on the thread scheduling. The place
+     * of the description in the node is reserved right away.</p>
+     * @param node The node where the bucket is described
+     * @param kind The kind of the problem, for example "java-crash"
+     * @param head Extra information identifying the problem, or null
+     * @param methods The methods of the crashing or blocking thread, starting from the top
+     * @see FingerprintIndex#createSignature(String, String, Vector)
+     */
+    public void addSignature(DocNode node, String kind, String head, Vector<String> methods) {
+        if (mContext.getFingerprintFile() == null) {
+            return;
+        }
+        Para para = new Para(node);
+        String signature = FingerprintIndex.createSignature(kind, head, methods);
+        PendingChanges pending = mPendingChanges.get();
+        if (pending != null) {
+            pending.mSignatures.add(new PendingSignature(para, kind, signature));
+            return;
+        }
+        recordSignature(para, kind, signature);
+    }
+
+    /**
+     * Adds the signature to the fingerprint index, and describes its bucket in the given
+     * (empty) paragraph. The paragraph is removed if the index cannot be updated.
+     */
+    private void recordSignature(Para para, String kind, String signature) {
+        String fn = mContext.getFingerprintFile();
+        try {
+            FingerprintIndex index = FingerprintIndex.open(fn);
+            FingerprintIndex.Report report;
+            synchronized (this) {
+                if (mFingerprintReport == null) {
+                    String out = getArchiveFileName();
+                    if (out == null) {
+                        out = getIndexHtmlFileName();
+                    }
+                    // The same report is recognised by its content, not by its name
+                    File in = new File(mDoc.getFileName());
+                    String key = in.isFile() ? Util.calcMD5(in) : null;
+                    mFingerprintReport = index.addReport(key, in.getCanonicalPath(),
+                            new File(out).getAbsoluteFile().toURI().toString());
+                }
+                report = mFingerprintReport;
+            }
+            FingerprintIndex.Bucket bucket = index.add(report, signature);
+            para.add("Stack signature: ");
+            para.add(new Bold(bucket.getId()));
+            para.add(" (" + kind + "), seen " + bucket.getCount() + " time(s)");
+            if (bucket.isFirstReport(report)) {
+                para.add(", first seen in this report");
+            } else {
+                para.add(", first seen in ");
+                para.add(new Link(bucket.getFirstReportLink(), bucket.getFirstReportName()).setTarget("_blank"));
+            }
+        } catch (IOException e) {
+            printErr(2, "Cannot update the fingerprint index " + fn + ": " + e);
+            para.getParent().remove(para);
+        }
+    }
+
     protected void collectBugs() {
         // Sort bugs by priority
         Collections.sort(mBugs, Bug.getComparator());
@@ -469,17 +928,16 @@ public abstract class Module implements ChapterParent {
      * (which can happen if the jdbc libraries are not found)
      * @return A connection to the database or null.
      */
-    public Connection getSQLConnection() {
+    public synchronized Connection getSQLConnection() {
         if (mSQLConnection != null) return mSQLConnection;
         // Don't try again
         if (mSQLFailed) return null;
         try {
             Class.forName("org.sqlite.JDBC");
             String fnBase = "raw/report.db";
-            String fn = mDoc.getOutDir() + fnBase;
-            File f = new File(fn);
+            File f = mDoc.getOutput().getLocalFile(fnBase);
             f.delete(); // We must create a new database every time
-            mSQLConnection = DriverManager.getConnection("jdbc:sqlite:" + fn);
+            mSQLConnection = DriverManager.getConnection("jdbc:sqlite:" + f.getPath());
             if (mSQLConnection != null) {
                 mSQLConnection.setAutoCommit(false);
                 addHeaderLine("Note: SQLite report database created as " + fnBase);
@@ -491,6 +949,17 @@ public abstract class Module implements ChapterParent {
         return mSQLConnection;
     }
 
+    private synchronized void closeSQLConnection() {
+        if (mSQLConnection != null) {
+            try {
+                mSQLConnection.close();
+            } catch (SQLException e) {
+                printErr(2, "Error closing DB connection: " + e);
+            }
+            mSQLConnection = null;
+        }
+    }
+
     public int getBugCount() {
         return mBugs.size();
     }
@@ -507,12 +976,43 @@ public abstract class Module implements ChapterParent {
         return mSections;
     }
 
-    public void addInfo(String infoId, Object obj) {
+    public synchronized void addInfo(String infoId, Object obj) {
         mInfos.put(infoId, obj);
     }
 
-    public Object getInfo(String infoId) {
+    public synchronized Object getInfo(String infoId) {
         return mInfos.get(infoId);
     }
 
+    /**
+     * The changes made by a plugin while loading on a worker thread, or by a task of runTasks().
+     * These are applied after all plugins (or tasks) are finished, in the order of the plugins
+     * (or tasks), so the generated report and the fingerprint index don't depend on the thread
+     * scheduling.
+     */
+    static class PendingChanges {
+        private Vector<String> mHeaderLines = new Vector<String>();
+        private Vector<Section> mSections = new Vector<Section>();
+        private Vector<Chapter> mChapters = new Vector<Chapter>();
+        private Vector<Bug> mBugs = new Vector<Bug>();
+        private Vector<Chapter> mNodeParents = new Vector<Chapter>();
+        private Vector<DocNode> mNodes = new Vector<DocNode>();
+        private Vector<PendingSignature> mSignatures = new Vector<PendingSignature>();
+    }
+
+    /**
+     * A stack signature waiting to be recorded in the fingerprint index.
+     */
+    private static class PendingSignature {
+        private Para mPara;
+        private String mKind;
+        private String mSignature;
+
+        PendingSignature(Para para, String kind, String signature) {
+            mPara = para;
+            mKind = kind;
+            mSignature = signature;
+        }
+    }
+
 }
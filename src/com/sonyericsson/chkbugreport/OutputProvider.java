@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2012 Sony Mobile Communications AB
+ *
+ * This file is part of ChkBugReport.
+ *
+ * ChkBugReport is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * ChkBugReport is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ChkBugReport.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.sonyericsson.chkbugreport;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashSet;
+import java.util.Vector;
+
+/**
+ * Creates the files of a report.
+ *
+ * <p>All the files generated by the modules and plugins (html, images, csv files, etc) are
+ * written through this, so the report can be saved either as a directory tree
+ * (DirOutputProvider) or as a single archive (ZipOutputProvider).</p>
+ *
+ * <p>The file names are relative to the root of the report (for example "data/f00001.html"),
+ * and they can contain ".." (so "data/../raw/main.txt" is the same as "raw/main.txt").</p>
+ *
+ * <p>Each file can be created only once (even if it was deleted meanwhile), since the files
+ * already written into an archive cannot be replaced.</p>
+ */
+public abstract class OutputProvider {
+
+    /** The names of the files created so far */
+    private HashSet<String> mNames = new HashSet<String>();
+
+    /**
+     * Creates a new file in the report. Several files can be written at the same time,
+     * even from different threads, but one stream must be used only by one thread.
+     * The file is finished when the stream is closed.
+     * @param name The name of the file
+     * @return The stream to write the content of the file to
+     * @throws IOException If the file cannot be created, or it was already created before
+     */
+    public abstract OutputStream create(String name) throws IOException;
+
+    /**
+     * Removes a file which was created earlier (if possible).
+     * @param name The name of the file
+     */
+    public abstract void delete(String name);
+
+    /**
+     * Returns a real file, which will be part of the report. This is needed when the
+     * content is not written by us, for example in case of databases.
+     * In case of archives this is a temporary file, which is added to the archive when the
+     * provider is closed, so it must be closed before that.
+     * @param name The name of the file
+     * @return The file to write to
+     * @throws IOException If the file cannot be created, or it was already created before
+     */
+    public abstract File getLocalFile(String name) throws IOException;
+
+    /**
+     * Finishes the report. All the streams should be closed before this, the files which
+     * are still being written might be incomplete or missing.
+     */
+    public abstract void close() throws IOException;
+
+    /**
+     * Creates a new file with the given content.
+     * @param name The name of the file
+     * @param data The content of the file
+     */
+    public void write(String name, byte data[]) throws IOException {
+        OutputStream os = create(name);
+        try {
+            os.write(data);
+        } finally {
+            os.close();
+        }
+    }
+
+    /**
+     * Registers the name of a new file, and fails if a file with the same name was already
+     * created. Must be called by the implementations before creating the file.
+     * @param name The normalized name of the file
+     */
+    protected void addName(String name) throws IOException {
+        synchronized (mNames) {
+            if (!mNames.add(name)) {
+                throw new IOException("File already created in the report: " + name);
+            }
+        }
+    }
+
+    /**
+     * Resolves the "." and ".." items in the file name.
+     */
+    protected static String normalize(String name) {
+        Vector<String> parts = new Vector<String>();
+        for (String part : name.split("/")) {
+            if (part.length() == 0 || part.equals(".")) {
+                continue;
+            } else if (part.equals("..")) {
+                if (parts.isEmpty()) {
+                    throw new IllegalArgumentException("File name outside of the report: " + name);
+                }
+                parts.remove(parts.size() - 1);
+            } else {
+                parts.add(part);
+            }
+        }
+        StringBuffer sb = new StringBuffer();
+        for (String part : parts) {
+            if (sb.length() > 0) {
+                sb.append('/');
+            }
+            sb.append(part);
+        }
+        return sb.toString();
+    }
+
+}
@@ -20,6 +20,12 @@ package com.sonyericsson.chkbugreport;
 
 public abstract class Plugin {
 
+    /** Can be returned by getDependencies() if the plugin doesn't depend on other plugins */
+    public static final String[] NO_DEPENDENCIES = {};
+
+    /** Can be returned by getRequiredSections() if the plugin doesn't read any section while loading */
+    public static final String[] NO_SECTIONS = {};
+
     /**
      * Return the priority of this plugin.
      * Lower value means it will run sooner.
@@ -27,6 +33,41 @@ public abstract class Plugin {
      */
     public abstract int getPrio();
 
+    /**
+     * Return the names of the plugins which must finish loading before this plugin
+     * can start loading its data. The names are the simple class names, as used by
+     * Module.getPlugin(). Infos published via Module.addInfo() are available only after
+     * the publishing plugin has loaded, so those plugins must be listed as well.
+     * Only plugins with a lower priority can be listed (the others would not
+     * have been loaded yet even when running the plugins sequentially).
+     *
+     * <p>The default implementation returns null, which means the dependencies are unknown,
+     * in which case the plugin waits until all the plugins with lower priority are loaded.</p>
+     *
+     * @return The names of the plugins this plugin depends on, or null if unknown
+     */
+    public String[] getDependencies() {
+        return null;
+    }
+
+    /**
+     * Return the names of the sections this plugin reads while loading (as used by
+     * Module.findSection()). When the plugins are loaded in parallel, the input is still
+     * being read when the first plugins are started, and a plugin is started only after
+     * all the sections it needs are completely read. If the input contains several
+     * sections with the same name, findSection() returns the last one, so a plugin which
+     * was already started with the previous one is loaded again after the whole input
+     * is read.
+     *
+     * <p>The default implementation returns null, which means the plugin needs
+     * the whole input (for example because it iterates over all the sections).</p>
+     *
+     * @return The names of the sections needed to load this plugin, or null if unknown
+     */
+    public String[] getRequiredSections() {
+        return null;
+    }
+
     /**
      * The plugin must reset it's state, i.e. it must forget everything from a previous run.
      */
@@ -37,6 +78,8 @@ public abstract class Plugin {
      * At this phase there might be some other plugins which
      * haven't been run yet. So if this plugin depends on data from another
      * plugin, it might need to postpone some processing.
+     * This might be called from a worker thread, in parallel with other
+     * plugins (see getDependencies()).
      * @param mod The reference to the current bugreport.
      */
     public abstract void load(Module mod);
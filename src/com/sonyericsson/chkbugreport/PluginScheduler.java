@@ -0,0 +1,260 @@
+/*
+ * Copyright (C) 2011 Sony Ericsson Mobile Communications AB
+ *
+ * This file is part of ChkBugReport.
+ *
+ * ChkBugReport is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * ChkBugReport is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ChkBugReport.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.sonyericsson.chkbugreport;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Vector;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Loads the plugins on the worker threads of the module.
+ *
+ * <p>A plugin is started as soon as all the plugins it depends on (see
+ * Plugin.getDependencies()) have finished loading. Plugins which don't declare their
+ * dependencies wait for all the plugins before them. The changes the plugins make to the
+ * report structure are applied at the end, in the order of the plugins.</p>
+ *
+ * <p>The scheduler can be started while the input is still being read. In this case a
+ * plugin is started only when all the sections it needs (see Plugin.getRequiredSections())
+ * are completely read, which must be signaled with onSectionLoaded(). Plugins which don't
+ * declare the needed sections are started only after onInputLoaded() is called. When a
+ * section is read again with the same name, Module.findSection() returns the new one, so
+ * the plugins already started with the previous one, and the plugins depending on them,
+ * are loaded again in finish().</p>
+ */
+/* package */ class PluginScheduler {
+
+    private Module mMod;
+    private Vector<Plugin> mPlugins;
+
+    /** For each plugin, the number of plugins it still waits for */
+    private int mWaitCount[];
+    /** For each plugin, the index of the plugins waiting for it */
+    private Vector<Vector<Integer>> mWaiting = new Vector<Vector<Integer>>();
+    /** For each plugin, the sections it needs (or null if it needs the whole input) */
+    private String mSections[][];
+    private boolean mStarted[];
+    /** For each plugin, true if it might have used a section which was replaced later */
+    private boolean mStale[];
+    private Module.PendingChanges mChanges[];
+    private ExecutorService mExecutor;
+    private CountDownLatch mDone;
+
+    private HashSet<String> mLoadedSections = new HashSet<String>();
+    /** The sections read more than once, the plugins needing them wait for the whole input */
+    private HashSet<String> mDuplicateSections = new HashSet<String>();
+    private boolean mInputLoaded;
+
+    /**
+     * Creates a new scheduler.
+     * @param mod The module the plugins belong to
+     * @param plugins The list of plugins, already sorted by priority
+     * @param inputLoaded Should be true if all sections are loaded already
+     */
+    public PluginScheduler(Module mod, Vector<Plugin> plugins, boolean inputLoaded) {
+        mMod = mod;
+        mPlugins = plugins;
+        mInputLoaded = inputLoaded;
+    }
+
+    /**
+     * Starts loading the plugins which can be loaded already.
+     */
+    public void start() {
+        int cnt = mPlugins.size();
+        buildGraph();
+        mStarted = new boolean[cnt];
+        mStale = new boolean[cnt];
+        mChanges = new Module.PendingChanges[cnt];
+        for (int i = 0; i < cnt; i++) {
+            mChanges[i] = new Module.PendingChanges();
+        }
+
+        mDone = new CountDownLatch(cnt);
+        mExecutor = mMod.getExecutor();
+        startReadyPlugins();
+    }
+
+    /**
+     * Signals that the given section is completely read.
+     */
+    public synchronized void onSectionLoaded(Section section) {
+        String name = section.getShortName();
+        if (!mLoadedSections.add(name)) {
+            mDuplicateSections.add(name);
+            int cnt = mPlugins.size();
+            for (int i = 0; i < cnt; i++) {
+                if (mStarted[i] && needsSection(i, name)) {
+                    mStale[i] = true;
+                }
+            }
+        }
+        startReadyPlugins();
+    }
+
+    /**
+     * Signals that the whole input is read, so all the sections are available.
+     */
+    public synchronized void onInputLoaded() {
+        mInputLoaded = true;
+        startReadyPlugins();
+    }
+
+    /**
+     * Waits until all the plugins are loaded, loads again the plugins which might have used
+     * a replaced section, and applies the changes made by them.
+     * onInputLoaded() must be called before this.
+     */
+    public void finish() {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                mDone.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        // The dependencies are always loaded before the plugins depending on them
+        int cnt = mPlugins.size();
+        for (int i = 0; i < cnt; i++) {
+            if (mStale[i]) {
+                for (int waiting : mWaiting.get(i)) {
+                    mStale[waiting] = true;
+                }
+                mChanges[i] = new Module.PendingChanges();
+                mMod.loadPlugin(mPlugins.get(i), mChanges[i]);
+            }
+        }
+
+        for (Module.PendingChanges changes : mChanges) {
+            mMod.applyChanges(changes);
+        }
+    }
+
+    private void buildGraph() {
+        int cnt = mPlugins.size();
+        HashMap<String, Integer> indices = new HashMap<String, Integer>();
+        mWaitCount = new int[cnt];
+        mSections = new String[cnt][];
+        for (int i = 0; i < cnt; i++) {
+            mWaiting.add(new Vector<Integer>());
+        }
+        for (int i = 0; i < cnt; i++) {
+            Plugin p = mPlugins.get(i);
+            String deps[] = p.getDependencies();
+            if (deps == null) {
+                // Unknown dependencies, so wait for everything before it
+                for (int j = 0; j < i; j++) {
+                    addDependency(i, j);
+                }
+            } else {
+                for (String dep : deps) {
+                    Integer j = indices.get(dep);
+                    if (j == null) {
+                        // Either the plugin is not installed, or it would be loaded after this one
+                        mMod.printErr(4, "Plugin " + p.getClass().getName() + " depends on " + dep + " which is not loaded before it (ignoring dependency)");
+                        continue;
+                    }
+                    addDependency(i, j);
+                }
+            }
+            mSections[i] = p.getRequiredSections();
+            indices.put(p.getClass().getSimpleName(), i);
+        }
+    }
+
+    private void addDependency(int idx, int depIdx) {
+        mWaitCount[idx]++;
+        mWaiting.get(depIdx).add(idx);
+    }
+
+    private synchronized void startReadyPlugins() {
+        int cnt = mPlugins.size();
+        for (int i = 0; i < cnt; i++) {
+            if (isReady(i)) {
+                start(i);
+            }
+        }
+    }
+
+    private boolean isReady(int idx) {
+        if (mStarted[idx] || mWaitCount[idx] > 0) {
+            return false;
+        }
+        if (mInputLoaded) {
+            return true;
+        }
+        String sections[] = mSections[idx];
+        if (sections == null) {
+            return false;
+        }
+        for (String section : sections) {
+            if (!mLoadedSections.contains(section) || mDuplicateSections.contains(section)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean needsSection(int idx, String name) {
+        String sections[] = mSections[idx];
+        if (sections == null) {
+            // Started only after the whole input was read
+            return false;
+        }
+        for (String section : sections) {
+            if (section.equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void start(final int idx) {
+        mStarted[idx] = true;
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    mMod.loadPlugin(mPlugins.get(idx), mChanges[idx]);
+                } finally {
+                    onFinished(idx);
+                }
+            }
+        });
+    }
+
+    private synchronized void onFinished(int idx) {
+        for (int waiting : mWaiting.get(idx)) {
+            mWaitCount[waiting]--;
+            if (isReady(waiting)) {
+                start(waiting);
+            }
+        }
+        mDone.countDown();
+    }
+
+}
@@ -46,22 +46,22 @@ public class ProcessRecord extends Chapter {
         return mExport;
     }
 
-    public void suggestName(String name, int prio) {
+    public synchronized void suggestName(String name, int prio) {
         if (prio > mNamePrio) {
             setProcName(name);
             mNamePrio = prio;
         }
     }
 
-    public String getProcName() {
+    public synchronized String getProcName() {
         return mProcName;
     }
 
-    public void setExport() {
+    public synchronized void setExport() {
         mExport = true;
     }
 
-    public boolean shouldExport() {
+    public synchronized boolean shouldExport() {
         return mExport;
     }
 
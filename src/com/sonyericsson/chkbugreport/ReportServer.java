@@ -0,0 +1,306 @@
+/*
+ * Copyright (C) 2012 Sony Mobile Communications AB
+ *
+ * This file is part of ChkBugReport.
+ *
+ * ChkBugReport is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * ChkBugReport is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ChkBugReport.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.sonyericsson.chkbugreport;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import com.sonyericsson.chkbugreport.Module.OutputListener;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Keeps the application running and processes the bugreports uploaded over HTTP.
+ *
+ * <p>The server listens only on the loopback interface. A report is submitted by posting
+ * the bugreport (plain text, gzip or zip, the same as on the command line) to "/report".
+ * The optional "name" query parameter is used as the file name of the bugreport.
+ * The response contains the path of the generated index.html, or, if the "format=zip"
+ * query parameter is specified, a zip archive of the generated report.</p>
+ *
+ * <p>At most "threads" reports are processed at the same time, and at most "queueSize"
+ * more are waiting. When the queue is full, the server responds with 503 right away,
+ * without reading (and saving) the uploaded report.</p>
+ */
+public class ReportServer implements HttpHandler {
+
+    private static final int HTTP_OK = 200;
+    private static final int HTTP_BAD_REQUEST = 400;
+    private static final int HTTP_BAD_METHOD = 405;
+    private static final int HTTP_SERVER_ERROR = 500;
+    private static final int HTTP_UNAVAILABLE = 503;
+
+    /** The extra HTTP threads, used to reject the requests when all the slots are taken */
+    private static final int REJECT_THREADS = 2;
+
+    private Main mMain;
+    private int mPort;
+    private File mWorkDir;
+    private BatchProcessor mProcessor;
+    private ThreadPoolExecutor mExecutor;
+    /** One permit for each report which can be processed or waiting */
+    private Semaphore mSlots;
+    private int mMaxRequests;
+    private int mNextId = 1;
+
+    /**
+     * Creates a new server.
+     * @param main The main application, used to load the reports
+     * @param port The TCP port to listen on
+     * @param workDir The folder where the uploaded reports and the generated output are saved
+     * @param threads The maximum number of reports processed in parallel
+     * @param queueSize The maximum number of reports waiting to be processed
+     */
+    public ReportServer(Main main, int port, File workDir, int threads, int queueSize) {
+        mMain = main;
+        mPort = port;
+        mWorkDir = workDir;
+        mProcessor = new BatchProcessor(main, Main.MODE_BUGREPORT, threads);
+        mExecutor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(queueSize));
+        mMaxRequests = threads + queueSize;
+        mSlots = new Semaphore(mMaxRequests);
+    }
+
+    /**
+     * Starts the server. The server keeps running in the background.
+     */
+    public void start() throws IOException {
+        if (!mWorkDir.isDirectory() && !mWorkDir.mkdirs()) {
+            throw new IOException("Cannot create folder " + mWorkDir);
+        }
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getByName(null), mPort), 0);
+        server.createContext("/report", this);
+        // Each accepted request keeps its thread until the report is processed
+        server.setExecutor(Executors.newFixedThreadPool(mMaxRequests + REJECT_THREADS));
+        server.start();
+        mMain.onPrint(1, OutputListener.TYPE_OUT, "Listening on http://localhost:" + mPort + "/report ...");
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                reply(exchange, HTTP_BAD_METHOD, "Reports must be submitted with POST\n");
+                return;
+            }
+            String name = getParam(exchange, "name");
+            if (name == null) {
+                name = "bugreport.txt";
+            }
+            // Don't let the client write outside of the working folder
+            name = new File(name).getName();
+            if (name.length() == 0 || name.startsWith(".")) {
+                reply(exchange, HTTP_BAD_REQUEST, "Invalid name: " + name + "\n");
+                return;
+            }
+
+            // Reserve the place in the queue before reading the upload, so the rejected
+            // reports don't use any disk space
+            if (!mSlots.tryAcquire()) {
+                reply(exchange, HTTP_UNAVAILABLE, "Too many reports are being processed, try again later\n");
+                return;
+            }
+            try {
+                process(exchange, name);
+            } finally {
+                mSlots.release();
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void process(HttpExchange exchange, String name) throws IOException {
+        boolean zip = "zip".equals(getParam(exchange, "format"));
+        File dir = createJobDir();
+        File input = new File(dir, name);
+        try {
+            save(exchange.getRequestBody(), input);
+        } catch (IOException e) {
+            delete(dir);
+            throw e;
+        }
+
+        // Each job has its own settings, since the time window markers keep the date of the report
+        final BatchProcessor.Job job = new BatchProcessor.Job(input.getPath(), new Context(mMain.getContext()));
+        Future<?> result;
+        try {
+            result = mExecutor.submit(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    mProcessor.process(job);
+                    return null;
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Should not happen, since the number of requests is limited by the slots
+            delete(dir);
+            reply(exchange, HTTP_UNAVAILABLE, "Too many reports are being processed, try again later\n");
+            return;
+        }
+        try {
+            result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // The processor catches everything, so this should not happen
+            job.error = e.getCause().toString();
+        }
+
+        if (!job.ok) {
+            if (zip) {
+                // The client doesn't get the location of the output, so don't keep it
+                delete(dir);
+            }
+            reply(exchange, HTTP_SERVER_ERROR, "Failed: " + job.error + "\n");
+        } else if (zip) {
+            try {
+                exchange.getResponseHeaders().set("Content-Type", "application/zip");
+                if (job.archiveFile != null) {
+                    // The report is already saved as an archive, just send it
+                    File archive = new File(job.archiveFile);
+                    exchange.sendResponseHeaders(HTTP_OK, archive.length());
+                    OutputStream os = exchange.getResponseBody();
+                    copy(new FileInputStream(archive), os);
+                    os.close();
+                } else {
+                    File outDir = new File(job.indexFile).getAbsoluteFile().getParentFile();
+                    exchange.sendResponseHeaders(HTTP_OK, 0);
+                    ZipOutputStream zos = new ZipOutputStream(exchange.getResponseBody());
+                    zip(zos, outDir, outDir.getName() + "/");
+                    zos.close();
+                }
+            } finally {
+                // The output is not kept even if sending it failed
+                delete(dir);
+            }
+        } else {
+            String out = (job.indexFile != null) ? job.indexFile : job.archiveFile;
+            reply(exchange, HTTP_OK, new File(out).getAbsolutePath() + "\n");
+        }
+    }
+
+    private synchronized File createJobDir() throws IOException {
+        File dir;
+        do {
+            dir = new File(mWorkDir, Util.createTimeStamp() + "_" + mNextId++);
+        } while (dir.exists());
+        if (!dir.mkdirs()) {
+            throw new IOException("Cannot create folder " + dir);
+        }
+        return dir;
+    }
+
+    private static String getParam(HttpExchange exchange, String key) throws IOException {
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null) {
+            return null;
+        }
+        for (String param : query.split("&")) {
+            int idx = param.indexOf('=');
+            if (idx > 0 && key.equals(param.substring(0, idx))) {
+                return URLDecoder.decode(param.substring(idx + 1), "UTF-8");
+            }
+        }
+        return null;
+    }
+
+    private static void reply(HttpExchange exchange, int code, String msg) throws IOException {
+        byte data[] = msg.getBytes("UTF-8");
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(code, data.length);
+        OutputStream os = exchange.getResponseBody();
+        os.write(data);
+        os.close();
+    }
+
+    private static void save(InputStream is, File f) throws IOException {
+        FileOutputStream fos = new FileOutputStream(f);
+        try {
+            copy(is, fos);
+        } finally {
+            fos.close();
+        }
+    }
+
+    private static void copy(InputStream is, OutputStream os) throws IOException {
+        try {
+            byte buff[] = new byte[0x10000];
+            int read;
+            while (0 < (read = is.read(buff))) {
+                os.write(buff, 0, read);
+            }
+        } finally {
+            is.close();
+        }
+    }
+
+    private static void zip(ZipOutputStream zos, File dir, String prefix) throws IOException {
+        File files[] = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        byte buff[] = new byte[0x10000];
+        for (File f : files) {
+            if (f.isDirectory()) {
+                zip(zos, f, prefix + f.getName() + "/");
+            } else {
+                zos.putNextEntry(new ZipEntry(prefix + f.getName()));
+                FileInputStream fis = new FileInputStream(f);
+                int read;
+                while (0 < (read = fis.read(buff))) {
+                    zos.write(buff, 0, read);
+                }
+                fis.close();
+                zos.closeEntry();
+            }
+        }
+    }
+
+    private static void delete(File f) {
+        File files[] = f.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                delete(child);
+            }
+        }
+        f.delete();
+    }
+
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2012 Sony Mobile Communications AB
+ *
+ * This file is part of ChkBugReport.
+ *
+ * ChkBugReport is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * ChkBugReport is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ChkBugReport.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.sonyericsson.chkbugreport;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.security.MessageDigest;
+import java.util.HashMap;
+
+/**
+ * Installs the builtin resources (style sheets, scripts, icons) into a directory shared by
+ * several reports, so they don't need to be copied into each report.
+ *
+ * <p>The resources are stored in a sub directory named after the hash of their content, so
+ * reports generated by different versions of the application can share the same directory
+ * without breaking each other. A directory is installed only once: it is written under a
+ * temporary name and renamed when complete, so several processes can use the same shared
+ * directory at the same time.</p>
+ */
+public class SharedResources {
+
+    private static final String COMPLETE_MARKER = ".complete";
+    private static final int HASH_LEN = 12;
+
+    /** The already installed directories, by the canonical path of the shared directory */
+    private static HashMap<String, File> sInstalled = new HashMap<String, File>();
+
+    /**
+     * Makes sure the resources are installed in the shared directory.
+     * @param mod The module used to load the resources and to print the messages
+     * @param sharedDir The shared directory, created if needed
+     * @param resources The names of the resources (see Util.COMMON_RES)
+     * @return The directory containing the resources
+     */
+    public static synchronized File install(Module mod, String sharedDir, String resources[]) throws IOException {
+        File base = new File(sharedDir).getCanonicalFile();
+        File ret = sInstalled.get(base.getPath());
+        if (ret != null) {
+            return ret;
+        }
+
+        // Load everything first, the directory name depends on the content
+        byte data[][] = new byte[resources.length][];
+        MessageDigest md = Util.createDigest("SHA-1");
+        for (int i = 0; i < resources.length; i++) {
+            data[i] = loadRes(mod, resources[i]);
+            md.update(resources[i].getBytes("UTF-8"));
+            md.update((byte) 0);
+            if (data[i] != null) {
+                md.update(data[i]);
+            }
+        }
+        String hash = Util.toHex(md.digest()).substring(0, HASH_LEN);
+        ret = new File(base, "res-" + hash);
+
+        if (!new File(ret, COMPLETE_MARKER).exists()) {
+            mod.printOut(2, "Installing resources into " + ret + "...");
+            File tmp = new File(base, ".tmp-" + hash + "-" + System.nanoTime());
+            for (int i = 0; i < resources.length; i++) {
+                if (data[i] != null) {
+                    write(new File(tmp, resources[i]), data[i]);
+                }
+            }
+            write(new File(tmp, COMPLETE_MARKER), new byte[0]);
+            if (!tmp.renameTo(ret)) {
+                // Either somebody else was faster, or something is really wrong
+                delete(tmp);
+                if (!new File(ret, COMPLETE_MARKER).exists()) {
+                    throw new IOException("Cannot install resources into " + ret);
+                }
+            }
+        }
+
+        sInstalled.put(base.getPath(), ret);
+        return ret;
+    }
+
+    /**
+     * Returns the path to the given directory relative to another one, which can be used
+     * in the html files as url prefix (so it ends with '/' unless it's empty).
+     * If there is no relative path (for example they are on different drives), an absolute
+     * file url is returned.
+     */
+    public static String getRelativeUrl(File from, File to) throws IOException {
+        String fromParts[] = split(from.getCanonicalFile());
+        String toParts[] = split(to.getCanonicalFile());
+        int common = 0;
+        while (common < fromParts.length && common < toParts.length
+                && fromParts[common].equals(toParts[common])) {
+            common++;
+        }
+        if (common == 0) {
+            return to.getCanonicalFile().toURI().toString();
+        }
+        StringBuffer path = new StringBuffer();
+        for (int i = common; i < fromParts.length; i++) {
+            path.append("../");
+        }
+        for (int i = common; i < toParts.length; i++) {
+            path.append(toParts[i]).append('/');
+        }
+        try {
+            return new URI(null, null, path.toString(), null).getRawPath();
+        } catch (URISyntaxException e) {
+            throw new IOException("Cannot create relative url: " + e);
+        }
+    }
+
+    private static String[] split(File f) {
+        // Note: the root ("" on unix, "C:" on windows) is kept as the first item
+        return f.getPath().replace(File.separatorChar, '/').split("/");
+    }
+
+    private static byte[] loadRes(Module mod, String res) throws IOException {
+        InputStream is = mod.getClass().getResourceAsStream(res);
+        if (is == null) {
+            mod.printErr(2, "Cannot find resource: " + res);
+            return null;
+        }
+        try {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            byte buff[] = new byte[Module.COPY_BUFFER_SIZE];
+            while (true) {
+                int read = is.read(buff);
+                if (read <= 0) break;
+                bos.write(buff, 0, read);
+            }
+            return bos.toByteArray();
+        } finally {
+            is.close();
+        }
+    }
+
+    private static void write(File f, byte data[]) throws IOException {
+        f.getParentFile().mkdirs();
+        FileOutputStream fo = new FileOutputStream(f);
+        try {
+            fo.write(data);
+        } finally {
+            fo.close();
+        }
+    }
+
+    private static void delete(File f) {
+        File children[] = f.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        f.delete();
+    }
+
+}
@@ -15,6 +15,18 @@ public class TimeWindowMarker {
         // NOP
     }
 
+    /**
+     * Creates a copy of the marker, so it can be used for another report (the date is taken
+     * from the first timestamp of the report, unless it was specified).
+     */
+    public TimeWindowMarker(TimeWindowMarker other) {
+        synchronized (other) {
+            mDate = other.mDate;
+            mTime = other.mTime;
+            mTS = other.mTS;
+        }
+    }
+
     public TimeWindowMarker(String string) {
         int idx = string.indexOf('/');
         if (idx > 0) {
@@ -73,14 +85,14 @@ public class TimeWindowMarker {
         }
     }
 
-    private void checkDay(long ts) {
+    private synchronized void checkDay(long ts) {
         if (mDate == -1) {
             mDate = ts / DAY;
             checkTS();
         }
     }
 
-    public boolean isAfterOrNoFilter(long ts) {
+    public synchronized boolean isAfterOrNoFilter(long ts) {
         checkDay(ts);
         if (mTS != -1) {
             return ts >= mTS;
@@ -88,7 +100,7 @@ public class TimeWindowMarker {
         return true;
     }
 
-    public boolean isBeforeOrNoFilter(long ts) {
+    public synchronized boolean isBeforeOrNoFilter(long ts) {
         checkDay(ts);
         if (mTS != -1) {
             return ts <= mTS;
@@ -96,7 +108,7 @@ public class TimeWindowMarker {
         return true;
     }
 
-    public String format() {
+    public synchronized String format() {
         if (mTS == -1) {
             return "(no limit)";
         }
@@ -18,6 +18,8 @@
  */
 package com.sonyericsson.chkbugreport;
 
+import com.sonyericsson.chkbugreport.chart.ChartCanvas;
+import com.sonyericsson.chkbugreport.doc.Renderer;
 import com.sonyericsson.chkbugreport.ps.PSRecord;
 
 import java.awt.Color;
@@ -30,6 +32,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintStream;
 import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
 import java.util.Date;
@@ -37,8 +40,6 @@ import java.util.Vector;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import javax.imageio.ImageIO;
-
 public class Util {
 
     public static final String PRIVATE_DIR_NAME = ".chkbugreport";
@@ -122,6 +123,35 @@ public class Util {
         return line;
     }
 
+    /**
+     * Renders a part of a string escaping it the same way as escape() does, but
+     * without creating temporary strings.
+     * @param r The renderer to write to
+     * @param s The text to escape
+     * @param from The index of the first character to render
+     * @param to The index after the last character to render
+     */
+    public static void escapeTo(Renderer r, CharSequence s, int from, int to) {
+        int start = from;
+        for (int i = from; i < to; i++) {
+            String repl;
+            switch (s.charAt(i)) {
+                case '&': repl = "&amp;"; break;
+                case '>': repl = "&gt;"; break;
+                case '<': repl = "&lt;"; break;
+                default: continue;
+            }
+            if (start < i) {
+                r.print(s, start, i);
+            }
+            r.print(repl);
+            start = i + 1;
+        }
+        if (start < to) {
+            r.print(s, start, to);
+        }
+    }
+
     /**
      * Removes the extra whitespaces from the beginning and end of a string
      * @param s The string to be stripped
@@ -196,15 +226,32 @@ public class Util {
         return ret;
     }
 
+    /**
+     * Reads a single UTF-8 encoded line from the stream.
+     * Note that this never reads past the end of the line, so it can be used on streams which
+     * contain binary data after the text header (the stream should be buffered though).
+     * For reading text files use LineReader instead.
+     * @param is The input stream
+     * @return The line without the line ending, or null if the end of stream was reached
+     */
     public static String readLine(InputStream is) throws IOException {
-        char buff[] = new char[1024];
+        byte buff[] = new byte[256];
         int idx = 0;
         while (true) {
-            char c = (char)is.read();
-            if (c == -1 || c == '\n') break;
-            buff[idx++] = c;
+            int b = is.read();
+            if (b < 0) {
+                if (idx == 0) return null;
+                break;
+            }
+            if (b == '\n') break;
+            if (idx == buff.length) {
+                byte tmp[] = new byte[idx * 2];
+                System.arraycopy(buff, 0, tmp, 0, idx);
+                buff = tmp;
+            }
+            buff[idx++] = (byte)b;
         }
-        return new String(buff, 0, idx);
+        return new String(buff, 0, idx, "UTF-8");
     }
 
     public static void writeHTMLHeader(PrintStream out, String title, String pathToData) {
@@ -240,28 +287,30 @@ public class Util {
         out.println("</html>");
     }
 
-    public static boolean createTimeBar(Module br, String fn, int w, long ts0, long ts1) {
+    /**
+     * Creates a time bar image, which can be aligned with other charts.
+     * @return The name of the saved file (the extension depends on the chart format),
+     * or null if the time bar could not be created
+     */
+    public static String createTimeBar(Module br, String fn, int w, long ts0, long ts1) {
         int h = 75;
-        BufferedImage img = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
-        Graphics2D g = (Graphics2D)img.getGraphics();
+        ChartCanvas canvas = new ChartCanvas(br, fn, w, h);
+        Graphics2D g = canvas.getGraphics();
         g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
         g.setColor(Color.WHITE);
         g.fillRect(0, 0, w, h);
         g.setColor(Color.BLACK);
         g.drawLine(0, h - 1, w, h - 1);
 
-        if (!renderTimeBar(img, g, 0, 0, w, h, ts0, ts1, false)) {
-            return false;
+        if (!renderTimeBar(canvas.getImage(), g, 0, 0, w, h, ts0, ts1, false)) {
+            canvas.discard();
+            return null;
         }
 
         // Save the image
-        try {
-            ImageIO.write(img, "png", new File(br.getBaseDir() + fn));
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        canvas.save();
 
-        return true;
+        return canvas.getFileName();
     }
 
     public static boolean renderTimeBar(BufferedImage img, Graphics2D g, int ox, int oy, int w, int h, long ts0, long ts1, boolean vFlip) {
@@ -374,26 +423,61 @@ public class Util {
 
     public static String calcMD5(InputStream is) {
         try {
-            MessageDigest md = MessageDigest.getInstance("MD5");
+            MessageDigest md = createDigest("MD5");
             byte buff[] = new byte[0x10000];
             while (true) {
                 int read = is.read(buff);
                 if (read <= 0) break;
                 md.update(buff, 0, read);
             }
-            StringBuffer sb = new StringBuffer();
-            byte[] hash = md.digest();
-            for (byte b : hash) {
-                sb.append(Integer.toHexString((b >> 4) & 0xf));
-                sb.append(Integer.toHexString((b >> 0) & 0xf));
-            }
-            return sb.toString();
+            return toHex(md.digest());
         } catch (Exception e) {
             e.printStackTrace();
             return null;
         }
     }
 
+    /**
+     * Creates a message digest. This should be used only with the algorithms which
+     * every java platform must support (MD5, SHA-1, SHA-256).
+     * @param algorithm The name of the algorithm
+     * @return The new message digest
+     */
+    public static MessageDigest createDigest(String algorithm) {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("Cannot create digest: " + e);
+        }
+    }
+
+    /**
+     * Converts the bytes (for example a digest) to a string of hex digits
+     * @param data The bytes to convert
+     * @return The hex string (two lowercase digits for each byte)
+     */
+    public static String toHex(byte data[]) {
+        StringBuffer sb = new StringBuffer();
+        for (byte b : data) {
+            sb.append(Integer.toHexString((b >> 4) & 0xf));
+            sb.append(Integer.toHexString((b >> 0) & 0xf));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Converts the first 8 bytes (for example of a digest) to a long value
+     * @param data The bytes to convert, at least 8 bytes
+     * @return The value (the first byte being the most significant one)
+     */
+    public static long toLong(byte data[]) {
+        long ret = 0;
+        for (int i = 0; i < 8; i++) {
+            ret = (ret << 8) | (data[i] & 0xff);
+        }
+        return ret;
+    }
+
     /**
      * Extracts a bit range from a long value
      * @param value The bitmask
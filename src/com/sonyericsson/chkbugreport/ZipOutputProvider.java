@@ -0,0 +1,265 @@
+/*
+ * Copyright (C) 2012 Sony Mobile Communications AB
+ *
+ * This file is part of ChkBugReport.
+ *
+ * ChkBugReport is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * ChkBugReport is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ChkBugReport.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.sonyericsson.chkbugreport;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Vector;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Saves the report as a single zip archive, written sequentially in one stream.
+ *
+ * <p>A zip archive can contain only one entry at a time, however the report generation
+ * writes several files at the same time (for example the html files are rendered in
+ * parallel, the images are saved on background threads, and the chapters containing
+ * other chapters are still open when those are written). So only the first file is
+ * streamed into the archive directly, the files created while it's open are collected in
+ * memory and added once the archive is free again.</p>
+ *
+ * <p>Text files are compressed, while the images (which are already compressed) are stored
+ * as they are. The entry names are prefixed with the name of the report directory, so
+ * extracting the archive creates the same directory tree as DirOutputProvider.</p>
+ */
+public class ZipOutputProvider extends OutputProvider {
+
+    private static final int BUFFER_SIZE = 0x10000;
+    private static final String STORED_EXTS[] = { ".png", ".gif", ".jpg", ".gz", ".zip" };
+
+    private String mFileName;
+    private String mPrefix;
+    private ZipOutputStream mZip;
+    /** The name of the file streamed directly into the archive, or null if there is none */
+    private String mBusy;
+    /** The files waiting for the archive to be free */
+    private Vector<Entry> mPending = new Vector<Entry>();
+    /** The files collected in memory which are not closed yet */
+    private Vector<Entry> mOpen = new Vector<Entry>();
+    /** The names of the removed files, in case they are still being written */
+    private HashSet<String> mDeleted = new HashSet<String>();
+    /** The temporary files added when closing the archive */
+    private HashMap<String, File> mLocalFiles = new HashMap<String, File>();
+
+    /**
+     * @param fileName The name of the archive to create
+     * @param prefix The name of the report directory inside the archive, must end with "/"
+     */
+    public ZipOutputProvider(String fileName, String prefix) throws IOException {
+        mFileName = fileName;
+        mPrefix = prefix;
+        mZip = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(fileName), BUFFER_SIZE));
+        mZip.setLevel(Deflater.BEST_SPEED);
+    }
+
+    @Override
+    public synchronized OutputStream create(String name) throws IOException {
+        name = normalize(name);
+        addName(name);
+        if (mBusy != null) {
+            Entry e = new Entry(name);
+            mOpen.add(e);
+            return e;
+        }
+        mBusy = name;
+        mZip.putNextEntry(new ZipEntry(mPrefix + name));
+        return new DirectEntry();
+    }
+
+    @Override
+    public synchronized void write(String name, byte data[]) throws IOException {
+        name = normalize(name);
+        addName(name);
+        if (mBusy != null) {
+            Entry e = new Entry(name);
+            e.write(data);
+            e.close();
+        } else {
+            add(name, data, data.length);
+        }
+    }
+
+    @Override
+    public synchronized void delete(String name) {
+        name = normalize(name);
+        mDeleted.add(name);
+        for (int i = mPending.size() - 1; i >= 0; i--) {
+            if (mPending.get(i).mName.equals(name)) {
+                mPending.remove(i);
+            }
+        }
+    }
+
+    @Override
+    public synchronized File getLocalFile(String name) throws IOException {
+        name = normalize(name);
+        addName(name);
+        File f = File.createTempFile("chkbugreport", ".tmp", new File(mFileName).getAbsoluteFile().getParentFile());
+        mLocalFiles.put(name, f);
+        return f;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            // If somebody forgot to close a file, keep it as it is (like in case of directories)
+            if (mBusy != null) {
+                onDirectClosed();
+            }
+            while (!mOpen.isEmpty()) {
+                mOpen.get(0).close();
+            }
+            for (String name : mLocalFiles.keySet()) {
+                File f = mLocalFiles.get(name);
+                if (f.exists() && !mDeleted.contains(name)) {
+                    mZip.putNextEntry(new ZipEntry(mPrefix + name));
+                    InputStream is = new FileInputStream(f);
+                    try {
+                        byte buff[] = new byte[BUFFER_SIZE];
+                        while (true) {
+                            int read = is.read(buff);
+                            if (read <= 0) break;
+                            mZip.write(buff, 0, read);
+                        }
+                    } finally {
+                        is.close();
+                    }
+                    mZip.closeEntry();
+                }
+            }
+        } finally {
+            // Don't leave the temporary files behind, even if the archive is incomplete
+            for (File f : mLocalFiles.values()) {
+                f.delete();
+            }
+            mLocalFiles.clear();
+            mZip.close();
+        }
+    }
+
+    private synchronized void onDirectClosed() throws IOException {
+        mZip.closeEntry();
+        mBusy = null;
+        while (!mPending.isEmpty()) {
+            Entry e = mPending.remove(0);
+            add(e.mName, e.getBuffer(), e.size());
+        }
+    }
+
+    private synchronized void onClosed(Entry e) throws IOException {
+        mOpen.remove(e);
+        if (mBusy != null) {
+            mPending.add(e);
+        } else {
+            add(e.mName, e.getBuffer(), e.size());
+        }
+    }
+
+    private void add(String name, byte data[], int len) throws IOException {
+        if (mDeleted.contains(name)) {
+            return;
+        }
+        ZipEntry ze = new ZipEntry(mPrefix + name);
+        if (isStored(name)) {
+            CRC32 crc = new CRC32();
+            crc.update(data, 0, len);
+            ze.setMethod(ZipEntry.STORED);
+            ze.setSize(len);
+            ze.setCompressedSize(len);
+            ze.setCrc(crc.getValue());
+        }
+        mZip.putNextEntry(ze);
+        mZip.write(data, 0, len);
+        mZip.closeEntry();
+    }
+
+    private boolean isStored(String name) {
+        for (String ext : STORED_EXTS) {
+            if (name.endsWith(ext)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A file streamed directly into the archive.
+     */
+    private class DirectEntry extends OutputStream {
+
+        private boolean mClosed;
+
+        @Override
+        public void write(int b) throws IOException {
+            mZip.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            mZip.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!mClosed) {
+                mClosed = true;
+                onDirectClosed();
+            }
+        }
+
+    }
+
+    /**
+     * A file collected in memory, added to the archive later.
+     */
+    private class Entry extends ByteArrayOutputStream {
+
+        private String mName;
+        private boolean mClosed;
+
+        public Entry(String name) {
+            super(BUFFER_SIZE);
+            mName = name;
+        }
+
+        public byte[] getBuffer() {
+            return buf;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!mClosed) {
+                mClosed = true;
+                onClosed(this);
+            }
+        }
+
+    }
+
+}
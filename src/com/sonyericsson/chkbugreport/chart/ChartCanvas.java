@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2012 Sony Mobile Communications AB
+ *
+ * This file is part of ChkBugReport.
+ *
+ * ChkBugReport is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * ChkBugReport is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ChkBugReport.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.sonyericsson.chkbugreport.chart;
+
+import com.sonyericsson.chkbugreport.Module;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+
+/**
+ * The surface the charts are drawn on. By default this is an image which is saved as png,
+ * but when svg charts are enabled (--svg), the drawing operations are written directly
+ * into an svg file instead (see SvgGraphics).
+ */
+public class ChartCanvas {
+
+    private Module mMod;
+    private String mFileName;
+    private BufferedImage mImg;
+    private Graphics2D mG;
+
+    /**
+     * Creates a new canvas.
+     * @param mod The module generating the chart
+     * @param fn The name of the png file (relative to the output folder), when creating
+     * svg files the extension is replaced, see getFileName()
+     * @param w The width of the chart
+     * @param h The height of the chart
+     */
+    public ChartCanvas(Module mod, String fn, int w, int h) {
+        mMod = mod;
+        mFileName = fn;
+        if (mod.getContext().isSvgCharts()) {
+            String svgFn = getSvgName(fn);
+            try {
+                OutputStream fos = mod.createFile(svgFn);
+                mG = new SvgGraphics(w, h, new BufferedWriter(new OutputStreamWriter(fos, "UTF-8")));
+                mFileName = svgFn;
+            } catch (IOException e) {
+                mod.printErr(3, "Error creating " + svgFn + ", falling back to png: " + e);
+            }
+        }
+        if (mG == null) {
+            mImg = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+            mG = (Graphics2D) mImg.getGraphics();
+        }
+    }
+
+    /**
+     * Returns the name of the generated file, which should be used to link to the chart.
+     */
+    public String getFileName() {
+        return mFileName;
+    }
+
+    public Graphics2D getGraphics() {
+        return mG;
+    }
+
+    /**
+     * Returns the image the chart is drawn on, or null if the chart is saved as svg.
+     */
+    public BufferedImage getImage() {
+        return mImg;
+    }
+
+    /**
+     * Finishes the drawing and saves the file. The canvas must not be used after this.
+     */
+    public void save() {
+        if (mImg != null) {
+            mMod.saveImage(mImg, mFileName);
+        } else {
+            SvgGraphics svg = (SvgGraphics) mG;
+            if (!svg.finish()) {
+                mMod.printErr(3, "Error saving image " + mFileName);
+            } else if (svg.isIncomplete()) {
+                mMod.printErr(4, "Warning: some parts of " + mFileName + " could not be drawn in svg");
+            }
+        }
+    }
+
+    /**
+     * Drops the chart, in case it turned out that it cannot be generated.
+     */
+    public void discard() {
+        if (mImg == null) {
+            ((SvgGraphics) mG).finish();
+            mMod.deleteFile(mFileName);
+        }
+    }
+
+    /**
+     * Returns the name of the svg file which is saved instead of the given png.
+     */
+    public static String getSvgName(String fn) {
+        if (fn.endsWith(".png")) {
+            fn = fn.substring(0, fn.length() - 4);
+        }
+        return fn + ".svg";
+    }
+
+}
@@ -11,12 +11,8 @@ import java.awt.FontMetrics;
 import java.awt.Graphics2D;
 import java.awt.RenderingHints;
 import java.awt.image.BufferedImage;
-import java.io.File;
-import java.io.IOException;
 import java.util.Vector;
 
-import javax.imageio.ImageIO;
-
 public class ChartGenerator {
 
     private Vector<ChartPlugin> mPlugins = new Vector<ChartPlugin>();
@@ -80,8 +76,8 @@ public class ChartGenerator {
         }
 
         // Create an empty image
-        BufferedImage img = new BufferedImage(totalWidth, totalHeight, BufferedImage.TYPE_INT_RGB);
-        Graphics2D g = (Graphics2D)img.getGraphics();
+        ChartCanvas canvas = new ChartCanvas(mod, fn, totalWidth, totalHeight);
+        Graphics2D g = canvas.getGraphics();
         g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
         g.setColor(Color.WHITE);
         g.fillRect(0, 0, totalWidth, totalHeight);
@@ -126,7 +122,8 @@ public class ChartGenerator {
         }
 
         // Draw the time line
-        if (!Util.renderTimeBar(img, g, tx, ty, mPlotWidth, mTimeHeight, firstTs, lastTs, true)) {
+        if (!Util.renderTimeBar(canvas.getImage(), g, tx, ty, mPlotWidth, mTimeHeight, firstTs, lastTs, true)) {
+            canvas.discard();
             return null;
         }
 
@@ -141,17 +138,12 @@ public class ChartGenerator {
         }
 
         // Save the image
-        try {
-            ImageIO.write(img, "png", new File(mod.getBaseDir() + fn));
-        } catch (IOException e) {
-            e.printStackTrace();
-            return null;
-        }
+        canvas.save();
 
         // Finally build the report
         Block ret = new Block();
         Block preface = new Block(ret);
-        ret.add(new Img(fn));
+        ret.add(new Img(canvas.getFileName()));
         Block appendix = new Block(ret);
 
         for (ChartPlugin p : plugins) {
@@ -0,0 +1,1234 @@
+/*
+ * Copyright (C) 2012 Sony Mobile Communications AB
+ *
+ * This file is part of ChkBugReport.
+ *
+ * ChkBugReport is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * ChkBugReport is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ChkBugReport.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.sonyericsson.chkbugreport.chart;
+
+import com.sonyericsson.chkbugreport.Util;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Composite;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Image;
+import java.awt.Paint;
+import java.awt.Polygon;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.Stroke;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Arc2D;
+import java.awt.geom.Area;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Line2D;
+import java.awt.geom.PathIterator;
+import java.awt.geom.RoundRectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.BufferedImageOp;
+import java.awt.image.ImageObserver;
+import java.awt.image.RenderedImage;
+import java.awt.image.renderable.RenderableImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.text.AttributedCharacterIterator;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.imageio.ImageIO;
+
+/**
+ * A Graphics2D implementation which writes the drawing operations as svg elements, so the
+ * existing chart code can produce vector images without any change.
+ *
+ * <p>The elements are written to the output while drawing, except a few primitives which are
+ * held back so they can be merged with the following ones:</p>
+ * <ul>
+ * <li>opaque rectangles with the same vertical position and height (like the bars of a timeline)
+ * are painted into a buffer of pixel columns, which is written as runs of the same color, so
+ * they never produce more elements than the width of the image,</li>
+ * <li>other adjacent or overlapping rectangles of the same color are merged into one, and a
+ * rectangle which is completely covered by the next (opaque) one is dropped,</li>
+ * <li>connected lines of the same color are merged into a single path, and when several points
+ * fall into the same pixel column, only the entry, exit and the extreme points are kept,</li>
+ * <li>circles of the same color are merged into a single path, skipping the repeated ones.</li>
+ * </ul>
+ * <p>This way a chart with many more samples than pixels does not produce more elements than
+ * a few per pixel column. Note that the lines and circles drawn with different colors can be
+ * written in a different order than they were drawn (but they are never reordered with other
+ * elements).</p>
+ *
+ * <p>Only solid colors are supported, clipping, composites and XOR mode are ignored. Images
+ * are embedded as png data, and copyArea() does nothing (see isIncomplete()).</p>
+ */
+public class SvgGraphics extends Graphics2D {
+
+    private Stream mStream;
+    private boolean mRoot;
+
+    private Color mColor = Color.BLACK;
+    private Paint mPaint = Color.BLACK;
+    private Color mBackground = Color.WHITE;
+    private Font mFont;
+    private Stroke mStroke = new BasicStroke();
+    private AffineTransform mTransform = new AffineTransform();
+    private Composite mComposite;
+    private Shape mClip;
+    private RenderingHints mHints = new RenderingHints(null);
+
+    /**
+     * Creates a new svg canvas with the given size, and starts writing the svg document.
+     * @param w The width of the image
+     * @param h The height of the image
+     * @param out The writer to save the document to
+     */
+    public SvgGraphics(int w, int h, Writer out) {
+        mRoot = true;
+        mStream = new Stream(out, w);
+        mFont = mStream.mScratch.getFont();
+        mComposite = mStream.mScratch.getComposite();
+        PrintWriter pw = mStream.mOut;
+        pw.print("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"" + w + "\" height=\"" + h + "\"");
+        pw.print(" viewBox=\"0 0 " + w + " " + h + "\"");
+        pw.print(" font-family=\"" + getFamily(mFont) + "\" font-size=\"" + mFont.getSize() + "\"");
+        pw.print(" stroke-linecap=\"square\">");
+    }
+
+    private SvgGraphics(SvgGraphics g) {
+        mStream = g.mStream;
+        mColor = g.mColor;
+        mPaint = g.mPaint;
+        mBackground = g.mBackground;
+        mFont = g.mFont;
+        mStroke = g.mStroke;
+        mTransform = new AffineTransform(g.mTransform);
+        mComposite = g.mComposite;
+        mClip = g.mClip;
+        mHints = (RenderingHints) g.mHints.clone();
+    }
+
+    /**
+     * Writes the held back elements and closes the svg document and the writer.
+     * @return false if writing the output failed
+     */
+    public boolean finish() {
+        Stream s = mStream;
+        if (!s.mClosed) {
+            s.flushAll();
+            s.mOut.print("</svg>");
+            s.mOut.close();
+            s.mClosed = true;
+        }
+        return !s.mOut.checkError();
+    }
+
+    @Override
+    public Graphics create() {
+        return new SvgGraphics(this);
+    }
+
+    @Override
+    public void dispose() {
+        if (mRoot) {
+            finish();
+        }
+    }
+
+    /* Drawing primitives */
+
+    @Override
+    public void drawLine(int x1, int y1, int x2, int y2) {
+        if (!isTranslation() || !(mStroke instanceof BasicStroke)) {
+            draw(new Line2D.Float(x1, y1, x2, y2));
+            return;
+        }
+        // Offset by half pixel, so the 1 pixel wide lines cover the same pixels as in an image
+        double tx = mTransform.getTranslateX() + 0.5;
+        double ty = mTransform.getTranslateY() + 0.5;
+        mStream.addLine(mColor, getLineWidth(), x1 + tx, y1 + ty, x2 + tx, y2 + ty);
+    }
+
+    @Override
+    public void fillRect(int x, int y, int width, int height) {
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+        if (!isTranslation()) {
+            fill(new Rectangle(x, y, width, height));
+            return;
+        }
+        double tx = mTransform.getTranslateX();
+        double ty = mTransform.getTranslateY();
+        mStream.addRect(mColor, x + tx, y + ty, width, height);
+    }
+
+    @Override
+    public void drawRect(int x, int y, int width, int height) {
+        if (width < 0 || height < 0) {
+            return;
+        }
+        if (!isTranslation()) {
+            draw(new Rectangle(x, y, width, height));
+            return;
+        }
+        mStream.flushAll();
+        PrintWriter pw = mStream.mOut;
+        pw.print("<rect x=\"");
+        pw.print(num(x + mTransform.getTranslateX() + 0.5));
+        pw.print("\" y=\"");
+        pw.print(num(y + mTransform.getTranslateY() + 0.5));
+        pw.print("\" width=\"" + width + "\" height=\"" + height + "\" fill=\"none\"");
+        printStroke(pw);
+        pw.print("/>");
+    }
+
+    @Override
+    public void clearRect(int x, int y, int width, int height) {
+        Color c = mColor;
+        mColor = mBackground;
+        fillRect(x, y, width, height);
+        mColor = c;
+    }
+
+    @Override
+    public void fillArc(int x, int y, int width, int height, int startAngle, int arcAngle) {
+        if (Math.abs(arcAngle) < 360) {
+            fill(new Arc2D.Float(x, y, width, height, startAngle, arcAngle, Arc2D.PIE));
+        } else {
+            fillOval(x, y, width, height);
+        }
+    }
+
+    @Override
+    public void drawArc(int x, int y, int width, int height, int startAngle, int arcAngle) {
+        draw(new Arc2D.Float(x, y, width, height, startAngle, arcAngle, Arc2D.OPEN));
+    }
+
+    @Override
+    public void fillOval(int x, int y, int width, int height) {
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+        if (!isTranslation()) {
+            fill(new Ellipse2D.Float(x, y, width, height));
+            return;
+        }
+        double cx = x + mTransform.getTranslateX() + width / 2.0;
+        double cy = y + mTransform.getTranslateY() + height / 2.0;
+        if (width == height) {
+            mStream.addDot(mColor, getLineWidth(), cx, cy, width / 2.0);
+            return;
+        }
+        mStream.flushAll();
+        PrintWriter pw = mStream.mOut;
+        pw.print("<ellipse cx=\"" + num(cx) + "\" cy=\"" + num(cy) + "\"");
+        pw.print(" rx=\"" + num(width / 2.0) + "\" ry=\"" + num(height / 2.0) + "\"");
+        printFill(pw);
+        pw.print("/>");
+    }
+
+    @Override
+    public void drawOval(int x, int y, int width, int height) {
+        draw(new Ellipse2D.Float(x, y, width, height));
+    }
+
+    @Override
+    public void drawRoundRect(int x, int y, int width, int height, int arcWidth, int arcHeight) {
+        draw(new RoundRectangle2D.Float(x, y, width, height, arcWidth, arcHeight));
+    }
+
+    @Override
+    public void fillRoundRect(int x, int y, int width, int height, int arcWidth, int arcHeight) {
+        fill(new RoundRectangle2D.Float(x, y, width, height, arcWidth, arcHeight));
+    }
+
+    @Override
+    public void drawPolyline(int[] xPoints, int[] yPoints, int nPoints) {
+        for (int i = 1; i < nPoints; i++) {
+            drawLine(xPoints[i - 1], yPoints[i - 1], xPoints[i], yPoints[i]);
+        }
+    }
+
+    @Override
+    public void drawPolygon(int[] xPoints, int[] yPoints, int nPoints) {
+        draw(new Polygon(xPoints, yPoints, nPoints));
+    }
+
+    @Override
+    public void fillPolygon(int[] xPoints, int[] yPoints, int nPoints) {
+        fill(new Polygon(xPoints, yPoints, nPoints));
+    }
+
+    @Override
+    public void draw(Shape s) {
+        mStream.flushAll();
+        PrintWriter pw = mStream.mOut;
+        printPath(pw, s);
+        pw.print(" fill=\"none\"");
+        printStroke(pw);
+        pw.print("/>");
+    }
+
+    @Override
+    public void fill(Shape s) {
+        mStream.flushAll();
+        PrintWriter pw = mStream.mOut;
+        printPath(pw, s);
+        printFill(pw);
+        pw.print("/>");
+    }
+
+    @Override
+    public void drawString(String str, int x, int y) {
+        drawString(str, (float) x, (float) y);
+    }
+
+    @Override
+    public void drawString(String str, float x, float y) {
+        if (str.length() == 0) {
+            return;
+        }
+        mStream.flushAll();
+        PrintWriter pw = mStream.mOut;
+        pw.print("<text");
+        if (isTranslation()) {
+            pw.print(" x=\"" + num(x + mTransform.getTranslateX()) + "\"");
+            pw.print(" y=\"" + num(y + mTransform.getTranslateY()) + "\"");
+        } else {
+            double m[] = new double[6];
+            mTransform.getMatrix(m);
+            pw.print(" x=\"" + num(x) + "\" y=\"" + num(y) + "\" transform=\"matrix(");
+            for (int i = 0; i < 6; i++) {
+                pw.print((i == 0 ? "" : " ") + num(m[i], 10000));
+            }
+            pw.print(")\"");
+        }
+        if (!mColor.equals(Color.BLACK)) {
+            printFill(pw);
+        }
+        Font def = mStream.mScratch.getFont();
+        if (!getFamily(mFont).equals(getFamily(def))) {
+            pw.print(" font-family=\"" + getFamily(mFont) + "\"");
+        }
+        if (mFont.getSize() != def.getSize()) {
+            pw.print(" font-size=\"" + mFont.getSize() + "\"");
+        }
+        if (mFont.isBold()) {
+            pw.print(" font-weight=\"bold\"");
+        }
+        if (mFont.isItalic()) {
+            pw.print(" font-style=\"italic\"");
+        }
+        pw.print(" xml:space=\"preserve\">");
+        pw.print(Util.escape(str));
+        pw.print("</text>");
+    }
+
+    @Override
+    public void drawString(AttributedCharacterIterator iterator, int x, int y) {
+        drawString(iterator, (float) x, (float) y);
+    }
+
+    @Override
+    public void drawString(AttributedCharacterIterator iterator, float x, float y) {
+        StringBuilder sb = new StringBuilder();
+        for (char c = iterator.first(); c != AttributedCharacterIterator.DONE; c = iterator.next()) {
+            sb.append(c);
+        }
+        drawString(sb.toString(), x, y);
+    }
+
+    @Override
+    public void drawGlyphVector(GlyphVector g, float x, float y) {
+        fill(g.getOutline(x, y));
+    }
+
+    /* Images are embedded as png */
+
+    @Override
+    public boolean drawImage(Image img, AffineTransform xform, ImageObserver obs) {
+        BufferedImage bi = toBufferedImage(img, obs);
+        if (bi == null) {
+            return false;
+        }
+        printImage(bi, xform);
+        return true;
+    }
+
+    @Override
+    public void drawImage(BufferedImage img, BufferedImageOp op, int x, int y) {
+        if (op != null) {
+            img = op.filter(img, null);
+        }
+        printImage(img, AffineTransform.getTranslateInstance(x, y));
+    }
+
+    @Override
+    public void drawRenderedImage(RenderedImage img, AffineTransform xform) {
+        BufferedImage bi;
+        if (img instanceof BufferedImage) {
+            bi = (BufferedImage) img;
+        } else {
+            bi = new BufferedImage(img.getWidth(), img.getHeight(), BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g = bi.createGraphics();
+            g.drawRenderedImage(img, AffineTransform.getTranslateInstance(-img.getMinX(), -img.getMinY()));
+            g.dispose();
+        }
+        AffineTransform at = new AffineTransform(xform);
+        at.translate(img.getMinX(), img.getMinY());
+        printImage(bi, at);
+    }
+
+    @Override
+    public void drawRenderableImage(RenderableImage img, AffineTransform xform) {
+        drawRenderedImage(img.createDefaultRendering(), xform);
+    }
+
+    @Override
+    public boolean drawImage(Image img, int x, int y, ImageObserver observer) {
+        return drawImage(img, AffineTransform.getTranslateInstance(x, y), observer);
+    }
+
+    @Override
+    public boolean drawImage(Image img, int x, int y, int width, int height, ImageObserver observer) {
+        return drawImage(img, x, y, width, height, null, observer);
+    }
+
+    @Override
+    public boolean drawImage(Image img, int x, int y, Color bgcolor, ImageObserver observer) {
+        BufferedImage bi = toBufferedImage(img, observer);
+        if (bi == null) {
+            return false;
+        }
+        return drawImage(bi, x, y, bi.getWidth(), bi.getHeight(), bgcolor, observer);
+    }
+
+    @Override
+    public boolean drawImage(Image img, int x, int y, int width, int height, Color bgcolor, ImageObserver observer) {
+        BufferedImage bi = toBufferedImage(img, observer);
+        if (bi == null) {
+            return false;
+        }
+        return drawImage(bi, x, y, x + width, y + height, 0, 0, bi.getWidth(), bi.getHeight(), bgcolor, observer);
+    }
+
+    @Override
+    public boolean drawImage(Image img, int dx1, int dy1, int dx2, int dy2, int sx1, int sy1, int sx2, int sy2, ImageObserver observer) {
+        return drawImage(img, dx1, dy1, dx2, dy2, sx1, sy1, sx2, sy2, null, observer);
+    }
+
+    @Override
+    public boolean drawImage(Image img, int dx1, int dy1, int dx2, int dy2, int sx1, int sy1, int sx2, int sy2, Color bgcolor, ImageObserver observer) {
+        BufferedImage bi = toBufferedImage(img, observer);
+        if (bi == null) {
+            return false;
+        }
+        if (dx1 == dx2 || dy1 == dy2 || sx1 == sx2 || sy1 == sy2) {
+            return true; // Nothing to draw
+        }
+        if (bgcolor != null) {
+            Color c = mColor;
+            mColor = bgcolor;
+            fillRect(Math.min(dx1, dx2), Math.min(dy1, dy2), Math.abs(dx2 - dx1), Math.abs(dy2 - dy1));
+            mColor = c;
+        }
+        // Map the source rectangle to the destination one (it might be flipped)
+        int sx = Math.min(sx1, sx2);
+        int sy = Math.min(sy1, sy2);
+        AffineTransform at = AffineTransform.getTranslateInstance(dx1, dy1);
+        at.scale((double) (dx2 - dx1) / (sx2 - sx1), (double) (dy2 - dy1) / (sy2 - sy1));
+        at.translate(sx - sx1, sy - sy1);
+        if (sx != 0 || sy != 0 || Math.abs(sx2 - sx1) != bi.getWidth() || Math.abs(sy2 - sy1) != bi.getHeight()) {
+            bi = bi.getSubimage(sx, sy, Math.abs(sx2 - sx1), Math.abs(sy2 - sy1));
+        }
+        printImage(bi, at);
+        return true;
+    }
+
+    /**
+     * Copying the pixels already drawn is not possible in svg, so this does nothing. The
+     * canvas remembers it, so it can warn that the chart might be incomplete.
+     */
+    @Override
+    public void copyArea(int x, int y, int width, int height, int dx, int dy) {
+        mStream.mIncomplete = true;
+    }
+
+    /**
+     * Returns true if some of the drawing operations could not be written to the svg file.
+     */
+    public boolean isIncomplete() {
+        return mStream.mIncomplete;
+    }
+
+    /**
+     * Returns the image as BufferedImage, or null if it's not loaded yet.
+     */
+    private static BufferedImage toBufferedImage(Image img, ImageObserver observer) {
+        if (img instanceof BufferedImage) {
+            return (BufferedImage) img;
+        }
+        int w = img.getWidth(observer);
+        int h = img.getHeight(observer);
+        if (w <= 0 || h <= 0) {
+            return null;
+        }
+        BufferedImage bi = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = bi.createGraphics();
+        boolean done = g.drawImage(img, 0, 0, observer);
+        g.dispose();
+        return done ? bi : null;
+    }
+
+    /**
+     * Writes the image as an embedded png.
+     * @param img The image to write
+     * @param xform The transformation from image space to user space
+     */
+    private void printImage(BufferedImage img, AffineTransform xform) {
+        ByteArrayOutputStream buff = new ByteArrayOutputStream();
+        try {
+            if (!ImageIO.write(img, "png", buff)) {
+                mStream.mIncomplete = true;
+                return;
+            }
+        } catch (IOException e) {
+            mStream.mIncomplete = true;
+            return;
+        }
+        AffineTransform at = new AffineTransform(mTransform);
+        if (xform != null) {
+            at.concatenate(xform);
+        }
+        mStream.flushAll();
+        PrintWriter pw = mStream.mOut;
+        pw.print("<image");
+        if ((at.getType() & ~AffineTransform.TYPE_TRANSLATION) == 0) {
+            pw.print(" x=\"" + num(at.getTranslateX()) + "\" y=\"" + num(at.getTranslateY()) + "\"");
+        } else {
+            double m[] = new double[6];
+            at.getMatrix(m);
+            pw.print(" transform=\"matrix(");
+            for (int i = 0; i < 6; i++) {
+                pw.print((i == 0 ? "" : " ") + num(m[i], 10000));
+            }
+            pw.print(")\"");
+        }
+        pw.print(" width=\"" + img.getWidth() + "\" height=\"" + img.getHeight() + "\"");
+        pw.print(" href=\"data:image/png;base64,");
+        printBase64(pw, buff.toByteArray());
+        pw.print("\"/>");
+    }
+
+    private static final char BASE64[] =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+
+    private static void printBase64(PrintWriter pw, byte data[]) {
+        char out[] = new char[4];
+        for (int i = 0; i < data.length; i += 3) {
+            int n = data.length - i;
+            int v = (data[i] & 0xff) << 16;
+            if (n > 1) {
+                v |= (data[i + 1] & 0xff) << 8;
+            }
+            if (n > 2) {
+                v |= data[i + 2] & 0xff;
+            }
+            out[0] = BASE64[(v >> 18) & 0x3f];
+            out[1] = BASE64[(v >> 12) & 0x3f];
+            out[2] = n > 1 ? BASE64[(v >> 6) & 0x3f] : '=';
+            out[3] = n > 2 ? BASE64[v & 0x3f] : '=';
+            pw.write(out);
+        }
+    }
+
+    /* Graphics state */
+
+    @Override
+    public Color getColor() {
+        return mColor;
+    }
+
+    @Override
+    public void setColor(Color c) {
+        if (c != null) {
+            mColor = c;
+            mPaint = c;
+        }
+    }
+
+    @Override
+    public Paint getPaint() {
+        return mPaint;
+    }
+
+    @Override
+    public void setPaint(Paint paint) {
+        if (paint instanceof Color) {
+            setColor((Color) paint);
+        } else if (paint != null) {
+            mPaint = paint;
+        }
+    }
+
+    @Override
+    public Color getBackground() {
+        return mBackground;
+    }
+
+    @Override
+    public void setBackground(Color color) {
+        mBackground = color;
+    }
+
+    @Override
+    public Font getFont() {
+        return mFont;
+    }
+
+    @Override
+    public void setFont(Font font) {
+        if (font != null) {
+            mFont = font;
+        }
+    }
+
+    @Override
+    public FontMetrics getFontMetrics(Font f) {
+        return mStream.mScratch.getFontMetrics(f);
+    }
+
+    @Override
+    public FontRenderContext getFontRenderContext() {
+        return mStream.mScratch.getFontRenderContext();
+    }
+
+    @Override
+    public GraphicsConfiguration getDeviceConfiguration() {
+        return mStream.mScratch.getDeviceConfiguration();
+    }
+
+    @Override
+    public Stroke getStroke() {
+        return mStroke;
+    }
+
+    @Override
+    public void setStroke(Stroke s) {
+        mStroke = s;
+    }
+
+    @Override
+    public Composite getComposite() {
+        return mComposite;
+    }
+
+    @Override
+    public void setComposite(Composite comp) {
+        mComposite = comp;
+    }
+
+    @Override
+    public void setPaintMode() {
+        // NOP
+    }
+
+    @Override
+    public void setXORMode(Color c1) {
+        // NOP
+    }
+
+    @Override
+    public void setRenderingHint(RenderingHints.Key hintKey, Object hintValue) {
+        mHints.put(hintKey, hintValue);
+    }
+
+    @Override
+    public Object getRenderingHint(RenderingHints.Key hintKey) {
+        return mHints.get(hintKey);
+    }
+
+    @Override
+    public void setRenderingHints(Map<?, ?> hints) {
+        mHints.clear();
+        mHints.putAll(hints);
+    }
+
+    @Override
+    public void addRenderingHints(Map<?, ?> hints) {
+        mHints.putAll(hints);
+    }
+
+    @Override
+    public RenderingHints getRenderingHints() {
+        return (RenderingHints) mHints.clone();
+    }
+
+    @Override
+    public boolean hit(Rectangle rect, Shape s, boolean onStroke) {
+        if (onStroke) {
+            s = mStroke.createStrokedShape(s);
+        }
+        return mTransform.createTransformedShape(s).intersects(rect);
+    }
+
+    /* Transformation */
+
+    @Override
+    public void translate(int x, int y) {
+        mTransform.translate(x, y);
+    }
+
+    @Override
+    public void translate(double tx, double ty) {
+        mTransform.translate(tx, ty);
+    }
+
+    @Override
+    public void rotate(double theta) {
+        mTransform.rotate(theta);
+    }
+
+    @Override
+    public void rotate(double theta, double x, double y) {
+        mTransform.rotate(theta, x, y);
+    }
+
+    @Override
+    public void scale(double sx, double sy) {
+        mTransform.scale(sx, sy);
+    }
+
+    @Override
+    public void shear(double shx, double shy) {
+        mTransform.shear(shx, shy);
+    }
+
+    @Override
+    public void transform(AffineTransform tx) {
+        mTransform.concatenate(tx);
+    }
+
+    @Override
+    public void setTransform(AffineTransform tx) {
+        mTransform = new AffineTransform(tx);
+    }
+
+    @Override
+    public AffineTransform getTransform() {
+        return new AffineTransform(mTransform);
+    }
+
+    private boolean isTranslation() {
+        return (mTransform.getType() & ~AffineTransform.TYPE_TRANSLATION) == 0;
+    }
+
+    /* Clipping (it's stored, but not applied) */
+
+    @Override
+    public Shape getClip() {
+        return mClip;
+    }
+
+    @Override
+    public void setClip(Shape clip) {
+        mClip = clip;
+    }
+
+    @Override
+    public void setClip(int x, int y, int width, int height) {
+        mClip = new Rectangle(x, y, width, height);
+    }
+
+    @Override
+    public Rectangle getClipBounds() {
+        return mClip == null ? null : mClip.getBounds();
+    }
+
+    @Override
+    public void clipRect(int x, int y, int width, int height) {
+        clip(new Rectangle(x, y, width, height));
+    }
+
+    @Override
+    public void clip(Shape s) {
+        if (mClip == null) {
+            mClip = s;
+        } else {
+            Area a = new Area(mClip);
+            a.intersect(new Area(s));
+            mClip = a;
+        }
+    }
+
+    /* Output helpers */
+
+    private void printFill(PrintWriter pw) {
+        pw.print(" fill=\"" + rgb(mColor) + "\"");
+        if (mColor.getAlpha() != 255) {
+            pw.print(" fill-opacity=\"" + num(mColor.getAlpha() / 255.0) + "\"");
+        }
+    }
+
+    private void printStroke(PrintWriter pw) {
+        printStroke(pw, mColor, getLineWidth());
+    }
+
+    private float getLineWidth() {
+        return mStroke instanceof BasicStroke ? ((BasicStroke) mStroke).getLineWidth() : 1;
+    }
+
+    private static void printStroke(PrintWriter pw, Color c, float width) {
+        pw.print(" stroke=\"" + rgb(c) + "\"");
+        if (c.getAlpha() != 255) {
+            pw.print(" stroke-opacity=\"" + num(c.getAlpha() / 255.0) + "\"");
+        }
+        if (width != 1) {
+            pw.print(" stroke-width=\"" + num(width) + "\"");
+        }
+    }
+
+    private void printPath(PrintWriter pw, Shape s) {
+        PathIterator pi = s.getPathIterator(mTransform);
+        double c[] = new double[6];
+        pw.print("<path d=\"");
+        while (!pi.isDone()) {
+            switch (pi.currentSegment(c)) {
+                case PathIterator.SEG_MOVETO:
+                    pw.print("M" + num(c[0]) + " " + num(c[1]));
+                    break;
+                case PathIterator.SEG_LINETO:
+                    pw.print("L" + num(c[0]) + " " + num(c[1]));
+                    break;
+                case PathIterator.SEG_QUADTO:
+                    pw.print("Q" + num(c[0]) + " " + num(c[1]) + " " + num(c[2]) + " " + num(c[3]));
+                    break;
+                case PathIterator.SEG_CUBICTO:
+                    pw.print("C" + num(c[0]) + " " + num(c[1]) + " " + num(c[2]) + " " + num(c[3])
+                            + " " + num(c[4]) + " " + num(c[5]));
+                    break;
+                case PathIterator.SEG_CLOSE:
+                    pw.print("Z");
+                    break;
+            }
+            pi.next();
+        }
+        pw.print("\"");
+        if (pi.getWindingRule() == PathIterator.WIND_EVEN_ODD) {
+            pw.print(" fill-rule=\"evenodd\"");
+        }
+    }
+
+    private static String getFamily(Font font) {
+        String name = font.getFamily();
+        if (Font.DIALOG.equals(name) || Font.SANS_SERIF.equals(name)) {
+            return "sans-serif";
+        } else if (Font.SERIF.equals(name)) {
+            return "serif";
+        } else if (Font.MONOSPACED.equals(name) || Font.DIALOG_INPUT.equals(name)) {
+            return "monospace";
+        }
+        return name;
+    }
+
+    private static String rgb(Color c) {
+        return String.format("#%06x", c.getRGB() & 0xffffff);
+    }
+
+    private static String num(double v) {
+        return num(v, 100);
+    }
+
+    /**
+     * Formats a number with as few digits as possible, rounded to 1/scale.
+     */
+    private static String num(double v, int scale) {
+        long l = Math.round(v * scale);
+        if (l % scale == 0) {
+            return Long.toString(l / scale);
+        }
+        return Double.toString((double) l / scale);
+    }
+
+    /**
+     * The output shared by the graphics created from the same canvas, together with the
+     * elements which are held back.
+     */
+    private static class Stream {
+
+        private PrintWriter mOut;
+        private boolean mClosed;
+        /** Set when some drawing operation could not be written */
+        private boolean mIncomplete;
+        /** Used for everything related to fonts */
+        private Graphics2D mScratch;
+
+        /** The rectangle which might be merged with the next one */
+        private Color mRectColor;
+        private double mRx, mRy, mRw, mRh;
+
+        /** The colors of the pixel columns of the band, 0 where nothing was painted */
+        private int mBand[];
+        private int mBandY, mBandH;
+        private boolean mBandUsed;
+
+        /** The open lines and circles, by color and width, in the order they were started */
+        private LinkedHashMap<String, Marks> mMarks = new LinkedHashMap<String, Marks>();
+        /** The pixel columns touched by the open lines and circles */
+        private BitSet mMarkCols = new BitSet();
+
+        public Stream(Writer out, int width) {
+            mOut = new PrintWriter(out);
+            mScratch = (Graphics2D) new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB).getGraphics();
+            mBand = new int[width];
+        }
+
+        public void addRect(Color c, double x, double y, double w, double h) {
+            if (c.getAlpha() == 255 && x == (int) x && y == (int) y && w == (int) w && h == (int) h) {
+                addBandRect(c, (int) x, (int) y, (int) w, (int) h);
+                return;
+            }
+            if (mBandUsed) {
+                flushAll();
+            }
+            addFreeRect(c, x, y, w, h);
+        }
+
+        private void addBandRect(Color c, int x, int y, int w, int h) {
+            int x1 = Math.max(0, x);
+            int x2 = Math.min(mBand.length, x + w);
+            if (x1 >= x2) {
+                return; // Not visible
+            }
+            int mark = mMarkCols.nextSetBit(x1);
+            if (mBandUsed && (y != mBandY || h != mBandH)) {
+                flushAll();
+            } else if (mark >= 0 && mark < x2) {
+                // The lines drawn before would be covered by this rectangle, so the band
+                // cannot be written below them anymore
+                flushAll();
+            } else {
+                // Let the previous rectangle go first
+                flushRect();
+            }
+            mBandUsed = true;
+            mBandY = y;
+            mBandH = h;
+            int rgb = c.getRGB();
+            for (int i = x1; i < x2; i++) {
+                mBand[i] = rgb;
+            }
+        }
+
+        private void addFreeRect(Color c, double x, double y, double w, double h) {
+            if (!mMarks.isEmpty()) {
+                // The lines were drawn before this rectangle, so they must be written first
+                flushAll();
+            } else if (mRectColor != null) {
+                if (c.getAlpha() == 255 && x <= mRx && y <= mRy && x + w >= mRx + mRw && y + h >= mRy + mRh) {
+                    // The previous one is not visible anymore
+                    mRectColor = null;
+                } else if (c.equals(mRectColor) && y == mRy && h == mRh && x <= mRx + mRw && x + w >= mRx) {
+                    double x2 = Math.max(x + w, mRx + mRw);
+                    mRx = Math.min(x, mRx);
+                    mRw = x2 - mRx;
+                    return;
+                } else if (c.equals(mRectColor) && x == mRx && w == mRw && y <= mRy + mRh && y + h >= mRy) {
+                    double y2 = Math.max(y + h, mRy + mRh);
+                    mRy = Math.min(y, mRy);
+                    mRh = y2 - mRy;
+                    return;
+                } else {
+                    flushRect();
+                }
+            }
+            mRectColor = c;
+            mRx = x;
+            mRy = y;
+            mRw = w;
+            mRh = h;
+        }
+
+        public void addLine(Color c, float width, double x1, double y1, double x2, double y2) {
+            markCols(Math.min(x1, x2) - width / 2, Math.max(x1, x2) + width / 2);
+            getMarks(c, width).addLine(x1, y1, x2, y2);
+        }
+
+        public void addDot(Color c, float width, double cx, double cy, double r) {
+            markCols(cx - r, cx + r);
+            getMarks(c, width).addDot(cx, cy, r);
+        }
+
+        private void markCols(double x1, double x2) {
+            int from = Math.max(0, (int) Math.floor(x1));
+            int to = Math.min(mBand.length, (int) Math.ceil(x2));
+            if (from < to) {
+                mMarkCols.set(from, to);
+            }
+        }
+
+        private Marks getMarks(Color c, float width) {
+            String key = c.getRGB() + "/" + width;
+            Marks ret = mMarks.get(key);
+            if (ret == null) {
+                ret = new Marks(c, width);
+                mMarks.put(key, ret);
+            }
+            return ret;
+        }
+
+        public void flushAll() {
+            flushRect();
+            flushBand();
+            for (Marks m : mMarks.values()) {
+                m.write(mOut);
+            }
+            mMarks.clear();
+            mMarkCols.clear();
+        }
+
+        private void flushBand() {
+            if (!mBandUsed) {
+                return;
+            }
+            // The most used color is written as the background of the painted areas, and the
+            // other runs on top of it. The runs don't overlap, so the ones with the same color
+            // can be written as one path.
+            int w = mBand.length;
+            HashMap<Integer, Integer> usage = new HashMap<Integer, Integer>();
+            int base = 0, baseUsage = 0;
+            for (int i = 0; i < w; i++) {
+                int rgb = mBand[i];
+                if (rgb != 0) {
+                    Integer cnt = usage.get(rgb);
+                    cnt = (cnt == null) ? 1 : cnt + 1;
+                    usage.put(rgb, cnt);
+                    if (cnt > baseUsage) {
+                        base = rgb;
+                        baseUsage = cnt;
+                    }
+                }
+            }
+            LinkedHashMap<Integer, StringBuilder> paths = new LinkedHashMap<Integer, StringBuilder>();
+            StringBuilder basePath = new StringBuilder();
+            paths.put(base, basePath);
+            int i = 0;
+            while (i < w) {
+                int start = i;
+                while (i < w && mBand[i] != 0) {
+                    i++;
+                }
+                if (start < i) {
+                    appendRun(basePath, start, i);
+                }
+                while (i < w && mBand[i] == 0) {
+                    i++;
+                }
+            }
+            i = 0;
+            while (i < w) {
+                int rgb = mBand[i];
+                int start = i;
+                while (i < w && mBand[i] == rgb) {
+                    mBand[i++] = 0;
+                }
+                if (rgb != 0 && rgb != base) {
+                    StringBuilder sb = paths.get(rgb);
+                    if (sb == null) {
+                        sb = new StringBuilder();
+                        paths.put(rgb, sb);
+                    }
+                    appendRun(sb, start, i);
+                }
+            }
+            for (Map.Entry<Integer, StringBuilder> e : paths.entrySet()) {
+                mOut.print("<path d=\"");
+                mOut.print(e.getValue());
+                mOut.print("\" fill=\"" + rgb(new Color(e.getKey())) + "\"/>");
+            }
+            mBandUsed = false;
+        }
+
+        private void appendRun(StringBuilder sb, int start, int end) {
+            sb.append('M').append(start).append(' ').append(mBandY);
+            sb.append('h').append(end - start).append('v').append(mBandH).append('h').append(start - end).append('z');
+        }
+
+        private void flushRect() {
+            if (mRectColor != null) {
+                mOut.print("<rect x=\"" + num(mRx) + "\" y=\"" + num(mRy) + "\"");
+                mOut.print(" width=\"" + num(mRw) + "\" height=\"" + num(mRh) + "\"");
+                mOut.print(" fill=\"" + rgb(mRectColor) + "\"");
+                if (mRectColor.getAlpha() != 255) {
+                    mOut.print(" fill-opacity=\"" + num(mRectColor.getAlpha() / 255.0) + "\"");
+                }
+                mOut.print("/>");
+                mRectColor = null;
+            }
+        }
+
+    }
+
+    /**
+     * The lines and circles drawn with the same color and width, reduced to the resolution
+     * of the image. The circles are written after the lines.
+     */
+    private static class Marks {
+
+        private Color mColor;
+        private float mWidth;
+        /** The already finished parts of the lines */
+        private StringBuilder mPath = new StringBuilder();
+        /** The points of the current part */
+        private double mXs[] = new double[16];
+        private double mYs[] = new double[16];
+        private int mCount;
+        /** The index of the first point in the last pixel column */
+        private int mColStart;
+
+        /** The circles, and the last one (to skip the repeated ones) */
+        private StringBuilder mDots = new StringBuilder();
+        private double mDotX, mDotY, mDotR;
+
+        public Marks(Color c, float width) {
+            mColor = c;
+            mWidth = width;
+        }
+
+        public void addDot(double cx, double cy, double r) {
+            if (mDots.length() > 0 && cx == mDotX && cy == mDotY && r == mDotR) {
+                return;
+            }
+            mDotX = cx;
+            mDotY = cy;
+            mDotR = r;
+            String d = num(2 * r);
+            mDots.append('M').append(num(cx - r)).append(' ').append(num(cy));
+            mDots.append("a").append(num(r)).append(' ').append(num(r)).append(" 0 1 0 ").append(d).append(" 0");
+            mDots.append("a").append(num(r)).append(' ').append(num(r)).append(" 0 1 0 -").append(d).append(" 0");
+        }
+
+        public void addLine(double x1, double y1, double x2, double y2) {
+            if (mCount == 0 || mXs[mCount - 1] != x1 || mYs[mCount - 1] != y1) {
+                endPart();
+                addPoint(x1, y1);
+            }
+            addPoint(x2, y2);
+        }
+
+        private void addPoint(double x, double y) {
+            int n = mCount;
+            if (n > 0 && mXs[n - 1] == x) {
+                if (mYs[n - 1] == y) {
+                    return; // Duplicate point
+                }
+                if (n - mColStart >= 2) {
+                    // The column has already a vertical line, so keep only the entry point,
+                    // the extremes and the new last point (which might be the exit point)
+                    double entry = mYs[mColStart];
+                    double min = y, max = y;
+                    for (int i = mColStart; i < n; i++) {
+                        min = Math.min(min, mYs[i]);
+                        max = Math.max(max, mYs[i]);
+                    }
+                    mCount = mColStart;
+                    append(x, entry);
+                    if (entry - min < max - entry) {
+                        append(x, min);
+                        append(x, max);
+                    } else {
+                        append(x, max);
+                        append(x, min);
+                    }
+                    append(x, y);
+                    return;
+                }
+            } else if (n >= 2 && mYs[n - 1] == y && mYs[n - 2] == y) {
+                // Extend the horizontal line
+                mXs[n - 1] = x;
+                mColStart = n - 1;
+                return;
+            } else {
+                mColStart = n;
+            }
+            append(x, y);
+        }
+
+        private void append(double x, double y) {
+            int n = mCount;
+            if (n > 0 && mXs[n - 1] == x && mYs[n - 1] == y) {
+                return;
+            }
+            if (n == mXs.length) {
+                double tmp[] = new double[n * 2];
+                System.arraycopy(mXs, 0, tmp, 0, n);
+                mXs = tmp;
+                tmp = new double[n * 2];
+                System.arraycopy(mYs, 0, tmp, 0, n);
+                mYs = tmp;
+            }
+            mXs[n] = x;
+            mYs[n] = y;
+            mCount++;
+        }
+
+        private void endPart() {
+            for (int i = 0; i < mCount; i++) {
+                mPath.append(i == 0 ? "M" : (i == 1 ? "L" : " "));
+                mPath.append(num(mXs[i])).append(' ').append(num(mYs[i]));
+            }
+            if (mCount == 1) {
+                // A single point is drawn as a zero length line (the square cap makes it visible)
+                mPath.append("h0");
+            }
+            mCount = 0;
+            mColStart = 0;
+        }
+
+        public void write(PrintWriter pw) {
+            endPart();
+            if (mPath.length() > 0) {
+                pw.print("<path d=\"");
+                pw.print(mPath);
+                pw.print("\" fill=\"none\"");
+                printStroke(pw, mColor, mWidth);
+                pw.print("/>");
+            }
+            if (mDots.length() > 0) {
+                pw.print("<path d=\"");
+                pw.print(mDots);
+                pw.print("\" fill=\"" + rgb(mColor) + "\"");
+                if (mColor.getAlpha() != 255) {
+                    pw.print(" fill-opacity=\"" + num(mColor.getAlpha() / 255.0) + "\"");
+                }
+                pw.print("/>");
+            }
+        }
+
+    }
+
+}
@@ -34,6 +34,7 @@ public class Bug extends DocNode {
     public static final int PRIO_ANR_MONKEY = 100;
     public static final int PRIO_DEADLOCK = 95;
     public static final int PRIO_MAIN_VIOLATION = 90;
+    public static final int PRIO_BLOCKING_CHAIN = 85;
     public static final int PRIO_KPI = 75;
     public static final int PRIO_STRICTMODE = 50;
     public static final int PRIO_SF_NO_BUFF = 45;
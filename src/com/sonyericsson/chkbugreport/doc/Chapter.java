@@ -24,11 +24,11 @@ public class Chapter extends DocNode implements ChapterParent {
     public Chapter(Module mod, String name) {
         mMod = mod;
         mName = name;
-        mId = mMod.allocChapterId();
         mInit = new DocNode(this);
-        mInit.add(mAnchor = new Anchor("ch" + mId));
+        // The id (and so the name of the anchor) is assigned in prepare()
+        mInit.add(mAnchor = new Anchor(null));
         mPopout = new Link(mAnchor, null);
-        mPopout.add(new Img("ic_pop_out.png"));
+        mPopout.add(Img.res("ic_pop_out.png"));
         mPopout.setTarget("_blank");
         mInit.add(new Block().addStyle("btn-pop-out").add(mPopout));
         mInit.add(mHeader = new Header(mName));
@@ -86,6 +86,10 @@ public class Chapter extends DocNode implements ChapterParent {
 
     @Override
     public void prepare(Renderer r) {
+        // The ids are assigned in the order of the chapters in the document, and not when
+        // they are created, so they don't depend on the order the plugins run in
+        mId = mMod.allocChapterId();
+        mAnchor.setName("ch" + mId);
         mRenderer = r.addLevel(this);
 
         if (isStandalone() && getChapterCount() > 0) {
@@ -109,6 +113,15 @@ public class Chapter extends DocNode implements ChapterParent {
 
     @Override
     public void render(Renderer r) throws IOException {
+        render(true);
+    }
+
+    /**
+     * Renders this chapter.
+     * @param withFiles If false, the subchapters which are saved in their own file are skipped
+     * (they are rendered separately, see collectFiles()).
+     */
+    /* package */ void render(boolean withFiles) throws IOException {
         mMod.printOut(2, "Writing chapter: " + getFullName() + "...");
         mRenderer.begin();
 
@@ -117,12 +130,27 @@ public class Chapter extends DocNode implements ChapterParent {
 
         // This will render the subchapters
         for (Chapter child : mSubChapters) {
-            child.render(mRenderer);
+            if (withFiles || !child.isStandalone()) {
+                child.render(withFiles);
+            }
         }
 
         mRenderer.end();
     }
 
+    /**
+     * Collects this chapter and all the subchapters which are saved in their own file.
+     * These can be rendered independently of each other once the document is prepared.
+     */
+    /* package */ void collectFiles(Vector<Chapter> out) {
+        if (isStandalone()) {
+            out.add(this);
+        }
+        for (Chapter child : mSubChapters) {
+            child.collectFiles(out);
+        }
+    }
+
     public String getFullName() {
         if (mParent != null) {
             String ret = mParent.getFullName();
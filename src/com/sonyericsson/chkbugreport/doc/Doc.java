@@ -1,10 +1,12 @@
 package com.sonyericsson.chkbugreport.doc;
 
+import com.sonyericsson.chkbugreport.DirOutputProvider;
 import com.sonyericsson.chkbugreport.Module;
+import com.sonyericsson.chkbugreport.OutputProvider;
 import com.sonyericsson.chkbugreport.Util;
+import com.sonyericsson.chkbugreport.ZipOutputProvider;
 
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.util.Vector;
@@ -16,6 +18,7 @@ public class Doc extends Chapter {
     private String mIndexHtml;
     private String mRawDir;
     private String mDataDir;
+    private OutputProvider mOutput;
 
     private Vector<Chapter> mExtraFiles = new Vector<Chapter>();
 
@@ -43,7 +46,13 @@ public class Doc extends Chapter {
         mDataDir = mOutDir + "data/";
     }
 
+    /**
+     * Returns the name of the main html file, or null if the report is saved as an archive.
+     */
     public String getIndexHtmlFileName() {
+        if (getArchiveFileName() != null) {
+            return null;
+        }
         return mIndexHtml;
     }
 
@@ -75,7 +84,7 @@ public class Doc extends Chapter {
         getModule().printOut(1, "Generating TOC ...");
         DocNode root = new Block().addStyle("toc");
         Link newWindow = new Link("../index.html", null);
-        newWindow.add(new Img("ic_new_window.png"));
+        newWindow.add(Img.res("ic_new_window.png"));
         newWindow.setTarget("_blank");
         newWindow.setTitle("[New Window]");
         root.add(new Block().addStyle("btn-new-window").add(newWindow));
@@ -102,11 +111,42 @@ public class Doc extends Chapter {
         }
     }
 
+    /**
+     * Returns the name of the archive containing the report, or null if the report
+     * is saved as a directory.
+     */
+    public String getArchiveFileName() {
+        if (!getModule().getContext().isZipOutput()) {
+            return null;
+        }
+        return mOutDir.substring(0, mOutDir.length() - 1) + ".zip";
+    }
+
+    /**
+     * Returns the provider creating the files of the report. Available only after begin().
+     */
+    public OutputProvider getOutput() {
+        return mOutput;
+    }
+
     public void begin() throws IOException {
         // Create the destination file and file structure
-        new File(mOutDir).mkdirs();
-        new File(mRawDir).mkdirs();
-        new File(mDataDir).mkdirs();
+        String archive = getArchiveFileName();
+        if (archive != null) {
+            mOutput = new ZipOutputProvider(archive, new File(mOutDir).getName() + "/");
+        } else {
+            new File(mOutDir).mkdirs();
+            new File(mRawDir).mkdirs();
+            new File(mDataDir).mkdirs();
+            mOutput = new DirOutputProvider(mOutDir);
+        }
+    }
+
+    /**
+     * Finishes the report, after this no more files can be created.
+     */
+    public void close() throws IOException {
+        mOutput.close();
     }
 
     public void end() throws IOException {
@@ -119,10 +159,14 @@ public class Doc extends Chapter {
             ext.prepare(r);
         }
 
-        toc.render(r);
-        render(r);
-        for (Chapter ext : mExtraFiles) {
-            ext.render(r);
+        if (getModule().getContext().getThreadCount() > 1) {
+            renderInParallel(toc);
+        } else {
+            toc.render(r);
+            render(r);
+            for (Chapter ext : mExtraFiles) {
+                ext.render(r);
+            }
         }
 
         // In the still opened index html we just create the frameset
@@ -130,8 +174,41 @@ public class Doc extends Chapter {
         writeFrames(toc);
     }
 
-    private void writeFrames(Chapter toc) throws FileNotFoundException {
-        PrintStream ps = new PrintStream(mIndexHtml);
+    /**
+     * Renders the files in parallel. The file names (and so all the links) are already
+     * decided in the prepare step, so the output is the same as when rendering them one
+     * after the other.
+     */
+    private void renderInParallel(Chapter toc) throws IOException {
+        Vector<Chapter> files = new Vector<Chapter>();
+        toc.collectFiles(files);
+        collectFiles(files);
+        for (Chapter ext : mExtraFiles) {
+            ext.collectFiles(files);
+        }
+
+        final Vector<IOException> errors = new Vector<IOException>();
+        Vector<Runnable> tasks = new Vector<Runnable>();
+        for (final Chapter ch : files) {
+            tasks.add(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        ch.render(false);
+                    } catch (IOException e) {
+                        errors.add(e);
+                    }
+                }
+            });
+        }
+        getModule().runTasks(tasks);
+        if (!errors.isEmpty()) {
+            throw errors.get(0);
+        }
+    }
+
+    private void writeFrames(Chapter toc) throws IOException {
+        PrintStream ps = new PrintStream(mOutput.create("index.html"));
         Util.writeHTMLHeaderLite(ps, getFileName());
         String tocFn = toc.getAnchor().getFileName();
         String first = getChapter(0).getAnchor().getFileName();
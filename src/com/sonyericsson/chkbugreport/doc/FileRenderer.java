@@ -3,18 +3,22 @@ package com.sonyericsson.chkbugreport.doc;
 import com.sonyericsson.chkbugreport.Module;
 import com.sonyericsson.chkbugreport.Util;
 
-import java.io.FileNotFoundException;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintStream;
 
 
 public class FileRenderer implements Renderer {
 
     private static final int SPLIT_LEVELS = 2;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final String NEW_LINE = System.getProperty("line.separator");
 
     private Doc mDoc;
     private int mLevel = -1;
     private String mFileName = null;
-    private PrintStream mOut = null;
+    private Output mOut = null;
     private FileRenderer mParent;
     private GlobalState mState;
     private Chapter mChapter;
@@ -23,6 +27,71 @@ public class FileRenderer implements Renderer {
         private int mNextFile = 1;
     }
 
+    /**
+     * The output of a single html file, shared by all the renderers writing into that file.
+     * The text is collected in a char buffer and passed to the (buffered) stream in large
+     * chunks, since there are a lot of small print calls (several for each log line).
+     */
+    static class Output {
+        private PrintStream mPs;
+        private char mBuf[] = new char[BUFFER_SIZE];
+        private int mLen = 0;
+
+        public Output(OutputStream os) {
+            mPs = new PrintStream(new BufferedOutputStream(os, BUFFER_SIZE));
+        }
+
+        /**
+         * Returns the stream for writing directly (the buffer is flushed first).
+         */
+        public PrintStream getStream() {
+            flush();
+            return mPs;
+        }
+
+        public void write(char c) {
+            if (mLen == mBuf.length) {
+                flush();
+            }
+            mBuf[mLen++] = c;
+        }
+
+        public void write(String s) {
+            write(s, 0, s.length());
+        }
+
+        public void write(CharSequence s, int start, int end) {
+            int len = end - start;
+            if (mLen + len > mBuf.length) {
+                flush();
+                if (len > mBuf.length) {
+                    mPs.append(s, start, end);
+                    return;
+                }
+            }
+            if (s instanceof String) {
+                ((String) s).getChars(start, end, mBuf, mLen);
+                mLen += len;
+            } else {
+                for (int i = start; i < end; i++) {
+                    mBuf[mLen++] = s.charAt(i);
+                }
+            }
+        }
+
+        public void flush() {
+            if (mLen > 0) {
+                mPs.print(new String(mBuf, 0, mLen));
+                mLen = 0;
+            }
+        }
+
+        public void close() {
+            flush();
+            mPs.close();
+        }
+    }
+
     public FileRenderer(Doc doc) {
         mDoc = doc;
         mState = new GlobalState();
@@ -50,41 +119,47 @@ public class FileRenderer implements Renderer {
     }
 
     @Override
-    public void begin() throws FileNotFoundException {
+    public void begin() throws IOException {
         if (mFileName == null) {
             mOut = mParent.mOut;
         } else {
-            mOut = new PrintStream(mDoc.getBaseDir() + mFileName);
-            Util.writeHTMLHeader(mOut, mFileName, "");
+            mOut = new Output(getModule().createFile(mFileName));
+            Util.writeHTMLHeader(mOut.getStream(), mFileName, getModule().getRelResDir());
         }
     }
 
     @Override
     public void end() {
         if (mFileName != null) {
-            Util.writeHTMLFooter(mOut);
+            Util.writeHTMLFooter(mOut.getStream());
             mOut.close();
         }
     }
 
     @Override
     public void print(String string) {
-        mOut.print(string);
+        mOut.write(String.valueOf(string));
     }
 
     @Override
     public void println(String string) {
-        mOut.println(string);
+        mOut.write(String.valueOf(string));
+        mOut.write(NEW_LINE);
     }
 
     @Override
     public void print(long v) {
-        mOut.print(v);
+        mOut.write(Long.toString(v));
     }
 
     @Override
     public void print(char c) {
-        mOut.print(c);
+        mOut.write(c);
+    }
+
+    @Override
+    public void print(CharSequence s, int start, int end) {
+        mOut.write(s, start, end);
     }
 
     @Override
@@ -5,14 +5,26 @@ import java.io.IOException;
 public class Img extends DocNode {
 
     private String mFn;
+    private boolean mRes;
 
     public Img(String fn) {
         mFn = fn;
     }
 
+    /**
+     * Creates an image showing one of the builtin resources (see Util.COMMON_RES), which
+     * are not necessarily stored next to the html files.
+     */
+    public static Img res(String fn) {
+        Img ret = new Img(fn);
+        ret.mRes = true;
+        return ret;
+    }
+
     @Override
     public void render(Renderer r) throws IOException {
-        r.print("<img src=\"" + mFn + "\"/>");
+        String fn = mRes ? r.getModule().getRelResDir() + mFn : mFn;
+        r.print("<img src=\"" + fn + "\"/>");
     }
 
 }
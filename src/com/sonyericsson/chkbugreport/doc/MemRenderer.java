@@ -57,6 +57,11 @@ public class MemRenderer implements Renderer {
         mOut.print(c);
     }
 
+    @Override
+    public void print(CharSequence s, int start, int end) {
+        mOut.append(s, start, end);
+    }
+
     @Override
     public String getFileName() {
         return null; // Not supported
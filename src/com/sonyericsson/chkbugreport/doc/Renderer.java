@@ -2,7 +2,7 @@ package com.sonyericsson.chkbugreport.doc;
 
 import com.sonyericsson.chkbugreport.Module;
 
-import java.io.FileNotFoundException;
+import java.io.IOException;
 
 public interface Renderer {
 
@@ -10,7 +10,7 @@ public interface Renderer {
 
     public int getLevel();
 
-    public void begin() throws FileNotFoundException;
+    public void begin() throws IOException;
 
     public void end();
 
@@ -20,6 +20,8 @@ public interface Renderer {
 
     public void print(char c);
 
+    public void print(CharSequence s, int start, int end);
+
     public void print(long v);
 
     public String getFileName();
@@ -3,8 +3,8 @@ package com.sonyericsson.chkbugreport.doc;
 import com.sonyericsson.chkbugreport.Module;
 import com.sonyericsson.chkbugreport.Util;
 
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintStream;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
@@ -34,7 +34,7 @@ public class Table extends DocNode {
     private TableBody mBody;
 
     /* For CSV saving */
-    private FileOutputStream mCsvF;
+    private OutputStream mCsvF;
     private PrintStream mCsvOut;
     private int mCsvCol;
 
@@ -185,7 +185,7 @@ public class Table extends DocNode {
         if (csv == null) return;
         String fn = br.getRelRawDir() + csv + ".csv";
         try {
-            mCsvF = new FileOutputStream(br.getBaseDir() + fn);
+            mCsvF = br.createFile(fn);
             mCsvOut = new PrintStream(mCsvF);
             new Hint(this)
                 .add("A CSV format version is saved as: ")
@@ -20,7 +20,9 @@ public class TreeView extends DocNode {
             r.println("<div class=\"tree\">");
         }
         if (mLine != null) {
-            r.println("<span>" + Util.escape(mLine) + "</span>");
+            r.print("<span>");
+            Util.escapeTo(r, mLine, 0, mLine.length());
+            r.println("</span>");
         }
         int cnt = getChildCount();
         if (cnt > 0) {
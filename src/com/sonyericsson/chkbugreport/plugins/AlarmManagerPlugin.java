@@ -51,6 +51,16 @@ public class AlarmManagerPlugin extends Plugin {
         return 91;
     }
 
+    @Override
+    public String[] getDependencies() {
+        return NO_DEPENDENCIES;
+    }
+
+    @Override
+    public String[] getRequiredSections() {
+        return new String[] { Section.DUMP_OF_SERVICE_ALARM };
+    }
+
     @Override
     public void reset() {
         // Reset
@@ -38,6 +38,16 @@ public class CpuFreqPlugin extends Plugin {
         return 85;
     }
 
+    @Override
+    public String[] getDependencies() {
+        return NO_DEPENDENCIES;
+    }
+
+    @Override
+    public String[] getRequiredSections() {
+        return new String[] { Section.KERNEL_CPUFREQ };
+    }
+
     @Override
     public void reset() {
         mLoaded = false;
@@ -42,14 +42,11 @@ import java.awt.FontMetrics;
 import java.awt.Graphics2D;
 import java.awt.RenderingHints;
 import java.awt.image.BufferedImage;
-import java.io.File;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Vector;
 
-import javax.imageio.ImageIO;
-
 /*
  * Note: some of the explanation is taken from: http://www.redhat.com/advice/tips/meminfo.html
  */
@@ -130,6 +127,16 @@ public class MemPlugin extends Plugin {
         return 20;
     }
 
+    @Override
+    public String[] getDependencies() {
+        return NO_DEPENDENCIES;
+    }
+
+    @Override
+    public String[] getRequiredSections() {
+        return new String[] { Section.DUMP_OF_SERVICE_MEMINFO, Section.LIBRANK };
+    }
+
     @Override
     public void reset() {
         mMemInfos.clear();
@@ -322,13 +329,9 @@ public class MemPlugin extends Plugin {
         g.drawString("overview", 10, 10 + fm.getAscent() + fm.getHeight());
 
         // Save the chart
-        try {
-            String fn = "meminfo.png";
-            ImageIO.write(img, "png", new File(mod.getBaseDir() + fn));
-            ch.add(new Block().add(new Img(fn)));
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+        String fn = "meminfo.png";
+        mod.saveImage(img, fn);
+        ch.add(new Block().add(new Img(fn)));
 
         mainCh.addChapter(ch);
     }
@@ -477,7 +480,7 @@ public class MemPlugin extends Plugin {
                 mMemInfos.add(memInfo);
 
                 ProcessRecord pr = mod.getProcessRecord(memInfo.pid, true, true);
-                pr.add(blk);
+                mod.addToChapter(pr, blk);
                 pr.suggestName(memInfo.name, 45);
 
             } else {
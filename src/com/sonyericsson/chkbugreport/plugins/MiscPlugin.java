@@ -35,6 +35,16 @@ public class MiscPlugin extends Plugin {
         return 99;
     }
 
+    @Override
+    public String[] getDependencies() {
+        return NO_DEPENDENCIES;
+    }
+
+    @Override
+    public String[] getRequiredSections() {
+        return NO_SECTIONS;
+    }
+
     @Override
     public void reset() {
         // NOP
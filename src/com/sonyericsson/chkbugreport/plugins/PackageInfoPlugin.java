@@ -167,6 +167,16 @@ public class PackageInfoPlugin extends Plugin {
         return 1; // Load data ASAP
     }
 
+    @Override
+    public String[] getDependencies() {
+        return NO_DEPENDENCIES;
+    }
+
+    @Override
+    public String[] getRequiredSections() {
+        return new String[] { Section.PACKAGE_SETTINGS };
+    }
+
     @Override
     public void reset() {
         // reset
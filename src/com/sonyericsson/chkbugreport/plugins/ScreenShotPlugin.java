@@ -7,10 +7,6 @@ import com.sonyericsson.chkbugreport.doc.Chapter;
 import com.sonyericsson.chkbugreport.doc.Img;
 
 import java.awt.image.BufferedImage;
-import java.io.File;
-import java.io.IOException;
-
-import javax.imageio.ImageIO;
 
 public class ScreenShotPlugin extends Plugin {
 
@@ -19,6 +15,16 @@ public class ScreenShotPlugin extends Plugin {
         return 5;
     }
 
+    @Override
+    public String[] getDependencies() {
+        return NO_DEPENDENCIES;
+    }
+
+    @Override
+    public String[] getRequiredSections() {
+        return NO_SECTIONS;
+    }
+
     @Override
     public void reset() {
         // TODO Auto-generated method stub
@@ -36,12 +42,7 @@ public class ScreenShotPlugin extends Plugin {
         if (img == null) return;
 
         String fn = "screenshot.png";
-        try {
-            ImageIO.write(img, "png", new File(br.getBaseDir() + fn));
-        } catch (IOException e) {
-            e.printStackTrace();
-            return;
-        }
+        br.saveImage(img, fn);
 
         Chapter ch = new Chapter(br, "Screen shot");
         br.addChapter(ch);
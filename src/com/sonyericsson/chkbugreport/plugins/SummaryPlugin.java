@@ -24,7 +24,6 @@ import com.sonyericsson.chkbugreport.doc.Bug;
 import com.sonyericsson.chkbugreport.doc.MemRenderer;
 import com.sonyericsson.chkbugreport.plugins.logs.LogLines;
 
-import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.util.Collections;
@@ -47,6 +46,16 @@ public class SummaryPlugin extends Plugin {
         return 100+1; // Execute last, to make sure all info is available
     }
 
+    @Override
+    public String[] getDependencies() {
+        return NO_DEPENDENCIES;
+    }
+
+    @Override
+    public String[] getRequiredSections() {
+        return NO_SECTIONS;
+    }
+
     @Override
     public void reset() {
         // NOP
@@ -111,7 +120,7 @@ public class SummaryPlugin extends Plugin {
         // If we found at least one bug, then we can create the summary page
         String fn = br.getRelRawDir() + "summary.txt";
         try {
-            PrintStream out = new PrintStream(new File(br.getBaseDir() + fn));
+            PrintStream out = new PrintStream(br.createFile(fn));
 
             // Copy the first three lines of the header (the dumpstate date)
             for (int i = 0; i < 3; i++) {
@@ -170,7 +179,8 @@ public class SummaryPlugin extends Plugin {
         if (isAnr(mainPrio)) {
             if (isAnr(prio)) {
                 return isMatching(bug, bug2);
-            } else if (prio == Bug.PRIO_DEADLOCK || prio == Bug.PRIO_MAIN_VIOLATION) {
+            } else if (prio == Bug.PRIO_DEADLOCK || prio == Bug.PRIO_MAIN_VIOLATION
+                    || prio == Bug.PRIO_BLOCKING_CHAIN) {
                 return true;
             }
             return false;
@@ -266,7 +276,7 @@ public class SummaryPlugin extends Plugin {
         if (log != null) {
             out.println(infoId + ":");
             for (int i = firstLine; i < lastLine; i++) {
-                out.println(log.get(i).line);
+                out.println(log.getLine(i));
             }
             out.println();
         }
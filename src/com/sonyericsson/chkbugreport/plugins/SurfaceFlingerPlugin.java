@@ -32,7 +32,7 @@ import com.sonyericsson.chkbugreport.doc.Img;
 import com.sonyericsson.chkbugreport.doc.Link;
 import com.sonyericsson.chkbugreport.doc.Para;
 import com.sonyericsson.chkbugreport.doc.Table;
-import com.sonyericsson.chkbugreport.plugins.logs.LogLine;
+import com.sonyericsson.chkbugreport.plugins.logs.LogLines;
 import com.sonyericsson.chkbugreport.plugins.logs.LogPlugin;
 
 import java.awt.BasicStroke;
@@ -40,14 +40,10 @@ import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.Stroke;
 import java.awt.image.BufferedImage;
-import java.io.File;
-import java.io.IOException;
 import java.util.HashSet;
 import java.util.StringTokenizer;
 import java.util.Vector;
 
-import javax.imageio.ImageIO;
-
 public class SurfaceFlingerPlugin extends Plugin {
 
     private static final String TAG = "[SurfaceFlingerPlugin]";
@@ -90,6 +86,16 @@ public class SurfaceFlingerPlugin extends Plugin {
         return 80;
     }
 
+    @Override
+    public String[] getDependencies() {
+        return new String[] { "SysPropsPlugin" }; // The dump format depends on the platform version
+    }
+
+    @Override
+    public String[] getRequiredSections() {
+        return new String[] { Section.DUMP_OF_SERVICE_SURFACEFLINGER };
+    }
+
     @Override
     public void reset() {
         // Reset
@@ -303,24 +309,24 @@ public class SurfaceFlingerPlugin extends Plugin {
         if (plugin == null) return;
         Chapter ch = null;
         DocNode log = null;
-        int cnt = plugin.getParsedLineCount();
+        LogLines lines = plugin.getLogs();
+        int cnt = lines.size();
         for (int i = 0; i < cnt; i++) {
-            LogLine sl = plugin.getParsedLine(i);
-            if (!sl.ok) continue;
+            String tag = lines.getTag(i);
             boolean interesting = false;
-            if (sl.tag.equals("Surface") || sl.tag.equals("SharedBufferStack")) {
+            if (tag.equals("Surface") || tag.equals("SharedBufferStack")) {
                 interesting = true;
             }
-            if (sl.tag.equals("GraphicBufferAllocator")) {
+            if (tag.equals("GraphicBufferAllocator")) {
                 interesting = true;
             }
-            if (sl.tag.equals("SurfaceFlinger") || sl.tag.endsWith(".gralloc")) {
+            if (tag.equals("SurfaceFlinger") || tag.endsWith(".gralloc")) {
                 interesting = true;
             }
-            if (sl.tag.equals("Adreno200-EGL") || sl.tag.endsWith("libEGL")) {
+            if (tag.equals("Adreno200-EGL") || tag.endsWith("libEGL")) {
                 interesting = true;
             }
-            if (sl.tag.equals("kernel") && sl.msg.contains(" kgsl:")) {
+            if (tag.equals("kernel") && lines.getMsg(i).contains(" kgsl:")) {
                 interesting = true;
             }
             if (interesting) {
@@ -330,7 +336,7 @@ public class SurfaceFlingerPlugin extends Plugin {
                     new Para(ch).add("Related logs from " + pluginName);
                     log = new Block(ch).addStyle("log");
                 }
-                log.add(sl.copy());
+                log.add(lines.get(i).copy());
             }
         }
     }
@@ -404,7 +410,7 @@ public class SurfaceFlingerPlugin extends Plugin {
 
         // Save the image
         String fn = "sf_layer_all_" + opacity + ".png";
-        endPng(br.getBaseDir() + fn);
+        endPng(br, fn);
         return fn;
     }
 
@@ -446,7 +452,7 @@ public class SurfaceFlingerPlugin extends Plugin {
 
         // Save the image
         String fn = "sf_layer_" + Integer.toHexString(l.hashCode()) + "_" + Integer.toHexString(reg.hashCode()) + ".png";
-        endPng(br.getBaseDir() + fn);
+        endPng(br, fn);
         return fn;
     }
 
@@ -474,12 +480,10 @@ public class SurfaceFlingerPlugin extends Plugin {
         mG.drawRect(0, 0, mWidth - 1, mHeight - 1);
     }
 
-    private void endPng(String fn) {
-        try {
-            ImageIO.write(mImg, "png", new File(fn));
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+    private void endPng(Module br, String fn) {
+        br.saveImage(mImg, fn);
+        mImg = null;
+        mG = null;
     }
 
     private void calcScaleFactor() {
@@ -46,6 +46,16 @@ public class SysPropsPlugin extends Plugin {
         return 1; // Need to execute first
     }
 
+    @Override
+    public String[] getDependencies() {
+        return NO_DEPENDENCIES;
+    }
+
+    @Override
+    public String[] getRequiredSections() {
+        return new String[] { Section.SYSTEM_PROPERTIES, Section.UPTIME };
+    }
+
     public long getUpTime() {
         return mUpTime;
     }
@@ -30,6 +30,16 @@ public class UsageHistoryPlugin extends Plugin {
         return 92;
     }
 
+    @Override
+    public String[] getDependencies() {
+        return NO_DEPENDENCIES;
+    }
+
+    @Override
+    public String[] getRequiredSections() {
+        return new String[] { Section.USAGE_HISTORY };
+    }
+
     @Override
     public void reset() {
         mData = null;
@@ -57,6 +57,16 @@ public class WakelocksPlugin extends Plugin {
         return 90;
     }
 
+    @Override
+    public String[] getDependencies() {
+        return NO_DEPENDENCIES;
+    }
+
+    @Override
+    public String[] getRequiredSections() {
+        return new String[] { Section.KERNEL_WAKELOCKS };
+    }
+
     @Override
     public void reset() {
         mLoaded = false;
@@ -57,6 +57,19 @@ public class WindowManagerPlugin extends Plugin {
         return 81;
     }
 
+    @Override
+    public String[] getDependencies() {
+        return NO_DEPENDENCIES;
+    }
+
+    @Override
+    public String[] getRequiredSections() {
+        String ret[] = new String[EXTRA_SECTIONS.length + 1];
+        ret[0] = Section.DUMP_OF_SERVICE_WINDOW;
+        System.arraycopy(EXTRA_SECTIONS, 0, ret, 1, EXTRA_SECTIONS.length);
+        return ret;
+    }
+
     @Override
     public void reset() {
         // Reset
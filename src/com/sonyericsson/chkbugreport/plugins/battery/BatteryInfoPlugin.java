@@ -49,15 +49,11 @@ import java.awt.FontMetrics;
 import java.awt.Graphics2D;
 import java.awt.RenderingHints;
 import java.awt.image.BufferedImage;
-import java.io.File;
-import java.io.IOException;
 import java.util.HashMap;
 import java.util.Vector;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import javax.imageio.ImageIO;
-
 public class BatteryInfoPlugin extends Plugin {
 
     private static final String TAG = "[BatteryInfoPlugin]";
@@ -181,6 +177,16 @@ public class BatteryInfoPlugin extends Plugin {
         return 90;
     }
 
+    @Override
+    public String[] getDependencies() {
+        return NO_DEPENDENCIES;
+    }
+
+    @Override
+    public String[] getRequiredSections() {
+        return NO_SECTIONS;
+    }
+
     @Override
     public void reset() {
         // NOP
@@ -344,12 +350,7 @@ public class BatteryInfoPlugin extends Plugin {
 
             // Finish and save the graph
             String fn = "batteryhistory.png";
-            try {
-                ImageIO.write(img, "png", new File(br.getBaseDir() + fn));
-            } catch (IOException e) {
-                e.printStackTrace();
-                return;
-            }
+            br.saveImage(img, fn);
 
             // Add the graph
             Chapter cch = new Chapter(br, "Battery History");
@@ -2,7 +2,6 @@ package com.sonyericsson.chkbugreport.plugins.battery;
 
 import com.sonyericsson.chkbugreport.Module;
 import com.sonyericsson.chkbugreport.chart.ChartPlugin;
-import com.sonyericsson.chkbugreport.plugins.logs.LogLine;
 import com.sonyericsson.chkbugreport.plugins.logs.LogLines;
 import com.sonyericsson.chkbugreport.plugins.logs.event.EventLogPlugin;
 
@@ -40,13 +39,14 @@ public class ScreenOnPlugin extends ChartPlugin {
         int lastMode = -1;
         Color cols[] = {COL_GREEN, COL_YELLOW, COL_RED};
         long duration = lastTs - firstTs;
-        for (LogLine l : mEventLog) {
-            if (!"screen_toggled".equals(l.tag)) continue;
-            int mode = Integer.parseInt(l.msg);
+        int cnt = mEventLog.size();
+        for (int i = 0; i < cnt; i++) {
+            if (!"screen_toggled".equals(mEventLog.getTag(i))) continue;
+            int mode = Integer.parseInt(mEventLog.getMsg(i));
             if (lastMode == -1) {
                 lastMode = (mode == 0) ? 2 : 0;
             }
-            int cx = (int) (x + (l.ts - firstTs) * w / duration);
+            int cx = (int) (x + (mEventLog.getTs(i) - firstTs) * w / duration);
             g.setColor(cols[lastMode]);
             g.fillRect(lastX, y, cx - lastX + 1, h);
             lastX = cx;
@@ -5,7 +5,6 @@ import com.sonyericsson.chkbugreport.chart.ChartGenerator;
 import com.sonyericsson.chkbugreport.doc.Chapter;
 import com.sonyericsson.chkbugreport.doc.DocNode;
 import com.sonyericsson.chkbugreport.plugins.extxml.DataSet.Type;
-import com.sonyericsson.chkbugreport.plugins.logs.LogLine;
 import com.sonyericsson.chkbugreport.plugins.logs.LogLines;
 import com.sonyericsson.chkbugreport.plugins.logs.MainLogPlugin;
 import com.sonyericsson.chkbugreport.plugins.logs.event.EventLogPlugin;
@@ -130,29 +129,31 @@ public class LogChart {
 
         // Save the range, use the first log for that
         if (mFirstTs == 0 && mLastTs == 0) {
-            mFirstTs = logs.get(0).ts;
-            mLastTs = logs.get(logs.size() - 1).ts;
+            mFirstTs = logs.getTs(0);
+            mLastTs = logs.getTs(logs.size() - 1);
 
         }
 
         // Now try match each line
-        for (LogLine ll : logs) {
+        int cnt = logs.size();
+        for (int idx = 0; idx < cnt; idx++) {
             // First do the matching, and only after that do the extraction
             Matcher mLine = null, mTag = null, mMsg = null;
+            long ts = logs.getTs(idx);
             if (pLine != null) {
-                mLine = pLine.matcher(ll.line);
+                mLine = pLine.matcher(logs.getLine(idx));
                 if (!mLine.find()) {
                     continue;
                 }
             }
             if (pTag != null) {
-                mTag = pTag.matcher(ll.tag);
+                mTag = pTag.matcher(logs.getTag(idx));
                 if (!mTag.find()) {
                     continue;
                 }
             }
             if (pMsg != null) {
-                mMsg = pMsg.matcher(ll.msg);
+                mMsg = pMsg.matcher(logs.getMsg(idx));
                 if (!mMsg.find()) {
                     continue;
                 }
@@ -160,17 +161,17 @@ public class LogChart {
             // If we got here, then everything which is specified matched
             // so let's extract the values
             if (mLine != null) {
-                if (processLine(ll, mLine, dataset)) {
+                if (processLine(ts, mLine, dataset)) {
                     continue; // Data extracted
                 }
             }
             if (mTag != null) {
-                if (processLine(ll, mTag, dataset)) {
+                if (processLine(ts, mTag, dataset)) {
                     continue; // Data extracted
                 }
             }
             if (pMsg != null) {
-                if (processLine(ll, mMsg, dataset)) {
+                if (processLine(ts, mMsg, dataset)) {
                     continue; // Data extracted
                 }
             }
@@ -180,12 +181,12 @@ public class LogChart {
             }
             for (int i = 0; i < values.length; i++) {
                 DataSet ds = getDataset(dataset[i]);
-                ds.addData(new Data(ll.ts, values[i]));
+                ds.addData(new Data(ts, values[i]));
             }
         }
     }
 
-    private boolean processLine(LogLine ll, Matcher m, String[] dataset) {
+    private boolean processLine(long ts, Matcher m, String[] dataset) {
         int cnt = m.groupCount();
         if (cnt > 0) {
             // Extract data
@@ -193,7 +194,7 @@ public class LogChart {
                 String sValue = m.group(1 + i);
                 int value = Integer.parseInt(sValue);
                 DataSet ds = getDataset(dataset[i]);
-                ds.addData(new Data(ll.ts, value));
+                ds.addData(new Data(ts, value));
             }
             return true;
         }
@@ -24,6 +24,8 @@ import com.sonyericsson.chkbugreport.Plugin;
 import com.sonyericsson.chkbugreport.ProcessRecord;
 import com.sonyericsson.chkbugreport.Section;
 import com.sonyericsson.chkbugreport.Util;
+import com.sonyericsson.chkbugreport.chart.ChartCanvas;
+import com.sonyericsson.chkbugreport.chart.SvgGraphics;
 import com.sonyericsson.chkbugreport.doc.Block;
 import com.sonyericsson.chkbugreport.doc.Chapter;
 import com.sonyericsson.chkbugreport.doc.DocNode;
@@ -33,6 +35,7 @@ import com.sonyericsson.chkbugreport.doc.Link;
 import com.sonyericsson.chkbugreport.doc.Para;
 import com.sonyericsson.chkbugreport.doc.ProcessLink;
 import com.sonyericsson.chkbugreport.doc.ShadedValue;
+import com.sonyericsson.chkbugreport.doc.SimpleText;
 import com.sonyericsson.chkbugreport.doc.Table;
 import com.sonyericsson.chkbugreport.ps.PSRecord;
 
@@ -41,13 +44,10 @@ import java.awt.FontMetrics;
 import java.awt.Graphics2D;
 import java.awt.RenderingHints;
 import java.awt.image.BufferedImage;
-import java.io.File;
-import java.io.IOException;
+import java.io.StringWriter;
 import java.util.HashSet;
 import java.util.Vector;
 
-import javax.imageio.ImageIO;
-
 public class FTracePlugin extends Plugin {
 
     public static final String TAG = "[FTracePlugin]";
@@ -62,6 +62,16 @@ public class FTracePlugin extends Plugin {
         return 50;
     }
 
+    @Override
+    public String[] getDependencies() {
+        return NO_DEPENDENCIES;
+    }
+
+    @Override
+    public String[] getRequiredSections() {
+        return NO_SECTIONS;
+    }
+
     @Override
     public void reset() {
         // NOP
@@ -142,8 +152,7 @@ public class FTracePlugin extends Plugin {
         t = beginTraceTbl(ch, br, duration, true, true, true);
         for (FTraceProcessRecord pr : list) {
             // Create the trace image
-            String png = "ftrace_" + pr.pid + ".png";
-            createTracePng(br.getBaseDir() + png, pr, data.getFirstTraceRecord(), duration);
+            createTraceImg(br, pr, data.getFirstTraceRecord(), duration);
             // Add the table row
             addTraceTblRow(br, t, pr, true);
         }
@@ -193,8 +202,8 @@ public class FTracePlugin extends Plugin {
         }
         PSRecord ps = br.getPSRecord(pr.pid);
         if (ps != null) {
-            ret.add(new Img(Util.getNiceImg(ps.getNice())));
-            ret.add(new Img(Util.getSchedImg(ps.getPolicy())));
+            ret.add(Img.res(Util.getNiceImg(ps.getNice())));
+            ret.add(Img.res(Util.getSchedImg(ps.getPolicy())));
         }
 
         return ret;
@@ -264,12 +273,12 @@ public class FTracePlugin extends Plugin {
         new Para(ch).add("Process trace overview:");
 
         if (addExplanation) {
-            new Block(ch).add(new Img("ftrace-legend-dred.png")).add("Partially running");
-            new Block(ch).add(new Img("ftrace-legend-red.png")).add("Running");
-            new Block(ch).add(new Img("ftrace-legend-dcyan.png")).add("Partially waiting");
-            new Block(ch).add(new Img("ftrace-legend-cyan.png")).add("Waiting");
-            new Block(ch).add(new Img("ftrace-legend-yellow.png")).add("Waiting for IO");
-            new Block(ch).add(new Img("ftrace-legend-black.png")).add("Sleeping");
+            new Block(ch).add(Img.res("ftrace-legend-dred.png")).add("Partially running");
+            new Block(ch).add(Img.res("ftrace-legend-red.png")).add("Running");
+            new Block(ch).add(Img.res("ftrace-legend-dcyan.png")).add("Partially waiting");
+            new Block(ch).add(Img.res("ftrace-legend-cyan.png")).add("Waiting");
+            new Block(ch).add(Img.res("ftrace-legend-yellow.png")).add("Waiting for IO");
+            new Block(ch).add(Img.res("ftrace-legend-black.png")).add("Sleeping");
         }
 
         Table t = new Table(Table.FLAG_DND, ch);
@@ -287,33 +296,41 @@ public class FTracePlugin extends Plugin {
 
         if (addParallelChart) {
             t.addData("Number of processes wanting to run in parallel");
-            t.addData(new Img(getParallelChartName()));
+            t.addData(new Img(getParallelChartName(br)));
         }
 
         return t;
     }
 
     private void addTraceTblRow(BugReportModule br, Table t, FTraceProcessRecord pr, boolean addLink) {
-        String png = "ftrace_" + pr.pid + ".png";
         t.addData(makeProcName(br, pr, addLink));
-        t.addData(new Img(png));
+        if (pr.traceSvg != null) {
+            t.addData(new SimpleText(pr.traceSvg));
+        } else {
+            t.addData(new Img(getTracePngName(pr)));
+        }
     }
 
-    private String getParallelChartName() {
-        return "ftrace_nr_parallel.png";
+    private String getTracePngName(FTraceProcessRecord pr) {
+        return "ftrace_" + pr.pid + ".png";
+    }
+
+    private String getParallelChartName(Module br) {
+        String fn = "ftrace_nr_parallel.png";
+        if (br.getContext().isSvgCharts()) {
+            fn = ChartCanvas.getSvgName(fn);
+        }
+        return fn;
     }
 
     private String getTimeBarName(Module br, long duration) {
         if (mTimeBarName == null) {
-            String fnTimeBar = "ftrace_time.png";
-            if (Util.createTimeBar(br, fnTimeBar, TRACE_W, 0, duration / 1000)) { // us -> ms
-                mTimeBarName = fnTimeBar;
-            }
+            mTimeBarName = Util.createTimeBar(br, "ftrace_time.png", TRACE_W, 0, duration / 1000); // us -> ms
         }
         return mTimeBarName;
     }
 
-    private void createTracePng(String fileName, FTraceProcessRecord pr, TraceRecord head, long duration) {
+    private void createTraceImg(Module br, FTraceProcessRecord pr, TraceRecord head, long duration) {
         // Setup initial data
         int w = TRACE_W;
         int h = TRACE_H;
@@ -327,9 +344,18 @@ public class FTracePlugin extends Plugin {
         }
         int lastX = 0;
 
-        // Create the empty image
-        BufferedImage img = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
-        Graphics2D g = (Graphics2D)img.getGraphics();
+        // Create the empty image. There is one for every process, so svg images are
+        // embedded in the html instead of creating lots of small files
+        BufferedImage img = null;
+        StringWriter svg = null;
+        Graphics2D g;
+        if (br.getContext().isSvgCharts()) {
+            svg = new StringWriter();
+            g = new SvgGraphics(w, h, svg);
+        } else {
+            img = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+            g = (Graphics2D)img.getGraphics();
+        }
         g.setColor(Color.BLACK);
         g.fillRect(0, 0, w, h);
 
@@ -376,10 +402,11 @@ public class FTracePlugin extends Plugin {
         }
 
         // Save the image
-        try {
-            ImageIO.write(img, "png", new File(fileName));
-        } catch (IOException e) {
-            e.printStackTrace();
+        if (svg != null) {
+            ((SvgGraphics)g).finish();
+            pr.traceSvg = svg.toString();
+        } else {
+            br.saveImage(img, getTracePngName(pr));
         }
     }
 
@@ -396,10 +423,10 @@ public class FTracePlugin extends Plugin {
         // Create the empty image
         int stepSize = 8;
         int h = stepSize * max;
-        BufferedImage img = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+        ChartCanvas canvas = new ChartCanvas(br, getParallelChartName(br), w, h);
         int minNr[] = newIntArr(w, Integer.MAX_VALUE);
         int maxNr[] = newIntArr(w, 0);
-        Graphics2D g = (Graphics2D)img.getGraphics();
+        Graphics2D g = canvas.getGraphics();
         g.setColor(Color.BLACK);
         g.fillRect(0, 0, w, h);
         g.setColor(Color.RED);
@@ -453,8 +480,7 @@ public class FTracePlugin extends Plugin {
 
         new Para(ch).add("The following table shows how many processes were either running or waiting at the same time:");
 
-        String fnHist = "par_proc_hist.png";
-        new Block(ch).addStyle("float-right").add(new Img(fnHist));
+        DocNode hist = new Block(ch).addStyle("float-right");
         Table t = new Table(Table.FLAG_SORT, ch);
         t.addStyle("auto-width");
         t.addColumn("Number of parallel processes", Table.FLAG_ALIGN_RIGHT);
@@ -476,19 +502,15 @@ public class FTracePlugin extends Plugin {
         }
 
         // Save the image
-        try {
-            ImageIO.write(img, "png", new File(br.getBaseDir() + getParallelChartName()));
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        canvas.save();
 
         // Create the histogram image
         int hw = 400, hh = 400, hmax = 350;
         int hml = 64, hmr = 32, hmt = 32, hmb = 64;
         int thw = hml + hw + hmr;
         int thh = hmt + hh + hmb;
-        img = new BufferedImage(thw, thh, BufferedImage.TYPE_INT_RGB);
-        g = (Graphics2D)img.getGraphics();
+        canvas = new ChartCanvas(br, "par_proc_hist.png", thw, thh);
+        g = canvas.getGraphics();
         g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
         g.setColor(Color.WHITE);
         g.fillRect(0, 0, thw, thh);
@@ -536,11 +558,8 @@ public class FTracePlugin extends Plugin {
         // Draw the title
         g.drawString("Parallel process histogram", 10, 10 + fm.getAscent());
 
-        try {
-            ImageIO.write(img, "png", new File(br.getBaseDir() + fnHist));
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        canvas.save();
+        hist.add(new Img(canvas.getFileName()));
 
     }
 
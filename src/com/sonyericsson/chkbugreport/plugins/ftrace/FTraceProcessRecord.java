@@ -20,6 +20,7 @@ public class FTraceProcessRecord {
     int initState = Const.STATE_SLEEP;
     boolean initStateSet = false;
     ProcessRecord procRec;
+    String traceSvg;
 
     public FTraceProcessRecord(int pid, String name) {
         this.pid = pid;
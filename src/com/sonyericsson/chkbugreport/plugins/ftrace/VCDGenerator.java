@@ -3,8 +3,8 @@ package com.sonyericsson.chkbugreport.plugins.ftrace;
 import com.sonyericsson.chkbugreport.BugReportModule;
 import com.sonyericsson.chkbugreport.Util;
 
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintStream;
 
 public class VCDGenerator {
@@ -30,7 +30,7 @@ public class VCDGenerator {
         // Save the VCD file
         try {
             int runWaitBits = 8;
-            FileOutputStream fos = new FileOutputStream(mBr.getBaseDir() + mFn);
+            OutputStream fos = mBr.createFile(mFn);
             PrintStream fo = new PrintStream(fos);
 
             // write header
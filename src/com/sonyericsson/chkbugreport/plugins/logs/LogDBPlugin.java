@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2012 Sony Mobile Communications AB
+ *
+ * This file is part of ChkBugReport.
+ *
+ * ChkBugReport is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * ChkBugReport is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ChkBugReport.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.sonyericsson.chkbugreport.plugins.logs;
+
+import com.sonyericsson.chkbugreport.Module;
+import com.sonyericsson.chkbugreport.Plugin;
+import com.sonyericsson.chkbugreport.plugins.logs.event.EventLogPlugin;
+import com.sonyericsson.chkbugreport.plugins.logs.kernel.KernelLogLine;
+import com.sonyericsson.chkbugreport.plugins.logs.kernel.KernelLogLines;
+import com.sonyericsson.chkbugreport.plugins.logs.kernel.KernelLogPlugin;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+
+/**
+ * Exports all the parsed log lines into the report database (table "log_lines"),
+ * so they can be queried with SQL instead of searching in the raw logs.
+ *
+ * <p>This is enabled only with the --log-db option, since it makes the report
+ * database much bigger. The lines are inserted in big batches in a single
+ * transaction, and the indices are created only after all the lines are inserted.
+ * With --log-db:fts a full-text index is created on the messages as well
+ * (table "log_lines_fts"), for example:</p>
+ *
+ * <pre>SELECT * FROM log_lines WHERE id IN
+ *    (SELECT docid FROM log_lines_fts WHERE msg MATCH 'timeout')</pre>
+ */
+public class LogDBPlugin extends Plugin {
+
+    public static final String TAG = "[LogDBPlugin]";
+
+    private static final int BATCH_SIZE = 10000;
+
+    private static final String LOGS[][] = {
+        { "system", SystemLogPlugin.INFO_ID_SYSTEMLOG },
+        { "main", MainLogPlugin.INFO_ID_MAINLOG },
+        { "event", EventLogPlugin.INFO_ID_LOG },
+    };
+
+    private static final String KERNEL_LOGS[][] = {
+        { "kernel", KernelLogPlugin.INFO_ID_KERNEL_LOG },
+        { "last_kmsg", KernelLogPlugin.INFO_ID_LAST_KMSG },
+        { "kernel_from_system", KernelLogPlugin.INFO_ID_KERNEL_LOG_FROM_SYSTEM },
+    };
+
+    private PreparedStatement mInsert;
+    private int mNextId;
+    private int mPending;
+
+    @Override
+    public int getPrio() {
+        return 99; // After all the logs are loaded and annotated
+    }
+
+    @Override
+    public String[] getDependencies() {
+        return new String[] { "SystemLogPlugin", "MainLogPlugin", "EventLogPlugin", "KernelLogPlugin" };
+    }
+
+    @Override
+    public String[] getRequiredSections() {
+        return NO_SECTIONS;
+    }
+
+    @Override
+    public void reset() {
+        mInsert = null;
+        mNextId = 0;
+        mPending = 0;
+    }
+
+    @Override
+    public void load(Module mod) {
+        // NOP
+    }
+
+    @Override
+    public void generate(Module mod) {
+        if (!mod.getContext().isLogDB()) {
+            return;
+        }
+        Connection conn = mod.getSQLConnection();
+        if (conn == null) {
+            mod.printErr(3, TAG + "No report database, cannot export the logs");
+            return;
+        }
+        try {
+            export(mod, conn);
+        } catch (SQLException e) {
+            mod.printErr(3, TAG + "Failed to export the logs: " + e);
+        }
+    }
+
+    private void export(Module mod, Connection conn) throws SQLException {
+        boolean fts = mod.getContext().isLogDBFullText();
+        boolean created = false;
+        boolean done = false;
+        Statement stat = conn.createStatement();
+        try {
+            stat.execute("CREATE TABLE log_lines (id integer primary key, log varchar, ts int, pid int, level varchar, tag varchar, msg varchar)");
+            created = true;
+            mInsert = conn.prepareStatement("INSERT INTO log_lines(id,log,ts,pid,level,tag,msg) VALUES (?,?,?,?,?,?,?)");
+
+            // Insert the lines
+            for (String log[] : LOGS) {
+                LogLines lines = (LogLines) mod.getInfo(log[1]);
+                if (lines == null) continue;
+                int cnt = lines.size();
+                for (int i = 0; i < cnt; i++) {
+                    int pid = lines.getPid(i);
+                    add(log[0], lines.getTs(i), (pid > 0) ? pid : -1,
+                            String.valueOf(lines.getLevel(i)), lines.getTag(i), lines.getMsg(i));
+                }
+            }
+            for (String log[] : KERNEL_LOGS) {
+                KernelLogLines lines = (KernelLogLines) mod.getInfo(log[1]);
+                if (lines == null) continue;
+                for (KernelLogLine kl : lines) {
+                    int level = kl.getLevel();
+                    add(log[0], kl.ts, -1, (level >= 0) ? String.valueOf(level) : null, null, kl.getMsg());
+                }
+            }
+            if (mPending > 0) {
+                mInsert.executeBatch();
+            }
+
+            // Create the indices now, it's much faster than updating them after each insert
+            stat.execute("CREATE INDEX log_lines_ts ON log_lines(log, ts)");
+            stat.execute("CREATE INDEX log_lines_pid ON log_lines(pid)");
+            stat.execute("CREATE INDEX log_lines_tag ON log_lines(tag)");
+            if (fts) {
+                // The index refers to the messages in log_lines, so they are not stored twice
+                stat.execute("CREATE VIRTUAL TABLE log_lines_fts USING fts4(content=\"log_lines\", msg)");
+                stat.execute("INSERT INTO log_lines_fts(log_lines_fts) VALUES ('rebuild')");
+            }
+            conn.commit();
+            done = true;
+        } finally {
+            if (mInsert != null) {
+                mInsert.close();
+                mInsert = null;
+            }
+            if (created && !done) {
+                // Don't leave a partial table in the database. Note: the connection is shared
+                // with the other plugins, so their pending changes must not be rolled back.
+                dropTables(mod, stat);
+            }
+            stat.close();
+        }
+
+        mod.addHeaderLine("Note: " + mNextId + " log lines are exported into the report database (table log_lines"
+                + (fts ? ", full-text index: log_lines_fts" : "") + ")");
+    }
+
+    private void dropTables(Module mod, Statement stat) {
+        try {
+            stat.execute("DROP TABLE IF EXISTS log_lines_fts");
+            stat.execute("DROP TABLE IF EXISTS log_lines");
+            stat.getConnection().commit();
+        } catch (SQLException e) {
+            mod.printErr(3, TAG + "Failed to remove the partially exported logs: " + e);
+        }
+    }
+
+    private void add(String log, long ts, int pid, String level, String tag, String msg) throws SQLException {
+        PreparedStatement ins = mInsert;
+        ins.setInt(1, ++mNextId);
+        ins.setString(2, log);
+        ins.setLong(3, ts);
+        if (pid < 0) {
+            ins.setNull(4, Types.INTEGER);
+        } else {
+            ins.setInt(4, pid);
+        }
+        ins.setString(5, level);
+        ins.setString(6, tag);
+        ins.setString(7, msg);
+        ins.addBatch();
+        if (++mPending == BATCH_SIZE) {
+            ins.executeBatch();
+            mPending = 0;
+        }
+    }
+
+}
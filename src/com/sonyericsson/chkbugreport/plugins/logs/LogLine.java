@@ -21,6 +21,7 @@ package com.sonyericsson.chkbugreport.plugins.logs;
 import com.sonyericsson.chkbugreport.BugReportModule;
 import com.sonyericsson.chkbugreport.ProcessRecord;
 import com.sonyericsson.chkbugreport.Util;
+import com.sonyericsson.chkbugreport.doc.Anchor;
 import com.sonyericsson.chkbugreport.doc.Block;
 import com.sonyericsson.chkbugreport.doc.Renderer;
 
@@ -40,21 +41,44 @@ public class LogLine extends LogLineBase {
     public int pidS = -1;
     public int pidE = -1;
 
-    public String tag;
     public int tagS = -1;
     public int tagE = -1;
     public int tagId;
 
-    public String msg;
     public int msgS = -1;
     public int msgE = -1;
 
-    public String[] fields;
+    /* The tag, message and fields are extracted only when needed */
+    private String mTag;
+    private int mTagEnd = -1;
+    private String mMsg;
+    private String[] mFields;
 
     public int fmt = FMT_UNKNOWN;
 
     private ProcessRecord mPr;
 
+    /** The storage this line was fetched from (or null if this line is not stored yet) */
+    private LogLines mOwner;
+    private int mIdx;
+
+    /**
+     * Creates an empty line, used by LogLines to return a stored line.
+     */
+    /* package */ LogLine(LogLines owner, int idx) {
+        super(null);
+        mOwner = owner;
+        mIdx = idx;
+    }
+
+    /**
+     * Parses a log line.
+     * @param br The bugreport, used to look up the process record (can be null, in
+     *   which case the process record is not looked up)
+     * @param line The line to parse
+     * @param format The format of the line, or FMT_UNKNOWN to detect it
+     * @param prev The previous line (needed only by some formats)
+     */
     public LogLine(BugReportModule br, String line, int format, LogLine prev) {
         super(line);
         level = 'D';
@@ -86,7 +110,7 @@ public class LogLine extends LogLineBase {
             default: throw new RuntimeException("Invalid format: " + format);
         }
 
-        if (pid > 0) {
+        if (pid > 0 && br != null) {
             mPr = br.getProcessRecord(pid, true, true);
         }
     }
@@ -118,7 +142,7 @@ public class LogLine extends LogLineBase {
             p++;
         } while (p < line.length() && line.charAt(p) == ' ');
         try {
-            pid = Integer.parseInt(line.substring(p, p1));
+            pid = parseShortInt(line, p, p1);
         } catch(NumberFormatException t) {
             return false; // strange pid
         }
@@ -132,10 +156,9 @@ public class LogLine extends LogLineBase {
         while (tagE > tagS && line.charAt(tagE-1) == ' ') {
             tagE--;
         }
-        tag = line.substring(tagS, tagE);
+        mTagEnd = tagE;
 
         // Read message
-        msg = line.substring(p1 + 3);
         msgS = p1 + 3;
         msgE = line.length();
 
@@ -146,36 +169,49 @@ public class LogLine extends LogLineBase {
 
     private void finishParse(BugReportModule br) {
         // Colorize based on level
+        css = getCss(level);
+
+        ok = true;
+    }
+
+    /* package */ static String getCss(char level) {
         switch (level) {
-            case 'F': css = "log-fatal"; break;
-            case 'E': css = "log-error"; break;
-            case 'W': css = "log-warning"; break;
-            case 'I': css = "log-info"; break;
-            case 'D': css = "log-debug"; break;
-            case 'V': css = "log-verbose"; break;
+            case 'F': return "log-fatal";
+            case 'E': return "log-error";
+            case 'W': return "log-warning";
+            case 'I': return "log-info";
+            case 'V': return "log-verbose";
+            default: return "log-debug";
         }
+    }
 
-        // Read fields
-        if (msg.startsWith("[") && msg.endsWith("]")) {
+    /* package */ static String[] parseFields(String msg, int fmt) {
+        String[] fields;
+        if (fmt == FMT_CRASH) {
+            // Do some basic field parsing... very basic
+            fields = msg.split(",");
+            for (int i = 0; i < fields.length; i++) {
+                fields[i] = Util.strip(fields[i]);
+            }
+        } else if (msg.startsWith("[") && msg.endsWith("]")) {
             String s = msg.substring(1, msg.length() - 1);
             fields = s.split(",");
         } else {
             fields = new String[1];
             fields[0] = msg;
         }
-
-        ok = true;
+        return fields;
     }
 
     private void parseTS(String line) {
         // Read time stamp
         try {
-            int month = Integer.parseInt(line.substring(0, 2));
-            int day = Integer.parseInt(line.substring(3, 5));
-            int hour = Integer.parseInt(line.substring(6, 8));
-            int min = Integer.parseInt(line.substring(9, 11));
-            int sec  = Integer.parseInt(line.substring(12, 14));
-            int ms = Integer.parseInt(line.substring(15, 18));
+            int month = parseShortInt(line, 0, 2);
+            int day = parseShortInt(line, 3, 5);
+            int hour = parseShortInt(line, 6, 8);
+            int min = parseShortInt(line, 9, 11);
+            int sec  = parseShortInt(line, 12, 14);
+            int ms = parseShortInt(line, 15, 18);
             ts = month;
             ts = ts * 31 + day;
             ts = ts * 24 + hour;
@@ -187,6 +223,33 @@ public class LogLine extends LogLineBase {
         }
     }
 
+    /**
+     * Parses a short number (at most 9 characters) from the line, without creating a substring.
+     * Works the same way as Integer.parseInt(line.substring(from, to)).
+     */
+    private static int parseShortInt(String line, int from, int to) {
+        boolean neg = false;
+        if (from < to) {
+            char c = line.charAt(from);
+            if (c == '-' || c == '+') {
+                neg = c == '-';
+                from++;
+            }
+        }
+        if (from >= to) {
+            throw new NumberFormatException();
+        }
+        int ret = 0;
+        for (int i = from; i < to; i++) {
+            char c = line.charAt(i);
+            if (c < '0' || c > '9') {
+                throw new NumberFormatException();
+            }
+            ret = ret * 10 + (c - '0');
+        }
+        return neg ? -ret : ret;
+    }
+
     /**
      * Parse a log line from logs generated by brat scripts (adb logcat -v threadtime)
      */
@@ -201,7 +264,7 @@ public class LogLine extends LogLineBase {
         while (line.charAt(pidS) == ' ') pidS++;
         if (pidS >= pidE) return false;
         try {
-            pid = Integer.parseInt(line.substring(pidS, pidE));
+            pid = parseShortInt(line, pidS, pidE);
         } catch(NumberFormatException t) {
             return false; // strange pid
         }
@@ -217,15 +280,13 @@ public class LogLine extends LogLineBase {
         while (realE > tagS && line.charAt(realE-1) == ' ') {
             realE--;
         }
-        tag = line.substring(tagS, realE);
+        mTagEnd = realE;
 
         // Read message
         if (tagE + 2 < line.length()) {
-            msg = line.substring(tagE + 2);
             msgS = tagE + 2;
             msgE = line.length();
         } else {
-            msg = "";
             msgS = msgE = line.length();
         }
 
@@ -263,11 +324,12 @@ public class LogLine extends LogLineBase {
             pid = prev.pid;
             tagS = prev.tagS;
             tagE = prev.tagE;
-            tag = prev.tag;
+            mTagEnd = prev.mTagEnd;
+            mTag = prev.getTag();
             msgS = prev.msgS;
             msgE = msgS + line.length();
-            msg = line;
-            line = prev.line.substring(0, prev.msgS) + msg;
+            mMsg = line;
+            line = prev.line.substring(0, prev.msgS) + mMsg;
             this.line = line;
         } else {
             // This will hold the rebuilt line
@@ -315,7 +377,7 @@ public class LogLine extends LogLineBase {
             tagS += 2;
             tagE = line.indexOf(" ", tagS); // This might not work for tags which actually contain a space, but there is no more reliable way
             if (tagE < 0) return false;
-            tag = line.substring(tagS, tagE);
+            String tag = line.substring(tagS, tagE);
 
             // This could be an event tag, extract the tag id
             int idx0 = tag.indexOf('(');
@@ -333,13 +395,11 @@ public class LogLine extends LogLineBase {
             while (idx < line.length() && line.charAt(idx) == ' ') {
                 idx++;
             }
+            String msg;
             if (idx < line.length()) {
                 msg = line.substring(idx);
-                msgS = idx;
-                msgE = line.length();
             } else {
                 msg = "";
-                msgS = msgE = line.length();
             }
 
             // Finish reconstruction
@@ -358,18 +418,12 @@ public class LogLine extends LogLineBase {
             msgE = sb.length();
             line = sb.toString();
             this.line = line;
+            mTag = tag;
+            mTagEnd = tagE;
+            mMsg = msg;
         }
 
         finishParse(br);
-
-        // Override field parsing (Do some basic field parsing... very basic)
-        if (msg != null) {
-            fields = msg.split(",");
-            for (int i = 0; i < fields.length; i++) {
-                fields[i] = Util.strip(fields[i]);
-            }
-        }
-
         fmt = FMT_CRASH;
         return true;
     }
@@ -402,7 +456,7 @@ public class LogLine extends LogLineBase {
             p++;
         } while (p < line.length() && line.charAt(p) == ' ');
         try {
-            pid = Integer.parseInt(line.substring(p, p1));
+            pid = parseShortInt(line, p, p1);
         } catch(NumberFormatException t) {
             return false; // strange pid
         }
@@ -416,10 +470,9 @@ public class LogLine extends LogLineBase {
         while (tagE > tagS && line.charAt(tagE-1) == ' ') {
             tagE--;
         }
-        tag = line.substring(tagS, tagE);
+        mTagEnd = tagE;
 
         // Read message
-        msg = line.substring(p1 + 3);
         msgS = p1 + 3;
         msgE = line.length();
 
@@ -428,6 +481,38 @@ public class LogLine extends LogLineBase {
         return true;
     }
 
+    /**
+     * Returns the tag of the log line.
+     */
+    public String getTag() {
+        if (mTag == null) {
+            mTag = (mOwner != null) ? mOwner.getTag(mIdx) : line.substring(tagS, mTagEnd);
+        }
+        return mTag;
+    }
+
+    /**
+     * Returns the message of the log line (i.e. the text after the tag).
+     */
+    public String getMsg() {
+        if (mMsg == null) {
+            mMsg = line.substring(msgS, msgE);
+        }
+        return mMsg;
+    }
+
+    /**
+     * Returns the fields of the message. If the message is in the "[a,b,c]" format
+     * (or, in case of the crash format, "a, b, c"), each field is returned separately,
+     * otherwise the whole message is returned as one field.
+     */
+    public String[] getFields() {
+        if (mFields == null) {
+            mFields = parseFields(getMsg(), fmt);
+        }
+        return mFields;
+    }
+
     /**
      * This is a safe way to access fields.
      * If a given field does not exists, null will be returned (instead of throwing an exception)
@@ -435,6 +520,7 @@ public class LogLine extends LogLineBase {
      * @return The field value or null if the field is missing
      */
     public String getFields(int idx) {
+        String[] fields = getFields();
         return (idx < fields.length) ? fields[idx] : null;
     }
 
@@ -442,25 +528,49 @@ public class LogLine extends LogLineBase {
         if (title == null) {
             title = msg.replace("<br/>", "\n");
         }
-        Block box = new Block(this);
+        // If the line is stored in a LogLines, the marker must be stored there as well
+        Block box = new Block(mOwner == null ? this : mOwner.getDecoration(mIdx));
         box.addStyle(css);
         box.setTag(title);
         box.add(msg);
     }
 
+    @Override
+    public Anchor getAnchor() {
+        if (mOwner != null) {
+            return mOwner.getAnchor(mIdx);
+        }
+        return super.getAnchor();
+    }
+
     @Override
     protected void renderThis(Renderer r) throws IOException {
-        if (mPr == null) {
-            r.println("<div class=\"" + css + "\">" + Util.escape(line) + "</div>");
+        if (mOwner != null) {
+            mOwner.renderLine(r, mIdx);
+        } else {
+            renderLine(r, css, line, mPr, pid, pidS, pidE);
+        }
+    }
+
+    /* package */ static void renderLine(Renderer r, String css, String line, ProcessRecord pr, int pid, int pidS, int pidE) throws IOException {
+        r.print("<div class=\"");
+        r.print(css);
+        r.print("\">");
+        if (pr == null) {
+            Util.escapeTo(r, line, 0, line.length());
         } else {
-            String prFn = mPr.getAnchor().getFileName();
-            String prA = mPr.getAnchor().getName();
-            r.println("<div class=\"" + css + "\">" +
-                        Util.escape(line.substring(0, pidS)) +
-                        "<a href=\"" + prFn + "#" + prA + "\">" + pid + "</a>" +
-                        Util.escape(line.substring(pidE)) +
-                        "</div>");
+            Anchor a = pr.getAnchor();
+            Util.escapeTo(r, line, 0, pidS);
+            r.print("<a href=\"");
+            r.print(a.getFileName());
+            r.print('#');
+            r.print(a.getName());
+            r.print("\">");
+            r.print(pid);
+            r.print("</a>");
+            Util.escapeTo(r, line, pidE, line.length());
         }
+        r.println("</div>");
     }
 
 }
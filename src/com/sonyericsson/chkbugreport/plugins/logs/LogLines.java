@@ -1,8 +1,394 @@
 package com.sonyericsson.chkbugreport.plugins.logs;
 
+import com.sonyericsson.chkbugreport.BugReportModule;
+import com.sonyericsson.chkbugreport.ProcessRecord;
+import com.sonyericsson.chkbugreport.doc.Anchor;
+import com.sonyericsson.chkbugreport.doc.DocNode;
+import com.sonyericsson.chkbugreport.doc.Renderer;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 import java.util.Vector;
 
-@SuppressWarnings("serial")
-public class LogLines extends Vector<LogLine> {
+/**
+ * Stores the parsed log lines in a compact, column based format.
+ *
+ * <p>Instead of keeping a LogLine object (with all the extracted strings) for each line,
+ * only the original line and a few primitive values are stored, and the tags are shared.
+ * The get() method creates a temporary LogLine which can be used just as before, but
+ * it should not be kept for long. Markers and anchors added to such a temporary LogLine
+ * are stored here, so they are not lost.</p>
+ */
+public class LogLines implements Iterable<LogLine> {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private int mCount;
+    private String mLines[];
+    private long mTs[];
+    private char mLevel[];
+    private byte mFmt[];
+    private int mPid[];
+    private int mPidS[];
+    private int mPidE[];
+    private int mTag[];
+    private int mTagS[];
+    private int mTagE[];
+    private int mTagId[];
+    private int mMsgS[];
+
+    /** The shared tag strings, mTag[] contains the index in this list */
+    private Vector<String> mTags = new Vector<String>();
+    private HashMap<String, Integer> mTagIndex = new HashMap<String, Integer>();
+
+    /** The extra nodes (markers and anchors) rendered before some of the lines */
+    private HashMap<Integer, DocNode> mDecorations = new HashMap<Integer, DocNode>();
+    private HashMap<Integer, Anchor> mAnchors = new HashMap<Integer, Anchor>();
+
+    public LogLines() {
+        clear();
+    }
+
+    public int size() {
+        return mCount;
+    }
+
+    public void clear() {
+        mCount = 0;
+        mLines = new String[INITIAL_CAPACITY];
+        mTs = new long[INITIAL_CAPACITY];
+        mLevel = new char[INITIAL_CAPACITY];
+        mFmt = new byte[INITIAL_CAPACITY];
+        mPid = new int[INITIAL_CAPACITY];
+        mPidS = new int[INITIAL_CAPACITY];
+        mPidE = new int[INITIAL_CAPACITY];
+        mTag = new int[INITIAL_CAPACITY];
+        mTagS = new int[INITIAL_CAPACITY];
+        mTagE = new int[INITIAL_CAPACITY];
+        mTagId = new int[INITIAL_CAPACITY];
+        mMsgS = new int[INITIAL_CAPACITY];
+        mTags.clear();
+        mTagIndex.clear();
+        mDecorations.clear();
+        mAnchors.clear();
+    }
+
+    /**
+     * Appends a parsed log line. Only the extracted values are copied, the LogLine
+     * itself is not kept, so it can be thrown away.
+     */
+    public void add(LogLine sl) {
+        if (mCount == mLines.length) {
+            grow();
+        }
+        int idx = mCount++;
+        mLines[idx] = sl.line;
+        mTs[idx] = sl.ts;
+        mLevel[idx] = sl.level;
+        mFmt[idx] = (byte) sl.fmt;
+        mPid[idx] = sl.pid;
+        mPidS[idx] = sl.pidS;
+        mPidE[idx] = sl.pidE;
+        mTag[idx] = internTag(sl.getTag());
+        mTagS[idx] = sl.tagS;
+        mTagE[idx] = sl.tagE;
+        mTagId[idx] = sl.tagId;
+        mMsgS[idx] = sl.msgS;
+    }
+
+    /**
+     * Appends a line from another list, copying the columns directly.
+     * The markers and anchors of the line are not copied.
+     */
+    public void add(LogLines src, int srcIdx) {
+        if (mCount == mLines.length) {
+            grow();
+        }
+        int idx = mCount++;
+        mLines[idx] = src.mLines[srcIdx];
+        mTs[idx] = src.mTs[srcIdx];
+        mLevel[idx] = src.mLevel[srcIdx];
+        mFmt[idx] = src.mFmt[srcIdx];
+        mPid[idx] = src.mPid[srcIdx];
+        mPidS[idx] = src.mPidS[srcIdx];
+        mPidE[idx] = src.mPidE[srcIdx];
+        mTag[idx] = internTag(src.getTag(srcIdx));
+        mTagS[idx] = src.mTagS[srcIdx];
+        mTagE[idx] = src.mTagE[srcIdx];
+        mTagId[idx] = src.mTagId[srcIdx];
+        mMsgS[idx] = src.mMsgS[srcIdx];
+    }
+
+    /**
+     * Returns a temporary LogLine object containing the data of the given line.
+     */
+    public LogLine get(int idx) {
+        if (idx < 0 || idx >= mCount) {
+            throw new ArrayIndexOutOfBoundsException(idx);
+        }
+        LogLine sl = new LogLine(this, idx);
+        String line = mLines[idx];
+        sl.line = line;
+        sl.ts = mTs[idx];
+        sl.level = mLevel[idx];
+        sl.css = LogLine.getCss(sl.level);
+        sl.fmt = mFmt[idx];
+        sl.pid = mPid[idx];
+        sl.pidS = mPidS[idx];
+        sl.pidE = mPidE[idx];
+        sl.tagS = mTagS[idx];
+        sl.tagE = mTagE[idx];
+        sl.tagId = mTagId[idx];
+        sl.msgS = mMsgS[idx];
+        sl.msgE = line.length();
+        sl.ok = true;
+        return sl;
+    }
+
+    /*
+     * The column accessors below return a single value of a line, without creating a
+     * temporary LogLine, so they should be used in the loops which need only a few values.
+     */
+
+    /**
+     * Returns the tag of the given line. The tag strings are shared.
+     */
+    public String getTag(int idx) {
+        return mTags.get(mTag[idx]);
+    }
+
+    public char getLevel(int idx) {
+        return mLevel[idx];
+    }
+
+    public long getTs(int idx) {
+        return mTs[idx];
+    }
+
+    public int getPid(int idx) {
+        return mPid[idx];
+    }
+
+    /**
+     * Returns the position of the pid in the text of the given line.
+     */
+    public int getPidStart(int idx) {
+        return mPidS[idx];
+    }
+
+    /**
+     * Returns the position after the pid in the text of the given line.
+     */
+    public int getPidEnd(int idx) {
+        return mPidE[idx];
+    }
+
+    public String getLine(int idx) {
+        return mLines[idx];
+    }
+
+    public String getMsg(int idx) {
+        return mLines[idx].substring(mMsgS[idx]);
+    }
+
+    @Override
+    public Iterator<LogLine> iterator() {
+        return new Iterator<LogLine>() {
+            private int mIdx = 0;
+
+            @Override
+            public boolean hasNext() {
+                return mIdx < mCount;
+            }
+
+            @Override
+            public LogLine next() {
+                if (mIdx >= mCount) {
+                    throw new NoSuchElementException();
+                }
+                return get(mIdx++);
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * Returns the node containing the extra items (like markers) rendered before the given line.
+     */
+    /* package */ synchronized DocNode getDecoration(int idx) {
+        DocNode ret = mDecorations.get(idx);
+        if (ret == null) {
+            ret = new DocNode();
+            mDecorations.put(idx, ret);
+        }
+        return ret;
+    }
+
+    /**
+     * Returns the extra items rendered before the given line, or null if there are none.
+     */
+    /* package */ synchronized DocNode peekDecoration(int idx) {
+        return mDecorations.get(idx);
+    }
+
+    /**
+     * Returns the anchor of the given line, or null if nobody is linking to it.
+     */
+    /* package */ synchronized Anchor peekAnchor(int idx) {
+        return mAnchors.get(idx);
+    }
+
+    /* package */ synchronized Anchor getAnchor(int idx) {
+        Anchor ret = mAnchors.get(idx);
+        if (ret == null) {
+            // Several lines can have the same timestamp, so add the index as well
+            ret = new Anchor("l" + mTs[idx] + "_" + idx);
+            getDecoration(idx).add(ret);
+            mAnchors.put(idx, ret);
+        }
+        return ret;
+    }
+
+    /**
+     * Renders a single line (without the markers and anchors).
+     */
+    /* package */ void renderLine(Renderer r, int idx) throws IOException {
+        int pid = mPid[idx];
+        ProcessRecord pr = null;
+        if (pid > 0) {
+            pr = ((BugReportModule) r.getModule()).getProcessRecord(pid, true, true);
+        }
+        LogLine.renderLine(r, LogLine.getCss(mLevel[idx]), mLines[idx], pr, pid, mPidS[idx], mPidE[idx]);
+    }
+
+    /**
+     * Creates a document node which renders all the lines, including the markers and anchors.
+     * There should be only one such node in the document, otherwise the anchors would be duplicated.
+     */
+    public DocNode createNode() {
+        return new DocNode() {
+            @Override
+            public void prepare(Renderer r) {
+                for (int idx : getDecoratedLines()) {
+                    mDecorations.get(idx).prepare(r);
+                }
+            }
+
+            @Override
+            public void render(Renderer r) throws IOException {
+                int decorated[] = getDecoratedLines();
+                int next = 0;
+                for (int i = 0; i < mCount; i++) {
+                    if (next < decorated.length && decorated[next] == i) {
+                        mDecorations.get(i).render(r);
+                        next++;
+                    }
+                    renderLine(r, i);
+                }
+            }
+        };
+    }
+
+    /**
+     * Creates a document node which saves the lines into a data file and shows them page by
+     * page, instead of rendering them all into the html file.
+     * @see PagedLogNode
+     */
+    public DocNode createPagedNode(String id) {
+        return new PagedLogNode(this, id);
+    }
+
+    /* package */ synchronized int[] getDecoratedLines() {
+        int ret[] = new int[mDecorations.size()];
+        int i = 0;
+        for (int idx : mDecorations.keySet()) {
+            ret[i++] = idx;
+        }
+        Arrays.sort(ret);
+        return ret;
+    }
+
+    private int internTag(String tag) {
+        Integer ret = mTagIndex.get(tag);
+        if (ret == null) {
+            ret = mTags.size();
+            mTags.add(tag);
+            mTagIndex.put(tag, ret);
+        }
+        return ret;
+    }
+
+    private void grow() {
+        int cap = mLines.length * 2;
+        String lines[] = new String[cap];
+        System.arraycopy(mLines, 0, lines, 0, mCount);
+        mLines = lines;
+        long ts[] = new long[cap];
+        System.arraycopy(mTs, 0, ts, 0, mCount);
+        mTs = ts;
+        char level[] = new char[cap];
+        System.arraycopy(mLevel, 0, level, 0, mCount);
+        mLevel = level;
+        byte fmt[] = new byte[cap];
+        System.arraycopy(mFmt, 0, fmt, 0, mCount);
+        mFmt = fmt;
+        mPid = grow(mPid, cap);
+        mPidS = grow(mPidS, cap);
+        mPidE = grow(mPidE, cap);
+        mTag = grow(mTag, cap);
+        mTagS = grow(mTagS, cap);
+        mTagE = grow(mTagE, cap);
+        mTagId = grow(mTagId, cap);
+        mMsgS = grow(mMsgS, cap);
+    }
+
+    private int[] grow(int[] arr, int cap) {
+        int ret[] = new int[cap];
+        System.arraycopy(arr, 0, ret, 0, mCount);
+        return ret;
+    }
+
+    /**
+     * Renders a subset of the lines, for example the lines of a single process.
+     * Only the lines are rendered, the markers and anchors are not.
+     */
+    public static class Selection extends DocNode {
+
+        private LogLines mLog;
+        private int mIdx[] = new int[16];
+        private int mCount;
+
+        public Selection(LogLines log) {
+            mLog = log;
+        }
+
+        public void add(int idx) {
+            if (mCount == mIdx.length) {
+                int tmp[] = new int[mCount * 2];
+                System.arraycopy(mIdx, 0, tmp, 0, mCount);
+                mIdx = tmp;
+            }
+            mIdx[mCount++] = idx;
+        }
+
+        public int getLineCount() {
+            return mCount;
+        }
+
+        @Override
+        public void render(Renderer r) throws IOException {
+            for (int i = 0; i < mCount; i++) {
+                mLog.renderLine(r, mIdx[i]);
+            }
+        }
+
+    }
 
 }
@@ -25,6 +25,7 @@ import com.sonyericsson.chkbugreport.ProcessRecord;
 import com.sonyericsson.chkbugreport.Section;
 import com.sonyericsson.chkbugreport.TimeWindowMarker;
 import com.sonyericsson.chkbugreport.Util;
+import com.sonyericsson.chkbugreport.chart.ChartCanvas;
 import com.sonyericsson.chkbugreport.doc.Block;
 import com.sonyericsson.chkbugreport.doc.Bug;
 import com.sonyericsson.chkbugreport.doc.Chapter;
@@ -40,21 +41,20 @@ import java.awt.Color;
 import java.awt.FontMetrics;
 import java.awt.Graphics2D;
 import java.awt.RenderingHints;
-import java.awt.image.BufferedImage;
-import java.io.File;
-import java.io.IOException;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Vector;
 
-import javax.imageio.ImageIO;
-
 public abstract class LogPlugin extends Plugin {
 
     public static final String TAG = "[LogPlugin]";
 
     private static final long DAY = 24 * 60 * 60 * 1000;
+    private static final long NO_TS = Long.MIN_VALUE;
+
+    /** The minimum number of lines parsed on one thread when parsing in parallel */
+    private static final int MIN_CHUNK_SIZE = 50000;
 
     private HashMap<Integer,ProcessLog> mLogs = new HashMap<Integer, ProcessLog>();
 
@@ -70,9 +70,13 @@ public abstract class LogPlugin extends Plugin {
     private Vector<ConfigChange> mConfigChanges = new Vector<ConfigChange>();
 
     private boolean mLoaded = false;
+    private int mSkippedDueToTimeJump;
+    private int mSkippedDueToTimeWindow;
 
     private Section mSection;
     private Chapter mCh;
+    /** The log chapter, when the log is shown page by page */
+    private Chapter mPagedCh;
 
     public LogPlugin(String which, String id, String sectionName) {
         mWhich = which;
@@ -80,6 +84,16 @@ public abstract class LogPlugin extends Plugin {
         mSectionName = sectionName;
     }
 
+    @Override
+    public String[] getDependencies() {
+        return NO_DEPENDENCIES;
+    }
+
+    @Override
+    public String[] getRequiredSections() {
+        return new String[] { mSectionName };
+    }
+
     public Chapter getChapter() {
         return mCh;
     }
@@ -98,6 +112,7 @@ public abstract class LogPlugin extends Plugin {
         mLoaded = false;
         mSection = null;
         mCh = null;
+        mPagedCh = null;
         mConfigChanges.clear();
     }
 
@@ -114,66 +129,62 @@ public abstract class LogPlugin extends Plugin {
         // Load and parse the lines
         mCh = new Chapter(br, mWhich + " log");
         int cnt = mSection.getLineCount();
-        int fmt = LogLine.FMT_UNKNOWN;
         LogLine prev = null;
-        int skippedDueToTimeJump = 0;
-        int skippedDueToTimeWindow = 0;
+        mSkippedDueToTimeJump = 0;
+        mSkippedDueToTimeWindow = 0;
         TimeWindowMarker twStart = br.getContext().getTimeWindowStart();
         TimeWindowMarker twEnd = br.getContext().getTimeWindowEnd();
-        for (int i = 0; i < cnt; i++) {
-            String line = mSection.getLine(i);
-            LogLine sl = new LogLine(br, line, fmt, prev);
-
+        // Detect the format only once, using the first valid line
+        int firstLine = 0;
+        int fmt = LogLine.FMT_UNKNOWN;
+        for (; firstLine < cnt; firstLine++) {
+            LogLine sl = new LogLine(br, mSection.getLine(firstLine), LogLine.FMT_UNKNOWN, null);
             if (sl.ok) {
-                // Check for timewidow matching
-                boolean skip = false;
-                if (!twStart.isAfterOrNoFilter(sl.ts)) {
-                    skip = true;
-                }
-                if (!twEnd.isBeforeOrNoFilter(sl.ts)) {
-                    skip = true;
-                }
-                if (skip) {
-                    skippedDueToTimeWindow++;
-                    continue;
-                }
-
-                // Check for timejumps
-                if (prev != null) {
-                    if (prev.ts + DAY < sl.ts) {
-                        // We got a huge timejump, ignore everything before this
-                        skippedDueToTimeJump += mParsedLog.size();
-                        mParsedLog.clear();
-                        prev = null;
+                fmt = sl.fmt;
+                break;
+            }
+        }
+        int threads = br.getContext().getThreadCount();
+        boolean contextFree = fmt == LogLine.FMT_STD || fmt == LogLine.FMT_BRAT;
+        if (threads > 1 && contextFree && cnt - firstLine >= 2 * MIN_CHUNK_SIZE) {
+            // Each line can be parsed independently, so parse the chunks in parallel,
+            // and process the parsed lines in the original order afterwards
+            long prevTs = NO_TS;
+            for (LogLines chunk : parseInChunks(br, firstLine, cnt, fmt, threads)) {
+                int chunkSize = chunk.size();
+                for (int i = 0; i < chunkSize; i++) {
+                    long ts = chunk.getTs(i);
+                    // Create the process records in the same order as when loading sequentially
+                    br.getProcessRecord(chunk.getPid(i), true, true);
+                    if (checkLineTs(ts, prevTs, twStart, twEnd)) {
+                        mParsedLog.add(chunk, i);
+                        prevTs = ts;
                     }
                 }
-
-                mParsedLog.add(sl);
-                fmt = sl.fmt;
-                prev = sl;
+            }
+        } else {
+            for (int i = firstLine; i < cnt; i++) {
+                String line = mSection.getLine(i);
+                LogLine sl = new LogLine(br, line, fmt, prev);
+                if (sl.ok) {
+                    prev = addLine(sl, prev, twStart, twEnd);
+                }
             }
         }
         cnt = mParsedLog.size();
         if (cnt > 0) {
-            mTsFirst = mParsedLog.get(0).ts;
-            mTsLast = mParsedLog.get(cnt - 1).ts;
+            mTsFirst = mParsedLog.getTs(0);
+            mTsLast = mParsedLog.getTs(cnt - 1);
         }
 
         // Check for timestamp order
         int orderErrors = 0;
-        LogLines errLines = new LogLines();
-        LogLine lastLine = null;
-        for (int i = 0; i < cnt; i++) {
-            LogLine sl = mParsedLog.get(i);
-            if (sl.ok) {
-                if (lastLine != null) {
-                    if (lastLine.ts > sl.ts) {
-                        orderErrors++;
-                        errLines.add(lastLine);
-                        errLines.add(sl);
-                    }
-                }
-                lastLine = sl;
+        Vector<LogLine> errLines = new Vector<LogLine>();
+        for (int i = 1; i < cnt; i++) {
+            if (mParsedLog.getTs(i - 1) > mParsedLog.getTs(i)) {
+                orderErrors++;
+                errLines.add(mParsedLog.get(i - 1));
+                errLines.add(mParsedLog.get(i));
             }
         }
         if (orderErrors > 0) {
@@ -195,18 +206,18 @@ public abstract class LogPlugin extends Plugin {
             }
             br.addBug(bug);
         }
-        if (skippedDueToTimeJump > 0) {
+        if (mSkippedDueToTimeJump > 0) {
             Bug bug = new Bug(Bug.PRIO_LOG_TIMEJUMP, 0, "Huge time gap in " + mSectionName);
             bug.add(new Block()
                 .add("There was at least one huge time gap (at least one day) in the log. The lines before the last time gap ("
-                    + skippedDueToTimeJump + " lines) have been skipped in the ")
+                    + mSkippedDueToTimeJump + " lines) have been skipped in the ")
                 .add(new Link(getChapter().getAnchor(), mSectionName)));
             br.addBug(bug);
         }
-        if (skippedDueToTimeWindow > 0) {
+        if (mSkippedDueToTimeWindow > 0) {
             Bug bug = new Bug(Bug.PRIO_LOG_TIMEWINDOW, 0, "Lines ignored due to time window in " + mSectionName);
             bug.add(new Block()
-            .add("There were " + skippedDueToTimeWindow + " lines ignored due to the time window you specified ("
+            .add("There were " + mSkippedDueToTimeWindow + " lines ignored due to the time window you specified ("
                     + twStart.format() + ".." + twEnd.format() + ") in the ")
                     .add(new Link(getChapter().getAnchor(), mSectionName)));
             br.addBug(bug);
@@ -214,11 +225,7 @@ public abstract class LogPlugin extends Plugin {
 
         // Analyze the log
         for (int i = 0; i < cnt; i++) {
-            LogLine sl = mParsedLog.get(i);
-            if (sl.ok) {
-                // Analyze the log line
-                analyze(sl, i, br, mSection);
-            }
+            analyze(mParsedLog.get(i), i, br, mSection);
         }
 
         onLoaded(br);
@@ -227,6 +234,80 @@ public abstract class LogPlugin extends Plugin {
         mLoaded = true;
     }
 
+    /**
+     * Appends a parsed line to the log, unless it's filtered out.
+     * @return The last line added to the log
+     */
+    private LogLine addLine(LogLine sl, LogLine prev, TimeWindowMarker twStart, TimeWindowMarker twEnd) {
+        if (!checkLineTs(sl.ts, (prev == null) ? NO_TS : prev.ts, twStart, twEnd)) {
+            return prev;
+        }
+        mParsedLog.add(sl);
+        return sl;
+    }
+
+    /**
+     * Checks the timestamp of a line before it's added to the parsed log.
+     * @param prevTs The timestamp of the previously added line, or NO_TS
+     * @return false if the line must be skipped
+     */
+    private boolean checkLineTs(long ts, long prevTs, TimeWindowMarker twStart, TimeWindowMarker twEnd) {
+        // Check for timewidow matching
+        boolean skip = false;
+        if (!twStart.isAfterOrNoFilter(ts)) {
+            skip = true;
+        }
+        if (!twEnd.isBeforeOrNoFilter(ts)) {
+            skip = true;
+        }
+        if (skip) {
+            mSkippedDueToTimeWindow++;
+            return false;
+        }
+
+        // Check for timejumps
+        if (prevTs != NO_TS) {
+            if (prevTs + DAY < ts) {
+                // We got a huge timejump, ignore everything before this
+                mSkippedDueToTimeJump += mParsedLog.size();
+                mParsedLog.clear();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parses the lines of the section in chunks, on the worker threads of the module.
+     * This can be used only if the lines don't depend on the previous lines.
+     * @return The parsed lines of each chunk (containing only the valid lines)
+     */
+    private LogLines[] parseInChunks(Module br, int from, int to, final int fmt, int threads) {
+        int chunkCount = Math.min(threads * 4, (to - from) / MIN_CHUNK_SIZE);
+        final LogLines chunks[] = new LogLines[chunkCount];
+        Vector<Runnable> tasks = new Vector<Runnable>();
+        for (int c = 0; c < chunkCount; c++) {
+            final int idx = c;
+            final int chunkFrom = from + (int) ((long) (to - from) * c / chunkCount);
+            final int chunkTo = from + (int) ((long) (to - from) * (c + 1) / chunkCount);
+            tasks.add(new Runnable() {
+                @Override
+                public void run() {
+                    LogLines chunk = new LogLines();
+                    for (int i = chunkFrom; i < chunkTo; i++) {
+                        // The process records are not created here, see load()
+                        LogLine sl = new LogLine(null, mSection.getLine(i), fmt, null);
+                        if (sl.ok) {
+                            chunk.add(sl);
+                        }
+                    }
+                    chunks[idx] = chunk;
+                }
+            });
+        }
+        br.runTasks(tasks);
+        return chunks;
+    }
+
     protected void onLoaded(BugReportModule br) {
         // NOP
     }
@@ -257,18 +338,28 @@ public abstract class LogPlugin extends Plugin {
 
     private Chapter generateLog(BugReportModule br) {
         Chapter ch = new Chapter(br, "Log");
+        int cnt = mParsedLog.size();
+        if (br.getContext().isPagedLogs()) {
+            // The lines are saved only once, in a data file, and the filtering by process is
+            // done in the browser, so the per-process logs are not generated. The paged view
+            // has its own toolbar (the old one works only on the rendered lines).
+            mPagedCh = ch;
+            ch.add(mParsedLog.createPagedNode(mId));
+            for (int i = 0; i < cnt; i++) {
+                ProcessLog pl = getLogOf(br, mParsedLog.getPid(i));
+                pl.countLine();
+            }
+            return ch;
+        }
+
         new LogToolbar(ch);
         DocNode log = new Block().addStyle("log");
         ch.add(log);
+        log.add(mParsedLog.createNode());
 
-        int cnt = mParsedLog.size();
         for (int i = 0; i < cnt; i++) {
-            LogLine sl = mParsedLog.get(i);
-            if (sl.ok) {
-                ProcessLog pl = getLogOf(br, sl.pid);
-                pl.add(sl.copy());
-            }
-            log.add(sl);
+            ProcessLog pl = getLogOf(br, mParsedLog.getPid(i));
+            pl.addLine(i);
         }
         return ch;
     }
@@ -347,8 +438,12 @@ public abstract class LogPlugin extends Plugin {
             // Add link from global process record
             ProcessRecord pr = br.getProcessRecord(pid, true, true);
             String text = mWhich + " log (filtered by this process) &gt;&gt;&gt;";
-            new Block(pr).add(new Link(log.getAnchor(), text));
-            br.addExtraFile(log);
+            if (mPagedCh != null) {
+                new Block(pr).add(new PagedLogNode.FilterLink(mPagedCh.getAnchor(), "pid=" + pid, text));
+            } else {
+                new Block(pr).add(new Link(log.getAnchor(), text));
+                br.addExtraFile(log);
+            }
         }
         return log;
     }
@@ -420,8 +515,8 @@ public abstract class LogPlugin extends Plugin {
         }
 
         // Create an empty image
-        BufferedImage img = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
-        Graphics2D g = (Graphics2D)img.getGraphics();
+        ChartCanvas canvas = new ChartCanvas(br, "gc_" + mId + "_" + pid + ".png", w, h);
+        Graphics2D g = canvas.getGraphics();
         g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
         g.setColor(Color.WHITE);
         g.fillRect(0, 0, w, h);
@@ -608,12 +703,8 @@ public abstract class LogPlugin extends Plugin {
         }
 
         // Save the image
-        String fn = "gc_" + mId + "_" + pid + ".png";
-        try {
-            ImageIO.write(img, "png", new File(br.getBaseDir() + fn));
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        canvas.save();
+        String fn = canvas.getFileName();
 
         // Append a link at the end of the system log
         ch.add(new Img(fn));
@@ -682,6 +773,7 @@ public abstract class LogPlugin extends Plugin {
         private int mPid;
         private int mLines;
         private DocNode mDiv;
+        private LogLines.Selection mSelection;
 
         public ProcessLog(Module mod, int pid) {
             super(mod, String.format(mId + "log_%05d.html", pid));
@@ -702,6 +794,26 @@ public abstract class LogPlugin extends Plugin {
 
         public void add(LogLineBase.LogLineProxy ll) {
             mDiv.add(ll);
+            mSelection = null;
+            mLines++;
+        }
+
+        /**
+         * Adds a line from the parsed log, without creating a LogLineProxy for it.
+         */
+        public void addLine(int idx) {
+            if (mSelection == null) {
+                mSelection = new LogLines.Selection(mParsedLog);
+                mDiv.add(mSelection);
+            }
+            mSelection.add(idx);
+            mLines++;
+        }
+
+        /**
+         * Counts a line of this process, without adding it to this log.
+         */
+        public void countLine() {
             mLines++;
         }
 
@@ -0,0 +1,341 @@
+/*
+ * Copyright (C) 2012 Sony Mobile Communications AB
+ *
+ * This file is part of ChkBugReport.
+ *
+ * ChkBugReport is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * ChkBugReport is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ChkBugReport.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.sonyericsson.chkbugreport.plugins.logs;
+
+import com.sonyericsson.chkbugreport.BugReportModule;
+import com.sonyericsson.chkbugreport.ProcessRecord;
+import com.sonyericsson.chkbugreport.doc.Anchor;
+import com.sonyericsson.chkbugreport.doc.Block;
+import com.sonyericsson.chkbugreport.doc.Button;
+import com.sonyericsson.chkbugreport.doc.DocNode;
+import com.sonyericsson.chkbugreport.doc.HtmlNode;
+import com.sonyericsson.chkbugreport.doc.MemRenderer;
+import com.sonyericsson.chkbugreport.doc.Renderer;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Renders a log as a paged view.
+ *
+ * <p>The lines are not rendered into the html file. Instead they are saved (only once) into
+ * a javascript data file next to it, together with an index: the offset of each line in the
+ * text, the log level of each line and the list of lines for each pid and tag. The page (see
+ * lpv* in main.js) renders only one page of lines at a time, and does the filtering in the
+ * browser using these, so there is no need to generate a separate page for each process.</p>
+ *
+ * <p>The markers and anchors of the lines are saved in the data file as well, and links to the
+ * line anchors work as before: the page containing the line is shown when the page is opened.
+ * The pids are linked to the processes, like in the html log.</p>
+ */
+/* package */ class PagedLogNode extends DocNode {
+
+    private static final char HEX[] = "0123456789abcdef".toCharArray();
+
+    private LogLines mLog;
+    private String mId;
+
+    public PagedLogNode(LogLines log, String id) {
+        mLog = log;
+        mId = id;
+
+        DocNode bar = new Block(this).addStyle("lpv-toolbar");
+        bar.add("Level:");
+        HtmlNode level = new HtmlNode("select", bar).addStyle("lpv-level");
+        new HtmlNode("option", level, "All");
+        for (char c : "VDIWEF".toCharArray()) {
+            new HtmlNode("option", level, Character.toString(c));
+        }
+        bar.add(" Pid:");
+        new HtmlNode("input", bar).addStyle("lpv-pid");
+        bar.add(" Tag:");
+        new HtmlNode("input", bar).addStyle("lpv-tag");
+        bar.add(" RegExp:");
+        new HtmlNode("input", bar).addStyle("lpv-regexp");
+        bar.add(new Button("Filter", "javascript:lpvFilter('" + mId + "')"));
+        bar.add(new Button("Reset", "javascript:lpvReset('" + mId + "')"));
+        bar.add(" ");
+        bar.add(new Button("&lt;&lt;", "javascript:lpvPage('" + mId + "', -1000000)"));
+        bar.add(new Button("&lt;", "javascript:lpvPage('" + mId + "', -1)"));
+        bar.add(new Button("&gt;", "javascript:lpvPage('" + mId + "', 1)"));
+        bar.add(new Button("&gt;&gt;", "javascript:lpvPage('" + mId + "', 1000000)"));
+        bar.add(" ");
+        new HtmlNode("span", bar).addStyle("lpv-info");
+        new Block(this).addStyle("log lpv-lines");
+    }
+
+    private String getDataFileName() {
+        return mId + "_log.js";
+    }
+
+    @Override
+    public void prepare(Renderer r) {
+        super.prepare(r);
+        for (int idx : mLog.getDecoratedLines()) {
+            mLog.peekDecoration(idx).prepare(r);
+        }
+    }
+
+    @Override
+    public void render(Renderer r) throws IOException {
+        writeData(r, getDataFileName());
+
+        r.println("<div class=\"log-paged\" id=\"lpv-" + mId + "\">");
+        super.render(r);
+        r.println("</div>");
+        r.println("<script type=\"text/javascript\" src=\"" + getDataFileName() + "\"></script>");
+    }
+
+    private void writeData(Renderer r, String fileName) throws IOException {
+        int cnt = mLog.size();
+        int decorated[] = mLog.getDecoratedLines();
+        TreeMap<String, Postings> pids = new TreeMap<String, Postings>();
+        TreeMap<String, Postings> tags = new TreeMap<String, Postings>();
+        TreeSet<String> levels = new TreeSet<String>();
+
+        // Everything is escaped to ascii, so the encoding of the page doesn't matter
+        Writer out = new BufferedWriter(new OutputStreamWriter(r.getModule().createFile(fileName), "US-ASCII"), 64 * 1024);
+        try {
+            out.write("if (!window.chkbugreport_logs) chkbugreport_logs = {};\n");
+            out.write("chkbugreport_logs[\"" + mId + "\"] = {\n");
+            out.write("count: " + cnt + ",\n");
+
+            // The text of all the lines, and the offset of each line in it
+            int offs[] = new int[cnt + 1];
+            int pos = 0;
+            out.write("text: \"");
+            for (int i = 0; i < cnt; i++) {
+                String line = mLog.getLine(i);
+                offs[i] = pos;
+                pos += line.length() + 1;
+                writeString(out, line);
+                out.write("\\n");
+                Postings.add(pids, Integer.toString(mLog.getPid(i)), i);
+                String tag = mLog.getTag(i);
+                if (tag != null) {
+                    Postings.add(tags, tag, i);
+                }
+                levels.add(Character.toString(mLog.getLevel(i)));
+            }
+            offs[cnt] = pos;
+            out.write("\",\n");
+            out.write("offs: ");
+            writeInts(out, offs, offs.length);
+            out.write(",\n");
+
+            // The position of the pid in each line, and the link to the process of each pid
+            BugReportModule br = (BugReportModule) r.getModule();
+            int pidS[] = new int[cnt];
+            int pidE[] = new int[cnt];
+            TreeMap<Integer, Anchor> procs = new TreeMap<Integer, Anchor>();
+            for (int i = 0; i < cnt; i++) {
+                int pid = mLog.getPid(i);
+                ProcessRecord pr = br.getProcessRecord(pid, true, true);
+                if (pr != null) {
+                    pidS[i] = mLog.getPidStart(i);
+                    pidE[i] = mLog.getPidEnd(i);
+                    procs.put(pid, pr.getAnchor());
+                }
+            }
+            out.write("pidS: ");
+            writeInts(out, pidS, cnt);
+            out.write(",\npidE: ");
+            writeInts(out, pidE, cnt);
+            out.write(",\nprocs: {");
+            boolean first = true;
+            for (Map.Entry<Integer, Anchor> entry : procs.entrySet()) {
+                if (!first) {
+                    out.write(",\n");
+                }
+                first = false;
+                Anchor a = entry.getValue();
+                writeKey(out, entry.getKey().toString());
+                out.write('"');
+                writeString(out, a.getFileName() + "#" + a.getName());
+                out.write('"');
+            }
+            out.write("},\n");
+
+            // The level of each line (one character per line) and the style used for them
+            out.write("level: \"");
+            for (int i = 0; i < cnt; i++) {
+                writeChar(out, mLog.getLevel(i));
+            }
+            out.write("\",\n");
+            out.write("css: {");
+            first = true;
+            for (String level : levels) {
+                if (!first) {
+                    out.write(",");
+                }
+                first = false;
+                writeKey(out, level);
+                out.write("\"" + LogLine.getCss(level.charAt(0)) + "\"");
+            }
+            out.write("},\n");
+
+            // The index
+            out.write("pids: ");
+            writePostings(out, pids);
+            out.write(",\ntags: ");
+            writePostings(out, tags);
+            out.write(",\n");
+
+            // The markers and anchors rendered before some of the lines
+            out.write("deco: {");
+            for (int i = 0; i < decorated.length; i++) {
+                MemRenderer mr = new MemRenderer(r.getModule());
+                mr.begin();
+                mLog.peekDecoration(decorated[i]).render(mr);
+                mr.end();
+                if (i > 0) {
+                    out.write(",\n");
+                }
+                writeKey(out, Integer.toString(decorated[i]));
+                out.write('"');
+                writeString(out, new String(mr.getData()));
+                out.write('"');
+            }
+            out.write("},\n");
+            out.write("anchors: {");
+            first = true;
+            for (int idx : decorated) {
+                Anchor a = mLog.peekAnchor(idx);
+                if (a != null) {
+                    if (!first) {
+                        out.write(",\n");
+                    }
+                    first = false;
+                    writeKey(out, a.getName());
+                    out.write(Integer.toString(idx));
+                }
+            }
+            out.write("}\n");
+            out.write("};\n");
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void writeKey(Writer out, String key) throws IOException {
+        out.write('"');
+        writeString(out, key);
+        out.write("\":");
+    }
+
+    private static void writeString(Writer out, String s) throws IOException {
+        int len = s.length();
+        for (int i = 0; i < len; i++) {
+            writeChar(out, s.charAt(i));
+        }
+    }
+
+    private static void writeChar(Writer out, char c) throws IOException {
+        if (c == '"' || c == '\\') {
+            out.write('\\');
+            out.write(c);
+        } else if (c >= 0x20 && c < 0x7f) {
+            out.write(c);
+        } else {
+            out.write("\\u");
+            out.write(HEX[(c >> 12) & 0xf]);
+            out.write(HEX[(c >> 8) & 0xf]);
+            out.write(HEX[(c >> 4) & 0xf]);
+            out.write(HEX[c & 0xf]);
+        }
+    }
+
+    private static void writeInts(Writer out, int values[], int count) throws IOException {
+        out.write('[');
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            out.write(Integer.toString(values[i]));
+        }
+        out.write(']');
+    }
+
+    private static void writePostings(Writer out, TreeMap<String, Postings> map) throws IOException {
+        out.write('{');
+        boolean first = true;
+        for (Map.Entry<String, Postings> entry : map.entrySet()) {
+            if (!first) {
+                out.write(",\n");
+            }
+            first = false;
+            writeKey(out, entry.getKey());
+            Postings p = entry.getValue();
+            writeInts(out, p.mIdx, p.mCount);
+        }
+        out.write('}');
+    }
+
+    /**
+     * A link to a paged log, which applies a filter when the log is opened (e.g. "pid=123").
+     */
+    public static class FilterLink extends DocNode {
+
+        private Anchor mAnchor;
+        private String mFilter;
+        private String mText;
+
+        public FilterLink(Anchor anchor, String filter, String text) {
+            mAnchor = anchor;
+            mFilter = filter;
+            mText = text;
+        }
+
+        @Override
+        public void render(Renderer r) throws IOException {
+            r.print("<a href=\"" + mAnchor.getFileName() + "#" + mFilter + "\">" + mText + "</a>");
+        }
+
+    }
+
+    /**
+     * The (sorted) list of lines having the same pid or tag.
+     */
+    private static class Postings {
+
+        private int mIdx[] = new int[16];
+        private int mCount;
+
+        public static void add(TreeMap<String, Postings> map, String key, int idx) {
+            Postings p = map.get(key);
+            if (p == null) {
+                p = new Postings();
+                map.put(key, p);
+            }
+            if (p.mCount == p.mIdx.length) {
+                int tmp[] = new int[p.mCount * 2];
+                System.arraycopy(p.mIdx, 0, tmp, 0, p.mCount);
+                p.mIdx = tmp;
+            }
+            p.mIdx[p.mCount++] = idx;
+        }
+
+    }
+
+}
@@ -32,6 +32,7 @@ import com.sonyericsson.chkbugreport.doc.Para;
 import com.sonyericsson.chkbugreport.doc.ProcessLink;
 import com.sonyericsson.chkbugreport.doc.Table;
 
+import java.util.Vector;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -85,9 +86,9 @@ public class SystemLogPlugin extends LogPlugin {
         Chapter ch = new Chapter(br, "Log level distribution");
         mainCh.addChapter(ch);
 
+        LogLines lines = getLogs();
         for (int i = 0; i < totalLines; i++) {
-            LogLine sl = getParsedLine(i);
-            int idx = Math.max(0, levels.indexOf(sl.level));
+            int idx = Math.max(0, levels.indexOf(lines.getLevel(i)));
             counts[idx]++;
         }
 
@@ -107,52 +108,52 @@ public class SystemLogPlugin extends LogPlugin {
 
     @Override
     protected void analyze(LogLine sl, int i, BugReportModule br, Section s) {
-        if (sl.tag.equals("ConnectivityService") && sl.level == 'D') {
-            Matcher m = PATTERN_CONNECTIVITY_SERVICE.matcher(sl.msg);
+        if (sl.getTag().equals("ConnectivityService") && sl.level == 'D') {
+            Matcher m = PATTERN_CONNECTIVITY_SERVICE.matcher(sl.getMsg());
             if (m.matches()) {
                 mConnectivityLogs.add(new ConnectivityLog(sl.ts, m.group(1), m.group(2)));
             }
         }
-        if (sl.tag.equals("ActivityManager") && sl.level == 'I') {
-            if (sl.msg.startsWith("Start proc ")) {
+        if (sl.getTag().equals("ActivityManager") && sl.level == 'I') {
+            if (sl.getMsg().startsWith("Start proc ")) {
                 analyzeStartProc(sl, br);
             }
-            if (sl.msg.startsWith("Displayed ")) {
+            if (sl.getMsg().startsWith("Displayed ")) {
                 analyzeDisplayed(sl, br);
             }
-            if (sl.msg.contains("START {act=android.intent.action.MAIN cat=[android.intent.category.HOME]")) {
+            if (sl.getMsg().contains("START {act=android.intent.action.MAIN cat=[android.intent.category.HOME]")) {
                 analyzeStartHome(sl, br);
             }
-            if (sl.msg.startsWith("Config changed: ")) {
+            if (sl.getMsg().startsWith("Config changed: ")) {
                 analyzeConfigChanged(sl, br);
             }
         }
 
-        if (sl.tag.equals("AndroidRuntime") && sl.level == 'D') {
-            if (sl.msg.startsWith("Calling main entry ")) {
-                String procName = sl.msg.substring("Calling main entry ".length());
+        if (sl.getTag().equals("AndroidRuntime") && sl.level == 'D') {
+            if (sl.getMsg().startsWith("Calling main entry ")) {
+                String procName = sl.getMsg().substring("Calling main entry ".length());
                 ProcessRecord pr = br.getProcessRecord(sl.pid, true, false);
                 pr.suggestName(procName, 2);
             }
         }
 
-        if (sl.tag.equals("ActivityManager") && sl.level == 'E') {
-            if (sl.msg.startsWith("ANR in ") ||
-                    sl.msg.startsWith("Displayed ") ||
-                    sl.msg.startsWith("Start proc ") ||
-                    sl.msg.startsWith("Load: ") ||
-                    sl.msg.startsWith("act=")) {
+        if (sl.getTag().equals("ActivityManager") && sl.level == 'E') {
+            if (sl.getMsg().startsWith("ANR in ") ||
+                    sl.getMsg().startsWith("Displayed ") ||
+                    sl.getMsg().startsWith("Start proc ") ||
+                    sl.getMsg().startsWith("Load: ") ||
+                    sl.getMsg().startsWith("act=")) {
                 analyzeANR(sl, i, br, s);
             }
         }
 
-        if (sl.tag.equals("DEBUG") && sl.level == 'I') {
-            if (sl.msg.equals("*** *** *** *** *** *** *** *** *** *** *** *** *** *** *** ***")) {
+        if (sl.getTag().equals("DEBUG") && sl.level == 'I') {
+            if (sl.getMsg().equals("*** *** *** *** *** *** *** *** *** *** *** *** *** *** *** ***")) {
                 analyzeNativeCrash(sl, i, br, s);
             }
         }
 
-        if (sl.msg.startsWith("hprof: dumping heap strings to ")) {
+        if (sl.getMsg().startsWith("hprof: dumping heap strings to ")) {
             analyzeHPROF(sl, i, br, s);
         }
 
@@ -160,39 +161,39 @@ public class SystemLogPlugin extends LogPlugin {
             analyzeFatalException(sl, i, br, s);
         }
 
-        if (sl.level == 'E' && sl.tag.equals("StrictMode")) {
+        if (sl.level == 'E' && sl.getTag().equals("StrictMode")) {
             analyzeStrictMode(sl, i, br, s);
         }
 
-        if (sl.msg.startsWith("GC_CONCURRENT ") ||
-                sl.msg.startsWith("GC_EXPLICIT ") ||
-                sl.msg.startsWith("GC_HPROF_DUMP_HEAP ") ||
-                sl.msg.startsWith("GC_FOR_MALLOC ") ||
-                sl.msg.startsWith("GC_EXTERNAL_ALLOC ")) {
+        if (sl.getMsg().startsWith("GC_CONCURRENT ") ||
+                sl.getMsg().startsWith("GC_EXPLICIT ") ||
+                sl.getMsg().startsWith("GC_HPROF_DUMP_HEAP ") ||
+                sl.getMsg().startsWith("GC_FOR_MALLOC ") ||
+                sl.getMsg().startsWith("GC_EXTERNAL_ALLOC ")) {
             analyzeGC(sl, i, br, s);
         }
 
-        if (sl.tag.equals("WindowManager") && sl.level == 'I') {
+        if (sl.getTag().equals("WindowManager") && sl.level == 'I') {
             String key = "Setting rotation to ";
-            if (sl.msg.startsWith(key)) {
-                int rot = sl.msg.charAt(key.length()) - '0';
+            if (sl.getMsg().startsWith(key)) {
+                int rot = sl.getMsg().charAt(key.length()) - '0';
                 analyzeRotation(sl, br, rot);
             }
         }
 
-        if (sl.msg.startsWith("\tat ") && sl.level == 'E') {
+        if (sl.getMsg().startsWith("\tat ") && sl.level == 'E') {
             analyzeJavaException(sl, i, br, s);
         }
 
         // Since any name is better then no-name, suggest a name for each process based on the tag
         if (sl.pid > 0) {
             ProcessRecord pr = br.getProcessRecord(sl.pid, true, false);
-            pr.suggestName("[" + sl.tag + "]", 1); // weakest prio
+            pr.suggestName("[" + sl.getTag() + "]", 1); // weakest prio
         }
     }
 
     private boolean isFatalException(LogLine sl) {
-        return sl.msg.startsWith("FATAL EXCEPTION:") || sl.msg.startsWith("*** FATAL EXCEPTION IN SYSTEM PROCESS:");
+        return sl.getMsg().startsWith("FATAL EXCEPTION:") || sl.getMsg().startsWith("*** FATAL EXCEPTION IN SYSTEM PROCESS:");
     }
 
     private void analyzeConfigChanged(LogLine sl, BugReportModule br) {
@@ -202,7 +203,7 @@ public class SystemLogPlugin extends LogPlugin {
 
     private void analyzeStartProc(LogLine sl, BugReportModule br) {
         // Extract the process name
-        String s = sl.msg.substring("Start proc ".length());
+        String s = sl.getMsg().substring("Start proc ".length());
         int idx = s.indexOf(' ');
         if (idx < 0) return;
         String procName = s.substring(0, idx);
@@ -239,7 +240,7 @@ public class SystemLogPlugin extends LogPlugin {
         sl = getParsedLine(i);
 
         // Create a bug and store the relevant log lines
-        Bug bug = new Bug(Bug.PRIO_NATIVE_CRASH, sl.ts, "Native crash: " + sl.msg);
+        Bug bug = new Bug(Bug.PRIO_NATIVE_CRASH, sl.ts, "Native crash: " + sl.getMsg());
         new Block(bug).add(new Link(sl.getAnchor(), "(link to log)"));
         DocNode log = new Block(bug).addStyle("log");
         log.add(sl.copy());
@@ -247,7 +248,7 @@ public class SystemLogPlugin extends LogPlugin {
         while (end < s.getLineCount()) {
             LogLine sl2 = getParsedLine(end);
             if (!sl2.ok) break;
-            if (!sl2.tag.equals("DEBUG")) break;
+            if (!sl2.getTag().equals("DEBUG")) break;
             if (sl2.level != 'I') break;
             log.add(sl2.copy());
             end++;
@@ -262,7 +263,7 @@ public class SystemLogPlugin extends LogPlugin {
         // Make sure we are scanning a new ANR
         if (i > 0) {
             LogLine prev = getParsedLine(i - 1);
-            if (prev.ok && prev.tag.equals("ActivityManager") && prev.level == 'E') {
+            if (prev.ok && prev.getTag().equals("ActivityManager") && prev.level == 'E') {
                 // Ignore this, probably already handled
                 return;
             }
@@ -273,7 +274,7 @@ public class SystemLogPlugin extends LogPlugin {
         sl.addMarker("log-float-err", "<a name=\"" + anchor + "\">ANR</a>", "ANR");
 
         // Create a bug and store the relevant log lines
-        String msg = sl.msg;
+        String msg = sl.getMsg();
         if (msg.startsWith("Load: ") || msg.startsWith("act=")) {
             msg = "(ANR?) " + msg;
         }
@@ -286,9 +287,9 @@ public class SystemLogPlugin extends LogPlugin {
         while (end < s.getLineCount()) {
             LogLine sl2 = getParsedLine(end);
             if (!sl2.ok) break;
-            if (!sl2.tag.equals("ActivityManager")) break;
+            if (!sl2.getTag().equals("ActivityManager")) break;
             if (sl2.level != 'E') break;
-            if (sl2.msg.startsWith("100% TOTAL")) {
+            if (sl2.getMsg().startsWith("100% TOTAL")) {
                 if (2 == ++cnt) {
                     log.add(sl2.copy());
                     end++;
@@ -310,7 +311,7 @@ public class SystemLogPlugin extends LogPlugin {
         sl.addMarker("log-float-err", "<a name=\"" + anchor + "\">HPROF</a>", "HPROF");
 
         // Create a bug and store the relevant log lines
-        Bug bug = new Bug(Bug.PRIO_HPROF, sl.ts, sl.msg);
+        Bug bug = new Bug(Bug.PRIO_HPROF, sl.ts, sl.getMsg());
         bug.setAttr(Bug.ATTR_FIRST_LINE, i);
         ProcessRecord pr = br.getProcessRecord(sl.pid, false, false);
         new Block(bug)
@@ -322,7 +323,7 @@ public class SystemLogPlugin extends LogPlugin {
 
         // Also mention this in the process record
         if (pr != null) {
-            new Para(pr).add("Heap dump was saved by this process to " + sl.msg.substring(sl.msg.indexOf('"')));
+            br.addToChapter(pr, new Para().add("Heap dump was saved by this process to " + sl.getMsg().substring(sl.getMsg().indexOf('"'))));
         }
     }
 
@@ -332,25 +333,66 @@ public class SystemLogPlugin extends LogPlugin {
         sl.addMarker("log-float-err", "<a name=\"" + anchor + "\">FATAL<br/>EXCEPTION</a>", "FATAL EXCEPTION");
 
         // Create a bug and store the relevant log lines
-        Bug bug = new Bug(Bug.PRIO_JAVA_CRASH_SYSTEM_LOG, sl.ts, sl.msg);
+        Bug bug = new Bug(Bug.PRIO_JAVA_CRASH_SYSTEM_LOG, sl.ts, sl.getMsg());
         new Block(bug).add(new Link(sl.getAnchor(), "(link to log)"));
         DocNode log = new Block(bug).addStyle("log");
         log.add(sl.copy());
+        Vector<String> msgs = new Vector<String>();
         int end = i + 1;
         while (end < s.getLineCount()) {
             LogLine sl2 = getParsedLine(end);
             if (!sl2.ok) break;
-            if (!sl2.tag.equals("AndroidRuntime")) break;
+            if (!sl2.getTag().equals("AndroidRuntime")) break;
             if (sl2.level != 'E') break;
             log.add(sl2.copy());
+            msgs.add(sl2.getMsg());
             end++;
         }
         bug.setAttr(Bug.ATTR_FIRST_LINE, i);
         bug.setAttr(Bug.ATTR_LAST_LINE, end);
         bug.setAttr(Bug.ATTR_LOG_INFO_ID, getInfoId());
+        addCrashSignature(br, bug, msgs);
         br.addBug(bug);
     }
 
+    /**
+     * Adds the signature of the crash to the fingerprint index: the class of the root cause
+     * (the last "Caused by:") and the top of its stack trace.
+     */
+    private void addCrashSignature(BugReportModule br, Bug bug, Vector<String> msgs) {
+        String exception = null;
+        Vector<String> methods = new Vector<String>();
+        Vector<String> causeMethods = null;
+        for (String msg : msgs) {
+            msg = msg.trim();
+            if (msg.startsWith("at ")) {
+                int idx = msg.indexOf('(');
+                String method = idx < 0 ? msg.substring(3) : msg.substring(3, idx);
+                if (causeMethods != null) {
+                    causeMethods.add(method);
+                } else if (exception != null) {
+                    methods.add(method);
+                }
+            } else if (msg.startsWith("Caused by: ")) {
+                exception = getExceptionClass(msg.substring(11));
+                causeMethods = new Vector<String>();
+            } else if (exception == null && msg.length() > 0 && !msg.startsWith("Process: ")) {
+                exception = getExceptionClass(msg);
+            }
+        }
+        if (exception == null) return;
+        // The frames of the cause might be all elided ("... 11 more")
+        if (causeMethods != null && causeMethods.size() > 0) {
+            methods = causeMethods;
+        }
+        br.addSignature(bug, "java-crash", exception, methods);
+    }
+
+    private String getExceptionClass(String msg) {
+        int idx = msg.indexOf(':');
+        return (idx < 0 ? msg : msg.substring(0, idx)).trim();
+    }
+
     private void analyzeJavaException(LogLine sl, int i, BugReportModule br, Section s) {
         // Find the beginning
         int firstLine = i;
@@ -360,7 +402,7 @@ public class SystemLogPlugin extends LogPlugin {
             if (Math.abs(i - prev) > 10) break; // avoid detecting too many lines
             firstLine = prev;
             sl = getParsedLine(firstLine);
-            if (sl.msg.startsWith("\tat ") || isFatalException(sl)) {
+            if (sl.getMsg().startsWith("\tat ") || isFatalException(sl)) {
                 return; // avoid finding the same exception many times
             }
         }
@@ -370,7 +412,7 @@ public class SystemLogPlugin extends LogPlugin {
         sl.addMarker("log-float-err", "<a name=\"" + anchor + "\">EXCEPTION</a>", "EXCEPTION");
 
         // Create a bug and store the relevant log lines
-        Bug bug = new Bug(Bug.PRIO_JAVA_EXCEPTION_SYSTEM_LOG, sl.ts, sl.msg);
+        Bug bug = new Bug(Bug.PRIO_JAVA_EXCEPTION_SYSTEM_LOG, sl.ts, sl.getMsg());
         new Block(bug).add(new Link(sl.getAnchor(), "(link to log)"));
         DocNode log = new Block(bug).addStyle("log");
         log.add(sl.copy());
@@ -402,7 +444,7 @@ public class SystemLogPlugin extends LogPlugin {
             if (Math.abs(nl.ts - pl.ts) > 500) {
                 return -1; // The timestamps are too far away
             }
-            if (pl.level == nl.level && pl.tag.equals(nl.tag)) {
+            if (pl.level == nl.level && pl.getTag().equals(nl.getTag())) {
                 return idx; // found a match
             }
         }
@@ -412,7 +454,7 @@ public class SystemLogPlugin extends LogPlugin {
         // Check previous line
         if (i > 0) {
             LogLine sl2 = getParsedLine(i - 1);
-            if (sl2.ok && sl2.level == 'E' && sl2.tag.equals("StrictMode")) {
+            if (sl2.ok && sl2.level == 'E' && sl2.getTag().equals("StrictMode")) {
                 // Found the middle, ignore it
                 return;
             }
@@ -423,7 +465,7 @@ public class SystemLogPlugin extends LogPlugin {
         sl.addMarker("log-float-err", "<a name=\"" + anchor + "\">StrictMode</a>", "StrictMode");
 
         // Create a bug and store the relevant log lines
-        String title = sl.msg;
+        String title = sl.getMsg();
         int idx = title.indexOf('.');
         if (idx > 0) {
             title = title.substring(0, idx);
@@ -437,7 +479,7 @@ public class SystemLogPlugin extends LogPlugin {
         while (end < s.getLineCount()) {
             LogLine sl2 = getParsedLine(end);
             if (!sl2.ok) break;
-            if (!sl2.tag.equals("StrictMode")) break;
+            if (!sl2.getTag().equals("StrictMode")) break;
             if (sl2.level != 'E') break;
             log.add(sl2.copy());
             end++;
@@ -498,13 +540,13 @@ public class SystemLogPlugin extends LogPlugin {
 
     private void analyzeDisplayed(LogLine sl, BugReportModule br) {
         // Put a marker box
-        String name = Util.extract(sl.msg, " ", ":");
+        String name = Util.extract(sl.getMsg(), " ", ":");
         addActivityLaunchMarker(sl, name);
     }
 
     private void analyzeStartHome(LogLine sl, BugReportModule br) {
         // Put a marker box
-        String name = Util.extract(sl.msg, "cmp=", "}");
+        String name = Util.extract(sl.getMsg(), "cmp=", "}");
         addActivityLaunchMarker(sl, name);
     }
 
@@ -5,10 +5,6 @@ import com.sonyericsson.chkbugreport.Module;
 import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
-import java.io.File;
-import java.io.IOException;
-
-import javax.imageio.ImageIO;
 
 /**
  * Graph/chart generated from the activity managers life cycle logs
@@ -128,11 +124,7 @@ public class AMChart {
 
         // Save the image
         String fn = "amchart_" + hashCode() + ".png";
-        try {
-            ImageIO.write(mImg, "png", new File(br.getBaseDir() + fn));
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        br.saveImage(mImg, fn);
         return fn;
     }
 
@@ -8,8 +8,8 @@ import com.sonyericsson.chkbugreport.doc.Link;
 import com.sonyericsson.chkbugreport.doc.Para;
 import com.sonyericsson.chkbugreport.doc.Table;
 
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintStream;
 import java.util.HashMap;
 import java.util.Map.Entry;
@@ -70,7 +70,7 @@ public class ActivityManagerGraphGenerator {
         // Write the VCD file
         String fn = br.getRelRawDir() + "am_logs.vcd";
         try {
-            FileOutputStream fos = new FileOutputStream(br.getBaseDir() + fn);
+            OutputStream fos = br.createFile(fn);
             PrintStream fo = new PrintStream(fos);
 
             // write header
@@ -109,6 +109,8 @@ public class ActivityManagerGraphGenerator {
                     fo.println("b" + getVCDState(state) + " a" + id);
                 }
             }
+            fo.close();
+            fos.close();
 
             new Para(ch)
                 .add("AM logs converted to VCD file (you can use GTKWave to open it): ")
@@ -122,8 +124,8 @@ public class ActivityManagerGraphGenerator {
         t.addColumn("Component", Table.FLAG_NONE);
         t.addColumn("Graph", Table.FLAG_NONE);
         t.begin();
-        fn = "amchart_time.png";
-        if (Util.createTimeBar(br, fn, AMChart.W, firstTs, lastTs)) {
+        fn = Util.createTimeBar(br, "amchart_time.png", AMChart.W, firstTs, lastTs);
+        if (fn != null) {
             t.addData("");
             t.addData(new Img(fn));
         }
@@ -44,26 +44,26 @@ public class ActivityManagerTrace {
         } else if ("am_proc_bound".equals(eventType)) {
             suggestName(br, sl, 0, 1, 20);
         } else if ("am_create_service".equals(eventType)) {
-            int pid = Integer.parseInt(sl.fields[3]);
+            int pid = Integer.parseInt(sl.getFields()[3]);
             addAMData(new AMData(AMData.SERVICE, AMData.ON_CREATE, pid, sl.getFields(1), sl.ts));
             suggestName(br, sl, 3, 1, 18);
         } else if ("am_destroy_service".equals(eventType)) {
-            int pid = Integer.parseInt(sl.fields[2]);
+            int pid = Integer.parseInt(sl.getFields()[2]);
             addAMData(new AMData(AMData.SERVICE, AMData.ON_DESTROY, pid, sl.getFields(1), sl.ts));
             suggestName(br, sl, 2, 1, 18);
         } else if ("am_schedule_service_restart".equals(eventType)) {
             addAMData(new AMData(AMData.SERVICE, AMData.SCHEDULE_SERVICE_RESTART, 0, sl.getFields(0), sl.ts));
         } else if ("am_kill".equals(eventType)) {
-            int pid = Integer.parseInt(sl.fields[0]);
+            int pid = Integer.parseInt(sl.getFields()[0]);
             AMData data = new AMData(AMData.PROC, AMData.PROC_KILL, pid, sl.getFields(1), sl.ts);
-            data.setExtra(sl.fields[3]); // reason for kill
+            data.setExtra(sl.getFields()[3]); // reason for kill
             addAMData(data);
         } else if ("am_proc_died".equals(eventType)) {
-            int pid = Integer.parseInt(sl.fields[0]);
+            int pid = Integer.parseInt(sl.getFields()[0]);
             addAMData(new AMData(AMData.PROC, AMData.PROC_DIED, pid, sl.getFields(1), sl.ts));
             suggestName(br, sl, 0, 1, 20);
         } else if ("am_proc_start".equals(eventType)) {
-            int pid = Integer.parseInt(sl.fields[0]);
+            int pid = Integer.parseInt(sl.getFields()[0]);
             addAMData(new AMData(AMData.PROC, AMData.PROC_START, pid, sl.getFields(2), sl.ts));
             suggestName(br, sl, 0, 2, 20);
         } else {
@@ -72,10 +72,10 @@ public class ActivityManagerTrace {
     }
 
     private void suggestName(BugReportModule br, LogLine sl, int idxPid, int idxPkg, int prio) {
-        if (Math.max(idxPid, idxPkg) >= sl.fields.length) return; // not enough fields
+        if (Math.max(idxPid, idxPkg) >= sl.getFields().length) return; // not enough fields
         int pid = -1;
         try {
-            pid = Integer.parseInt(sl.fields[idxPid]);
+            pid = Integer.parseInt(sl.getFields()[idxPid]);
         } catch (Exception e) {
             return; // strange pid
         }
@@ -83,8 +83,8 @@ public class ActivityManagerTrace {
     }
 
     private void suggestNameImpl(BugReportModule br, LogLine sl, int pid, int idxPkg, int prio) {
-        if (idxPkg >= sl.fields.length) return; // not enough fields
-        String procName = sl.fields[idxPkg];
+        if (idxPkg >= sl.getFields().length) return; // not enough fields
+        String procName = sl.getFields()[idxPkg];
         if (procName.length() == 0) {
             return; // missing package name
         }
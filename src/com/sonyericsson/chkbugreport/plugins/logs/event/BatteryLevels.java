@@ -29,9 +29,9 @@ public class BatteryLevels {
     }
 
     public void addData(LogLine sl) {
-        int level = Integer.parseInt(sl.fields[0]);
-        int volt = Integer.parseInt(sl.fields[1]);
-        int temp = Integer.parseInt(sl.fields[2]);
+        int level = Integer.parseInt(sl.getFields()[0]);
+        int volt = Integer.parseInt(sl.getFields()[1]);
+        int temp = Integer.parseInt(sl.getFields()[2]);
         long ts = sl.ts;
         long msPerMV = 0;
         long mVPerHour = 0;
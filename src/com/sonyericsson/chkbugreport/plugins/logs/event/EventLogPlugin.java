@@ -129,7 +129,7 @@ public class EventLogPlugin extends LogPlugin {
 
     @Override
     protected void analyze(LogLine sl, int i, BugReportModule br, Section s) {
-        String eventType = Util.strip(sl.tag);
+        String eventType = Util.strip(sl.getTag());
         if (sl.fmt == LogLine.FMT_CRASH) {
             // Crash is too smart, it also parses the logs, so we need different method for analyzes
             if (sl.tagId == TAG_DVM_LOCK_SAMPLE) {
@@ -149,14 +149,14 @@ public class EventLogPlugin extends LogPlugin {
             }
         } else {
             if ("netstats_mobile_sample".equals(eventType)) {
-                if (sl.fields.length == 14) {
-                    mNetstatMobile.add(new NetstatSample("mobile", sl.ts, sl.fields));
+                if (sl.getFields().length == 14) {
+                    mNetstatMobile.add(new NetstatSample("mobile", sl.ts, sl.getFields()));
                 }
                 return;
             }
             if ("netstats_wifi_sample".equals(eventType)) {
-                if (sl.fields.length == 14) {
-                    mNetstatWifi.add(new NetstatSample("mobile", sl.ts, sl.fields));
+                if (sl.getFields().length == 14) {
+                    mNetstatWifi.add(new NetstatSample("mobile", sl.ts, sl.getFields()));
                 }
                 return;
             }
@@ -188,8 +188,8 @@ public class EventLogPlugin extends LogPlugin {
     }
 
     private void addActivityLaunchMarker(LogLine sl) {
-        if (sl.fields.length == 4) {
-            addActivityLaunchMarker(sl, sl.fields[1]);
+        if (sl.getFields().length == 4) {
+            addActivityLaunchMarker(sl, sl.getFields()[1]);
         }
     }
 
@@ -200,7 +200,7 @@ public class EventLogPlugin extends LogPlugin {
 
         // Create a marker in the log
         try {
-            int changed = Integer.parseInt(sl.msg);
+            int changed = Integer.parseInt(sl.getMsg());
             StringBuffer sb = new StringBuffer();
             if (0 != (changed & 0x0001)) {
                 sb.append("MCC<br/>");
@@ -251,13 +251,13 @@ public class EventLogPlugin extends LogPlugin {
         // Create a bug and store the relevant log lines
         String msg = null;
         int pid = -1;
-        if (sl.fields.length < 4) {
+        if (sl.getFields().length < 4) {
             // Strange... let's use the log message completely
-            msg = cType + ": " + sl.msg;
+            msg = cType + ": " + sl.getMsg();
         } else {
-            msg = cType + " in '" + sl.fields[1] + "' (" + sl.fields[0] + ")";
+            msg = cType + " in '" + sl.getFields()[1] + "' (" + sl.getFields()[0] + ")";
             try {
-                pid = Integer.parseInt(sl.fields[0]);
+                pid = Integer.parseInt(sl.getFields()[0]);
             } catch (NumberFormatException nfe) { /* NOP */ }
         }
         int prio = type.equals("anr") ? Bug.PRIO_ANR_EVENT_LOG : Bug.PRIO_JAVA_CRASH_EVENT_LOG;
@@ -271,19 +271,19 @@ public class EventLogPlugin extends LogPlugin {
         }
         new Block(bug).addStyle("log").add(sl.copy());
         PreText log = new PreText(bug);
-        if (sl.fields.length >= 4) {
-            bug.setAttr(Bug.ATTR_PID, sl.fields[0]);
-            bug.setAttr(Bug.ATTR_PACKAGE, sl.fields[1]);
-            bug.setAttr(Bug.ATTR_REASON, sl.fields[3]);
+        if (sl.getFields().length >= 4) {
+            bug.setAttr(Bug.ATTR_PID, sl.getFields()[0]);
+            bug.setAttr(Bug.ATTR_PACKAGE, sl.getFields()[1]);
+            bug.setAttr(Bug.ATTR_REASON, sl.getFields()[3]);
 
             // Print some additional info
             int flags = -1;
             try {
-                flags = Integer.parseInt(sl.fields[2]);
+                flags = Integer.parseInt(sl.getFields()[2]);
             } catch (NumberFormatException nfe) { /* NOP */ }
-            log.addln("PID:            " + sl.fields[0]);
-            log.addln("Package:        " + sl.fields[1]);
-            log.addln("Reason:         " + sl.fields[3]);
+            log.addln("PID:            " + sl.getFields()[0]);
+            log.addln("Package:        " + sl.getFields()[1]);
+            log.addln("Reason:         " + sl.getFields()[3]);
             log.addln("Flags:          0x" + Integer.toHexString(flags) + ":");
             log.addln("  - SYSTEM:                    " + (0 != (flags & (1 << 0))));
             log.addln("  - DEBUGGABLE:                " + (0 != (flags & (1 << 1))));
@@ -308,17 +308,42 @@ public class EventLogPlugin extends LogPlugin {
             log.addln("  - CANT SAVE STATE:           " + (0 != (flags & (1 << 27))));
             log.addln("  - FORWARD LOCK:              " + (0 != (flags & (1 << 29))));
             log.addln("  - NEVER ENCRYPT:             " + (0 != (flags & (1 << 30))));
+            addCrashOrANRSignature(sl, br, bug, type);
         }
         br.addBug(bug);
     }
 
+    /**
+     * Adds the signature of the crash or ANR to the fingerprint index. The event log has no
+     * stack trace, so only the package, the reason (the exception class in case of a crash)
+     * and the source file of the crash are used.
+     */
+    private void addCrashOrANRSignature(LogLine sl, BugReportModule br, Bug bug, String type) {
+        String fields[] = sl.getFields();
+        String reason = fields[3];
+        // Drop the variable parts of the ANR reason, like "(Waiting because ...)" or "Intent { ... }"
+        int idx = reason.indexOf('(');
+        if (idx >= 0) {
+            reason = reason.substring(0, idx);
+        }
+        idx = reason.indexOf('{');
+        if (idx >= 0) {
+            reason = reason.substring(0, idx);
+        }
+        Vector<String> frames = new Vector<String>();
+        if (type.equals("crash") && fields.length >= 6) {
+            frames.add(fields[5]);
+        }
+        br.addSignature(bug, "event-" + type, fields[1] + "|" + reason.trim(), frames);
+    }
+
     private void addDvmGCInfoData(LogLine sl) {
-        if (sl.fields.length != 4) return;
+        if (sl.getFields().length != 4) return;
         try {
-//            long l0 = Long.parseLong(sl.fields[0]);
-            long l1 = Long.parseLong(sl.fields[1]);
-//            long l2 = Long.parseLong(sl.fields[2]);
-            long l3 = Long.parseLong(sl.fields[3]);
+//            long l0 = Long.parseLong(sl.getFields()[0]);
+            long l1 = Long.parseLong(sl.getFields()[1]);
+//            long l2 = Long.parseLong(sl.getFields()[2]);
+            long l3 = Long.parseLong(sl.getFields()[3]);
 
 //            int gcTime = unFloat12(Util.bits(l0, 23, 12));
 //            int bytesFreed = unFloat12(Util.bits(l0, 11, 0));
@@ -352,27 +377,27 @@ public class EventLogPlugin extends LogPlugin {
     }
 
     private void addSampleData(Module br, String eventType, LogLine sl) {
-        int fieldCount = sl.fields.length;
+        int fieldCount = sl.getFields().length;
         if (fieldCount < 4) return; // cannot handle these
         try {
             int duration = 0, perc = 0;
             String name = null;
             if (eventType.equals("dvm_lock_sample")) {
                 // This is a bit different
-                duration = Integer.parseInt(sl.fields[fieldCount-2]);
-                perc = Integer.parseInt(sl.fields[fieldCount-1]);
-                name = sl.fields[0];
+                duration = Integer.parseInt(sl.getFields()[fieldCount-2]);
+                perc = Integer.parseInt(sl.getFields()[fieldCount-1]);
+                name = sl.getFields()[0];
             } else {
-                duration = Integer.parseInt(sl.fields[fieldCount-3]);
-                perc = Integer.parseInt(sl.fields[fieldCount-1]);
-                name = sl.fields[0];
+                duration = Integer.parseInt(sl.getFields()[fieldCount-3]);
+                perc = Integer.parseInt(sl.getFields()[fieldCount-1]);
+                name = sl.getFields()[0];
                 name = fixSampleDataName(name);
             }
             SampleData sd = new SampleData(sl.ts, sl.pid, name, duration, perc, sl);
             addSampleData(eventType, sd);
             if (eventType.equals("binder_sample")) {
                 // These are interesting from the process point of view as well
-                name = sl.fields[3];
+                name = sl.getFields()[3];
                 sd = new SampleData(sl.ts, sl.pid, name, duration, perc, sl);
                 addSampleData(eventType + "_alt", sd);
             }
@@ -399,12 +424,12 @@ public class EventLogPlugin extends LogPlugin {
     }
 
     private void addDvmLockSampleDataC(Module br, String eventType, LogLine sl) {
-        int fieldCount = sl.fields.length;
+        int fieldCount = sl.getFields().length;
         if (fieldCount < 4) return; // cannot handle these
         try {
-            int duration = extractIntValueFromCrashLogField(sl.fields[fieldCount-2]);
-            int perc = extractIntValueFromCrashLogField(sl.fields[fieldCount-1]);
-            String name = extractValueFromCrashLogField(sl.fields[0]);
+            int duration = extractIntValueFromCrashLogField(sl.getFields()[fieldCount-2]);
+            int perc = extractIntValueFromCrashLogField(sl.getFields()[fieldCount-1]);
+            String name = extractValueFromCrashLogField(sl.getFields()[0]);
             SampleData sd = new SampleData(sl.ts, sl.pid, name, duration, perc, sl);
             addSampleData(eventType, sd);
         } catch (NumberFormatException e) {
@@ -413,12 +438,12 @@ public class EventLogPlugin extends LogPlugin {
     }
 
     private void addGenericSampleDataC(Module br, String eventType, LogLine sl) {
-        int fieldCount = sl.fields.length;
+        int fieldCount = sl.getFields().length;
         if (fieldCount < 4) return; // cannot handle these
         try {
-            int duration = extractIntValueFromCrashLogField(sl.fields[fieldCount-3]);
-            int perc = extractIntValueFromCrashLogField(sl.fields[fieldCount-1]);
-            String name = extractValueFromCrashLogField(sl.fields[0]);
+            int duration = extractIntValueFromCrashLogField(sl.getFields()[fieldCount-3]);
+            int perc = extractIntValueFromCrashLogField(sl.getFields()[fieldCount-1]);
+            String name = extractValueFromCrashLogField(sl.getFields()[0]);
             name = fixSampleDataName(name);
             SampleData sd = new SampleData(sl.ts, sl.pid, name, duration, perc, sl);
             addSampleData(eventType, sd);
@@ -475,9 +500,9 @@ public class EventLogPlugin extends LogPlugin {
     }
 
     private void addActivityLaunchTimeData(LogLine sl) {
-        String activity = sl.fields[1];
-        int time = Integer.parseInt(sl.fields[2]);
-        int total = Integer.parseInt(sl.fields[3]);
+        String activity = sl.getFields()[1];
+        int time = Integer.parseInt(sl.getFields()[2]);
+        int total = Integer.parseInt(sl.getFields()[3]);
         ALTStat alt = new ALTStat();
         alt.activity = activity;
         alt.time = time;
@@ -13,7 +13,6 @@ import java.awt.FontMetrics;
 import java.awt.Graphics2D;
 import java.awt.RenderingHints;
 import java.awt.image.BufferedImage;
-import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.util.Collections;
@@ -22,8 +21,6 @@ import java.util.HashMap;
 import java.util.Map.Entry;
 import java.util.Vector;
 
-import javax.imageio.ImageIO;
-
 public class SampleDatasGenerator {
 
     private EventLogPlugin mPlugin;
@@ -182,12 +179,7 @@ public class SampleDatasGenerator {
         }
 
         // Save the image
-        try {
-            ImageIO.write(img, "png", new File(br.getBaseDir() + fn));
-        } catch (IOException e) {
-            e.printStackTrace();
-            return false;
-        }
+        br.saveImage(img, fn);
 
         return true;
     }
@@ -286,12 +278,7 @@ public class SampleDatasGenerator {
         }
 
         // Save the image
-        try {
-            ImageIO.write(img, "png", new File(br.getBaseDir() + fn));
-        } catch (IOException e) {
-            e.printStackTrace();
-            return false;
-        }
+        br.saveImage(img, fn);
 
         return true;
     }
@@ -343,7 +330,7 @@ public class SampleDatasGenerator {
 
         // Save the file
         try {
-            PrintStream ps = new PrintStream(new File(br.getBaseDir() + fn));
+            PrintStream ps = new PrintStream(br.createFile(fn));
             int bits = 8;
 
             // Write header
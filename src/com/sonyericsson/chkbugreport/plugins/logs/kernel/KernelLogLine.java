@@ -119,6 +119,13 @@ public class KernelLogLine extends LogLineBase {
         return mLevel;
     }
 
+    /**
+     * Returns the message (the line without the level and the timestamp).
+     */
+    public String getMsg() {
+        return mMsg;
+    }
+
     public long getRealTs() {
         return mRealTs;
     }
@@ -177,17 +184,17 @@ public class KernelLogLine extends LogLineBase {
                 int pid = Integer.parseInt(line.substring(pidS, pidE));
                 ProcessRecord pr = ((BugReportModule)r.getModule()).getProcessRecord(pid, false, false);
                 if (pr != null && pr.isExported()) {
-                    r.print(Util.escape(line.substring(0, pidS)));
+                    Util.escapeTo(r, line, 0, pidS);
                     r.print("<a href=\"" + pr.getAnchor().getFileName() + "#" + pr.getAnchor().getName() + "\">");
                     r.print(pid);
                     r.print("</a>");
-                    r.print(Util.escape(line.substring(pidE)));
+                    Util.escapeTo(r, line, pidE, line.length());
                 }
             } catch (NumberFormatException nfe) {
-                r.print(Util.escape(line));
+                Util.escapeTo(r, line, 0, line.length());
             }
         } else {
-            r.print(Util.escape(line));
+            Util.escapeTo(r, line, 0, line.length());
         }
         r.print("</div>");
     }
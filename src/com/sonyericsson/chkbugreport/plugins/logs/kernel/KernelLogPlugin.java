@@ -41,6 +41,16 @@ public class KernelLogPlugin extends Plugin {
         return 31;
     }
 
+    @Override
+    public String[] getDependencies() {
+        return new String[] { "SystemLogPlugin" }; // The kernel log is also extracted from the system log
+    }
+
+    @Override
+    public String[] getRequiredSections() {
+        return null; // A new section is created while loading, so wait for the whole input to keep the section order
+    }
+
     @Override
     public void reset() {
         mLogs.clear();
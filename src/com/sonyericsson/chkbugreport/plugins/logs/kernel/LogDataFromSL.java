@@ -2,7 +2,6 @@ package com.sonyericsson.chkbugreport.plugins.logs.kernel;
 
 import com.sonyericsson.chkbugreport.BugReportModule;
 import com.sonyericsson.chkbugreport.Section;
-import com.sonyericsson.chkbugreport.plugins.logs.LogLine;
 import com.sonyericsson.chkbugreport.plugins.logs.LogLines;
 import com.sonyericsson.chkbugreport.plugins.logs.SystemLogPlugin;
 
@@ -16,15 +15,14 @@ public class LogDataFromSL extends LogData {
         if (sl != null) {
             int cnt = sl.size();
             for (int i = 0; i < cnt; i++) {
-                LogLine l = sl.get(i);
-                if (l.tag.equals("kernel")) {
+                if (sl.getTag(i).equals("kernel")) {
                     if (mKernelLog == null) {
                         mKernelLog = new Section(br, Section.KERNEL_LOG_FROM_SYSTEM);
                         br.addSection(mKernelLog);
                     }
-                    String line = convertToKrnLogLevel(l.level) + l.msg;
+                    String line = convertToKrnLogLevel(sl.getLevel(i)) + sl.getMsg(i);
                     mKernelLog.addLine(line);
-                    addLine(br, line, l.ts);
+                    addLine(br, line, sl.getTs(i));
                 }
             }
         }
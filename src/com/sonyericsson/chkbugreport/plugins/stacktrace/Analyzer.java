@@ -12,11 +12,23 @@ import com.sonyericsson.chkbugreport.doc.List;
 import com.sonyericsson.chkbugreport.doc.Para;
 import com.sonyericsson.chkbugreport.doc.ProcessLink;
 
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Vector;
 
 public class Analyzer {
 
+    /** Blocking chains shorter than this (counting the waiting thread too) are not reported */
+    private static final int MIN_CHAIN_LENGTH = 3;
+    private static final int MAX_CHAINS = 3;
+
+    /** The rules evaluated on the stack frames, see createRules() */
+    private static final int RULE_LOOPER_LOOP = 1 << 0;
+    private static final int RULE_LOOPER_IDLE = 1 << 1;
+    private static final int RULE_BINDER_ENTRY = 1 << 2;
+    private static final int RULE_NATIVE_START = 1 << 3;
+    private static final int RULE_MAIN_VIOLATION = 1 << 4;
+
     public Analyzer(StackTracePlugin stackTracePlugin) {
     }
 
@@ -49,16 +61,53 @@ public class Analyzer {
         checkDeadLock(processes, br);
     }
 
+    /**
+     * Creates the rules used by the analyzer. These are evaluated only once per method,
+     * when the method is added to the FrameTable.
+     */
+    public static FrameRules createRules() {
+        return new FrameRules()
+            .addMethod("android.os.Looper.loop", RULE_LOOPER_LOOP)
+            .addMethod("android.os.MessageQueue.nativePollOnce", RULE_LOOPER_IDLE)
+            .addMethod("android.os.MessageQueue.next", RULE_LOOPER_IDLE)
+            .addMethod("android.os.Binder.execTransact", RULE_BINDER_ENTRY)
+            .addMethod("dalvik.system.NativeStart.run", RULE_NATIVE_START)
+            .addPrefix("android.content.ContentResolver.", RULE_MAIN_VIOLATION)
+            .addPrefix("org.apache.harmony.luni.internal.net.www.protocol.http.HttpURLConnectionImpl.", RULE_MAIN_VIOLATION)
+            .addPrefix("org.apache.harmony.luni.internal.net.www.protocol.https.HttpURLConnectionImpl.", RULE_MAIN_VIOLATION)
+            .addPrefix("org.apache.harmony.luni.internal.net.www.protocol.http.HttpsURLConnectionImpl.", RULE_MAIN_VIOLATION)
+            .addPrefix("org.apache.harmony.luni.internal.net.www.protocol.https.HttpsURLConnectionImpl.", RULE_MAIN_VIOLATION)
+            .addPrefix("android.database.sqlite.SQLiteDatabase.", RULE_MAIN_VIOLATION);
+    }
+
     private void colorize(Process p, StackTrace stack, BugReportModule br) {
         if (stack == null)
             return;
 
+        // Find the first frame matching each rule, in one pass
+        int loopIdx = -1, binderIdx = -1, nativeStartRunIdx = -1;
+        boolean idle = false;
+        int cnt = stack.getCount();
+        for (int i = 0; i < cnt; i++) {
+            int flags = stack.get(i).getFrame().getFlags();
+            if (flags == 0) continue;
+            if (loopIdx < 0 && (flags & RULE_LOOPER_LOOP) != 0) {
+                loopIdx = i;
+            }
+            if ((flags & RULE_LOOPER_IDLE) != 0) {
+                idle = true;
+            }
+            if (binderIdx < 0 && (flags & RULE_BINDER_ENTRY) != 0) {
+                binderIdx = i;
+            }
+            if (nativeStartRunIdx < 0 && (flags & RULE_NATIVE_START) != 0) {
+                nativeStartRunIdx = i;
+            }
+        }
+
         // Check android looper based threads
-        int loopIdx = stack.findMethod("android.os.Looper.loop");
         if (loopIdx >= 0) {
-            int waitIdx1 = stack.findMethod("android.os.MessageQueue.nativePollOnce");
-            int waitIdx2 = stack.findMethod("android.os.MessageQueue.next");
-            if (waitIdx1 < 0 && waitIdx2 < 0) {
+            if (!idle) {
                 // This looper based thread seems to be doing something
                 stack.setStyle(0, loopIdx, StackTraceItem.STYLE_BUSY);
                 p.addBusyThreadStack(stack);
@@ -66,13 +115,11 @@ public class Analyzer {
         }
 
         // Check binder transactions
-        int binderIdx = stack.findMethod("android.os.Binder.execTransact");
         if (binderIdx >= 0) {
             stack.setStyle(0, binderIdx, StackTraceItem.STYLE_BUSY);
             p.addBusyThreadStack(stack);
         }
         // Check NativeStart.run based threads
-        int nativeStartRunIdx = stack.findMethod("dalvik.system.NativeStart.run");
         if (nativeStartRunIdx > 0) {
             // Thread is not currently in NativeStart.run, it seems to be doing
             // something
@@ -86,7 +133,7 @@ public class Analyzer {
         int itemCnt = stack.getCount();
         for (int j = itemCnt-1; j >= 0; j--) {
             StackTraceItem item = stack.get(j);
-            if (isMainViolation(item.getMethod())) {
+            if ((item.getFrame().getFlags() & RULE_MAIN_VIOLATION) != 0) {
                 // Report a bug
                 StackTraceItem caller = stack.get(j+1);
                 Anchor anchorTrace = stack.getAnchor();
@@ -120,140 +167,21 @@ public class Analyzer {
         }
     }
 
-    private boolean isMainViolation(String method) {
-        if (method.startsWith("android.content.ContentResolver."))
-            return true;
-        if (method
-                .startsWith("org.apache.harmony.luni.internal.net.www.protocol.http.HttpURLConnectionImpl."))
-            return true;
-        if (method
-                .startsWith("org.apache.harmony.luni.internal.net.www.protocol.https.HttpURLConnectionImpl."))
-            return true;
-        if (method
-                .startsWith("org.apache.harmony.luni.internal.net.www.protocol.http.HttpsURLConnectionImpl."))
-            return true;
-        if (method
-                .startsWith("org.apache.harmony.luni.internal.net.www.protocol.https.HttpsURLConnectionImpl."))
-            return true;
-        if (method.startsWith("android.database.sqlite.SQLiteDatabase."))
-            return true;
-        return false;
-    }
-
     private void checkDeadLock(Processes processes, BugReportModule br) {
-        // This hash table contains all the stack traces which are involved in
-        // deadlocks
-        // The key is the thread, the value is the list of threads which
-        // represent the actual deadlock
-        // Thus the key might not be in the actual deadlock, but have a
-        // direct/indirect dependency
-        // towards it
-        HashMap<StackTrace, Vector<StackTrace>> used = new HashMap<StackTrace, Vector<StackTrace>>();
-
-        // Loop all process
-        for (Process proc : processes) {
-            // Loop all threads
-            for (StackTrace stack : proc) {
-
-                if (used.containsKey(stack)) {
-                    // Already found this to be part of a deadlock, or depend on
-                    // it
-                    // Just skip it
-                    continue;
-                }
-
-                // Now we simply follow the dependencies and check if we arrive
-                // back
-                Vector<StackTrace> deps = new Vector<StackTrace>();
-                deps.add(stack);
-                while (true) {
-                    stack = stack.getDependency();
-
-                    if (stack == null) {
-                        // Dead end => no deadlock
-                        // Or item already detected in a deadlock, avoid
-                        // reporting twice
-                        deps.clear();
-                        break;
-                    }
-
-                    Vector<StackTrace> deadlock = used.get(stack);
-                    if (deadlock != null) {
-                        // This means the the previous thread(s) all depend on
-                        // an already
-                        // detected deadlock, so we need to update the
-                        // information
-                        for (StackTrace item : deps) {
-                            used.put(item, deadlock);
-                        }
-                        // also abort current search
-                        deps.clear();
-                        break;
-                    }
-
-                    int idx = deps.indexOf(stack);
-                    if (idx >= 0) {
-                        // dDadlock found, keep track of found items
-                        for (StackTrace item : deps) {
-                            used.put(item, deps);
-                        }
-                        // cycle starts at idx, so we need to get rid of items
-                        // before idx
-                        for (int i = idx - 1; i >= 0; i--) {
-                            deps.remove(i);
-                        }
-                        break;
-                    }
-
-                    deps.add(stack);
-                }
-            }
-        }
-
-        // Now we have all the detected deadlocks in the "used" hashmap, but we
-        // still need to
-        // extract it in a nice way
-        Object[] keys = used.keySet().toArray();
-        int len = keys.length;
-        for (int i = 0; i < len; i++) {
-            StackTrace key = (StackTrace) keys[i];
-            if (key == null)
-                continue; // already processed
-            Vector<StackTrace> deadlock = used.get(key);
-            Vector<StackTrace> blocked = new Vector<StackTrace>();
-            Vector<Process> procList = new Vector<Process>();
-            for (int j = i; j < len; j++) {
-                StackTrace item = (StackTrace) keys[j];
-                if (item != null && deadlock == used.get(item)) {
-                    // This thread is involved in this deadlock
-                    if (!deadlock.contains(item)) {
-                        // If it's not part of the deadlock, then it just
-                        // depends on it
-                        blocked.add(item);
-                    }
-                    // collect process names
-                    if (!procList.contains(item.getProcess())) {
-                        procList.add(item.getProcess());
-                    }
-                    // avoid further processing of this thread
-                    keys[j] = null;
-                }
-            }
-
-            // Collect process names
-            StringBuffer procNames = new StringBuffer();
-            for (int j = 0; j < procList.size(); j++) {
-                if (j > 0) {
-                    procNames.append(", ");
-                }
-                procNames.append(procList.get(j).getName());
-            }
+        // Build the graph of the thread dependencies (both monitors and binder transactions)
+        // and find the cycles in it
+        WaitGraph graph = new WaitGraph(processes);
+        for (WaitGraph.Deadlock dl : graph.getDeadlocks()) {
+            Vector<StackTrace> deadlock = dl.getThreads();
+            Vector<StackTrace> blocked = dl.getBlocked();
+            Vector<Process> procList = collectProcesses(processes, deadlock, blocked);
+            String procNames = getProcessNames(procList);
 
             Bug bug = new Bug(Bug.PRIO_DEADLOCK, 0, "Deadlock in process(es) " + procNames);
             DocNode msg = new Block(bug).addStyle("bug");
             new Para(msg)
                 .add("The process(es) ")
-                .add(new Bold(procNames.toString()))
+                .add(new Bold(procNames))
                 .add(" has/have a deadlock involving the following threads (from \"")
                 .add(procList.get(0).getGroup().getName() + "\"):");
             listThreads(br, msg, deadlock);
@@ -261,9 +189,78 @@ public class Analyzer {
                 new Para(msg).add("Additionally the following threads are blocked due to this deadlock:");
                 listThreads(br, msg, blocked);
             }
+            addDeadlockSignature(br, bug, deadlock);
+            br.addBug(bug);
+        }
+
+        // Report the longest chains of threads waiting on each other across processes
+        for (Vector<StackTrace> chain : graph.getLongestChains(MAX_CHAINS)) {
+            if (chain.size() < MIN_CHAIN_LENGTH) break;
+            Vector<Process> procList = collectProcesses(processes, chain, new Vector<StackTrace>());
+            String procNames = getProcessNames(procList);
+
+            Bug bug = new Bug(Bug.PRIO_BLOCKING_CHAIN, 0, "Long blocking chain in process(es) " + procNames);
+            DocNode msg = new Block(bug).addStyle("bug");
+            new Para(msg)
+                .add("The thread ")
+                .add(new Link(chain.get(0).getAnchor(), chain.get(0).getName()))
+                .add(" is waiting on a chain of " + (chain.size() - 1) + " thread(s) in the process(es) ")
+                .add(new Bold(procNames))
+                .add(" (from \"" + procList.get(0).getGroup().getName() + "\"):");
+            listThreads(br, msg, chain);
             br.addBug(bug);
         }
+    }
+
+    private void addDeadlockSignature(BugReportModule br, Bug bug, Vector<StackTrace> deadlock) {
+        // The same deadlock can be found starting from any of its threads, so use the
+        // sorted list of the methods where the threads are stuck
+        Vector<String> tops = new Vector<String>();
+        for (StackTrace stack : deadlock) {
+            if (stack.getCount() > 0) {
+                tops.add(stack.get(0).getMethod());
+            }
+        }
+        Collections.sort(tops);
+        StringBuffer head = new StringBuffer();
+        for (String method : tops) {
+            if (head.length() > 0) {
+                head.append(';');
+            }
+            head.append(method);
+        }
+        br.addSignature(bug, "deadlock", head.toString(), new Vector<String>());
+    }
+
+    /**
+     * Collects the processes of the threads, in the order they appear in the dump.
+     */
+    private Vector<Process> collectProcesses(Processes processes, Vector<StackTrace> list1, Vector<StackTrace> list2) {
+        HashSet<Process> found = new HashSet<Process>();
+        for (StackTrace stack : list1) {
+            found.add(stack.getProcess());
+        }
+        for (StackTrace stack : list2) {
+            found.add(stack.getProcess());
+        }
+        Vector<Process> ret = new Vector<Process>();
+        for (Process proc : processes) {
+            if (found.contains(proc)) {
+                ret.add(proc);
+            }
+        }
+        return ret;
+    }
 
+    private String getProcessNames(Vector<Process> procList) {
+        StringBuffer procNames = new StringBuffer();
+        for (int j = 0; j < procList.size(); j++) {
+            if (j > 0) {
+                procNames.append(", ");
+            }
+            procNames.append(procList.get(j).getName());
+        }
+        return procNames.toString();
     }
 
     private void listThreads(BugReportModule br, DocNode msg, Vector<StackTrace> list) {
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2012 Sony Mobile Communications AB
+ *
+ * This file is part of ChkBugReport.
+ *
+ * ChkBugReport is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * ChkBugReport is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ChkBugReport.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.sonyericsson.chkbugreport.plugins.stacktrace;
+
+import java.util.HashMap;
+
+/**
+ * A set of rules matching method names, compiled into a prefix tree.
+ *
+ * <p>Each rule is identified by a bit flag, and matches either the exact method name, or all the
+ * methods starting with a given prefix. Matching a method returns the flags of all matching
+ * rules, and takes time proportional to the length of the method name, regardless of the number
+ * of rules.</p>
+ */
+public class FrameRules {
+
+    private Node mRoot = new Node();
+
+    private static class Node {
+        HashMap<Character, Node> mChildren;
+        /** Rules matching the methods starting with the string leading to this node */
+        int mPrefixFlags;
+        /** Rules matching the method equal to the string leading to this node */
+        int mExactFlags;
+    }
+
+    /**
+     * Adds a rule matching the method with exactly the given name.
+     */
+    public FrameRules addMethod(String method, int flag) {
+        findOrCreate(method).mExactFlags |= flag;
+        return this;
+    }
+
+    /**
+     * Adds a rule matching all the methods starting with the given prefix.
+     */
+    public FrameRules addPrefix(String prefix, int flag) {
+        findOrCreate(prefix).mPrefixFlags |= flag;
+        return this;
+    }
+
+    /**
+     * Returns the flags of all the rules matching the method.
+     */
+    public int match(String method) {
+        int ret = 0;
+        Node node = mRoot;
+        int len = method.length();
+        for (int i = 0; i < len; i++) {
+            ret |= node.mPrefixFlags;
+            if (node.mChildren == null) {
+                return ret;
+            }
+            node = node.mChildren.get(method.charAt(i));
+            if (node == null) {
+                return ret;
+            }
+        }
+        return ret | node.mPrefixFlags | node.mExactFlags;
+    }
+
+    private Node findOrCreate(String s) {
+        Node node = mRoot;
+        int len = s.length();
+        for (int i = 0; i < len; i++) {
+            if (node.mChildren == null) {
+                node.mChildren = new HashMap<Character, Node>();
+            }
+            Node child = node.mChildren.get(s.charAt(i));
+            if (child == null) {
+                child = new Node();
+                node.mChildren.put(s.charAt(i), child);
+            }
+            node = child;
+        }
+        return node;
+    }
+
+}
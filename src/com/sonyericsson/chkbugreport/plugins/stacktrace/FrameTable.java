@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2012 Sony Mobile Communications AB
+ *
+ * This file is part of ChkBugReport.
+ *
+ * ChkBugReport is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * ChkBugReport is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ChkBugReport.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.sonyericsson.chkbugreport.plugins.stacktrace;
+
+import java.util.HashMap;
+import java.util.Vector;
+
+/**
+ * Interns the methods and frames found in the stack traces.
+ *
+ * <p>The same framework frames appear thousands of times in a bugreport, so each distinct frame
+ * is stored only once, and each distinct method gets an integer id. The rules are evaluated only
+ * once per method, when it's first seen, and stored as flags in the frames.</p>
+ *
+ * <p>The stack trace sections might be scanned in parallel, so the table is thread safe.</p>
+ */
+public class FrameTable {
+
+    private FrameRules mRules;
+    private HashMap<String, Integer> mMethodIds = new HashMap<String, Integer>();
+    private Vector<String> mMethods = new Vector<String>();
+    /** The flags of each method, indexed by the method id (the array is grown as needed) */
+    private int mMethodFlags[] = new int[256];
+    private HashMap<StackFrame, StackFrame> mFrames = new HashMap<StackFrame, StackFrame>();
+    private HashMap<String, String> mFileNames = new HashMap<String, String>();
+
+    public FrameTable(FrameRules rules) {
+        mRules = rules;
+    }
+
+    /**
+     * Returns the shared instance of the given frame.
+     * @param method The fully qualified method name
+     * @param fileName The name of the source file, or null if not known
+     * @param line The line number, or -1 if not known
+     */
+    public synchronized StackFrame intern(String method, String fileName, int line) {
+        int methodId = getMethodId(method);
+        if (fileName != null) {
+            String shared = mFileNames.get(fileName);
+            if (shared == null) {
+                mFileNames.put(fileName, fileName);
+            } else {
+                fileName = shared;
+            }
+        }
+        StackFrame key = new StackFrame(methodId, mMethods.get(methodId), fileName, line,
+                mMethodFlags[methodId]);
+        StackFrame ret = mFrames.get(key);
+        if (ret == null) {
+            mFrames.put(key, key);
+            ret = key;
+        }
+        return ret;
+    }
+
+    /**
+     * Returns the id of the method, registering it if it's not known yet.
+     */
+    private int getMethodId(String method) {
+        Integer id = mMethodIds.get(method);
+        if (id == null) {
+            id = mMethods.size();
+            mMethodIds.put(method, id);
+            mMethods.add(method);
+            if (id == mMethodFlags.length) {
+                int flags[] = new int[id * 2];
+                System.arraycopy(mMethodFlags, 0, flags, 0, id);
+                mMethodFlags = flags;
+            }
+            mMethodFlags[id] = (mRules == null) ? 0 : mRules.match(method);
+        }
+        return id;
+    }
+
+}
@@ -1,6 +1,7 @@
 package com.sonyericsson.chkbugreport.plugins.stacktrace;
 
 import com.sonyericsson.chkbugreport.BugReportModule;
+import com.sonyericsson.chkbugreport.FingerprintIndex;
 import com.sonyericsson.chkbugreport.Module;
 import com.sonyericsson.chkbugreport.ProcessRecord;
 import com.sonyericsson.chkbugreport.Util;
@@ -18,6 +19,7 @@ import com.sonyericsson.chkbugreport.doc.Span;
 import com.sonyericsson.chkbugreport.ps.PSRecord;
 
 import java.util.Calendar;
+import java.util.HashSet;
 import java.util.Vector;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -44,6 +46,9 @@ public class Generator {
         String diff = Util.formatTimeDiff(tsBr, tsSec, true);
         diff = (diff == null) ? "" : "; " + diff + "";
         new Hint(main).add("Generated from : \"" + processes.getSectionName() + "\" " + diff);
+        if (id == StackTracePlugin.ID_ANR) {
+            addANRSignature(br, processes, main);
+        }
 
         // Dump the actuall stack traces
         for (Process p : processes) {
@@ -57,19 +62,6 @@ public class Generator {
             diff = (diff == null) ? "" : "; " + diff + "";
             new Hint(ch).add(dateTime + diff);
 
-            // Add link from global process record
-            ProcessRecord pr = br.getProcessRecord(p.getPid(), true, true);
-            pr.suggestName(p.getName(), 50);
-            String linkText = "Related stack traces &gt;&gt;&gt;";
-            if (id == StackTracePlugin.ID_NOW) {
-                linkText = "Current stack trace &gt;&gt;&gt;";
-            } else if (id == StackTracePlugin.ID_ANR) {
-                linkText = "Stack trace at last ANR &gt;&gt;&gt;";
-            } else if (id == StackTracePlugin.ID_OLD) {
-                linkText = "Old stack traces &gt;&gt;&gt;";
-            }
-            new Para(pr).add(new Link(ch.getAnchor(), linkText));
-
             int cnt = p.getCount();
             for (int i = 0; i < cnt; i++) {
                 StackTrace stack = p.get(i);
@@ -98,8 +90,8 @@ public class Generator {
                         " (tid=" + stack.getTid() +
                         " pid=" + stack.getProperty("sysTid") +
                         " prio=" + stack.getPrio() + " ")
-                    .add(new Img(nice))
-                    .add(new Img(sched))
+                    .add(Img.res(nice))
+                    .add(Img.res(sched))
                     .add(" state=" + stack.getState())
                     .add(waiting)
                     .add(")");
@@ -175,6 +167,52 @@ public class Generator {
 
     }
 
+    /**
+     * Adds the links from the global process records to the stack traces.
+     * The process records are shared, so this must not be called in parallel.
+     */
+    public void linkProcessRecords(BugReportModule br, Processes processes) {
+        int id = processes.getId();
+        for (Process p : processes) {
+            ProcessRecord pr = br.getProcessRecord(p.getPid(), true, true);
+            pr.suggestName(p.getName(), 50);
+            String linkText = "Related stack traces &gt;&gt;&gt;";
+            if (id == StackTracePlugin.ID_NOW) {
+                linkText = "Current stack trace &gt;&gt;&gt;";
+            } else if (id == StackTracePlugin.ID_ANR) {
+                linkText = "Stack trace at last ANR &gt;&gt;&gt;";
+            } else if (id == StackTracePlugin.ID_OLD) {
+                linkText = "Old stack traces &gt;&gt;&gt;";
+            }
+            new Para(pr).add(new Link(p.getChapter().getAnchor(), linkText));
+        }
+    }
+
+    /**
+     * Adds the signature of the ANR to the fingerprint index: the top of the stack of the thread
+     * blocking the main thread of the first process (the one dumped first is the one not
+     * responding), or of the main thread itself if it's not waiting on another thread.
+     */
+    private void addANRSignature(BugReportModule br, Processes processes, Chapter main) {
+        if (processes.size() == 0) return;
+        Process p = processes.get(0);
+        StackTrace stack = p.findTid(1);
+        if (stack == null) return;
+        HashSet<StackTrace> visited = new HashSet<StackTrace>();
+        visited.add(stack);
+        while (true) {
+            StackTrace next = stack.getDependency();
+            if (next == null || !visited.add(next)) break;
+            stack = next;
+        }
+        Vector<String> methods = new Vector<String>();
+        int cnt = Math.min(FingerprintIndex.TOP_FRAMES, stack.getCount());
+        for (int i = 0; i < cnt; i++) {
+            methods.add(stack.get(i).getMethod());
+        }
+        br.addSignature(main, "anr-stack", p.getName(), methods);
+    }
+
     private String detectAidlCall(StackTrace stack) {
         Pattern p = Pattern.compile("([^.]+)\\$Stub\\$Proxy\\.(.+)");
         for (StackTraceItem item : stack) {
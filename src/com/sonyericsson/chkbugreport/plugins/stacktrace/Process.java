@@ -4,6 +4,7 @@ import com.sonyericsson.chkbugreport.BugReportModule;
 import com.sonyericsson.chkbugreport.doc.Chapter;
 import com.sonyericsson.chkbugreport.ps.PSRecord;
 
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Vector;
 
@@ -12,6 +13,13 @@ public class Process implements Iterable<StackTrace> {
     private int mPid;
     private String mName;
     private Vector<StackTrace> mStacks = new Vector<StackTrace>();
+    /** Index of the first stack trace for each thread id */
+    private HashMap<Integer, Integer> mTidIndex = new HashMap<Integer, Integer>();
+    /**
+     * Index of the first stack trace for each sysTid, built on demand since the
+     * sysTid is known only after the stack trace properties are parsed
+     */
+    private HashMap<Integer, StackTrace> mPidIndex;
     private Vector<PSRecord> mUnknownThreads= new Vector<PSRecord>();
     private Processes mGroup;
     private String mDate;
@@ -43,30 +51,25 @@ public class Process implements Iterable<StackTrace> {
     }
 
     public StackTrace findTid(int tid) {
-        for (StackTrace stack : mStacks) {
-            if (stack.getTid() == tid) {
-                return stack;
-            }
-        }
-        return null;
+        int idx = indexOf(tid);
+        return idx < 0 ? null : mStacks.get(idx);
     }
 
     public StackTrace findPid(int pid) {
-        for (StackTrace stack : mStacks) {
-            if (stack.getPid() == pid) {
-                return stack;
+        if (mPidIndex == null) {
+            mPidIndex = new HashMap<Integer, StackTrace>();
+            for (StackTrace stack : mStacks) {
+                if (!mPidIndex.containsKey(stack.getPid())) {
+                    mPidIndex.put(stack.getPid(), stack);
+                }
             }
         }
-        return null;
+        return mPidIndex.get(pid);
     }
 
     public int indexOf(int tid) {
-        for (int i = 0; i < mStacks.size(); i++) {
-            if (mStacks.get(i).getTid() == tid) {
-                return i;
-            }
-        }
-        return -1;
+        Integer idx = mTidIndex.get(tid);
+        return idx == null ? -1 : idx;
     }
 
     public int getPid() {
@@ -83,7 +86,11 @@ public class Process implements Iterable<StackTrace> {
     }
 
     public void addStackTrace(StackTrace stackTrace) {
+        if (!mTidIndex.containsKey(stackTrace.getTid())) {
+            mTidIndex.put(stackTrace.getTid(), mStacks.size());
+        }
         mStacks.add(stackTrace);
+        mPidIndex = null;
     }
 
     public int getCount() {
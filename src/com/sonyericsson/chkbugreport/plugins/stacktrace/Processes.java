@@ -3,6 +3,8 @@ package com.sonyericsson.chkbugreport.plugins.stacktrace;
 import com.sonyericsson.chkbugreport.Module;
 import com.sonyericsson.chkbugreport.doc.Chapter;
 
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Vector;
 
 public class Processes extends Vector<Process> {
@@ -11,6 +13,10 @@ public class Processes extends Vector<Process> {
     private String mName;
     private String mSectionName;
     private Vector<StackTrace> mBusy = new Vector<StackTrace>();
+    private HashSet<StackTrace> mBusySet = new HashSet<StackTrace>();
+    /** Index of the first process for each pid, rebuilt when the list changes */
+    private HashMap<Integer, Process> mPidIndex;
+    private int mPidIndexModCount;
     private Chapter mCh;
 
     public Processes(Module report, int id, String name, String sectionName) {
@@ -39,7 +45,7 @@ public class Processes extends Vector<Process> {
     private static final long serialVersionUID = 1L;
 
     public void addBusyThreadStack(StackTrace stack) {
-        if (!mBusy.contains(stack)) {
+        if (mBusySet.add(stack)) {
             mBusy.add(stack);
         }
     }
@@ -48,13 +54,17 @@ public class Processes extends Vector<Process> {
         return mBusy;
     }
 
-    public Process findPid(int pid) {
-        for (Process p : this) {
-            if (p.getPid() == pid) {
-                return p;
+    public synchronized Process findPid(int pid) {
+        if (mPidIndex == null || mPidIndexModCount != modCount) {
+            mPidIndex = new HashMap<Integer, Process>();
+            for (Process p : this) {
+                if (!mPidIndex.containsKey(p.getPid())) {
+                    mPidIndex.put(p.getPid(), p);
+                }
             }
+            mPidIndexModCount = modCount;
         }
-        return null;
+        return mPidIndex.get(pid);
     }
 
     public Vector<StackTrace> getAIDLCalls() {
@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2012 Sony Mobile Communications AB
+ *
+ * This file is part of ChkBugReport.
+ *
+ * ChkBugReport is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * ChkBugReport is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ChkBugReport.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.sonyericsson.chkbugreport.plugins.stacktrace;
+
+/**
+ * A frame (method and source location) from the stack traces.
+ * The frames are interned in a FrameTable, so the same frame appearing in several stack traces
+ * is stored only once. Since the frames are shared, they must not be modified.
+ */
+public class StackFrame {
+
+    /** The id of the method, unique within the FrameTable (used only for comparing the frames) */
+    private int mMethodId;
+    private String mMethod;
+    private String mFileName;
+    private int mLine;
+    private int mFlags;
+
+    /* package */ StackFrame(int methodId, String method, String fileName, int line, int flags) {
+        mMethodId = methodId;
+        mMethod = method;
+        mFileName = fileName;
+        mLine = line;
+        mFlags = flags;
+    }
+
+    public String getMethod() {
+        return mMethod;
+    }
+
+    public String getFileName() {
+        return mFileName;
+    }
+
+    public int getLine() {
+        return mLine;
+    }
+
+    /**
+     * Returns the rules (as defined in the FrameRules used by the FrameTable) matching the method.
+     */
+    public int getFlags() {
+        return mFlags;
+    }
+
+    @Override
+    public int hashCode() {
+        int ret = mMethodId * 31 + mLine;
+        if (mFileName != null) {
+            ret = ret * 31 + mFileName.hashCode();
+        }
+        return ret;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof StackFrame)) {
+            return false;
+        }
+        StackFrame f = (StackFrame) o;
+        if (mMethodId != f.mMethodId || mLine != f.mLine) {
+            return false;
+        }
+        return mFileName == null ? f.mFileName == null : mFileName.equals(f.mFileName);
+    }
+
+}
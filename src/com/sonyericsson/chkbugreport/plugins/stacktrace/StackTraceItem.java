@@ -5,15 +5,11 @@ public class StackTraceItem {
     public static final String STYLE_ERR = "stacktrace-err";
     public static final String STYLE_BUSY = "stacktrace-busy";
 
-    private String mMethod;
-    private String mFileName;
-    private int mLine;
+    private StackFrame mFrame;
     private String mStyle = "";
 
-    public StackTraceItem(String method, String fileName, int line) {
-        mMethod = method;
-        mFileName = fileName;
-        mLine = line;
+    public StackTraceItem(StackFrame frame) {
+        mFrame = frame;
     }
 
     public String getStyle() {
@@ -24,16 +20,20 @@ public class StackTraceItem {
         mStyle = style;
     }
 
+    public StackFrame getFrame() {
+        return mFrame;
+    }
+
     public String getMethod() {
-        return mMethod;
+        return mFrame.getMethod();
     }
 
     public String getFileName() {
-        return mFileName;
+        return mFrame.getFileName();
     }
 
     public int getLine() {
-        return mLine;
+        return mFrame.getLine();
     }
 
 }
@@ -29,6 +29,7 @@ import com.sonyericsson.chkbugreport.ps.PSRecord;
 
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Vector;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -61,27 +62,41 @@ public class StackTracePlugin extends Plugin {
 
     private Chapter mSlowChapters;
 
+    /** The frames of all the stack traces from the bugreport */
+    private FrameTable mFrames;
+
     @Override
     public int getPrio() {
         return 10;
     }
 
+    @Override
+    public String[] getDependencies() {
+        return new String[] { "PSScannerPlugin" }; // The threads are matched with the PS output
+    }
+
     @Override
     public void reset() {
         // Reset state
         mProcesses.clear();
         mSlowChapters = null;
+        mFrames = new FrameTable(Analyzer.createRules());
+    }
+
+    public FrameTable getFrameTable() {
+        return mFrames;
     }
 
     @Override
     public void load(Module rep) {
-        BugReportModule br = (BugReportModule)rep;
+        final BugReportModule br = (BugReportModule)rep;
 
-        // Load data
-        run(br, ID_NOW, "VM TRACES JUST NOW", "VM traces just now");
-        run(br, ID_ANR, "VM TRACES AT LAST ANR", "VM traces at last ANR");
+        // Collect the sections to load
+        Vector<Job> jobs = new Vector<Job>();
+        addJob(br, jobs, ID_NOW, "VM TRACES JUST NOW", "VM traces just now");
+        addJob(br, jobs, ID_ANR, "VM TRACES AT LAST ANR", "VM traces at last ANR");
         // backward compatibility
-        run(br, ID_OLD, "VM TRACES", "VM traces");
+        addJob(br, jobs, ID_OLD, "VM TRACES", "VM traces");
 
         // List all "VM TRACES WHEN SLOW" sections
         int id = ID_SLOW;
@@ -91,11 +106,32 @@ public class StackTracePlugin extends Plugin {
                 Matcher m = Pattern.compile("\\((.*)\\)").matcher(ss);
                 if (m.find()) {
                     String s = m.group(1);
-                    run(br, id++, sec, s);
+                    jobs.add(new Job(id++, sec, s));
                 }
             }
         }
 
+        // Load data: the sections are independent from each other, so they can be scanned
+        // in parallel, but the results are registered in the original order
+        if (br.getContext().getThreadCount() > 1) {
+            Vector<Runnable> tasks = new Vector<Runnable>();
+            for (final Job job : jobs) {
+                tasks.add(new Runnable() {
+                    @Override
+                    public void run() {
+                        job.mProcesses = scan(br, job.mId, job.mSection, job.mChapterName);
+                    }
+                });
+            }
+            br.runTasks(tasks);
+        }
+        for (Job job : jobs) {
+            if (job.mProcesses == null) {
+                job.mProcesses = scan(br, job.mId, job.mSection, job.mChapterName);
+            }
+            register(br, job.mId, job.mProcesses);
+        }
+
         // Analyze the binder state to find inter-process dependencies
         Processes proc = mProcesses.get(ID_NOW);
         Section sec = br.findSection(Section.BINDER_STATE);
@@ -109,27 +145,25 @@ public class StackTracePlugin extends Plugin {
         }
     }
 
-    private void run(BugReportModule br, int id, String sectionName, String chapterName) {
+    private void addJob(BugReportModule br, Vector<Job> jobs, int id, String sectionName, String chapterName) {
         Section sec = br.findSection(sectionName);
         if (sec == null) {
             br.printErr(3, TAG + "Cannot find section: " + sectionName + " (aborting plugin)");
             return;
         }
-        run(br, id, sec, chapterName);
+        jobs.add(new Job(id, sec, chapterName));
     }
 
-    private void run(BugReportModule br, int id, Section sec, String chapterName) {
+    /**
+     * Scans the stack traces from one section. This must not modify any shared data,
+     * since several sections might be scanned in parallel.
+     */
+    private Processes scan(BugReportModule br, int id, Section sec, String chapterName) {
         // Scan stack traces
         StackTraceScanner scanner = new StackTraceScanner(this);
         Processes processes = scanner.scan(br, id, sec, chapterName);
-        mProcesses.put(id, processes);
-        if (id < ID_SLOW) {
-            br.addChapter(processes.getChapter());
-        } else {
-            addSlowChapter(br, processes.getChapter());
-        }
 
-        // Also do some initial pre-processing, mainly to extract some useful info for other plugins
+        // Also do some initial pre-processing: find the threads without stack traces
         for (Process process : processes) {
             // First make a list of all known threads
             PSRecord ps = br.getPSRecord(process.getPid());
@@ -137,7 +171,8 @@ public class StackTracePlugin extends Plugin {
             if (ps != null) {
                 ps.getChildren(chpsr);
             }
-            // Suggest names and remove known children
+            // Collect known children
+            HashSet<PSRecord> known = new HashSet<PSRecord>();
             int cnt = process.getCount();
             for (int i = 0; i < cnt; i++) {
                 StackTrace stack = process.get(i);
@@ -145,40 +180,78 @@ public class StackTracePlugin extends Plugin {
                 if (propSysTid != null) {
                     try {
                         int sysTid = Integer.parseInt(propSysTid);
-                        ProcessRecord pr = br.getProcessRecord(sysTid, true, false);
-                        pr.suggestName(stack.getName(), 40);
-                        // remove known child process records
+                        // mark known child process records
                         PSRecord psr = br.getPSRecord(sysTid);
                         if (psr != null) {
-                            chpsr.remove(psr);
+                            known.add(psr);
                         }
                     } catch (NumberFormatException nfe) { }
                 }
             }
             // Store unknown process records
             for (PSRecord psr : chpsr) {
-                process.addUnknownThread(psr);
+                if (!known.contains(psr)) {
+                    process.addUnknownThread(psr);
+                }
             }
         }
+        return processes;
+    }
+
+    /**
+     * Registers the scanned stack traces, and extracts some useful info for other plugins.
+     */
+    private void register(BugReportModule br, int id, Processes processes) {
+        mProcesses.put(id, processes);
+        if (id < ID_SLOW) {
+            br.addChapter(processes.getChapter());
+        } else {
+            addSlowChapter(br, processes.getChapter());
+        }
 
+        // Suggest names (the first suggestion wins, so this must be done in a fixed order)
+        for (Process process : processes) {
+            int cnt = process.getCount();
+            for (int i = 0; i < cnt; i++) {
+                StackTrace stack = process.get(i);
+                String propSysTid = stack.getProperty("sysTid");
+                if (propSysTid != null) {
+                    try {
+                        int sysTid = Integer.parseInt(propSysTid);
+                        ProcessRecord pr = br.getProcessRecord(sysTid, true, false);
+                        pr.suggestName(stack.getName(), 40);
+                    } catch (NumberFormatException nfe) { }
+                }
+            }
+        }
     }
 
     @Override
     public void generate(Module rep) {
-        BugReportModule br = (BugReportModule)rep;
+        final BugReportModule br = (BugReportModule)rep;
 
         if (mProcesses.size() == 0) return;
 
-        // Analyze the processes (for possible errors)
-        for (Processes processes : mProcesses.values()) {
-            Analyzer analyzer = new Analyzer(this);
-            analyzer.analyze(br, processes);
+        // Analyze the processes (for possible errors) and generate the output; the groups
+        // are independent from each other, so they can be processed in parallel
+        Vector<Runnable> tasks = new Vector<Runnable>();
+        for (final Processes processes : mProcesses.values()) {
+            tasks.add(new Runnable() {
+                @Override
+                public void run() {
+                    Analyzer analyzer = new Analyzer(StackTracePlugin.this);
+                    analyzer.analyze(br, processes);
+                    Generator gen = new Generator(StackTracePlugin.this);
+                    gen.generate(br, processes);
+                }
+            });
         }
+        br.runTasks(tasks);
 
-        // Generate the output
+        // Link the process records to the stack traces (these are shared between the groups)
         for (Processes processes : mProcesses.values()) {
             Generator gen = new Generator(this);
-            gen.generate(br, processes);
+            gen.linkProcessRecords(br, processes);
         }
         if (mSlowChapters != null) {
             mSlowChapters.sort(new Comparator<Chapter>() {
@@ -202,4 +275,18 @@ public class StackTracePlugin extends Plugin {
         mSlowChapters.addChapter(main);
     }
 
+    /** A section containing stack traces, to be loaded */
+    private static class Job {
+        int mId;
+        Section mSection;
+        String mChapterName;
+        Processes mProcesses;
+
+        Job(int id, Section section, String chapterName) {
+            mId = id;
+            mSection = section;
+            mChapterName = chapterName;
+        }
+    }
+
 }
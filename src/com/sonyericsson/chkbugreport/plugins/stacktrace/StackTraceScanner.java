@@ -13,7 +13,10 @@ public class StackTraceScanner {
     private static final int STATE_STACK = 2;
 
 
+    private FrameTable mFrames;
+
     public StackTraceScanner(StackTracePlugin stackTracePlugin) {
+        mFrames = stackTracePlugin.getFrameTable();
     }
 
     public Processes scan(BugReportModule br, int id, Section sec, String chapterName) {
@@ -126,7 +129,7 @@ public class StackTraceScanner {
                                 }
                                 line = Integer.parseInt(lineS);
                             }
-                            StackTraceItem item = new StackTraceItem(method, fileName, line);
+                            StackTraceItem item = new StackTraceItem(mFrames.intern(method, fileName, line));
                             curStackTrace.addStackTraceItem(item);
                         }
                     }
@@ -0,0 +1,294 @@
+/*
+ * Copyright (C) 2012 Sony Mobile Communications AB
+ *
+ * This file is part of ChkBugReport.
+ *
+ * ChkBugReport is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * ChkBugReport is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ChkBugReport.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.sonyericsson.chkbugreport.plugins.stacktrace;
+
+import java.util.HashMap;
+import java.util.Vector;
+
+/**
+ * The wait-for graph of the threads from one stack trace dump.
+ *
+ * <p>Each thread is a node, and there is an edge from a thread to the thread it waits for:
+ * the owner of the monitor it's trying to lock, or the thread serving its outgoing binder
+ * transaction. The strongly connected components are found with Tarjan's algorithm, so the
+ * whole analysis is linear in the number of threads and dependencies.</p>
+ *
+ * <p>A component containing a cycle is a deadlock. The threads which are not part of a deadlock,
+ * but directly or indirectly wait for one, are blocked by it. For the rest of the threads the
+ * longest chain of threads they are waiting for is calculated as well.</p>
+ */
+public class WaitGraph {
+
+    private Vector<StackTrace> mNodes = new Vector<StackTrace>();
+    private HashMap<StackTrace, Integer> mIds = new HashMap<StackTrace, Integer>();
+    /** The targets of node i are stored in mEdges[mEdgeStart[i] .. mEdgeStart[i + 1] - 1] */
+    private int mEdgeStart[];
+    private int mEdges[];
+    /** The component of each node, and the members of each component in discovery order */
+    private int mComp[];
+    private Vector<int[]> mComps = new Vector<int[]>();
+    /** The deadlocked component each component is (or waits for), or -1 */
+    private int mDeadlockOf[];
+    /** The next node and the length of the longest chain starting at each node */
+    private int mNext[];
+    private int mDepth[];
+    /** Set if the longest chain starting at the node spans more than one process */
+    private boolean mCross[];
+    private Vector<Deadlock> mDeadlocks = new Vector<Deadlock>();
+
+    /**
+     * A deadlock: the threads in the cycle, and the threads blocked by it.
+     */
+    public static class Deadlock {
+
+        private Vector<StackTrace> mThreads = new Vector<StackTrace>();
+        private Vector<StackTrace> mBlocked = new Vector<StackTrace>();
+
+        /**
+         * Returns the threads involved in the deadlock, starting with the first thread found
+         * while following the dependencies, and then in the order they wait for each other.
+         */
+        public Vector<StackTrace> getThreads() {
+            return mThreads;
+        }
+
+        /**
+         * Returns the threads which are not part of the deadlock, but wait for it.
+         */
+        public Vector<StackTrace> getBlocked() {
+            return mBlocked;
+        }
+
+    }
+
+    public WaitGraph(Processes processes) {
+        for (Process proc : processes) {
+            for (StackTrace stack : proc) {
+                mIds.put(stack, mNodes.size());
+                mNodes.add(stack);
+            }
+        }
+        buildEdges();
+        findComponents();
+        findChains();
+        collectDeadlocks();
+    }
+
+    /**
+     * Returns the detected deadlocks, in the order of the first thread depending on them.
+     */
+    public Vector<Deadlock> getDeadlocks() {
+        return mDeadlocks;
+    }
+
+    /**
+     * Returns the longest chains of waiting threads which span more than one process and do not
+     * end in a deadlock. Each chain starts with the waiting thread and ends with the thread which
+     * doesn't wait for anybody.
+     * @param max The maximum number of chains to return
+     * @return The list of chains of the same length, or an empty list if no thread is waiting
+     */
+    public Vector<Vector<StackTrace>> getLongestChains(int max) {
+        Vector<Vector<StackTrace>> ret = new Vector<Vector<StackTrace>>();
+        int n = mNodes.size();
+        int maxDepth = 1;
+        for (int i = 0; i < n; i++) {
+            if (mCross[i] && mDeadlockOf[mComp[i]] < 0) {
+                maxDepth = Math.max(maxDepth, mDepth[i]);
+            }
+        }
+        if (maxDepth < 2) {
+            return ret;
+        }
+        for (int i = 0; i < n && ret.size() < max; i++) {
+            if (mCross[i] && mDeadlockOf[mComp[i]] < 0 && mDepth[i] == maxDepth) {
+                Vector<StackTrace> chain = new Vector<StackTrace>();
+                for (int v = i; v >= 0; v = mNext[v]) {
+                    chain.add(mNodes.get(v));
+                }
+                ret.add(chain);
+            }
+        }
+        return ret;
+    }
+
+    private int getId(StackTrace stack) {
+        if (stack == null) {
+            return -1;
+        }
+        Integer id = mIds.get(stack);
+        return id == null ? -1 : id;
+    }
+
+    private void buildEdges() {
+        int n = mNodes.size();
+        mEdgeStart = new int[n + 1];
+        mEdges = new int[n];
+        int cnt = 0;
+        for (int i = 0; i < n; i++) {
+            mEdgeStart[i] = cnt;
+            // A thread waiting to lock a monitor cannot wait for a binder transaction at the same
+            // time, so the monitor takes precedence (see StackTrace.getDependency())
+            int dep = getId(mNodes.get(i).getDependency());
+            if (dep >= 0) {
+                mEdges[cnt++] = dep;
+            }
+        }
+        mEdgeStart[n] = cnt;
+    }
+
+    /**
+     * Tarjan's algorithm, using an explicit stack, since the dependency chains can be long.
+     * The components are created in reverse topological order: each component is created after
+     * all the components it depends on.
+     */
+    private void findComponents() {
+        int n = mNodes.size();
+        int index[] = new int[n]; // discovery index + 1, 0 if not visited yet
+        int low[] = new int[n];
+        int stack[] = new int[n];
+        boolean onStack[] = new boolean[n];
+        int callNode[] = new int[n];
+        int callEdge[] = new int[n];
+        int sp = 0;
+        int counter = 0;
+        mComp = new int[n];
+        for (int root = 0; root < n; root++) {
+            if (index[root] != 0) continue;
+            index[root] = low[root] = ++counter;
+            stack[sp++] = root;
+            onStack[root] = true;
+            callNode[0] = root;
+            callEdge[0] = mEdgeStart[root];
+            int csp = 1;
+            while (csp > 0) {
+                int v = callNode[csp - 1];
+                if (callEdge[csp - 1] < mEdgeStart[v + 1]) {
+                    int w = mEdges[callEdge[csp - 1]++];
+                    if (index[w] == 0) {
+                        index[w] = low[w] = ++counter;
+                        stack[sp++] = w;
+                        onStack[w] = true;
+                        callNode[csp] = w;
+                        callEdge[csp] = mEdgeStart[w];
+                        csp++;
+                    } else if (onStack[w]) {
+                        low[v] = Math.min(low[v], index[w]);
+                    }
+                    continue;
+                }
+                csp--;
+                if (csp > 0) {
+                    int u = callNode[csp - 1];
+                    low[u] = Math.min(low[u], low[v]);
+                }
+                if (low[v] == index[v]) {
+                    int start = sp - 1;
+                    while (stack[start] != v) {
+                        start--;
+                    }
+                    int members[] = new int[sp - start];
+                    for (int i = 0; i < members.length; i++) {
+                        int m = stack[start + i];
+                        members[i] = m;
+                        onStack[m] = false;
+                        mComp[m] = mComps.size();
+                    }
+                    sp = start;
+                    mComps.add(members);
+                }
+            }
+        }
+    }
+
+    private boolean isCycle(int members[]) {
+        if (members.length > 1) {
+            return true;
+        }
+        int v = members[0];
+        for (int e = mEdgeStart[v]; e < mEdgeStart[v + 1]; e++) {
+            if (mEdges[e] == v) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void findChains() {
+        int n = mNodes.size();
+        int cc = mComps.size();
+        mDeadlockOf = new int[cc];
+        mNext = new int[n];
+        mDepth = new int[n];
+        mCross = new boolean[n];
+        // Since the components are in reverse topological order, the dependencies of a component
+        // are always processed before the component itself
+        for (int c = 0; c < cc; c++) {
+            int members[] = mComps.get(c);
+            if (isCycle(members)) {
+                mDeadlockOf[c] = c;
+                for (int m : members) {
+                    mNext[m] = -1;
+                }
+                continue;
+            }
+            int v = members[0];
+            mDeadlockOf[c] = -1;
+            mNext[v] = -1;
+            mDepth[v] = 1;
+            for (int e = mEdgeStart[v]; e < mEdgeStart[v + 1]; e++) {
+                int w = mEdges[e];
+                int dl = mDeadlockOf[mComp[w]];
+                if (mDeadlockOf[c] < 0 && dl >= 0) {
+                    mDeadlockOf[c] = dl;
+                }
+                if (mDepth[w] + 1 > mDepth[v]) {
+                    mDepth[v] = mDepth[w] + 1;
+                    mNext[v] = w;
+                }
+            }
+            int w = mNext[v];
+            if (w >= 0) {
+                mCross[v] = mCross[w] || mNodes.get(v).getProcess() != mNodes.get(w).getProcess();
+            }
+        }
+    }
+
+    private void collectDeadlocks() {
+        int n = mNodes.size();
+        HashMap<Integer, Deadlock> found = new HashMap<Integer, Deadlock>();
+        for (int i = 0; i < n; i++) {
+            int c = mDeadlockOf[mComp[i]];
+            if (c < 0) continue;
+            Deadlock dl = found.get(c);
+            if (dl == null) {
+                dl = new Deadlock();
+                for (int m : mComps.get(c)) {
+                    dl.mThreads.add(mNodes.get(m));
+                }
+                found.put(c, dl);
+                mDeadlocks.add(dl);
+            }
+            if (mComp[i] != c) {
+                dl.mBlocked.add(mNodes.get(i));
+            }
+        }
+    }
+
+}
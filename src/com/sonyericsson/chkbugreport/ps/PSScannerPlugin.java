@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2012 Sony Mobile Communications AB
+ *
+ * This file is part of ChkBugReport.
+ *
+ * ChkBugReport is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * ChkBugReport is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ChkBugReport.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.sonyericsson.chkbugreport.ps;
+
+import com.sonyericsson.chkbugreport.BugReportModule;
+import com.sonyericsson.chkbugreport.Module;
+import com.sonyericsson.chkbugreport.Plugin;
+import com.sonyericsson.chkbugreport.Section;
+
+/**
+ * Collects the process names from the PS output, before any other plugin runs.
+ * Plugins using BugReportModule.getPSRecord() while loading must depend on this plugin.
+ */
+public class PSScannerPlugin extends Plugin {
+
+    private static final String SECTIONS[] = {
+        Section.PROCESSES_AND_THREADS,
+        Section.PROCESSES,
+    };
+
+    @Override
+    public int getPrio() {
+        return 0; // Other plugins need the process list
+    }
+
+    @Override
+    public String[] getDependencies() {
+        return NO_DEPENDENCIES;
+    }
+
+    @Override
+    public String[] getRequiredSections() {
+        return SECTIONS;
+    }
+
+    @Override
+    public void reset() {
+        // NOP
+    }
+
+    @Override
+    public void load(Module mod) {
+        BugReportModule br = (BugReportModule) mod;
+        br.setPSRecords(new PSScanner(br).run());
+    }
+
+    @Override
+    public void generate(Module mod) {
+        // NOP
+    }
+
+}
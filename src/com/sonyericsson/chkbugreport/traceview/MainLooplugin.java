@@ -116,6 +116,11 @@ public class MainLooplugin extends Plugin {
         return 80;
     }
 
+    @Override
+    public String[] getDependencies() {
+        return NO_DEPENDENCIES;
+    }
+
     @Override
     public void reset() {
         // NOP
@@ -162,6 +167,11 @@ public class MainLooplugin extends Plugin {
         new Block(mta).addStyle("main-thread-activity-head")
             .add(new Block().add("Here are some important method calls from the main thread:"))
             .add(new Hint().add("Note: thread local times are used, since here we are not interested in the effect of other threads"));
+        boolean summary = rep.isSummary();
+        if (summary) {
+            new Hint(mta).add("Note: only the method calls longer than " + (TraceModule.SUMMARY_MIN_DURATION / 1000)
+                    + "ms are kept (summary mode), so the draw latency cannot be checked");
+        }
         HtmlNode body = new Block(mta).addStyle("main-thread-activity-body");
 
         // Now process the list
@@ -198,6 +208,10 @@ public class MainLooplugin extends Plugin {
                 addMTAItem(body, id, "DRAW", col, run);
                 // Check how much time has elapsed since a layout or invalidate
                 int now = run.startLocalTime; // Let's use the start time for latency, since if draw is slow, that's handled separately
+                if (summary) {
+                    // Some of the calls might be missing, so the latency cannot be checked
+                    pendingInvalidate = pendingLayout = -1;
+                }
                 if (pendingInvalidate != -1) {
                     int delay = (now - pendingInvalidate) / 1000;
                     if (delay > MAX_DRAW_LATENCY) {
@@ -250,6 +264,9 @@ public class MainLooplugin extends Plugin {
 
         // We should check the delay of the draw even if the draw is missing
         int now = getThreadDuration(thread);
+        if (summary) {
+            pendingInvalidate = pendingLayout = -1;
+        }
         if (pendingInvalidate != -1) {
             int delay = (now - pendingInvalidate) / 1000;
             if (delay > MAX_DRAW_LATENCY) {
@@ -280,7 +297,7 @@ public class MainLooplugin extends Plugin {
         }
 
         // Create an error report from the delayed draw items
-        if (slowRuns.size() > 0) {
+        if (delayedDraws.size() > 0) {
             Bug bug = new Bug(Bug.PRIO_TRACEVIEW_DELAYED_DRAW, 0, "Delayed draw calls");
             rep.addBug(bug);
             new Para(bug).add("The following draw method calls on the main thread seems to come too late after either invalidate or layout:");
@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2012 Sony Mobile Communications AB
+ *
+ * This file is part of ChkBugReport.
+ *
+ * ChkBugReport is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * ChkBugReport is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ChkBugReport.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.sonyericsson.chkbugreport.traceview;
+
+import com.sonyericsson.chkbugreport.traceview.TraceModule.MethodInfo;
+import com.sonyericsson.chkbugreport.traceview.TraceModule.MethodRun;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.PriorityQueue;
+import java.util.Vector;
+
+/**
+ * Collects the method statistics of a single thread.
+ *
+ * <p>Each thread has its own instance, so the threads can be processed in parallel.
+ * When a thread is done, its results are added to the MethodInfo objects with
+ * mergeInto(). The methods are identified by their index in the (sorted) method list.</p>
+ */
+public class MethodStats {
+
+    /** Orders the method runs by their duration (in thread time), the longest first */
+    public static final Comparator<MethodRun> SLOWEST_FIRST = new Comparator<MethodRun>() {
+        @Override
+        public int compare(MethodRun o1, MethodRun o2) {
+            int dur1 = o1.endLocalTime - o1.startLocalTime;
+            int dur2 = o2.endLocalTime - o2.startLocalTime;
+            if (dur1 != dur2) {
+                return dur1 < dur2 ? 1 : -1;
+            }
+            if (o1.tid != o2.tid) {
+                return o1.tid < o2.tid ? -1 : 1;
+            }
+            if (o1.startLocalTime != o2.startLocalTime) {
+                return o1.startLocalTime < o2.startLocalTime ? -1 : 1;
+            }
+            return 0;
+        }
+    };
+
+    private int mNesting[];
+    private int mNrCalls[];
+    private int mNrRecCalls[];
+    private int mDur[];
+    private int mDurL[];
+    private int mDurExc[];
+    private int mDurExcL[];
+    private int mMaxDurL[];
+    /** The indices of the methods called on this thread, in the order of the first call */
+    private Vector<Integer> mCalled = new Vector<Integer>();
+
+    /** The slowest non-recursive runs of each method, the fastest of them first */
+    private int mMaxSlowest;
+    private HashMap<Integer, PriorityQueue<MethodRun>> mSlowest = new HashMap<Integer, PriorityQueue<MethodRun>>();
+
+    /**
+     * Creates an empty statistics.
+     * @param nrMethods The number of methods
+     * @param maxSlowest The number of slowest runs to keep per method (0 to keep none)
+     */
+    public MethodStats(int nrMethods, int maxSlowest) {
+        mNesting = new int[nrMethods];
+        mNrCalls = new int[nrMethods];
+        mNrRecCalls = new int[nrMethods];
+        mDur = new int[nrMethods];
+        mDurL = new int[nrMethods];
+        mDurExc = new int[nrMethods];
+        mDurExcL = new int[nrMethods];
+        mMaxDurL = new int[nrMethods];
+        mMaxSlowest = maxSlowest;
+    }
+
+    /**
+     * Must be called when a method run is started, before any of its children.
+     */
+    public void enter(int idx) {
+        if (mNesting[idx]++ == 0 && mNrCalls[idx] == 0) {
+            mCalled.add(idx);
+        }
+    }
+
+    /**
+     * Must be called when a method run is finished, after all its children.
+     * Only the non-recursive calls are added to the durations.
+     * @param idx The index of the method
+     * @param dur The duration in process time
+     * @param durL The duration in thread time
+     * @param durC The total duration of the direct children in process time
+     * @param durLC The total duration of the direct children in thread time
+     * @return true if this was a non-recursive call
+     */
+    public boolean leave(int idx, int dur, int durL, int durC, int durLC) {
+        if (--mNesting[idx] > 0) {
+            mNrRecCalls[idx]++;
+            return false;
+        }
+        mNrCalls[idx]++;
+        mDur[idx] += dur;
+        mDurL[idx] += durL;
+        mMaxDurL[idx] = Math.max(mMaxDurL[idx], durL);
+        mDurExc[idx] += dur - durC;
+        mDurExcL[idx] += durL - durLC;
+        return true;
+    }
+
+    /**
+     * Returns true if a non-recursive run with the given duration would be one of the
+     * slowest runs of the method, so it's worth creating a MethodRun for addSlowest().
+     */
+    public boolean isSlowest(int idx, int durL) {
+        if (mMaxSlowest == 0) {
+            return false;
+        }
+        PriorityQueue<MethodRun> queue = mSlowest.get(idx);
+        if (queue == null || queue.size() < mMaxSlowest) {
+            return true;
+        }
+        MethodRun fastest = queue.peek();
+        return durL > fastest.endLocalTime - fastest.startLocalTime;
+    }
+
+    public void addSlowest(int idx, MethodRun run) {
+        PriorityQueue<MethodRun> queue = mSlowest.get(idx);
+        if (queue == null) {
+            queue = new PriorityQueue<MethodRun>(mMaxSlowest, Collections.reverseOrder(SLOWEST_FIRST));
+            mSlowest.put(idx, queue);
+        }
+        queue.add(run);
+        if (queue.size() > mMaxSlowest) {
+            queue.poll();
+        }
+    }
+
+    /**
+     * Adds the collected statistics to the methods.
+     * @param methods The methods, in the same order as the indices used when collecting
+     */
+    public void mergeInto(Vector<MethodInfo> methods) {
+        for (int idx : mCalled) {
+            MethodInfo m = methods.get(idx);
+            m.nrCalls += mNrCalls[idx];
+            m.nrRecCalls += mNrRecCalls[idx];
+            m.dur += mDur[idx];
+            m.durL += mDurL[idx];
+            m.maxDurL = Math.max(m.maxDurL, mMaxDurL[idx]);
+            m.durExc += mDurExc[idx];
+            m.durExcL += mDurExcL[idx];
+            PriorityQueue<MethodRun> queue = mSlowest.get(idx);
+            if (queue != null) {
+                m.slowest.addAll(queue);
+                Collections.sort(m.slowest, SLOWEST_FIRST);
+                m.slowest.setSize(Math.min(m.slowest.size(), mMaxSlowest));
+            }
+        }
+    }
+
+}
@@ -30,6 +30,7 @@ import com.sonyericsson.chkbugreport.doc.SimpleText;
 import com.sonyericsson.chkbugreport.doc.Span;
 import com.sonyericsson.chkbugreport.doc.Table;
 import com.sonyericsson.chkbugreport.traceview.TraceModule.MethodInfo;
+import com.sonyericsson.chkbugreport.traceview.TraceModule.MethodRun;
 
 import java.util.Collections;
 import java.util.Comparator;
@@ -38,12 +39,18 @@ import java.util.Vector;
 public class StatsPlugin extends Plugin {
 
     private static final int NR_LINES = 100;
+    private static final int NR_SLOWEST_METHODS = 20;
 
     @Override
     public int getPrio() {
         return 20;
     }
 
+    @Override
+    public String[] getDependencies() {
+        return NO_DEPENDENCIES;
+    }
+
     @Override
     public void reset() {
         // NOP
@@ -84,6 +91,39 @@ public class StatsPlugin extends Plugin {
 
         createTable(methodsByDur, ch, true);
         createTable(methodsByDur, fullCh, false);
+
+        if (rep.isSummary()) {
+            Chapter slowCh = new Chapter(rep, "Slowest calls");
+            ch.addChapter(slowCh);
+            createSlowestTable(rep, methodsByDur, slowCh);
+        }
+    }
+
+    private void createSlowestTable(TraceModule rep, Vector<MethodInfo> methodsByDur, Chapter ch) {
+        new Block(ch).add("The slowest (non-recursive) calls of the " + NR_SLOWEST_METHODS + " methods with the longest total duration.");
+        new Block(ch).add("[P] = process time");
+        new Block(ch).add("[T] = thread time");
+        Table t = new Table(Table.FLAG_SORT, ch);
+        t.addColumn("Method", "The name of method", Table.FLAG_NONE);
+        t.addColumn("Thread", "The thread executing the method call", Table.FLAG_NONE);
+        t.addColumn("Start[T]", "The start time of the method call, measured using the thread time.", Table.FLAG_NONE);
+        t.addColumn("Duration[P]", "The duration of the method call, including the time spent when calling other methods, measured using the process time.", Table.FLAG_NONE);
+        t.addColumn("Duration[T]", "The duration of the method call, including the time spent when calling other methods, measured using the thread time.", Table.FLAG_NONE);
+        t.addColumn("Calls", "The number of method calls during this call (including itself)", Table.FLAG_NONE);
+        t.begin();
+
+        int cnt = Math.min(NR_SLOWEST_METHODS, methodsByDur.size());
+        for (int i = 0; i < cnt; i++) {
+            MethodInfo m = methodsByDur.get(i);
+            for (MethodRun run : m.slowest) {
+                t.addData(shadeName(Util.escape(m.shortName)));
+                t.addData(rep.findThread(run.tid).getFullName());
+                t.addData(new ShadedValue(run.startLocalTime));
+                t.addData(new ShadedValue(run.endTime - run.startTime));
+                t.addData(new ShadedValue(run.endLocalTime - run.startLocalTime));
+                t.addData(run.nrCalls);
+            }
+        }
     }
 
     private void createTable(Vector<MethodInfo> methodsByDur, Chapter ch, boolean limit) {
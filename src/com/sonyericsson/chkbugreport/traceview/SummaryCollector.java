@@ -0,0 +1,211 @@
+/*
+ * Copyright (C) 2012 Sony Mobile Communications AB
+ *
+ * This file is part of ChkBugReport.
+ *
+ * ChkBugReport is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * ChkBugReport is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with ChkBugReport.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.sonyericsson.chkbugreport.traceview;
+
+import com.sonyericsson.chkbugreport.traceview.TraceModule.MethodInfo;
+import com.sonyericsson.chkbugreport.traceview.TraceModule.MethodRun;
+import com.sonyericsson.chkbugreport.traceview.TraceModule.ThreadInfo;
+import com.sonyericsson.chkbugreport.traceview.TraceModule.TraceRecords;
+
+import java.util.Vector;
+
+/**
+ * Processes the trace records of a single thread without building the whole call tree.
+ *
+ * <p>Only the currently running calls are kept on a stack. When a call finishes, it's
+ * added to the statistics, and a MethodRun is created only if the call is long enough
+ * to be kept in the (pruned) call tree, or if it's one of the slowest calls of its method.
+ * The statistics are the same as if the whole call tree was built.</p>
+ */
+public class SummaryCollector {
+
+    private TraceModule mMod;
+    private ThreadInfo mThread;
+    private MethodStats mStats;
+    private int mMinDuration;
+
+    // The call stack
+    private int mDepth;
+    private int mMid[] = new int[64];
+    private int mIdx[] = new int[64];
+    private int mStart[] = new int[64];
+    private int mStartL[] = new int[64];
+    private int mDurC[] = new int[64];
+    private int mDurLC[] = new int[64];
+    private int mNrCalls[] = new int[64];
+    private MethodRun mRuns[] = new MethodRun[64];
+
+    /**
+     * Creates a collector for one thread.
+     * @param mod The module, used to look up the methods
+     * @param thread The thread, its call list will contain the kept calls
+     * @param stats The statistics of the thread
+     * @param minDuration The calls shorter than this (in thread time) are not kept in the call tree
+     */
+    public SummaryCollector(TraceModule mod, ThreadInfo thread, MethodStats stats, int minDuration) {
+        mMod = mod;
+        mThread = thread;
+        mStats = stats;
+        mMinDuration = minDuration;
+    }
+
+    /**
+     * Processes the records of the thread.
+     * @param recs All the trace records
+     * @param order The indices of the records to process
+     * @param from The first index (inclusive) to use from order
+     * @param to The last index (exclusive) to use from order
+     * @param lastTime The end time of the calls which are not finished when the trace ends
+     */
+    public void collect(TraceRecords recs, int order[], int from, int to, int lastTime) {
+        // The method exits without a matching entry belong to the calls which were already
+        // running when the tracing started. The exits are nested, so the later exits belong
+        // to the outer calls. Put these on the stack first, as if they started at 0.
+        Vector<Integer> unmatched = new Vector<Integer>();
+        int depth = 0;
+        for (int i = from; i < to; i++) {
+            int act = recs.mid[order[i]] & 3;
+            if (act == TraceModule.METHOD_ENTRY) {
+                depth++;
+            } else if (act == TraceModule.METHOD_EXIT || act == TraceModule.METHOD_EXIT_W_EXC) {
+                if (depth == 0) {
+                    unmatched.add(recs.mid[order[i]] & 0xfffffffc);
+                } else {
+                    depth--;
+                }
+            }
+        }
+        for (int i = unmatched.size() - 1; i >= 0; i--) {
+            push(unmatched.get(i), 0, 0);
+        }
+
+        int lastLocalTime = 0;
+        for (int i = from; i < to; i++) {
+            int r = order[i];
+            int time = recs.time[r];
+            int localTime = recs.localTime[r];
+            int mid = recs.mid[r];
+            int act = mid & 3;
+            mid &= 0xfffffffc;
+            lastLocalTime = localTime;
+            if (act == TraceModule.METHOD_ENTRY) {
+                push(mid, time, localTime);
+            } else if (act == TraceModule.METHOD_EXIT || act == TraceModule.METHOD_EXIT_W_EXC) {
+                pop(time, localTime);
+            }
+        }
+
+        // Finish the calls which were still running when the tracing stopped
+        mThread.lastLocatTime = lastLocalTime;
+        while (mDepth > 0) {
+            pop(lastTime, lastLocalTime);
+        }
+    }
+
+    private void push(int mid, int time, int localTime) {
+        if (mDepth == mMid.length) {
+            grow();
+        }
+        MethodInfo m = mMod.findMethod(mid);
+        int d = mDepth++;
+        mMid[d] = mid;
+        mIdx[d] = m.index;
+        mStart[d] = time;
+        mStartL[d] = localTime;
+        mDurC[d] = 0;
+        mDurLC[d] = 0;
+        mNrCalls[d] = 1;
+        mRuns[d] = null;
+        mStats.enter(m.index);
+    }
+
+    private void pop(int time, int localTime) {
+        int d = --mDepth;
+        int idx = mIdx[d];
+        int dur = time - mStart[d];
+        int durL = localTime - mStartL[d];
+        boolean nonRec = mStats.leave(idx, dur, durL, mDurC[d], mDurLC[d]);
+        boolean slowest = nonRec && mStats.isSlowest(idx, durL);
+
+        // The run object already exists if any of the children is kept
+        MethodRun run = mRuns[d];
+        mRuns[d] = null;
+        if (run == null && (durL >= mMinDuration || slowest)) {
+            run = createRun(d);
+        }
+        if (run != null) {
+            run.endTime = time;
+            run.endLocalTime = localTime;
+            run.nrCalls = mNrCalls[d];
+            if (slowest) {
+                mStats.addSlowest(idx, run);
+            }
+        }
+        boolean keep = run != null && (durL >= mMinDuration || run.calls.size() > 0);
+
+        if (d > 0) {
+            mDurC[d - 1] += dur;
+            mDurLC[d - 1] += durL;
+            mNrCalls[d - 1] += mNrCalls[d];
+            if (keep) {
+                MethodRun caller = mRuns[d - 1];
+                if (caller == null) {
+                    caller = mRuns[d - 1] = createRun(d - 1);
+                }
+                run.caller = caller;
+                caller.calls.add(run);
+            }
+        } else if (keep) {
+            mThread.calls.add(run);
+        }
+    }
+
+    private MethodRun createRun(int d) {
+        MethodInfo m = mMod.findMethod(mMid[d]);
+        MethodRun run = new MethodRun();
+        run.tid = mThread.id;
+        run.mid = mMid[d];
+        run.startTime = mStart[d];
+        run.startLocalTime = mStartL[d];
+        run.name = m.name;
+        run.shortName = m.shortName;
+        return run;
+    }
+
+    private void grow() {
+        int cap = mMid.length * 2;
+        mMid = grow(mMid, cap);
+        mIdx = grow(mIdx, cap);
+        mStart = grow(mStart, cap);
+        mStartL = grow(mStartL, cap);
+        mDurC = grow(mDurC, cap);
+        mDurLC = grow(mDurLC, cap);
+        mNrCalls = grow(mNrCalls, cap);
+        MethodRun runs[] = new MethodRun[cap];
+        System.arraycopy(mRuns, 0, runs, 0, mDepth);
+        mRuns = runs;
+    }
+
+    private int[] grow(int[] arr, int cap) {
+        int ret[] = new int[cap];
+        System.arraycopy(arr, 0, ret, 0, mDepth);
+        return ret;
+    }
+
+}
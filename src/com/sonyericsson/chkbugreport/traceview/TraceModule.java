@@ -19,6 +19,7 @@
 package com.sonyericsson.chkbugreport.traceview;
 
 import com.sonyericsson.chkbugreport.Context;
+import com.sonyericsson.chkbugreport.MappedInputStream;
 import com.sonyericsson.chkbugreport.Module;
 import com.sonyericsson.chkbugreport.Util;
 import com.sonyericsson.chkbugreport.doc.Anchor;
@@ -28,10 +29,14 @@ import com.sonyericsson.chkbugreport.doc.Link;
 import com.sonyericsson.chkbugreport.doc.List;
 import com.sonyericsson.chkbugreport.doc.Para;
 
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -51,6 +56,11 @@ public class TraceModule extends Module {
     private static final int CLOCK_WALL = 1;
     private static final int CLOCK_DUAL = 2;
 
+    /** In summary mode only the calls at least this long (in thread time) are kept */
+    public static final int SUMMARY_MIN_DURATION = 10*1000; // 10ms
+    /** In summary mode this many slowest calls are kept for each method */
+    public static final int SUMMARY_SLOWEST_RUNS = 10;
+
     // Threads
     public static class ThreadInfo {
         public int id;
@@ -83,28 +93,63 @@ public class TraceModule extends Module {
         public String shortName;
         public char state;
         public Vector<MethodRun> calls = new Vector<TraceModule.MethodRun>();
+        /** The slowest non-recursive runs, the slowest first (only in summary mode) */
+        public Vector<MethodRun> slowest = new Vector<TraceModule.MethodRun>();
         public int nrCalls;
         public int nrRecCalls;
-        public int nesting;
         public int dur;
         public int durL;
         public int durExc;
         public int durExcL;
         public int maxDurL;
+        /** The position in the sorted method list */
+        int index;
     }
 
     private Vector<MethodInfo> mMethods = new Vector<MethodInfo>();
     private HashMap<Integer, MethodInfo> mMethodHash = new HashMap<Integer, MethodInfo>();
 
     // Records
-    public static class TraceRecord {
-        int tid;
-        int mid;
-        int time;
-        int localTime;
+    // Stored in parallel arrays instead of one object per record, since a trace
+    // can easily contain millions of them
+    public static class TraceRecords {
+        int count;
+        int tid[];
+        int mid[];
+        int time[];
+        int localTime[];
+
+        TraceRecords(int capacity) {
+            capacity = Math.max(capacity, 1024);
+            tid = new int[capacity];
+            mid = new int[capacity];
+            time = new int[capacity];
+            localTime = new int[capacity];
+        }
+
+        public int size() {
+            return count;
+        }
+
+        void ensureCapacity(int capacity) {
+            if (capacity <= tid.length) {
+                return;
+            }
+            capacity = Math.max(capacity, tid.length * 2);
+            tid = grow(tid, capacity);
+            mid = grow(mid, capacity);
+            time = grow(time, capacity);
+            localTime = grow(localTime, capacity);
+        }
+
+        private int[] grow(int[] arr, int capacity) {
+            int ret[] = new int[capacity];
+            System.arraycopy(arr, 0, ret, 0, count);
+            return ret;
+        }
     }
 
-    private Vector<TraceRecord> mRecords = new Vector<TraceRecord>();
+    private TraceRecords mRecords = new TraceRecords(0);
 
     // Method run records
     public static class MethodRun {
@@ -125,9 +170,11 @@ public class TraceModule extends Module {
     private int mLastPrintTime = 0;
     private int mVersion;
     private int mClock;
+    private boolean mSummary;
 
     public TraceModule(Context context, String fileName) {
         super(context, fileName);
+        mSummary = context.isTraceSummary();
     }
 
     protected void loadPlugins() {
@@ -145,10 +192,18 @@ public class TraceModule extends Module {
         return mThreads;
     }
 
-    public Vector<TraceRecord> getTraceRecords() {
+    public TraceRecords getTraceRecords() {
         return mRecords;
     }
 
+    /**
+     * Returns true if only the statistics and the longer method calls are kept (see
+     * SUMMARY_MIN_DURATION), instead of the whole call tree.
+     */
+    public boolean isSummary() {
+        return mSummary;
+    }
+
     @Override
     public void load(InputStream is) throws IOException {
         String buff;
@@ -269,71 +324,71 @@ public class TraceModule extends Module {
         });
 
         // Parse the tracing data header
-        byte sig[] = new byte[4];
-        is.read(sig);
-        if (!"SLOW".equals(new String(sig, 0, 4))) {
+        ReadableByteChannel ch = Channels.newChannel(is);
+        ByteBuffer hdr = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+        if (!readFully(ch, hdr)) {
+            printErr(1, "Error parsing input file (data header not found)!");
+            return;
+        }
+        if (!"SLOW".equals(new String(hdr.array(), 0, 4))) {
             printErr(1, "Error parsing input file (signature mismatch)!");
             return;
         }
-        int version = Util.read2LE(is); // read version
+        int version = hdr.getShort(4) & 0xffff; // read version
         if (version != mVersion) {
             printErr(1, "Mismatchnig version numbers: header=" + mVersion + " data=" + version + "!");
             return;
         }
-        int delta = Util.read2LE(is); // read header size/offs to data
-        mAbsStartTime = Util.read8LE(is); // read absolute start time
+        int delta = hdr.getShort(6) & 0xffff; // read header size/offs to data
+        mAbsStartTime = hdr.getLong(8); // read absolute start time
         int recSize = (mVersion == 1) ? 9 : 10;
-        if (mVersion >= 3) {
-            recSize = Util.read2LE(is); // read data record size
-            delta -= 2;
+        if (delta > 16) {
+            // read the rest of the header
+            hdr = ByteBuffer.allocate(delta - 16).order(ByteOrder.LITTLE_ENDIAN);
+            if (!readFully(ch, hdr)) {
+                printErr(1, "Error parsing input file (data header truncated)!");
+                return;
+            }
+            if (mVersion >= 3 && delta >= 18) {
+                recSize = hdr.getShort(0) & 0xffff; // read data record size
+            }
+        }
+        if (recSize < getMinRecordSize()) {
+            printErr(1, "Error parsing input file (record size " + recSize + " is too small)!");
+            return;
         }
-        is.skip(delta - 16); // skip rest of the header
 
         // Parse the tracing data
-        try {
-            while (true) {
-                int size = 0;
-                TraceRecord t = new TraceRecord();
-                if (mVersion == 1) {
-                    t.tid = is.read();
-                    size += 1;
-                } else {
-                    t.tid = Util.read2LE(is);
-                    size += 2;
-                }
-                t.mid = Util.read4BE(is);
-                size += 4;
-                if (mClock == CLOCK_THREAD_CPU) {
-                    t.time = t.localTime = Util.read4BE(is);
-                    size += 4;
-                } else if (mClock == CLOCK_DUAL) {
-                    t.localTime = Util.read4BE(is);
-                    t.time = Util.read4BE(is);
-                    size += 8;
-                } else if (mClock == CLOCK_WALL) {
-                    // FIXME: do we even support this?
-                    t.localTime = 0;
-                    t.time = Util.read4BE(is);
-                    size += 8;
-                }
-                while (size < recSize) {
-                    is.read();
-                }
-                mRecords.add(t);
+        if (is instanceof MappedInputStream) {
+            // The whole file is already in the memory, so decode it in place
+            ByteBuffer data = ((MappedInputStream) is).readRemaining();
+            data.order(ByteOrder.LITTLE_ENDIAN);
+            mRecords = new TraceRecords(data.remaining() / recSize);
+            decodeRecords(data, recSize);
+        } else {
+            // Read the data in big chunks, and decode as many records as possible from each
+            mRecords = new TraceRecords(is.available() / recSize);
+            ByteBuffer data = ByteBuffer.allocate(recSize * 0x1000).order(ByteOrder.LITTLE_ENDIAN);
+            boolean eof = false;
+            while (!eof) {
+                eof = ch.read(data) < 0;
+                data.flip();
+                decodeRecords(data, recSize);
+                data.compact();
             }
-        } catch (IOException e) {
-            // ignore, assume it's end of file
         }
         printOut(1, String.format("Read %d records...", mRecords.size()));
 
         // Fix timestamps
+        TraceRecords recs = mRecords;
+        int count = recs.count;
         if (mClock == CLOCK_THREAD_CPU) {
             ThreadInfo lastThread = null;
             System.out.println("Fixing timestamps...");
             int global_time = 0;
-            for (TraceRecord r : mRecords) {
-                int time = r.time;
-                int tid = r.tid;
+            for (int i = 0; i < count; i++) {
+                int time = recs.time[i];
+                int tid = recs.tid[i];
 
                 // Check if thread has changed
                 ThreadInfo thread = findThread(tid);
@@ -350,30 +405,126 @@ public class TraceModule extends Module {
 
                 global_time = time + thread.timeOffs;
                 thread.timeLast = time;
-                r.time = global_time;
+                recs.time[i] = global_time;
+            }
+        }
+
+        // Collect MethodRun information and statistics. After the timestamps are fixed,
+        // the threads don't depend on each other anymore, so they can be processed in parallel
+        if (mSummary) {
+            printOut(1, "Collecting method run statistics (summary only)...");
+        } else {
+            printOut(1, "Collecting method run info and statistics...");
+        }
+        for (int i = 0; i < mMethods.size(); i++) {
+            mMethods.get(i).index = i;
+        }
+        int lastTime = (count > 0) ? recs.time[count - 1] : 0;
+        collectThreads(lastTime);
+        if (!mSummary) {
+            for (ThreadInfo t : mThreads) {
+                for (MethodRun run : t.calls) {
+                    addRuns(run);
+                }
             }
         }
+    }
 
-        // Collect MethodRun information
-        printOut(1, "Collecting method run info...");
-        int lastTime = 0;
-        for (TraceRecord r : mRecords) {
-            lastTime = r.time;
-            int tid = r.tid;
-            int mid = r.mid;
+    /**
+     * Builds the call tree (or in summary mode, only the pruned call tree) and the
+     * statistics of each thread, on several threads if allowed. The statistics of a
+     * thread are added to the methods as soon as the thread is done, so only the
+     * threads being processed have their own statistics in memory.
+     * @param lastTime The end time of the calls which are not finished when the trace ends
+     */
+    private void collectThreads(final int lastTime) {
+        // Group the records by thread (keeping their order)
+        final TraceRecords recs = mRecords;
+        final int nrThreads = mThreads.size();
+        int slots[] = new int[0x10000];
+        for (int i = 0; i < nrThreads; i++) {
+            slots[mThreads.get(i).id & 0xffff] = i + 1;
+        }
+        final int first[] = new int[nrThreads + 1];
+        for (int i = 0; i < recs.count; i++) {
+            int slot = slots[recs.tid[i] & 0xffff];
+            if (slot > 0) {
+                first[slot]++;
+            }
+        }
+        for (int i = 0; i < nrThreads; i++) {
+            first[i + 1] += first[i];
+        }
+        final int order[] = new int[first[nrThreads]];
+        int next[] = new int[nrThreads];
+        System.arraycopy(first, 0, next, 0, nrThreads);
+        for (int i = 0; i < recs.count; i++) {
+            int slot = slots[recs.tid[i] & 0xffff];
+            if (slot > 0) {
+                order[next[slot - 1]++] = i;
+            }
+        }
+
+        int threads = getContext().getThreadCount();
+        if (threads <= 1 || nrThreads <= 1) {
+            for (int i = 0; i < nrThreads; i++) {
+                collectThread(mThreads.get(i), order, first[i], first[i + 1], lastTime).mergeInto(mMethods);
+            }
+            return;
+        }
+
+        Vector<Runnable> tasks = new Vector<Runnable>();
+        for (int i = 0; i < nrThreads; i++) {
+            final int slot = i;
+            tasks.add(new Runnable() {
+                @Override
+                public void run() {
+                    MethodStats stats = collectThread(mThreads.get(slot), order, first[slot], first[slot + 1], lastTime);
+                    // The sums and maximums don't depend on the order of the threads, and
+                    // the slowest runs are sorted, so the threads can be merged in any order
+                    synchronized (mMethods) {
+                        stats.mergeInto(mMethods);
+                    }
+                }
+            });
+        }
+        runTasks(tasks);
+    }
+
+    private MethodStats collectThread(ThreadInfo thread, int order[], int from, int to, int lastTime) {
+        if (mSummary) {
+            MethodStats stats = new MethodStats(mMethods.size(), SUMMARY_SLOWEST_RUNS);
+            new SummaryCollector(this, thread, stats, SUMMARY_MIN_DURATION).collect(mRecords, order, from, to, lastTime);
+            return stats;
+        }
+
+        MethodStats stats = new MethodStats(mMethods.size(), 0);
+        buildCallTree(thread, order, from, to, lastTime);
+        for (MethodRun run : thread.calls) {
+            collectMethodStats(run, stats);
+        }
+        return stats;
+    }
+
+    private void buildCallTree(ThreadInfo thread, int order[], int from, int to, int lastTime) {
+        TraceRecords recs = mRecords;
+        for (int i = from; i < to; i++) {
+            int r = order[i];
+            int time = recs.time[r];
+            int localTime = recs.localTime[r];
+            int tid = recs.tid[r];
+            int mid = recs.mid[r];
             int act = mid & 3;
             mid &= 0xfffffffc;
 
-            ThreadInfo thread = findThread(tid);
-            thread.lastLocatTime = r.localTime;
+            thread.lastLocatTime = localTime;
 
             if (act == METHOD_ENTRY) {
                 MethodRun run = new MethodRun();
-                run.startTime = r.time;
-                run.startLocalTime = r.localTime;
+                run.startTime = time;
+                run.startLocalTime = localTime;
                 run.tid = tid;
                 run.mid = mid;
-                addRun(mid, run);
                 if (thread.currentCall == null) {
                     // first call on the thread
                     thread.calls.add(run);
@@ -391,7 +542,6 @@ public class TraceModule extends Module {
                     run.startLocalTime = 0;
                     run.tid = tid;
                     run.mid = mid;
-                    addRun(mid, run);
                     thread.currentCall = run;
 
                     // Add all previous calls to this one
@@ -404,34 +554,67 @@ public class TraceModule extends Module {
                     thread.calls.add(run);
                 }
 
-                thread.currentCall.endTime = r.time;
-                thread.currentCall.endLocalTime = r.localTime;
+                thread.currentCall.endTime = time;
+                thread.currentCall.endLocalTime = localTime;
                 thread.currentCall = thread.currentCall.caller;
             }
         }
 
         // Now, we might have some calls which are not finished
         // we need to set the end time for those
-        for (ThreadInfo t : mThreads) {
-            MethodRun run = t.currentCall;
-            while (run != null) {
-                run.endTime = lastTime;
-                run.endLocalTime = t.lastLocatTime;
-                run = run.caller;
-            }
+        MethodRun run = thread.currentCall;
+        while (run != null) {
+            run.endTime = lastTime;
+            run.endLocalTime = thread.lastLocatTime;
+            run = run.caller;
         }
+    }
 
-        // Collect MethodRun statistics
-        printOut(1, "Collecting method run statistics...");
-        for (ThreadInfo t : mThreads) {
-            for (MethodRun run : t.calls) {
-                collectMethodStats(run);
+    private int getMinRecordSize() {
+        int size = (mVersion == 1) ? 1 : 2; // thread id
+        size += 4; // method id and action
+        size += (mClock == CLOCK_DUAL) ? 8 : 4; // timestamps
+        return size;
+    }
+
+    /**
+     * Decodes all the complete records from the buffer (starting at its current position),
+     * and appends them to mRecords. The position is moved after the last decoded record.
+     */
+    private void decodeRecords(ByteBuffer buff, int recSize) {
+        int pos = buff.position();
+        int cnt = (buff.limit() - pos) / recSize;
+        TraceRecords recs = mRecords;
+        recs.ensureCapacity(recs.count + cnt);
+        int tidSize = (mVersion == 1) ? 1 : 2;
+        for (int i = 0; i < cnt; i++, pos += recSize) {
+            int idx = recs.count++;
+            recs.tid[idx] = (tidSize == 1) ? (buff.get(pos) & 0xff) : (buff.getShort(pos) & 0xffff);
+            recs.mid[idx] = buff.getInt(pos + tidSize);
+            int tsPos = pos + tidSize + 4;
+            if (mClock == CLOCK_THREAD_CPU) {
+                recs.time[idx] = recs.localTime[idx] = buff.getInt(tsPos);
+            } else if (mClock == CLOCK_DUAL) {
+                recs.localTime[idx] = buff.getInt(tsPos);
+                recs.time[idx] = buff.getInt(tsPos + 4);
+            } else if (mClock == CLOCK_WALL) {
+                recs.localTime[idx] = 0;
+                recs.time[idx] = buff.getInt(tsPos);
             }
         }
+        buff.position(pos);
+    }
 
+    private static boolean readFully(ReadableByteChannel ch, ByteBuffer buff) throws IOException {
+        while (buff.hasRemaining()) {
+            if (ch.read(buff) < 0) {
+                return false;
+            }
+        }
+        return true;
     }
 
-    private void collectMethodStats(MethodRun run) {
+    private void collectMethodStats(MethodRun run, MethodStats stats) {
         MethodInfo m = findMethod(run.mid);
         int dur = run.endTime - run.startTime;
         int durL = run.endLocalTime - run.startLocalTime;
@@ -441,30 +624,22 @@ public class TraceModule extends Module {
         run.name = m.name;
         run.shortName = m.shortName;
 
-        m.nesting++;
+        stats.enter(m.index);
         for (MethodRun ch : run.calls) {
             durC += ch.endTime - ch.startTime;
             durLC += ch.endLocalTime - ch.startLocalTime;
-            collectMethodStats(ch);
+            collectMethodStats(ch, stats);
             run.nrCalls += ch.nrCalls;
         }
-        m.nesting--;
-
-        if (m.nesting == 0) {
-            m.nrCalls++;
-            m.dur += dur;
-            m.durL += durL;
-            m.maxDurL = Math.max(m.maxDurL, durL);
-            m.durExc += dur - durC;
-            m.durExcL += durL - durLC;
-        } else {
-            m.nrRecCalls++;
-        }
+        stats.leave(m.index, dur, durL, durC, durLC);
     }
 
-    private void addRun(int mid, MethodRun run) {
-        MethodInfo m = findMethod(mid);
+    private void addRuns(MethodRun run) {
+        MethodInfo m = findMethod(run.mid);
         m.calls.add(run);
+        for (MethodRun ch : run.calls) {
+            addRuns(ch);
+        }
     }
 
     public ThreadInfo findThread(int tid) {
@@ -478,7 +653,7 @@ public class TraceModule extends Module {
     private void saveTraceVCD(int filterTid, String fn) throws IOException {
         System.out.println("Writing " + fn + "...");
 
-        FileOutputStream fos = new FileOutputStream(getBaseDir() + fn);
+        OutputStream fos = createFile(fn);
         PrintStream ps = new PrintStream(fos);
         mLastPrintTime = 0;
 
@@ -523,10 +698,11 @@ public class TraceModule extends Module {
         if (filterTid != -1) {
             thread = findThread(filterTid);
         }
-        for (TraceRecord r : mRecords) {
-            int time = (filterTid != -1) ? r.localTime : r.time;
-            int tid = r.tid;
-            int mid = r.mid;
+        TraceRecords recs = mRecords;
+        for (int i = 0; i < recs.count; i++) {
+            int time = (filterTid != -1) ? recs.localTime[i] : recs.time[i];
+            int tid = recs.tid[i];
+            int mid = recs.mid[i];
             int act = mid & 3;
             mid &= 0xfffffffc;
 
@@ -33,13 +33,9 @@ import com.sonyericsson.chkbugreport.traceview.TraceModule.ThreadInfo;
 import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
-import java.io.File;
-import java.io.IOException;
 import java.util.LinkedHashMap;
 import java.util.Vector;
 
-import javax.imageio.ImageIO;
-
 public class TreePNGPlugin extends Plugin {
 
     private static final int TRACE_COUNT = 100;
@@ -60,6 +56,11 @@ public class TreePNGPlugin extends Plugin {
         return 60;
     }
 
+    @Override
+    public String[] getDependencies() {
+        return NO_DEPENDENCIES;
+    }
+
     @Override
     public void reset() {
         // NOP
@@ -73,6 +74,10 @@ public class TreePNGPlugin extends Plugin {
     @Override
     public void generate(Module br) {
         TraceModule rep = (TraceModule)br;
+        if (rep.isSummary()) {
+            // The short method calls are not kept, so the charts would be misleading
+            return;
+        }
 
         Chapter ch = new Chapter(rep, "Trace charts");
         rep.addChapter(ch);
@@ -104,18 +109,18 @@ public class TreePNGPlugin extends Plugin {
                 .add("Showing only method with duration longer than or equal to " + (MIN_RUN_TIME / 1000) + "ms.")
                 .add("Total duration: " + (duration / 1000) + "ms.");
 
-            new Block(cc).add(new Img("ftrace-legend-dred.png")).add("Partially running");
-            new Block(cc).add(new Img("ftrace-legend-red.png")).add("Running");
-            new Block(cc).add(new Img("ftrace-legend-yellow.png")).add("Waiting");
-            new Block(cc).add(new Img("ftrace-legend-black.png")).add("Sleeping");
+            new Block(cc).add(Img.res("ftrace-legend-dred.png")).add("Partially running");
+            new Block(cc).add(Img.res("ftrace-legend-red.png")).add("Running");
+            new Block(cc).add(Img.res("ftrace-legend-yellow.png")).add("Waiting");
+            new Block(cc).add(Img.res("ftrace-legend-black.png")).add("Sleeping");
 
             Table tb = new Table(Table.FLAG_DND, cc);
             tb.addColumn("Name", Table.FLAG_NONE);
             tb.addColumn("Trace", Table.FLAG_NONE);
             tb.begin();
 
-            String fn = "tv_trace_" + t.id + "_time.png";
-            if (Util.createTimeBar(br, fn, W, 0, duration / 1000)) { // us -> ms
+            String fn = Util.createTimeBar(br, "tv_trace_" + t.id + "_time.png", W, 0, duration / 1000); // us -> ms
+            if (fn != null) {
                 tb.addData("");
                 tb.addData(new Img(fn));
             }
@@ -217,11 +222,7 @@ public class TreePNGPlugin extends Plugin {
 
     private void savePng(Chart chart, TraceModule rep) {
         // Save the image
-        try {
-            ImageIO.write(chart.img, "png", new File(rep.getBaseDir() + chart.fn));
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        rep.saveImage(chart.img, chart.fn);
     }
 
 
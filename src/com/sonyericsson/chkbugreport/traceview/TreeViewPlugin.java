@@ -30,8 +30,8 @@ import com.sonyericsson.chkbugreport.doc.Link;
 import com.sonyericsson.chkbugreport.traceview.TraceModule.MethodRun;
 import com.sonyericsson.chkbugreport.traceview.TraceModule.ThreadInfo;
 
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintStream;
 import java.util.Vector;
 
@@ -49,6 +49,11 @@ public class TreeViewPlugin extends Plugin {
         return 40;
     }
 
+    @Override
+    public String[] getDependencies() {
+        return NO_DEPENDENCIES;
+    }
+
     @Override
     public void reset() {
         // NOP
@@ -116,6 +121,9 @@ public class TreeViewPlugin extends Plugin {
         } else {
             new Block(tree).add("(Maximum " + level + " levels, showing only items with thread time duration above " + (mindur / 1000) + "ms)");
         }
+        if (rep.isSummary() && mindur < TraceModule.SUMMARY_MIN_DURATION) {
+            new Hint(tree).add("Note: only the method calls longer than " + (TraceModule.SUMMARY_MIN_DURATION / 1000) + "ms are kept (summary mode).");
+        }
         new Hint(tree).add("Note: you can collapse/expand items by clicking on them.");
         new Block(tree)
             .add(new Button("Expand all", "tvtrShow('" + divId + "')"))
@@ -178,12 +186,15 @@ public class TreeViewPlugin extends Plugin {
         System.out.println("Writing " + fn + "...");
 
         try {
-            FileOutputStream fos = new FileOutputStream(rep.getBaseDir() + fn);
+            OutputStream fos = rep.createFile(fn);
             PrintStream ps = new PrintStream(fos);
 
             ThreadInfo thread = rep.findThread(tid);
             ps.println("Method calls on Thread-" + tid + " (" + thread.name + "):");
             ps.println("# [duration in proc time, duration in thread time, nr calls] method name");
+            if (rep.isSummary()) {
+                ps.println("# Only the method calls longer than " + (TraceModule.SUMMARY_MIN_DURATION / 1000) + "ms are kept (summary mode)");
+            }
 
             printTraceTree(rep, ps, "", thread.calls);
 